@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+
+/**
+ * Benchmarks for the graph service's traversal procedures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GraphBenchmark {
+  private static final int FOF_DEPTH = 2;
+
+  /**
+   * Retrieves a user's unknown friends of friends.
+   *
+   * @param state
+   *          shared benchmark state
+   * @param cursor
+   *          user selection
+   * @return retrieved people
+   */
+  @Benchmark
+  public ListResult getFriendsOfFriends(ShindigBenchmarkState state, UserCursor cursor) {
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(cursor.next(state.getUserIds()));
+
+    return state.getGraphSPI().getFriendsOfFriends(userIds, GraphBenchmark.FOF_DEPTH, true,
+            new HashMap<String, Object>(), state.getFields());
+  }
+
+  /**
+   * Retrieves the shortest path between two users.
+   *
+   * @param state
+   *          shared benchmark state
+   * @param cursor
+   *          user selection
+   * @return people on the path
+   */
+  @Benchmark
+  public ListResult getShortestPath(ShindigBenchmarkState state, UserCursor cursor) {
+    final String[] userIds = state.getUserIds();
+
+    return state.getGraphSPI().getShortestPath(cursor.next(userIds), cursor.next(userIds),
+            new HashMap<String, Object>(), state.getFields());
+  }
+}
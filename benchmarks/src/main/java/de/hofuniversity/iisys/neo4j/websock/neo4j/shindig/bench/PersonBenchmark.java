@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.OSFields;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Benchmarks for the person service's read procedures.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PersonBenchmark {
+  private static final int PAGE_SIZE = 20;
+
+  /**
+   * Retrieves a user's friends.
+   *
+   * @param state
+   *          shared benchmark state
+   * @param cursor
+   *          user selection
+   * @return retrieved people
+   */
+  @Benchmark
+  public ListResult getFriends(ShindigBenchmarkState state, UserCursor cursor) {
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(cursor.next(state.getUserIds()));
+
+    return state.getPersonSPI().getPeople(userIds, OSFields.GROUP_TYPE_FRIENDS,
+            new HashMap<String, Object>(), state.getFields());
+  }
+
+  /**
+   * Retrieves the first page of all people, sorted by name.
+   *
+   * @param state
+   *          shared benchmark state
+   * @return retrieved people
+   */
+  @Benchmark
+  public ListResult getAllPeople(ShindigBenchmarkState state) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SUBSET_START, 0);
+    options.put(WebsockConstants.SUBSET_SIZE, PersonBenchmark.PAGE_SIZE);
+
+    return state.getPersonSPI().getAllPeople(options, state.getFields());
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigNativeProcedures;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphActivityStreamSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphMessageSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphSPI;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Shared benchmark state starting the native Shindig procedures on an impermanent database and
+ * filling it with a reproducible social graph of the configured scale, using the
+ * SocialGraphGenerator.
+ */
+@State(Scope.Benchmark)
+public class ShindigBenchmarkState {
+  /**
+   * Field set value requesting all fields.
+   */
+  public static final String ALL_FIELDS = "all";
+
+  private static final long SEED = 4711L;
+
+  private static final int ACTIVITIES_PER_PERSON = 10;
+  private static final int MESSAGES_PER_PERSON = 5;
+
+  /**
+   * Scale factor of the generated graph, see SocialGraphGenerator.
+   */
+  @Param({ "0.1", "1", "5" })
+  public double scale;
+
+  /**
+   * Comma-separated list of fields to request or "all" for all fields.
+   */
+  @Param({ "id", "id,displayName,name", ShindigBenchmarkState.ALL_FIELDS })
+  public String fieldSet;
+
+  private GraphDatabaseService fDb;
+  private ShindigNativeProcedures fProvider;
+
+  private GraphPersonSPI fPersonSPI;
+  private GraphSPI fGraphSPI;
+  private GraphActivityStreamSPI fActivitySPI;
+  private GraphMessageSPI fMessageSPI;
+
+  private String[] fUserIds;
+  private List<String> fFields;
+
+  /**
+   * Starts the database and the procedures and creates the test graph.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    this.fDb = new TestGraphDatabaseFactory().newImpermanentDatabase();
+
+    // registers all services with the static registry
+    this.fProvider = new ShindigNativeProcedures(this.fDb, new ImplUtil(BasicBSONList.class,
+            BasicBSONObject.class));
+    this.fProvider.getProcedures();
+
+    this.fPersonSPI = ShindigNativeProcedures.getService(GraphPersonSPI.class);
+    this.fGraphSPI = ShindigNativeProcedures.getService(GraphSPI.class);
+    this.fActivitySPI = ShindigNativeProcedures.getService(GraphActivityStreamSPI.class);
+    this.fMessageSPI = ShindigNativeProcedures.getService(GraphMessageSPI.class);
+
+    if (ShindigBenchmarkState.ALL_FIELDS.equals(this.fieldSet)) {
+      this.fFields = null;
+    } else {
+      this.fFields = Arrays.asList(this.fieldSet.split(","));
+    }
+
+    createGraph();
+  }
+
+  /**
+   * Stops the procedures' background services and shuts down the database.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    this.fProvider.close();
+    this.fDb.shutdown();
+  }
+
+  private void createGraph() {
+    final SocialGraphGenerator generator = new SocialGraphGenerator(ShindigBenchmarkState.SEED,
+            this.scale);
+    generator.setActivitiesPerPerson(ShindigBenchmarkState.ACTIVITIES_PER_PERSON);
+    generator.setMessagesPerPerson(ShindigBenchmarkState.MESSAGES_PER_PERSON);
+    generator.generate();
+
+    this.fUserIds = generator.getUserIds();
+  }
+
+  /**
+   * @return person service
+   */
+  public GraphPersonSPI getPersonSPI() {
+    return this.fPersonSPI;
+  }
+
+  /**
+   * @return graph service
+   */
+  public GraphSPI getGraphSPI() {
+    return this.fGraphSPI;
+  }
+
+  /**
+   * @return activity stream service
+   */
+  public GraphActivityStreamSPI getActivitySPI() {
+    return this.fActivitySPI;
+  }
+
+  /**
+   * @return message service
+   */
+  public GraphMessageSPI getMessageSPI() {
+    return this.fMessageSPI;
+  }
+
+  /**
+   * @return IDs of all generated people
+   */
+  public String[] getUserIds() {
+    return this.fUserIds;
+  }
+
+  /**
+   * @return fields to request, null for all fields
+   */
+  public List<String> getFields() {
+    return this.fFields;
+  }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigNativeProcedures;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphActivityStreamSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphAlbumSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphAppDataSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphFriendSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphMediaItemSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphMessageSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphSkillSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.OSFields;
+
+/**
+ * Generator filling a database with a synthetic social graph for load and scale testing. All data
+ * is created through the regular services, which have to be registered with
+ * ShindigNativeProcedures beforehand. The generated structure only depends on the seed and the
+ * settings, so runs with the same parameters produce the same graph. Friend degrees follow a power
+ * law, so there are few hub users with many friends and many users with few friends; activity
+ * volumes are proportional to the friend degree. Automatically generated activities depend on the
+ * services' configuration and carry the current time.
+ */
+public class SocialGraphGenerator {
+  /**
+   * Number of people generated per unit of the scale factor.
+   */
+  public static final int PEOPLE_PER_SCALE = 1000;
+
+  /**
+   * Application ID used for generated activities and application data.
+   */
+  public static final String APP_ID = "generator";
+
+  private static final String ID_PREFIX = "user";
+
+  private static final String ID_FIELD = "id";
+  private static final String NAME_FIELD = "name";
+  private static final String FORMATTED_FIELD = "formatted";
+  private static final String GIV_NAME_FIELD = "givenName";
+  private static final String FAM_NAME_FIELD = "familyName";
+  private static final String RECIPIENTS_FIELD = "recipients";
+  private static final String BODY_FIELD = "body";
+  private static final String DESCRIPTION_FIELD = "description";
+  private static final String TYPE_FIELD = "type";
+  private static final String URL_FIELD = "url";
+
+  private static final String OUTBOX_NAME = "@outbox";
+
+  private static final String[] VERBS = { "post", "add", "update", "share", "like" };
+  private static final String[] OBJECT_TYPES = { "note", "file", "bookmark", "image" };
+
+  private static final long BASE_TIME = 1420070400000L; // 2015-01-01T00:00Z
+  private static final long TIME_SPAN = 365L * 24 * 60 * 60 * 1000;
+
+  private final long fSeed;
+  private final int fPeople;
+
+  private final DateFormat fDateFormat;
+
+  private final Logger fLogger;
+
+  private double fExponent = 2.5;
+  private int fMinFriends = 1;
+  private int fMaxFriends;
+  private int fActivities = 20;
+  private int fMessages = 5;
+  private int fSkills = 3;
+  private int fAlbums = 1;
+  private int fMediaItems = 3;
+  private int fAppData = 2;
+
+  private String[] fUserIds;
+  private List<Set<Integer>> fFriends;
+  private int fFriendships;
+
+  /**
+   * Creates a generator for a graph with the given scale factor, producing PEOPLE_PER_SCALE people
+   * per unit, but at least two. All random decisions are derived from the given seed.
+   *
+   * @param seed
+   *          seed for the random number generator
+   * @param scale
+   *          scale factor, must be positive
+   */
+  public SocialGraphGenerator(long seed, double scale) {
+    if (scale <= 0) {
+      throw new RuntimeException("scale factor must be positive");
+    }
+
+    this.fSeed = seed;
+    this.fPeople = Math.max(2, (int) Math.round(scale * SocialGraphGenerator.PEOPLE_PER_SCALE));
+    this.fMaxFriends = this.fPeople - 1;
+
+    this.fDateFormat = new SimpleDateFormat(OSFields.DATE_FORMAT);
+    this.fDateFormat.setTimeZone(TimeZone.getTimeZone(OSFields.TIME_ZONE));
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  /**
+   * Sets the exponent of the power law friend degrees follow. Lower values produce bigger hubs.
+   * Defaults to 2.5.
+   *
+   * @param exponent
+   *          power law exponent, must be greater than 1
+   */
+  public void setFriendExponent(double exponent) {
+    if (exponent <= 1) {
+      throw new RuntimeException("exponent must be greater than 1");
+    }
+    this.fExponent = exponent;
+  }
+
+  /**
+   * Sets the minimum and maximum number of friends a person should have. Defaults to one and the
+   * number of people in the graph. Duplicate pairings are dropped, so actual degrees may be lower.
+   *
+   * @param min
+   *          minimum number of friends
+   * @param max
+   *          maximum number of friends
+   */
+  public void setFriendRange(int min, int max) {
+    this.fMinFriends = Math.max(0, min);
+    this.fMaxFriends = Math.min(this.fPeople - 1, Math.max(this.fMinFriends, max));
+  }
+
+  /**
+   * Sets the average number of activities per person. The actual number for a person is
+   * proportional to the number of friends. Defaults to 20.
+   *
+   * @param activities
+   *          average number of activities per person
+   */
+  public void setActivitiesPerPerson(int activities) {
+    this.fActivities = Math.max(0, activities);
+  }
+
+  /**
+   * Sets the number of messages each person sends. Defaults to 5.
+   *
+   * @param messages
+   *          number of messages per person
+   */
+  public void setMessagesPerPerson(int messages) {
+    this.fMessages = Math.max(0, messages);
+  }
+
+  /**
+   * Sets the number of skills linked to each person. Defaults to 3.
+   *
+   * @param skills
+   *          number of skills per person
+   */
+  public void setSkillsPerPerson(int skills) {
+    this.fSkills = Math.max(0, skills);
+  }
+
+  /**
+   * Sets the number of albums per person and the number of media items per album. Defaults to one
+   * album with three media items.
+   *
+   * @param albums
+   *          number of albums per person
+   * @param mediaItems
+   *          number of media items per album
+   */
+  public void setAlbumsPerPerson(int albums, int mediaItems) {
+    this.fAlbums = Math.max(0, albums);
+    this.fMediaItems = Math.max(0, mediaItems);
+  }
+
+  /**
+   * Sets the number of application data entries stored for each person. Defaults to 2.
+   *
+   * @param entries
+   *          number of application data entries per person
+   */
+  public void setAppDataPerPerson(int entries) {
+    this.fAppData = Math.max(0, entries);
+  }
+
+  /**
+   * Generates the graph using the services registered with ShindigNativeProcedures. Throws a
+   * RuntimeException if a required service is not registered.
+   */
+  public void generate() {
+    final GraphPersonSPI personSPI = getService(GraphPersonSPI.class);
+    final GraphFriendSPI friendSPI = getService(GraphFriendSPI.class);
+    final GraphSkillSPI skillSPI = getService(GraphSkillSPI.class);
+    final GraphActivityStreamSPI activitySPI = getService(GraphActivityStreamSPI.class);
+    final GraphMessageSPI messageSPI = getService(GraphMessageSPI.class);
+    final GraphAlbumSPI albumSPI = getService(GraphAlbumSPI.class);
+    final GraphMediaItemSPI mediaItemSPI = getService(GraphMediaItemSPI.class);
+    final GraphAppDataSPI appDataSPI = getService(GraphAppDataSPI.class);
+
+    // separate random sources, so changing one volume does not alter the rest of the graph
+    final Random random = new Random(this.fSeed);
+    final Random friendRandom = new Random(random.nextLong());
+    final Random skillRandom = new Random(random.nextLong());
+    final Random activityRandom = new Random(random.nextLong());
+    final Random messageRandom = new Random(random.nextLong());
+    final Random albumRandom = new Random(random.nextLong());
+    final Random appDataRandom = new Random(random.nextLong());
+
+    createPeople(personSPI, random);
+    this.fLogger.info("generated " + this.fPeople + " people");
+
+    createFriendships(friendSPI, friendRandom);
+    this.fLogger.info("generated " + this.fFriendships + " friendships");
+
+    createSkills(skillSPI, skillRandom);
+    createActivities(activitySPI, activityRandom);
+    createMessages(messageSPI, messageRandom);
+    createAlbums(albumSPI, mediaItemSPI, albumRandom);
+    createAppData(appDataSPI, appDataRandom);
+    this.fLogger.info("graph generation finished");
+  }
+
+  private <T> T getService(Class<T> clazz) {
+    final T service = ShindigNativeProcedures.getService(clazz);
+    if (service == null) {
+      throw new RuntimeException("service " + clazz.getSimpleName() + " is not registered");
+    }
+    return service;
+  }
+
+  private void createPeople(GraphPersonSPI personSPI, Random random) {
+    this.fUserIds = new String[this.fPeople];
+
+    Map<String, Object> person = null;
+    Map<String, Object> name = null;
+    String formatted = null;
+    for (int i = 0; i < this.fPeople; ++i) {
+      this.fUserIds[i] = SocialGraphGenerator.ID_PREFIX + i;
+
+      name = new HashMap<String, Object>();
+      name.put(SocialGraphGenerator.GIV_NAME_FIELD, "Given" + i);
+      name.put(SocialGraphGenerator.FAM_NAME_FIELD, "Family" + random.nextInt(this.fPeople));
+      formatted = name.get(SocialGraphGenerator.GIV_NAME_FIELD) + " "
+              + name.get(SocialGraphGenerator.FAM_NAME_FIELD);
+      name.put(SocialGraphGenerator.FORMATTED_FIELD, formatted);
+
+      person = new HashMap<String, Object>();
+      person.put(SocialGraphGenerator.ID_FIELD, this.fUserIds[i]);
+      person.put(OSFields.DISP_NAME_FIELD, formatted);
+      person.put(SocialGraphGenerator.NAME_FIELD, name);
+
+      personSPI.createPerson(person);
+    }
+  }
+
+  private int sampleDegree(Random random) {
+    // inverse transform sampling of a Pareto distribution
+    final double u = random.nextDouble();
+    final double minDeg = Math.max(1, this.fMinFriends);
+    final double degree = minDeg * Math.pow(1 - u, -1 / (this.fExponent - 1));
+
+    return (int) Math.min(this.fMaxFriends, Math.floor(degree));
+  }
+
+  private void createFriendships(GraphFriendSPI friendSPI, Random random) {
+    // configuration model: every person appears once per desired friend, pairs are drawn randomly
+    final List<Integer> stubs = new ArrayList<Integer>();
+    for (int i = 0; i < this.fPeople; ++i) {
+      final int degree = sampleDegree(random);
+      for (int d = 0; d < degree; ++d) {
+        stubs.add(i);
+      }
+    }
+    Collections.shuffle(stubs, random);
+
+    this.fFriends = new ArrayList<Set<Integer>>(this.fPeople);
+    for (int i = 0; i < this.fPeople; ++i) {
+      this.fFriends.add(new HashSet<Integer>());
+    }
+
+    this.fFriendships = 0;
+    int a = 0;
+    int b = 0;
+    for (int i = 0; i + 1 < stubs.size(); i += 2) {
+      a = stubs.get(i);
+      b = stubs.get(i + 1);
+
+      // drop self-loops and duplicates
+      if (a == b || this.fFriends.get(a).contains(b)) {
+        continue;
+      }
+
+      this.fFriends.get(a).add(b);
+      this.fFriends.get(b).add(a);
+
+      // request and confirm
+      friendSPI.requestFriendship(this.fUserIds[a], this.fUserIds[b]);
+      friendSPI.requestFriendship(this.fUserIds[b], this.fUserIds[a]);
+      ++this.fFriendships;
+    }
+  }
+
+  private void createSkills(GraphSkillSPI skillSPI, Random random) {
+    final int vocabulary = Math.max(10, this.fPeople / 10);
+
+    int index = 0;
+    for (int i = 0; i < this.fPeople; ++i) {
+      for (int s = 0; s < this.fSkills; ++s) {
+        // skew towards popular skills
+        final double u = random.nextDouble();
+        index = (int) (vocabulary * u * u);
+
+        skillSPI.addSkill(this.fUserIds[i], this.fUserIds[i], "skill" + index);
+      }
+    }
+  }
+
+  private String timestamp(Random random) {
+    final long offset = (long) (random.nextDouble() * SocialGraphGenerator.TIME_SPAN);
+    return this.fDateFormat.format(new Date(SocialGraphGenerator.BASE_TIME + offset));
+  }
+
+  private void createActivities(GraphActivityStreamSPI activitySPI, Random random) {
+    final double meanDegree = this.fFriendships * 2.0 / this.fPeople;
+
+    Map<String, Object> activity = null;
+    Map<String, Object> object = null;
+    int count = 0;
+    long total = 0;
+    for (int i = 0; i < this.fPeople; ++i) {
+      if (meanDegree > 0) {
+        count = (int) Math.round(this.fActivities * this.fFriends.get(i).size() / meanDegree);
+      } else {
+        count = this.fActivities;
+      }
+
+      for (int a = 0; a < count; ++a) {
+        final String verb = SocialGraphGenerator.VERBS[random
+                .nextInt(SocialGraphGenerator.VERBS.length)];
+        final String type = SocialGraphGenerator.OBJECT_TYPES[random
+                .nextInt(SocialGraphGenerator.OBJECT_TYPES.length)];
+
+        activity = new HashMap<String, Object>();
+        activity.put(OSFields.VERB_FIELD, verb);
+        activity.put(OSFields.TITLE_FIELD, this.fUserIds[i] + " " + verb + " " + type);
+        activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp(random));
+
+        object = new HashMap<String, Object>();
+        object.put(OSFields.ID_FIELD, this.fUserIds[i]);
+        object.put(OSFields.OBJECT_TYPE, OSFields.PERSON_TYPE);
+        activity.put(OSFields.ACTOR_FIELD, object);
+
+        object = new HashMap<String, Object>();
+        object.put(OSFields.ID_FIELD, type + random.nextInt(this.fPeople * 10));
+        object.put(OSFields.OBJECT_TYPE, type);
+        activity.put(OSFields.OBJECT_FIELD, object);
+
+        activitySPI.createActivityEntry(this.fUserIds[i], null, SocialGraphGenerator.APP_ID,
+                activity, null);
+      }
+
+      total += count;
+    }
+
+    this.fLogger.info("generated " + total + " activities");
+  }
+
+  private void createMessages(GraphMessageSPI messageSPI, Random random) {
+    Map<String, Object> message = null;
+    List<String> recipients = null;
+    List<Integer> friends = null;
+    int recipient = 0;
+    for (int i = 0; i < this.fPeople; ++i) {
+      friends = new ArrayList<Integer>(this.fFriends.get(i));
+      Collections.sort(friends);
+
+      for (int m = 0; m < this.fMessages; ++m) {
+        // prefer friends, fall back to random people
+        if (friends.isEmpty()) {
+          recipient = random.nextInt(this.fPeople);
+        } else {
+          recipient = friends.get(random.nextInt(friends.size()));
+        }
+
+        recipients = new ArrayList<String>();
+        recipients.add(this.fUserIds[recipient]);
+
+        message = new HashMap<String, Object>();
+        message.put(OSFields.TITLE_FIELD, "message " + m + " from " + this.fUserIds[i]);
+        message.put(SocialGraphGenerator.BODY_FIELD, "generated message body");
+        message.put(SocialGraphGenerator.RECIPIENTS_FIELD, recipients);
+
+        messageSPI.createMessage(this.fUserIds[i], SocialGraphGenerator.APP_ID,
+                SocialGraphGenerator.OUTBOX_NAME, message);
+      }
+    }
+  }
+
+  private void createAlbums(GraphAlbumSPI albumSPI, GraphMediaItemSPI mediaItemSPI,
+          Random random) {
+    Map<String, Object> album = null;
+    Map<String, Object> item = null;
+    String albumId = null;
+    for (int i = 0; i < this.fPeople; ++i) {
+      for (int a = 0; a < this.fAlbums; ++a) {
+        album = new HashMap<String, Object>();
+        album.put(OSFields.TITLE_FIELD, "album " + a);
+        album.put(SocialGraphGenerator.DESCRIPTION_FIELD, "album of " + this.fUserIds[i]);
+        album.put(SocialGraphGenerator.ID_FIELD, this.fUserIds[i] + ".album" + a);
+
+        albumSPI.createAlbum(this.fUserIds[i], SocialGraphGenerator.APP_ID, album);
+        albumId = (String) album.get(SocialGraphGenerator.ID_FIELD);
+
+        for (int m = 0; m < this.fMediaItems; ++m) {
+          item = new HashMap<String, Object>();
+          item.put(OSFields.TITLE_FIELD, "item " + m);
+          item.put(SocialGraphGenerator.TYPE_FIELD, "image");
+          item.put(SocialGraphGenerator.URL_FIELD, "http://example.com/" + albumId + "/"
+                  + random.nextInt(Integer.MAX_VALUE));
+
+          mediaItemSPI.createMediaItem(this.fUserIds[i], SocialGraphGenerator.APP_ID, albumId,
+                  item);
+        }
+      }
+    }
+  }
+
+  private void createAppData(GraphAppDataSPI appDataSPI, Random random) {
+    if (this.fAppData == 0) {
+      return;
+    }
+
+    Map<String, Object> values = null;
+    for (int i = 0; i < this.fPeople; ++i) {
+      values = new HashMap<String, Object>();
+      for (int d = 0; d < this.fAppData; ++d) {
+        values.put("key" + d, String.valueOf(random.nextInt()));
+      }
+
+      appDataSPI.updatePersonData(this.fUserIds[i], OSFields.GROUP_TYPE_SELF,
+              SocialGraphGenerator.APP_ID, values);
+    }
+  }
+
+  /**
+   * @return number of people generated
+   */
+  public int getPeopleCount() {
+    return this.fPeople;
+  }
+
+  /**
+   * @return IDs of the generated people, null before generation
+   */
+  public String[] getUserIds() {
+    return this.fUserIds;
+  }
+
+  /**
+   * @return number of confirmed friendships generated
+   */
+  public int getFriendshipCount() {
+    return this.fFriendships;
+  }
+
+  /**
+   * Returns the number of friends the generator linked to the person with the given index.
+   *
+   * @param index
+   *          index of the person in the user ID array
+   * @return number of generated friends
+   */
+  public int getFriendCount(int index) {
+    return this.fFriends.get(index).size();
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread state picking reproducible pseudo-random users for benchmark invocations.
+ */
+@State(Scope.Thread)
+public class UserCursor {
+  private static final long SEED = 42L;
+
+  private final Random fRandom = new Random(UserCursor.SEED);
+
+  /**
+   * Picks the next user from the given list of IDs.
+   *
+   * @param userIds
+   *          IDs to pick from
+   * @return picked user ID
+   */
+  public String next(String[] userIds) {
+    return userIds[this.fRandom.nextInt(userIds.length)];
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigNativeProcedures;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphActivityStreamSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphMessageSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.OSFields;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the synthetic social graph generator.
+ */
+public class SocialGraphGeneratorTest {
+  private static final long SEED = 1234L;
+  private static final double SCALE = 0.05;
+
+  private GraphDatabaseService fDb;
+
+  @Before
+  public void setupService() {
+    this.fDb = startDatabase();
+  }
+
+  private GraphDatabaseService startDatabase() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    final GraphDatabaseService db = fact.newImpermanentDatabase();
+
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        db.shutdown();
+      }
+    });
+
+    new ShindigNativeProcedures(db, new ImplUtil(BasicBSONList.class, BasicBSONObject.class))
+            .getProcedures();
+
+    return db;
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private SocialGraphGenerator createGenerator() {
+    final SocialGraphGenerator gen = new SocialGraphGenerator(SocialGraphGeneratorTest.SEED,
+            SocialGraphGeneratorTest.SCALE);
+    gen.setActivitiesPerPerson(4);
+    gen.setMessagesPerPerson(2);
+    gen.setSkillsPerPerson(1);
+    gen.setAlbumsPerPerson(1, 1);
+    gen.setAppDataPerPerson(1);
+    return gen;
+  }
+
+  /**
+   * Tests whether the configured volumes are actually generated through the services.
+   */
+  @Test
+  public void generationTest() {
+    final SocialGraphGenerator gen = createGenerator();
+    gen.generate();
+
+    final int people = (int) (SocialGraphGeneratorTest.SCALE
+            * SocialGraphGenerator.PEOPLE_PER_SCALE);
+    Assert.assertEquals(people, gen.getPeopleCount());
+    Assert.assertTrue(gen.getFriendshipCount() > 0);
+
+    final GraphPersonSPI personSPI = ShindigNativeProcedures.getService(GraphPersonSPI.class);
+    ListResult result = personSPI.getAllPeople(new HashMap<String, Object>(), null);
+    Assert.assertEquals(people, result.getSize());
+
+    // the most connected person's friends
+    int hub = 0;
+    for (int i = 0; i < people; ++i) {
+      if (gen.getFriendCount(i) > gen.getFriendCount(hub)) {
+        hub = i;
+      }
+    }
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(gen.getUserIds()[hub]);
+
+    result = personSPI.getPeople(userIds, OSFields.GROUP_TYPE_FRIENDS,
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(gen.getFriendCount(hub), result.getSize());
+
+    // generated activities, proportional to the number of friends
+    final GraphActivityStreamSPI actSPI = ShindigNativeProcedures
+            .getService(GraphActivityStreamSPI.class);
+    final Map<String, Object> options = new HashMap<String, Object>();
+    result = actSPI.getActivityEntries(userIds, OSFields.GROUP_TYPE_SELF,
+            SocialGraphGenerator.APP_ID, options, null);
+    Assert.assertTrue(result.getSize() >= 4);
+
+    // sent messages
+    final GraphMessageSPI messageSPI = ShindigNativeProcedures.getService(GraphMessageSPI.class);
+    result = messageSPI.getMessages(gen.getUserIds()[0], "@outbox", null,
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(2, result.getSize());
+  }
+
+  /**
+   * Tests whether the same seed results in the same graph structure.
+   */
+  @Test
+  public void determinismTest() {
+    final SocialGraphGenerator gen1 = createGenerator();
+    gen1.generate();
+
+    final GraphDatabaseService otherDb = startDatabase();
+    try {
+      final SocialGraphGenerator gen2 = createGenerator();
+      gen2.generate();
+
+      Assert.assertEquals(gen1.getFriendshipCount(), gen2.getFriendshipCount());
+      for (int i = 0; i < gen1.getPeopleCount(); ++i) {
+        Assert.assertEquals(gen1.getFriendCount(i), gen2.getFriendCount(i));
+      }
+    } finally {
+      otherDb.shutdown();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Stored procedure executing a list of other native Shindig procedures in one call, returning
+ * all of their results together. Person node lookups are shared between the calls of a batch.
+ * Failing calls do not abort the batch, their error message is returned in their place instead.
+ */
+public class BatchProcedure extends ShindigProcedure {
+  private final Map<String, IStoredProcedure> fProcedures;
+  private final GraphPersonSPI fPersonSPI;
+  private final ImplUtil fImpl;
+
+  private final Logger fLogger;
+
+  /**
+   * Creates a batch procedure executing the given procedures, sharing person lookups through the
+   * given person service. The map of procedures is copied, so that batches can not contain
+   * themselves. Throws a NullPointerException if any parameter is null.
+   *
+   * @param procedures
+   *          procedures that can be called in a batch by query name
+   * @param personSPI
+   *          person service to share lookups of
+   * @param impl
+   *          implementation utility to use
+   */
+  public BatchProcedure(Map<String, IStoredProcedure> procedures, GraphPersonSPI personSPI,
+          ImplUtil impl) {
+    super(ShindigServerQueries.EXECUTE_BATCH_METHOD);
+
+    if (procedures == null) {
+      throw new NullPointerException("procedure map was null");
+    }
+    if (personSPI == null) {
+      throw new NullPointerException("person service was null");
+    }
+    if (impl == null) {
+      throw new NullPointerException("implementation utility was null");
+    }
+
+    this.fProcedures = new HashMap<String, IStoredProcedure>(procedures);
+    this.fPersonSPI = personSPI;
+    this.fImpl = impl;
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  @Override
+  protected AResult invoke(Map<String, Object> parameters) {
+    @SuppressWarnings("unchecked")
+    final List<Map<String, Object>> calls = (List<Map<String, Object>>) parameters
+            .get(ShindigServerQueries.BATCH_LIST);
+    if (calls == null) {
+      throw new IllegalArgumentException("parameter " + ShindigServerQueries.BATCH_LIST
+              + " is missing");
+    }
+
+    final List<Map<String, Object>> results = this.fImpl.newList();
+
+    this.fPersonSPI.beginBatch();
+    try {
+      for (final Map<String, Object> call : calls) {
+        results.add(execute(call));
+      }
+    } finally {
+      this.fPersonSPI.endBatch();
+    }
+
+    return new ListResult(results);
+  }
+
+  private Map<String, Object> execute(Map<String, Object> call) {
+    final Map<String, Object> entry = this.fImpl.newMap();
+
+    final String query = (String) call.get(ShindigServerQueries.BATCH_QUERY_FIELD);
+    entry.put(ShindigServerQueries.BATCH_QUERY_FIELD, query);
+
+    final IStoredProcedure procedure = this.fProcedures.get(query);
+    if (procedure == null) {
+      entry.put(ShindigServerQueries.BATCH_ERROR_FIELD, "unknown query: " + query);
+      return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> params = (Map<String, Object>) call
+            .get(ShindigServerQueries.BATCH_PARAMS_FIELD);
+    if (params == null) {
+      params = this.fImpl.newMap();
+    }
+
+    try {
+      final AResult result = procedure.call(params);
+
+      if (result instanceof ListResult) {
+        final ListResult list = (ListResult) result;
+        entry.put(ShindigServerQueries.BATCH_RESULT_FIELD, list.getResults());
+        entry.put(ShindigServerQueries.BATCH_FIRST_FIELD, list.getFirst());
+        entry.put(ShindigServerQueries.BATCH_MAX_FIELD, list.getMax());
+        entry.put(ShindigServerQueries.BATCH_TOTAL_FIELD, list.getTotal());
+
+        if (result instanceof ShindigListResult) {
+          final Map<String, Object> metadata = this.fImpl.newMap();
+          metadata.putAll(((ShindigListResult) result).getMetadata());
+          entry.put(ShindigServerQueries.BATCH_METADATA_FIELD, metadata);
+        }
+      } else if (result instanceof SingleResult) {
+        entry.put(ShindigServerQueries.BATCH_RESULT_FIELD, ((SingleResult) result).getResults());
+      }
+    } catch (final Exception e) {
+      this.fLogger.log(Level.WARNING, "batched call to " + query + " failed", e);
+      entry.put(ShindigServerQueries.BATCH_ERROR_FIELD, String.valueOf(e.getMessage()));
+    }
+
+    return entry;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Stored procedure wrapper returning list results as a single envelope map if the call's options
+ * contain the envelope flag, so that metadata like continuation tokens, snapshot handles and
+ * profiles reaches the client. Calls without the flag are passed through unchanged.
+ */
+public class EnvelopeProcedure implements IStoredProcedure {
+  private final IStoredProcedure fDelegate;
+  private final ImplUtil fImpl;
+
+  /**
+   * Creates an envelope wrapper for the given procedure. Throws a NullPointerException if any
+   * parameter is null.
+   *
+   * @param delegate
+   *          procedure to wrap
+   * @param impl
+   *          implementation utility to create envelope maps with
+   */
+  public EnvelopeProcedure(IStoredProcedure delegate, ImplUtil impl) {
+    if (delegate == null) {
+      throw new NullPointerException("wrapped procedure was null");
+    }
+    if (impl == null) {
+      throw new NullPointerException("implementation utility was null");
+    }
+
+    this.fDelegate = delegate;
+    this.fImpl = impl;
+  }
+
+  /**
+   * @return wrapped procedure
+   */
+  public IStoredProcedure getDelegate() {
+    return this.fDelegate;
+  }
+
+  @Override
+  public String getName() {
+    return this.fDelegate.getName();
+  }
+
+  @Override
+  public AResult call(Map<String, Object> parameters) throws Exception {
+    final AResult result = this.fDelegate.call(parameters);
+
+    if (result instanceof ListResult && isRequested(parameters)) {
+      return new SingleResult(ShindigListResult.toEnvelope((ListResult) result, this.fImpl));
+    }
+
+    return result;
+  }
+
+  private boolean isRequested(Map<String, Object> parameters) {
+    if (parameters == null) {
+      return false;
+    }
+
+    final Object options = parameters.get(ShindigNativeQueries.OPTIONS_MAP);
+    if (!(options instanceof Map)) {
+      return false;
+    }
+
+    final Object flag = ((Map<?, ?>) options).get(ShindigListResult.ENVELOPE_OPTION);
+    return Boolean.TRUE.equals(flag) || "true".equals(flag);
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * List result that can additionally carry metadata about the query that produced it, such as
+ * profiling information. As the transport only serializes the plain list, clients that need the
+ * metadata request the whole result as a single map using the envelope option.
+ */
+public class ShindigListResult extends ListResult {
+  /**
+   * Option requesting a list result as a single map including its metadata.
+   */
+  public static final String ENVELOPE_OPTION = "_envelope";
+
+  /**
+   * Key of the list of entries in an envelope map.
+   */
+  public static final String RESULT_FIELD = "result";
+
+  /**
+   * Key of the index of the first entry in an envelope map.
+   */
+  public static final String FIRST_FIELD = "first";
+
+  /**
+   * Key of the requested number of entries in an envelope map.
+   */
+  public static final String MAX_FIELD = "max";
+
+  /**
+   * Key of the total number of entries in an envelope map.
+   */
+  public static final String TOTAL_FIELD = "total";
+
+  /**
+   * Key of the metadata map in an envelope map.
+   */
+  public static final String METADATA_FIELD = "metadata";
+
+  private final Map<String, Object> fMetadata;
+
+  /**
+   * Creates a list result around the given list of results.
+   *
+   * @param results
+   *          list of results
+   */
+  public ShindigListResult(List<?> results) {
+    super(results);
+
+    this.fMetadata = new HashMap<String, Object>();
+  }
+
+  /**
+   * Creates a copy of the given list result including its paging information. Throws a
+   * NullPointerException if the given result is null.
+   *
+   * @param result
+   *          result to copy
+   */
+  public ShindigListResult(ListResult result) {
+    this(result.getResults());
+
+    setFirst(result.getFirst());
+    setMax(result.getMax());
+    setTotal(result.getTotal());
+
+    if (result instanceof ShindigListResult) {
+      this.fMetadata.putAll(((ShindigListResult) result).getMetadata());
+    }
+  }
+
+  /**
+   * @return metadata map of this result, never null
+   */
+  public Map<String, Object> getMetadata() {
+    return this.fMetadata;
+  }
+
+  /**
+   * Sets a metadata value for the given key.
+   *
+   * @param key
+   *          key to store the value under
+   * @param value
+   *          value to store
+   */
+  public void setMetadata(String key, Object value) {
+    this.fMetadata.put(key, value);
+  }
+
+  /**
+   * Creates a transferable map containing the entries, the paging information and the metadata
+   * of the given list result. Plain list results get an empty metadata map.
+   *
+   * @param result
+   *          list result to convert
+   * @param impl
+   *          implementation utility to create the maps with
+   * @return envelope map of the result
+   */
+  public static Map<String, Object> toEnvelope(ListResult result, ImplUtil impl) {
+    final Map<String, Object> envelope = impl.newMap();
+    envelope.put(ShindigListResult.RESULT_FIELD, result.getResults());
+    envelope.put(ShindigListResult.FIRST_FIELD, result.getFirst());
+    envelope.put(ShindigListResult.MAX_FIELD, result.getMax());
+    envelope.put(ShindigListResult.TOTAL_FIELD, result.getTotal());
+
+    final Map<String, Object> metadata = impl.newMap();
+    if (result instanceof ShindigListResult) {
+      metadata.putAll(((ShindigListResult) result).getMetadata());
+    }
+    envelope.put(ShindigListResult.METADATA_FIELD, metadata);
+
+    return envelope;
+  }
+}
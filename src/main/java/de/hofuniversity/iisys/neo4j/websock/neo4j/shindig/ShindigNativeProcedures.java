@@ -18,26 +18,32 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
 
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.io.File;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
 
 import com.google.inject.Inject;
 
 import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
-import de.hofuniversity.iisys.neo4j.websock.calls.NativeProcedure;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.ProcedureMonitor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.SlowCallLog;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.SlowLogProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay.CallRecorder;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay.RecordingProcedure;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ActivityObjectService;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ApplicationService;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.AutoActivityQueue;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphActivityStreamSPI;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphAlbumSPI;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphAppDataSPI;
@@ -50,18 +56,64 @@ import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphProcessMiningSPI;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphSPI;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphSkillSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.IDAllocator;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.MigrationService;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.RetentionService;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ShindigConstants;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.TimelineService;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ChunkedDeleter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ResultSnapshotCache;
 import de.hofuniversity.iisys.neo4j.websock.procedures.IProcedureProvider;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
- * Class creating stored procedures from the native Shindig back-end implementation using
- * reflection.
+ * Class creating stored procedures from the native Shindig back-end implementation, calling the
+ * service methods directly through typed invokers.
  */
 public class ShindigNativeProcedures implements IProcedureProvider {
   private static final String PROPERTIES = "shindig-serverroutines";
   private static final String LANG_PROPS = "shindig-serverroutines-lang";
   private static final String LOCALE_PROP = "locale";
+  private static final String CAPTURE_FILE_PROP = "capture.file";
+  private static final String MONITORING_PROP = "monitoring.enabled";
+  private static final String MONITORING_JMX_PROP = "monitoring.jmx";
+  private static final String SLOWLOG_THRESHOLD_PROP = "slowlog.threshold";
+  private static final String SLOWLOG_SIZE_PROP = "slowlog.size";
+
+  private static final String ID_BLOCK_SIZE_PROP = "ids.block_size";
+
+  private static final String SNAPSHOT_TTL_PROP = "snapshots.ttl";
+  private static final String SNAPSHOT_MEMORY_PROP = "snapshots.max_memory";
+
+  private static final String TIMELINE_ENABLED_PROP = "timeline.enabled";
+  private static final String TIMELINE_LENGTH_PROP = "timeline.length";
+
+  private static final String BULK_CHUNK_SIZE_PROP = "activities.bulk.chunk_size";
+  private static final String DELETION_CHUNK_SIZE_PROP = "deletion.chunk_size";
+
+  private static final String AUTO_ACT_ASYNC_PROP = "autoactivities.async";
+  private static final String AUTO_ACT_QUEUE_PROP = "autoactivities.queue.size";
+  private static final String AUTO_ACT_BATCH_PROP = "autoactivities.batch.size";
+  private static final String AUTO_ACT_LATENCY_PROP = "autoactivities.batch.latency";
+
+  private static final int DEFAULT_SLOWLOG_SIZE = 100;
+  private static final int DEFAULT_ID_BLOCK_SIZE = 0;
+  private static final int DEFAULT_TIMELINE_LENGTH = 1000;
+  private static final int DEFAULT_BULK_CHUNK_SIZE = 1000;
+  private static final long DEFAULT_SNAPSHOT_TTL = 60000;
+  private static final long DEFAULT_SNAPSHOT_MEMORY = 16 * 1024 * 1024;
+  private static final int DEFAULT_AUTO_ACT_QUEUE_SIZE = 10000;
+  private static final int DEFAULT_AUTO_ACT_BATCH_SIZE = 100;
+  private static final long DEFAULT_AUTO_ACT_LATENCY = 50;
+
+  private static final String PERSON_CACHE_NAME = "persons";
+  private static final String SNAPSHOT_CACHE_NAME = "snapshots";
+  private static final String OBJECT_CACHE_NAME = "activityobjects";
+  private static final String OBJECT_ID_CACHE_NAME = "activityobjectids";
 
   private static final Map<Class<?>, Object> fServices = new HashMap<Class<?>, Object>();
 
@@ -72,6 +124,12 @@ public class ShindigNativeProcedures implements IProcedureProvider {
 
   private final Logger fLogger;
 
+  private AutoActivityQueue fActivityQueue;
+  private CallRecorder fRecorder;
+  private RetentionService fRetention;
+  private ProcedureMonitor fMonitor;
+  private IDAllocator fIdAllocator;
+
   /**
    * Retrieves a service implementation for a given class or interface. Throws a RuntimeException if
    * there are class casting problems.
@@ -121,6 +179,29 @@ public class ShindigNativeProcedures implements IProcedureProvider {
     ShindigNativeProcedures.addService(ImplUtil.class, this.fImpl);
 
     this.fLogger = Logger.getLogger(this.getClass().getName());
+
+    // stop background services at the latest when the database shuts down
+    this.fDb.registerKernelEventHandler(new KernelEventHandler() {
+      @Override
+      public void beforeShutdown() {
+        close();
+      }
+
+      @Override
+      public void kernelPanic(ErrorState error) {
+        // nothing to do
+      }
+
+      @Override
+      public Object getResource() {
+        return null;
+      }
+
+      @Override
+      public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+        return ExecutionOrder.DOESNT_MATTER;
+      }
+    });
   }
 
   private void loadConfig() {
@@ -146,11 +227,77 @@ public class ShindigNativeProcedures implements IProcedureProvider {
     }
   }
 
+  /*
+   * reads a numeric configuration value, falling back to the given default if it is missing so
+   * that older properties files keep working
+   */
+  private int getInt(String key, int def) {
+    final String value = this.fConfig.get(key);
+
+    int result = def;
+    if (value != null && !value.trim().isEmpty()) {
+      result = Integer.parseInt(value.trim());
+    }
+    return result;
+  }
+
+  private long getLong(String key, long def) {
+    final String value = this.fConfig.get(key);
+
+    long result = def;
+    if (value != null && !value.trim().isEmpty()) {
+      result = Long.parseLong(value.trim());
+    }
+    return result;
+  }
+
+  /**
+   * Stops background services, creating all queued activities, stopping the activity retention,
+   * closing the call log, stopping the ID block reservation and unregistering the procedure
+   * MBeans. Called automatically when the database shuts down, but Neo4j already refuses new
+   * transactions when it notifies its event handlers, so activities still queued at that point
+   * can only be logged as lost. Callers shutting down the database should therefore call this
+   * method before.
+   */
+  public void close() {
+    if (this.fRetention != null) {
+      this.fRetention.stop();
+    }
+    if (this.fActivityQueue != null) {
+      this.fActivityQueue.close();
+    }
+    if (this.fRecorder != null) {
+      this.fRecorder.close();
+    }
+    if (this.fIdAllocator != null) {
+      this.fIdAllocator.close();
+    }
+    if (this.fMonitor != null) {
+      this.fMonitor.unregisterMBeans();
+    }
+  }
+
   @Override
   public Map<String, IStoredProcedure> getProcedures() {
     final Map<String, IStoredProcedure> procedures = new HashMap<String, IStoredProcedure>();
 
-    final IDManager idMan = new IDManager(this.fDb);
+    // reserve IDs in blocks if configured
+    final int idBlockSize = getInt(ShindigNativeProcedures.ID_BLOCK_SIZE_PROP,
+            ShindigNativeProcedures.DEFAULT_ID_BLOCK_SIZE);
+    final IDManager idMan;
+    if (idBlockSize > 0) {
+      this.fIdAllocator = new IDAllocator(this.fDb, idBlockSize);
+      idMan = this.fIdAllocator;
+    } else if (this.fDb.index().existsForNodes(ShindigConstants.ID_BLOCK_NODES)) {
+      // blocks were reserved before, continue with the allocator's counters
+      this.fIdAllocator = new IDAllocator(this.fDb, 1);
+      idMan = this.fIdAllocator;
+    } else {
+      idMan = new IDManager(this.fDb);
+    }
+
+    final MigrationService migrations = new MigrationService(this.fDb);
+    ShindigNativeProcedures.addService(MigrationService.class, migrations);
 
     // create native back-end routines
     final GraphPersonSPI personSPI = new GraphPersonSPI(this.fDb, this.fConfig, this.fImpl);
@@ -169,6 +316,7 @@ public class ShindigNativeProcedures implements IProcedureProvider {
     final ActivityObjectService actObjSPI = new ActivityObjectService(this.fDb, this.fConfig,
             idMan, this.fImpl);
     ShindigNativeProcedures.addService(ActivityObjectService.class, actObjSPI);
+    personSPI.setActivityObjects(actObjSPI);
 
     final ApplicationService appSPI = new ApplicationService(this.fDb);
     ShindigNativeProcedures.addService(ApplicationService.class, appSPI);
@@ -177,14 +325,66 @@ public class ShindigNativeProcedures implements IProcedureProvider {
             actObjSPI, appSPI, idMan, this.fImpl);
     ShindigNativeProcedures.addService(GraphActivityStreamSPI.class, activitySPI);
 
+    // index and link activities created before the activity ID index and chains existed
+    migrations.runOnce(GraphActivityStreamSPI.ID_INDEX_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        activitySPI.indexActivityIds();
+      }
+    });
+    migrations.runOnce(GraphActivityStreamSPI.TIMESTAMP_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        activitySPI.addTimestamps();
+      }
+    });
+    migrations.runOnce(GraphActivityStreamSPI.CHAIN_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        activitySPI.buildActivityChains();
+      }
+    });
+    migrations.runOnce(GraphActivityStreamSPI.APP_INDEX_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        activitySPI.indexActivityApps();
+      }
+    });
+
+    activitySPI.setBulkChunkSize(getInt(ShindigNativeProcedures.BULK_CHUNK_SIZE_PROP,
+            ShindigNativeProcedures.DEFAULT_BULK_CHUNK_SIZE));
+    final int deletionChunkSize = getInt(ShindigNativeProcedures.DELETION_CHUNK_SIZE_PROP,
+            ChunkedDeleter.DEFAULT_CHUNK_SIZE);
+    activitySPI.setDeletionChunkSize(deletionChunkSize);
     personSPI.setActivities(activitySPI);
     friendSPI.setActivities(activitySPI);
 
+    // background deletion of expired activities
+    final RetentionService retention = new RetentionService(this.fDb, activitySPI, this.fConfig);
+    ShindigNativeProcedures.addService(RetentionService.class, retention);
+    this.fRetention = retention;
+
+    // materialized friend timelines, dropped while disabled since they are not maintained
+    final TimelineService timelines = new TimelineService(this.fDb, getInt(
+            ShindigNativeProcedures.TIMELINE_LENGTH_PROP,
+            ShindigNativeProcedures.DEFAULT_TIMELINE_LENGTH));
+    if (Boolean.parseBoolean(this.fConfig.get(ShindigNativeProcedures.TIMELINE_ENABLED_PROP))) {
+      ShindigNativeProcedures.addService(TimelineService.class, timelines);
+      activitySPI.setTimelines(timelines);
+      friendSPI.setTimelines(timelines);
+
+      // backfill, reads never build timelines
+      timelines.buildMissing();
+    } else {
+      timelines.clear();
+    }
+
     final GraphAppDataSPI appDataSPI = new GraphAppDataSPI(this.fDb, personSPI, appSPI, this.fImpl);
     ShindigNativeProcedures.addService(GraphAppDataSPI.class, appDataSPI);
 
     final GraphMessageSPI messageSPI = new GraphMessageSPI(this.fDb, personSPI, idMan, this.fImpl);
     ShindigNativeProcedures.addService(GraphMessageSPI.class, messageSPI);
+    messageSPI.setDeletionChunkSize(deletionChunkSize);
     personSPI.setMessages(messageSPI);
 
     final GraphAlbumSPI albumSPI = new GraphAlbumSPI(this.fDb, personSPI, idMan, this.fImpl);
@@ -197,12 +397,41 @@ public class ShindigNativeProcedures implements IProcedureProvider {
     final GraphSkillSPI skillSPI = new GraphSkillSPI(this.fDb, this.fConfig, personSPI, this.fImpl);
     skillSPI.setActivities(activitySPI);
     personSPI.setSkills(skillSPI);
+
+    // batched background creation of event-based activities
+    if (Boolean.parseBoolean(this.fConfig.get(ShindigNativeProcedures.AUTO_ACT_ASYNC_PROP))) {
+      final AutoActivityQueue actQueue = new AutoActivityQueue(this.fDb, activitySPI, getInt(
+              ShindigNativeProcedures.AUTO_ACT_QUEUE_PROP,
+              ShindigNativeProcedures.DEFAULT_AUTO_ACT_QUEUE_SIZE), getInt(
+              ShindigNativeProcedures.AUTO_ACT_BATCH_PROP,
+              ShindigNativeProcedures.DEFAULT_AUTO_ACT_BATCH_SIZE), getLong(
+              ShindigNativeProcedures.AUTO_ACT_LATENCY_PROP,
+              ShindigNativeProcedures.DEFAULT_AUTO_ACT_LATENCY));
+      ShindigNativeProcedures.addService(AutoActivityQueue.class, actQueue);
+      this.fActivityQueue = actQueue;
+      personSPI.setActivityQueue(actQueue);
+      friendSPI.setActivityQueue(actQueue);
+      skillSPI.setActivityQueue(actQueue);
+    }
     ShindigNativeProcedures.addService(GraphSkillSPI.class, skillSPI);
 
     final GraphOrganizationSPI orgSPI = new GraphOrganizationSPI(this.fDb, personSPI, this.fConfig,
             this.fImpl);
     ShindigNativeProcedures.addService(GraphOrganizationSPI.class, orgSPI);
 
+    // shared cache of result snapshots for paging, disabled with a memory limit of 0
+    final long snapshotMemory = getLong(ShindigNativeProcedures.SNAPSHOT_MEMORY_PROP,
+            ShindigNativeProcedures.DEFAULT_SNAPSHOT_MEMORY);
+    if (snapshotMemory > 0) {
+      final ResultSnapshotCache snapshots = new ResultSnapshotCache(this.fDb, getLong(
+              ShindigNativeProcedures.SNAPSHOT_TTL_PROP,
+              ShindigNativeProcedures.DEFAULT_SNAPSHOT_TTL), snapshotMemory);
+      ShindigNativeProcedures.addService(ResultSnapshotCache.class, snapshots);
+
+      personSPI.setSnapshots(snapshots);
+      skillSPI.setSnapshots(snapshots);
+    }
+
     final GraphProcessMiningSPI processMiningSPI = new GraphProcessMiningSPI(this.fDb,
             this.fConfig, personSPI, activitySPI, this.fImpl);
     ShindigNativeProcedures.addService(GraphProcessMiningSPI.class, processMiningSPI);
@@ -226,789 +455,790 @@ public class ShindigNativeProcedures implements IProcedureProvider {
       this.fLogger.log(Level.SEVERE, "could not create native Shindig procedures", e);
     }
 
+    // return list results with their metadata if requested
+    for (final Entry<String, IStoredProcedure> procE : procedures.entrySet()) {
+      procE.setValue(new EnvelopeProcedure(procE.getValue(), this.fImpl));
+    }
+
+    // executeBatch, executing the unwrapped procedures
+    procedures.put(ShindigServerQueries.EXECUTE_BATCH_QUERY, new BatchProcedure(procedures,
+            personSPI, this.fImpl));
+
+    // measure all calls if configured
+    if (Boolean.parseBoolean(this.fConfig.get(ShindigNativeProcedures.MONITORING_PROP))) {
+      addMonitoring(procedures);
+    }
+
+    // log slow calls if configured
+    final long slowThreshold = getLong(ShindigNativeProcedures.SLOWLOG_THRESHOLD_PROP, 0);
+    if (slowThreshold > 0) {
+      addSlowLog(procedures, slowThreshold);
+    }
+
+    // record all calls if configured
+    final String captureFile = this.fConfig.get(ShindigNativeProcedures.CAPTURE_FILE_PROP);
+    if (captureFile != null && !captureFile.isEmpty()) {
+      addCapturing(procedures, captureFile);
+    }
+
     return procedures;
   }
 
-  private void addPersonService(final GraphPersonSPI personSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
-    // getPeople
-    final Method getPeople = GraphPersonSPI.class.getMethod(ShindigNativeQueries.GET_PEOPLE_METHOD,
-            List.class, String.class, Map.class, List.class);
+  private void addCapturing(final Map<String, IStoredProcedure> procedures, String file) {
+    final CallRecorder recorder = new CallRecorder(new File(file));
+    ShindigNativeProcedures.addService(CallRecorder.class, recorder);
+    this.fRecorder = recorder;
 
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
+    for (final Entry<String, IStoredProcedure> procE : procedures.entrySet()) {
+      procE.setValue(new RecordingProcedure(procE.getKey(), procE.getValue(), recorder));
+    }
 
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_PEOPLE_METHOD, personSPI,
-            getPeople, paramNames);
-    procedures.put(ShindigNativeQueries.GET_PEOPLE_QUERY, proc);
+    this.fLogger.log(Level.INFO, "recording procedure calls to " + file);
+  }
 
-    // getPerson
-    final Method getPerson = GraphPersonSPI.class.getMethod(ShindigNativeQueries.GET_PERSON_METHOD,
-            String.class, List.class);
+  private void addSlowLog(final Map<String, IStoredProcedure> procedures, long threshold) {
+    final int size = getInt(ShindigNativeProcedures.SLOWLOG_SIZE_PROP,
+            ShindigNativeProcedures.DEFAULT_SLOWLOG_SIZE);
+    final SlowCallLog log = new SlowCallLog(threshold, size, this.fImpl);
+    ShindigNativeProcedures.addService(SlowCallLog.class, log);
+
+    // getSlowCalls
+    procedures.put(ShindigServerQueries.GET_SLOW_CALLS_QUERY, new ShindigProcedure(
+            ShindigServerQueries.GET_SLOW_CALLS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return new ListResult(log.getEntries());
+      }
+    });
+
+    for (final Entry<String, IStoredProcedure> procE : procedures.entrySet()) {
+      procE.setValue(new SlowLogProcedure(procE.getKey(), procE.getValue(), log));
+    }
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
+    this.fLogger.log(Level.INFO, "logging procedure calls taking at least " + threshold + "ms");
+  }
 
-    proc = new NativeProcedure(ShindigNativeQueries.GET_PERSON_METHOD, personSPI, getPerson,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_PERSON_QUERY, proc);
+  private void addMonitoring(final Map<String, IStoredProcedure> procedures) {
+    final ProcedureMonitor monitor = new ProcedureMonitor();
+    ShindigNativeProcedures.addService(ProcedureMonitor.class, monitor);
 
-    // updatePerson
-    final Method updatePerson = GraphPersonSPI.class.getMethod(
-            ShindigNativeQueries.UPDATE_PERSON_METHOD, String.class, Map.class);
+    // getServerMetrics
+    procedures.put(ShindigServerQueries.GET_SERVER_METRICS_QUERY, new ShindigProcedure(
+            ShindigServerQueries.GET_SERVER_METRICS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return new SingleResult(monitor.toMap(ShindigNativeProcedures.this.fImpl));
+      }
+    });
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.PERSON_OBJECT);
+    monitor.instrument(procedures);
 
-    proc = new NativeProcedure(ShindigNativeQueries.UPDATE_PERSON_METHOD, personSPI, updatePerson,
-            paramNames);
-    procedures.put(ShindigNativeQueries.UPDATE_PERSON_QUERY, proc);
+    final GraphPersonSPI personSPI = ShindigNativeProcedures.getService(GraphPersonSPI.class);
+    if (personSPI != null && personSPI.getNodeCache() != null) {
+      monitor.addCache(ShindigNativeProcedures.PERSON_CACHE_NAME, personSPI.getNodeCache());
+    }
 
-    // getAllPeople
-    final Method getAllPeople = GraphPersonSPI.class.getMethod(
-            ShindigNativeQueries.GET_ALL_PEOPLE_METHOD, Map.class, List.class);
+    final ResultSnapshotCache snapshots = ShindigNativeProcedures
+            .getService(ResultSnapshotCache.class);
+    if (snapshots != null) {
+      monitor.addCache(ShindigNativeProcedures.SNAPSHOT_CACHE_NAME, snapshots);
+    }
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
+    final ActivityObjectService actObjSPI = ShindigNativeProcedures
+            .getService(ActivityObjectService.class);
+    if (actObjSPI != null && actObjSPI.getObjectCache() != null) {
+      monitor.addCache(ShindigNativeProcedures.OBJECT_CACHE_NAME, actObjSPI.getObjectCache());
+    }
+    if (actObjSPI != null && actObjSPI.getObjectIds() != null) {
+      monitor.addCache(ShindigNativeProcedures.OBJECT_ID_CACHE_NAME, actObjSPI.getObjectIds());
+    }
 
-    proc = new NativeProcedure(ShindigNativeQueries.GET_ALL_PEOPLE_METHOD, personSPI, getAllPeople,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_ALL_PEOPLE_QUERY, proc);
+    if (Boolean.parseBoolean(this.fConfig.get(ShindigNativeProcedures.MONITORING_JMX_PROP))) {
+      monitor.registerMBeans();
+      this.fMonitor = monitor;
+    }
+  }
 
-    // createPerson
-    final Method createPerson = GraphPersonSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_PERSON_METHOD, Map.class);
+  private void addPersonService(final GraphPersonSPI personSPI,
+          final Map<String, IStoredProcedure> procedures) {
+    // getPeople
+    procedures.put(ShindigNativeQueries.GET_PEOPLE_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_PEOPLE_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.getPeople(getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.PERSON_OBJECT);
+    // getPerson
+    procedures.put(ShindigNativeQueries.GET_PERSON_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_PERSON_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.getPerson(getString(parameters, ShindigNativeQueries.USER_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_PERSON_METHOD, personSPI, createPerson,
-            paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_PERSON_QUERY, proc);
+    // updatePerson
+    procedures.put(ShindigNativeQueries.UPDATE_PERSON_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.UPDATE_PERSON_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.updatePerson(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.PERSON_OBJECT));
+      }
+    });
 
-    // deletePerson
-    final Method deletePerson = GraphPersonSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_PERSON_METHOD, String.class);
+    // getAllPeople
+    procedures.put(ShindigNativeQueries.GET_ALL_PEOPLE_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ALL_PEOPLE_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.getAllPeople(getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
+    // createPerson
+    procedures.put(ShindigNativeQueries.CREATE_PERSON_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_PERSON_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.createPerson(getMap(parameters, ShindigNativeQueries.PERSON_OBJECT));
+      }
+    });
 
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_PERSON_METHOD, personSPI, deletePerson,
-            paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_PERSON_QUERY, proc);
+    // deletePerson
+    procedures.put(ShindigNativeQueries.DELETE_PERSON_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_PERSON_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        personSPI.deletePerson(getString(parameters, ShindigNativeQueries.USER_ID));
+        return null;
+      }
+    });
   }
 
   private void addFriendService(final GraphFriendSPI friendSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getRequests
-    final Method getRequests = GraphFriendSPI.class.getMethod(
-            ShindigNativeQueries.GET_FRIEND_REQUESTS_METHOD, String.class, Map.class, List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_FRIEND_REQUESTS_METHOD,
-            friendSPI, getRequests, paramNames);
-    procedures.put(ShindigNativeQueries.GET_FRIEND_REQUESTS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_FRIEND_REQUESTS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_FRIEND_REQUESTS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return friendSPI.getRequests(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // requestFriendship
-    final Method requestFriendship = GraphFriendSPI.class.getMethod(
-            ShindigNativeQueries.REQUEST_FRIENDSHIP_METHOD, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.TARGET_USER_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.REQUEST_FRIENDSHIP_METHOD, friendSPI,
-            requestFriendship, paramNames);
-    procedures.put(ShindigNativeQueries.REQUEST_FRIENDSHIP_QUERY, proc);
+    procedures.put(ShindigNativeQueries.REQUEST_FRIENDSHIP_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.REQUEST_FRIENDSHIP_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        friendSPI.requestFriendship(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.TARGET_USER_ID));
+        return null;
+      }
+    });
 
     // denyFriendship
-    final Method denyFriendship = GraphFriendSPI.class.getMethod(
-            ShindigNativeQueries.DENY_FRIENDSHIP_METHOD, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.TARGET_USER_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DENY_FRIENDSHIP_METHOD, friendSPI,
-            denyFriendship, paramNames);
-    procedures.put(ShindigNativeQueries.DENY_FRIENDSHIP_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DENY_FRIENDSHIP_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DENY_FRIENDSHIP_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        friendSPI.denyFriendship(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.TARGET_USER_ID));
+        return null;
+      }
+    });
   }
 
   private void addGroupService(final GraphGroupSPI groupSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getGroups
-    final Method getGroups = GraphGroupSPI.class.getMethod(ShindigNativeQueries.GET_GROUPS_METHOD,
-            String.class, Map.class, List.class);
-
-    final List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    final IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_GROUPS_METHOD,
-            groupSPI, getGroups, paramNames);
-    procedures.put(ShindigNativeQueries.GET_GROUPS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_GROUPS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_GROUPS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return groupSPI.getGroups(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
   }
 
   private void addGraphService(final GraphSPI graphSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getFriendsOfFriends
-    final Method getFriendsOfFriends = GraphSPI.class.getMethod(
-            ShindigNativeQueries.GET_FOFS_METHOD, List.class, Integer.TYPE, Boolean.TYPE,
-            Map.class, List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.FOF_DEPTH);
-    paramNames.add(ShindigNativeQueries.FOF_UNKNOWN);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_FOFS_METHOD, graphSPI,
-            getFriendsOfFriends, paramNames);
-    procedures.put(ShindigNativeQueries.GET_FOFS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_FOFS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_FOFS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return graphSPI.getFriendsOfFriends(
+                getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getInt(parameters, ShindigNativeQueries.FOF_DEPTH),
+                getBoolean(parameters, ShindigNativeQueries.FOF_UNKNOWN),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getShortestPath
-    final Method getShortestPath = GraphSPI.class.getMethod(
-            ShindigNativeQueries.GET_SHORTEST_PATH_METHOD, String.class, String.class, Map.class,
-            List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.TARGET_USER_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_SHORTEST_PATH_METHOD, graphSPI,
-            getShortestPath, paramNames);
-    procedures.put(ShindigNativeQueries.GET_SHORTEST_PATH_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_SHORTEST_PATH_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_SHORTEST_PATH_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return graphSPI.getShortestPath(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.TARGET_USER_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getGroupRecommendation
-    final Method getGroupRecommendation = GraphSPI.class.getMethod(
-            ShindigNativeQueries.RECOMMEND_GROUP_METHOD, String.class, Integer.TYPE, Map.class,
-            List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MIN_FRIENDS_IN_GROUP);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.RECOMMEND_GROUP_METHOD, graphSPI,
-            getGroupRecommendation, paramNames);
-    procedures.put(ShindigNativeQueries.RECOMMEND_GROUP_QUERY, proc);
+    procedures.put(ShindigNativeQueries.RECOMMEND_GROUP_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.RECOMMEND_GROUP_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return graphSPI.getGroupRecommendation(getString(parameters, ShindigNativeQueries.USER_ID),
+                getInt(parameters, ShindigNativeQueries.MIN_FRIENDS_IN_GROUP),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getFriendRecommendation
-    final Method getFriendRecommendation = GraphSPI.class.getMethod(
-            ShindigNativeQueries.RECOMMEND_FRIEND_METHOD, String.class, Integer.TYPE, Map.class,
-            List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MIN_COMMON_FRIENDS);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.RECOMMEND_FRIEND_METHOD, graphSPI,
-            getFriendRecommendation, paramNames);
-    procedures.put(ShindigNativeQueries.RECOMMEND_FRIEND_QUERY, proc);
+    procedures.put(ShindigNativeQueries.RECOMMEND_FRIEND_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.RECOMMEND_FRIEND_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return graphSPI.getFriendRecommendation(getString(parameters, ShindigNativeQueries.USER_ID),
+                getInt(parameters, ShindigNativeQueries.MIN_COMMON_FRIENDS),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
   }
 
   private void addActivityService(final GraphActivityStreamSPI activitySPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getActivityEntries
-    final Method getActivityEntries = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.GET_ACT_ENTRIES_METHOD, List.class, String.class, String.class,
-            Map.class, List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_ACT_ENTRIES_METHOD,
-            activitySPI, getActivityEntries, paramNames);
-    procedures.put(ShindigNativeQueries.GET_ACT_ENTRIES_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_ACT_ENTRIES_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ACT_ENTRIES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.getActivityEntries(
+                getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getActivityEntriesById
-    final Method getActivityEntriesById = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_METHOD, String.class, String.class,
-            String.class, Map.class, List.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_IDS);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_METHOD, activitySPI,
-            getActivityEntriesById, paramNames);
-    procedures.put(ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.getActivityEntries(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST),
+                getStringList(parameters, ShindigNativeQueries.ACTIVITY_IDS));
+      }
+    });
 
     // getActivityEntry
-    final Method getActivityEntry = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.GET_ACT_ENTRY_METHOD, String.class, String.class, String.class,
-            List.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_ACT_ENTRY_METHOD, activitySPI,
-            getActivityEntry, paramNames);
-    procedures.put(ShindigNativeQueries.GET_ACT_ENTRY_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_ACT_ENTRY_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ACT_ENTRY_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.getActivityEntry(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST),
+                getString(parameters, ShindigNativeQueries.ACTIVITY_ID));
+      }
+    });
 
     // deleteActivityEntries
-    final Method deleteActivityEntries = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD, String.class, String.class,
-            String.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_IDS);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD, activitySPI,
-            deleteActivityEntries, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD, proc);
+    procedures.put(ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        activitySPI.deleteActivityEntries(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getStringList(parameters, ShindigNativeQueries.ACTIVITY_IDS));
+        return null;
+      }
+    });
 
     // updateActivityEntry
-    final Method updateActivityEntry = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD, String.class, String.class, String.class,
-            String.class, Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_ID);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD, activitySPI,
-            updateActivityEntry, paramNames);
-    procedures.put(ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD, proc);
+    procedures.put(ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD, new ShindigProcedure(
+            ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.updateActivityEntry(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ACTIVITY_ID),
+                getMap(parameters, ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // createActivityEntry
-    final Method createActivityEntry = GraphActivityStreamSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_ACT_ENTRY_METHOD, String.class, String.class, String.class,
-            Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_ACT_ENTRY_METHOD, activitySPI,
-            createActivityEntry, paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_ACT_ENTRY_QUERY, proc);
+    procedures.put(ShindigNativeQueries.CREATE_ACT_ENTRY_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_ACT_ENTRY_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.createActivityEntry(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
+
+    // createActivityEntries
+    procedures.put(ShindigServerQueries.CREATE_ACT_ENTRIES_QUERY, new ShindigProcedure(
+            ShindigServerQueries.CREATE_ACT_ENTRIES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return activitySPI.createActivityEntries(getMapList(parameters,
+                ShindigServerQueries.ACTIVITY_ENTRY_LIST));
+      }
+    });
   }
 
   private void addAppDataService(final GraphAppDataSPI appDataSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getPersonData
-    final Method getAppData = GraphAppDataSPI.class.getMethod(
-            ShindigNativeQueries.GET_APP_DATA_METHOD, List.class, String.class, String.class,
-            List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_APP_DATA_METHOD,
-            appDataSPI, getAppData, paramNames);
-    procedures.put(ShindigNativeQueries.GET_APP_DATA_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_APP_DATA_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_APP_DATA_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return appDataSPI.getPersonData(
+                getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // deletePersonData
-    final Method deleteAppData = GraphAppDataSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_APP_DATA_METHOD, String.class, String.class, String.class,
-            List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_APP_DATA_METHOD, appDataSPI,
-            deleteAppData, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_APP_DATA_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DELETE_APP_DATA_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_APP_DATA_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        appDataSPI.deletePersonData(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+        return null;
+      }
+    });
 
     // updatePersonData
-    final Method updateAppData = GraphAppDataSPI.class.getMethod(
-            ShindigNativeQueries.UPDATE_APP_DATA_METHOD, String.class, String.class, String.class,
-            Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.APP_DATA);
-
-    proc = new NativeProcedure(ShindigNativeQueries.UPDATE_APP_DATA_METHOD, appDataSPI,
-            updateAppData, paramNames);
-    procedures.put(ShindigNativeQueries.UPDATE_APP_DATA_QUERY, proc);
+    procedures.put(ShindigNativeQueries.UPDATE_APP_DATA_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.UPDATE_APP_DATA_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        appDataSPI.updatePersonData(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.APP_DATA));
+        return null;
+      }
+    });
   }
 
   private void addMessageService(final GraphMessageSPI messageSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getMessageCollections
-    final Method getMessageCollections = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_METHOD, String.class, Map.class,
-            List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(
-            ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_METHOD, messageSPI, getMessageCollections,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return messageSPI.getMessageCollections(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // createMessageCollection
-    final Method createMessageCollection = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_MESS_COLL_METHOD, String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_MESS_COLL_METHOD, messageSPI,
-            createMessageCollection, paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_MESS_COLL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.CREATE_MESS_COLL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_MESS_COLL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return messageSPI.createMessageCollection(
+                getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_OBJECT));
+      }
+    });
 
     // modifyMessageCollection
-    final Method modifyMessageCollection = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.MODIFY_MESS_COLL_METHOD, String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.MODIFY_MESS_COLL_METHOD, messageSPI,
-            modifyMessageCollection, paramNames);
-    procedures.put(ShindigNativeQueries.MODIFY_MESS_COLL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.MODIFY_MESS_COLL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.MODIFY_MESS_COLL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        messageSPI.modifyMessageCollection(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_OBJECT));
+        return null;
+      }
+    });
 
     // deleteMessageCollection
-    final Method deleteMessageCollection = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_MESS_COLL_METHOD, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_MESS_COLL_METHOD, messageSPI,
-            deleteMessageCollection, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_MESS_COLL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DELETE_MESS_COLL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_MESS_COLL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        messageSPI.deleteMessageCollection(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_ID));
+        return null;
+      }
+    });
 
     // getMessages
-    final Method getMessages = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.GET_MESSAGES_METHOD, String.class, String.class, List.class,
-            Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_ID_LIST);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_MESSAGES_METHOD, messageSPI, getMessages,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_MESSAGES_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_MESSAGES_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_MESSAGES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return messageSPI.getMessages(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_ID),
+                getStringList(parameters, ShindigNativeQueries.MESSAGE_ID_LIST),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // createMessage
-    final Method createMessage = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_MESSAGE_METHOD, String.class, String.class, String.class,
-            Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_MESSAGE_METHOD, messageSPI,
-            createMessage, paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_MESSAGE_QUERY, proc);
+    procedures.put(ShindigNativeQueries.CREATE_MESSAGE_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_MESSAGE_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return messageSPI.createMessage(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_ID),
+                getMap(parameters, ShindigNativeQueries.MESSAGE_OBJECT));
+      }
+    });
 
     // deleteMessages
-    final Method deleteMessages = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_MESSAGES_METHOD, String.class, String.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_ID_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_MESSAGES_METHOD, messageSPI,
-            deleteMessages, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_MESSAGES_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DELETE_MESSAGES_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_MESSAGES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        messageSPI.deleteMessages(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_ID),
+                getStringList(parameters, ShindigNativeQueries.MESSAGE_ID_LIST));
+        return null;
+      }
+    });
 
     // modifyMessage
-    final Method modifyMessage = GraphMessageSPI.class.getMethod(
-            ShindigNativeQueries.MODIFY_MESSAGE_METHOD, String.class, String.class, String.class,
-            Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_COLLECTION_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_ID);
-    paramNames.add(ShindigNativeQueries.MESSAGE_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.MODIFY_MESSAGE_METHOD, messageSPI,
-            modifyMessage, paramNames);
-    procedures.put(ShindigNativeQueries.MODIFY_MESSAGE_QUERY, proc);
+    procedures.put(ShindigNativeQueries.MODIFY_MESSAGE_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.MODIFY_MESSAGE_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        messageSPI.modifyMessage(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_COLLECTION_ID),
+                getString(parameters, ShindigNativeQueries.MESSAGE_ID),
+                getMap(parameters, ShindigNativeQueries.MESSAGE_OBJECT));
+        return null;
+      }
+    });
   }
 
   private void addAlbumService(final GraphAlbumSPI albumSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getAlbum
-    final Method getAlbum = GraphAlbumSPI.class.getMethod(ShindigNativeQueries.GET_ALBUM_METHOD,
-            String.class, String.class, String.class, List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_ALBUM_METHOD, albumSPI,
-            getAlbum, paramNames);
-    procedures.put(ShindigNativeQueries.GET_ALBUM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_ALBUM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ALBUM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return albumSPI.getAlbum(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getAlbums
-    final Method getAlbums = GraphAlbumSPI.class.getMethod(ShindigNativeQueries.GET_ALBUMS_METHOD,
-            String.class, String.class, List.class, Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID_LIST);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_ALBUMS_METHOD, albumSPI, getAlbums,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_ALBUMS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_ALBUMS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_ALBUMS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return albumSPI.getAlbums(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getStringList(parameters, ShindigNativeQueries.ALBUM_ID_LIST),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getGroupAlbums
-    final Method getGroupAlbums = GraphAlbumSPI.class.getMethod(
-            ShindigNativeQueries.GET_GROUP_ALBUMS_METHOD, List.class, String.class, String.class,
-            Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_GROUP_ALBUMS_METHOD, albumSPI,
-            getGroupAlbums, paramNames);
-    procedures.put(ShindigNativeQueries.GET_GROUP_ALBUMS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_GROUP_ALBUMS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_GROUP_ALBUMS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return albumSPI.getAlbums(getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // deleteAlbum
-    final Method deleteAlbum = GraphAlbumSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_ALBUM_METHOD, String.class, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_ALBUM_METHOD, albumSPI, deleteAlbum,
-            paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_ALBUM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DELETE_ALBUM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_ALBUM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        albumSPI.deleteAlbum(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID));
+        return null;
+      }
+    });
 
     // createAlbum
-    final Method createAlbum = GraphAlbumSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_ALBUM_METHOD, String.class, String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_ALBUM_METHOD, albumSPI, createAlbum,
-            paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_ALBUM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.CREATE_ALBUM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_ALBUM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        albumSPI.createAlbum(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.ALBUM_OBJECT));
+        return null;
+      }
+    });
 
     // updateAlbum
-    final Method updateAlbum = GraphAlbumSPI.class.getMethod(
-            ShindigNativeQueries.UPDATE_ALBUM_METHOD, String.class, String.class, String.class,
-            Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.UPDATE_ALBUM_METHOD, albumSPI, updateAlbum,
-            paramNames);
-    procedures.put(ShindigNativeQueries.UPDATE_ALBUM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.UPDATE_ALBUM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.UPDATE_ALBUM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        albumSPI.updateAlbum(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getMap(parameters, ShindigNativeQueries.ALBUM_OBJECT));
+        return null;
+      }
+    });
   }
 
   private void addMediaItemService(final GraphMediaItemSPI mediaItemSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // getMediaItem
-    final Method getMediaItem = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.GET_MEDIA_ITEM_METHOD, String.class, String.class, String.class,
-            String.class, List.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    IStoredProcedure proc = new NativeProcedure(ShindigNativeQueries.GET_MEDIA_ITEM_METHOD,
-            mediaItemSPI, getMediaItem, paramNames);
-    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_MEDIA_ITEM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return mediaItemSPI.getMediaItem(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getString(parameters, ShindigNativeQueries.MEDIA_ITEM_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getMediaItemsById
-    final Method getMediaItemsById = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_METHOD, String.class, String.class,
-            String.class, List.class, Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_ID_LIST);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_METHOD, mediaItemSPI,
-            getMediaItemsById, paramNames);
-    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return mediaItemSPI.getMediaItems(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getStringList(parameters, ShindigNativeQueries.MEDIA_ITEM_ID_LIST),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getMediaItems
-    final Method getMediaItems = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.GET_MEDIA_ITEMS_METHOD, String.class, String.class, String.class,
-            Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_MEDIA_ITEMS_METHOD, mediaItemSPI,
-            getMediaItems, paramNames);
-    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEMS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_MEDIA_ITEMS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_MEDIA_ITEMS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return mediaItemSPI.getMediaItems(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // getGroupMediaItems
-    final Method getGroupMediaItems = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_METHOD, List.class, String.class,
-            String.class, Map.class, List.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID_LIST);
-    paramNames.add(ShindigNativeQueries.GROUP_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_METHOD, mediaItemSPI,
-            getGroupMediaItems, paramNames);
-    procedures.put(ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return mediaItemSPI.getMediaItems(
+                getStringList(parameters, ShindigNativeQueries.USER_ID_LIST),
+                getString(parameters, ShindigNativeQueries.GROUP_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
 
     // deleteMediaItem
-    final Method deleteMediaItem = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.DELETE_MEDIA_ITEM_METHOD, String.class, String.class,
-            String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_ID);
-
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_MEDIA_ITEM_METHOD, mediaItemSPI,
-            deleteMediaItem, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_MEDIA_ITEM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.DELETE_MEDIA_ITEM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_MEDIA_ITEM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        mediaItemSPI.deleteMediaItem(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getString(parameters, ShindigNativeQueries.MEDIA_ITEM_ID));
+        return null;
+      }
+    });
 
     // createMediaItem
-    final Method createMediaItem = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.CREATE_MEDIA_ITEM_METHOD, String.class, String.class,
-            String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.CREATE_MEDIA_ITEM_METHOD, mediaItemSPI,
-            createMediaItem, paramNames);
-    procedures.put(ShindigNativeQueries.CREATE_MEDIA_ITEM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.CREATE_MEDIA_ITEM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.CREATE_MEDIA_ITEM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        mediaItemSPI.createMediaItem(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getMap(parameters, ShindigNativeQueries.MEDIA_ITEM_OBJECT));
+        return null;
+      }
+    });
 
     // updateMediaItem
-    final Method updateMediaItem = GraphMediaItemSPI.class.getMethod(
-            ShindigNativeQueries.UPDATE_MEDIA_ITEM_METHOD, String.class, String.class,
-            String.class, String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.APP_ID);
-    paramNames.add(ShindigNativeQueries.ALBUM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_ID);
-    paramNames.add(ShindigNativeQueries.MEDIA_ITEM_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.UPDATE_MEDIA_ITEM_METHOD, mediaItemSPI,
-            updateMediaItem, paramNames);
-    procedures.put(ShindigNativeQueries.UPDATE_MEDIA_ITEM_QUERY, proc);
+    procedures.put(ShindigNativeQueries.UPDATE_MEDIA_ITEM_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.UPDATE_MEDIA_ITEM_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        mediaItemSPI.updateMediaItem(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.APP_ID),
+                getString(parameters, ShindigNativeQueries.ALBUM_ID),
+                getString(parameters, ShindigNativeQueries.MEDIA_ITEM_ID),
+                getMap(parameters, ShindigNativeQueries.MEDIA_ITEM_OBJECT));
+        return null;
+      }
+    });
   }
 
   private void addSkillService(final GraphSkillSPI skillSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
-
+          final Map<String, IStoredProcedure> procedures) {
     // autocompletion
-    final Method autocompleteSkill = GraphSkillSPI.class.getMethod(
-            ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_METHOD, String.class, Map.class);
-
-    List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.AUTOCOMPLETE_FRAGMENT);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-
-    IStoredProcedure proc = new NativeProcedure(
-            ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_METHOD, skillSPI, autocompleteSkill,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return skillSPI.getSkillAutocomp(
+                getString(parameters, ShindigNativeQueries.AUTOCOMPLETE_FRAGMENT),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP));
+      }
+    });
 
     // get skills
-    final Method getSkills = GraphSkillSPI.class.getMethod(ShindigNativeQueries.GET_SKILLS_METHOD,
-            String.class, Map.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_SKILLS_METHOD, skillSPI, getSkills,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_SKILLS_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_SKILLS_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_SKILLS_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return skillSPI.getSkills(getString(parameters, ShindigNativeQueries.USER_ID),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP));
+      }
+    });
 
     // add skill
-    final Method addSkill = GraphSkillSPI.class.getMethod(ShindigNativeQueries.ADD_SKILL_METHOD,
-            String.class, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.SKILL_LINKER);
-    paramNames.add(ShindigNativeQueries.SKILL);
-
-    proc = new NativeProcedure(ShindigNativeQueries.ADD_SKILL_METHOD, skillSPI, addSkill,
-            paramNames);
-    procedures.put(ShindigNativeQueries.ADD_SKILL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.ADD_SKILL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.ADD_SKILL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        skillSPI.addSkill(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.SKILL_LINKER),
+                getString(parameters, ShindigNativeQueries.SKILL));
+        return null;
+      }
+    });
 
     // remove skill
-    final Method removeSkill = GraphSkillSPI.class.getMethod(
-            ShindigNativeQueries.REMOVE_SKILL_METHOD, String.class, String.class, String.class);
-
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.SKILL_LINKER);
-    paramNames.add(ShindigNativeQueries.SKILL);
-
-    proc = new NativeProcedure(ShindigNativeQueries.REMOVE_SKILL_METHOD, skillSPI, removeSkill,
-            paramNames);
-    procedures.put(ShindigNativeQueries.REMOVE_SKILL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.REMOVE_SKILL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.REMOVE_SKILL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        skillSPI.removeSkill(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.SKILL_LINKER),
+                getString(parameters, ShindigNativeQueries.SKILL));
+        return null;
+      }
+    });
 
     // get people by skill
-    final Method getPeopleBySkill = GraphSkillSPI.class.getMethod(
-            ShindigNativeQueries.GET_PEOPLE_BY_SKILL_METHOD, String.class, Map.class, List.class);
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.SKILL);
-    paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_PEOPLE_BY_SKILL_METHOD, skillSPI,
-            getPeopleBySkill, paramNames);
-    procedures.put(ShindigNativeQueries.GET_PEOPLE_BY_SKILL_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_PEOPLE_BY_SKILL_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_PEOPLE_BY_SKILL_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return skillSPI.getPeopleBySkill(getString(parameters, ShindigNativeQueries.SKILL),
+                getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
   }
 
   private void addOrgService(final GraphOrganizationSPI orgSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
+          final Map<String, IStoredProcedure> procedures) {
     // get organization hierarchy paths between people
-    final Method getPeopleBySkill = GraphOrganizationSPI.class.getMethod(
-            ShindigNativeQueries.GET_HIERARCHY_PATH_METHOD, String.class, String.class, List.class);
-
-    final List<String> paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.USER_ID);
-    paramNames.add(ShindigNativeQueries.TARGET_USER_ID);
-    paramNames.add(ShindigNativeQueries.FIELD_LIST);
-
-    final IStoredProcedure proc = new NativeProcedure(
-            ShindigNativeQueries.GET_HIERARCHY_PATH_METHOD, orgSPI, getPeopleBySkill, paramNames);
-    procedures.put(ShindigNativeQueries.GET_HIERARCHY_PATH_QUERY, proc);
+    procedures.put(ShindigNativeQueries.GET_HIERARCHY_PATH_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_HIERARCHY_PATH_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return orgSPI.getHierarchyPath(getString(parameters, ShindigNativeQueries.USER_ID),
+                getString(parameters, ShindigNativeQueries.TARGET_USER_ID),
+                getStringList(parameters, ShindigNativeQueries.FIELD_LIST));
+      }
+    });
   }
 
   private void addProcessMiningService(final GraphProcessMiningSPI processSPI,
-          final Map<String, IStoredProcedure> procedures) throws Exception {
-
-    List<String> paramNames = new ArrayList<String>();
-    IStoredProcedure proc;
-
+          final Map<String, IStoredProcedure> procedures) {
     // add process cycle
-    final Method addProcessCycle = GraphProcessMiningSPI.class.getMethod(
-            ShindigNativeQueries.ADD_PROCESS_CYCLE_METHOD, String.class, Map.class);
+    procedures.put(ShindigNativeQueries.ADD_PROCESS_CYCLE_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.ADD_PROCESS_CYCLE_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return processSPI.addProcessCycle(
+                getString(parameters, ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE),
+                getMap(parameters, ShindigNativeQueries.PROCESS_CYCLE_OBJECT));
+      }
+    });
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE);
-    paramNames.add(ShindigNativeQueries.PROCESS_CYCLE_OBJECT);
-
-    proc = new NativeProcedure(ShindigNativeQueries.ADD_PROCESS_CYCLE_METHOD, processSPI,
-            addProcessCycle, paramNames);
-    procedures.put(ShindigNativeQueries.ADD_PROCESS_CYCLE_QUERY, proc);
-    
     // delete process cycles
-    final Method deleteProcessCycles =  GraphProcessMiningSPI.class.getMethod(
-    		ShindigNativeQueries.DELETE_PROCESS_CYCLES_METHOD, String.class);
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE);
-    
-    proc = new NativeProcedure(ShindigNativeQueries.DELETE_PROCESS_CYCLES_METHOD, processSPI,
-    		deleteProcessCycles, paramNames);
-    procedures.put(ShindigNativeQueries.DELETE_PROCESS_CYCLES_QUERY, proc);
-    
-    // get process cycle
-    final Method getProcessCycles = GraphProcessMiningSPI.class.getMethod(ShindigNativeQueries.GET_PROCESS_CYCLES_METHOD,
-            String.class);
+    procedures.put(ShindigNativeQueries.DELETE_PROCESS_CYCLES_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.DELETE_PROCESS_CYCLES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        processSPI.deleteProcessCycles(
+                getString(parameters, ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE));
+        return null;
+      }
+    });
 
-    paramNames = new ArrayList<String>();
-    paramNames.add(ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE);
-//  paramNames.add(ShindigNativeQueries.OPTIONS_MAP);
-
-    proc = new NativeProcedure(ShindigNativeQueries.GET_PROCESS_CYCLES_METHOD, processSPI, getProcessCycles,
-            paramNames);
-    procedures.put(ShindigNativeQueries.GET_PROCESS_CYCLES_QUERY, proc);
+    // get process cycle
+    procedures.put(ShindigNativeQueries.GET_PROCESS_CYCLES_QUERY, new ShindigProcedure(
+            ShindigNativeQueries.GET_PROCESS_CYCLES_METHOD) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return new ListResult(processSPI.getProcessCycles(getString(parameters,
+                ShindigNativeQueries.PROCESS_CYCLE_DOC_TYPE)));
+      }
+    });
   }
 }
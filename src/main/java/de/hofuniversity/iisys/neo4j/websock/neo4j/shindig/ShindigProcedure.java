@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.List;
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+
+/**
+ * Base class for stored procedures directly calling a native Shindig service method. Subclasses
+ * extract their typed parameters using the helper methods and call the service without
+ * reflection, so that calls can be inlined by the JIT compiler. Per-call state such as an
+ * unfinished call profile is cleared after every call.
+ */
+public abstract class ShindigProcedure implements IStoredProcedure {
+  private final String fName;
+
+  /**
+   * Creates a procedure with the given name. Throws a NullPointerException if the name is null.
+   *
+   * @param name
+   *          name of the procedure
+   */
+  public ShindigProcedure(String name) {
+    if (name == null) {
+      throw new NullPointerException("procedure name was null");
+    }
+
+    this.fName = name;
+  }
+
+  @Override
+  public String getName() {
+    return this.fName;
+  }
+
+  @Override
+  public final AResult call(Map<String, Object> parameters) throws Exception {
+    try {
+      return invoke(parameters);
+    } finally {
+      CallProfile.clear();
+    }
+  }
+
+  /**
+   * Calls the underlying service method with the given parameters.
+   *
+   * @param parameters
+   *          call parameters
+   * @return result of the call, may be null
+   * @throws Exception
+   *           if the call fails
+   */
+  protected abstract AResult invoke(Map<String, Object> parameters) throws Exception;
+
+  /**
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return string parameter or null
+   */
+  protected static String getString(Map<String, Object> parameters, String name) {
+    return (String) parameters.get(name);
+  }
+
+  /**
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return list of strings parameter or null
+   */
+  @SuppressWarnings("unchecked")
+  protected static List<String> getStringList(Map<String, Object> parameters, String name) {
+    return (List<String>) parameters.get(name);
+  }
+
+  /**
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return map parameter or null
+   */
+  @SuppressWarnings("unchecked")
+  protected static Map<String, Object> getMap(Map<String, Object> parameters, String name) {
+    return (Map<String, Object>) parameters.get(name);
+  }
+
+  /**
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return list of maps parameter or null
+   */
+  @SuppressWarnings("unchecked")
+  protected static List<Map<String, Object>> getMapList(Map<String, Object> parameters,
+          String name) {
+    return (List<Map<String, Object>>) parameters.get(name);
+  }
+
+  /**
+   * Retrieves a mandatory numeric parameter as an integer. Throws an IllegalArgumentException if
+   * the parameter is missing.
+   *
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return integer value of the parameter
+   */
+  protected static int getInt(Map<String, Object> parameters, String name) {
+    final Number value = (Number) parameters.get(name);
+
+    if (value == null) {
+      throw new IllegalArgumentException("parameter " + name + " is missing");
+    }
+
+    return value.intValue();
+  }
+
+  /**
+   * Retrieves a mandatory boolean parameter. Throws an IllegalArgumentException if the parameter
+   * is missing.
+   *
+   * @param parameters
+   *          call parameters
+   * @param name
+   *          name of the parameter
+   * @return value of the parameter
+   */
+  protected static boolean getBoolean(Map<String, Object> parameters, String name) {
+    final Boolean value = (Boolean) parameters.get(name);
+
+    if (value == null) {
+      throw new IllegalArgumentException("parameter " + name + " is missing");
+    }
+
+    return value;
+  }
+}
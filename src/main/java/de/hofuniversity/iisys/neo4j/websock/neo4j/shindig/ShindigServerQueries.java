@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+/**
+ * Query and method names of server routines that are not part of the common native Shindig
+ * queries, such as monitoring, batching and bulk procedures.
+ */
+public class ShindigServerQueries {
+  // monitoring
+  public static final String GET_SERVER_METRICS_QUERY = "getServerMetrics";
+  public static final String GET_SERVER_METRICS_METHOD = "getServerMetrics";
+  public static final String GET_SLOW_CALLS_QUERY = "getSlowCalls";
+  public static final String GET_SLOW_CALLS_METHOD = "getSlowCalls";
+
+  // batching
+  public static final String EXECUTE_BATCH_QUERY = "executeBatch";
+  public static final String EXECUTE_BATCH_METHOD = "executeBatch";
+
+  public static final String BATCH_LIST = "batch";
+  public static final String BATCH_QUERY_FIELD = "query";
+  public static final String BATCH_PARAMS_FIELD = "parameters";
+  public static final String BATCH_RESULT_FIELD = "result";
+  public static final String BATCH_FIRST_FIELD = "first";
+  public static final String BATCH_MAX_FIELD = "max";
+  public static final String BATCH_TOTAL_FIELD = "total";
+  public static final String BATCH_METADATA_FIELD = "metadata";
+  public static final String BATCH_ERROR_FIELD = "error";
+
+  // bulk creation
+  public static final String CREATE_ACT_ENTRIES_QUERY = "createActivityEntries";
+  public static final String CREATE_ACT_ENTRIES_METHOD = "createActivityEntries";
+
+  public static final String ACTIVITY_ENTRY_LIST = "entries";
+}
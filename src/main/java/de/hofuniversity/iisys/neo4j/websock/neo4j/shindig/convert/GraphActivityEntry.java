@@ -18,9 +18,11 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert;
 
+import java.lang.reflect.Array;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -32,6 +34,8 @@ import org.neo4j.graphdb.Relationship;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.ConvHelper;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.IGraphObject;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.SimpleGraphObject;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
@@ -55,6 +59,8 @@ public class GraphActivityEntry implements IGraphObject {
 
   private final ImplUtil fImpl;
 
+  private final LruCache<Long, Map<String, Object>> fObjectCache;
+
   private static ConvHelper createHelper() {
     final Set<String> relMapped = new HashSet<String>();
     relMapped.add(GraphActivityEntry.ACTOR_FIELD);
@@ -92,11 +98,28 @@ public class GraphActivityEntry implements IGraphObject {
    *          node representing the activity entry
    */
   public GraphActivityEntry(Node node, ImplUtil impl) {
+    this(node, impl, null);
+  }
+
+  /**
+   * Creates an activity entry converter, taking properties from the given node and linked activity
+   * objects from the given cache if possible. Throws a NullPointerException if the node is null.
+   *
+   * @param node
+   *          node representing the activity entry
+   * @param impl
+   *          implementation utility to use
+   * @param objectCache
+   *          cache of converted activity objects by node ID, may be null
+   */
+  public GraphActivityEntry(Node node, ImplUtil impl,
+          LruCache<Long, Map<String, Object>> objectCache) {
     if (node == null) {
       throw new NullPointerException("underlying node was null");
     }
 
     this.fImpl = impl;
+    this.fObjectCache = objectCache;
 
     this.fNode = node;
   }
@@ -109,13 +132,16 @@ public class GraphActivityEntry implements IGraphObject {
       copyAllRelMapped(dto);
 
       for (final String key : this.fNode.getPropertyKeys()) {
-        dto.put(key, this.fNode.getProperty(key));
+        if (!ActivityTime.TIMESTAMP_FIELD.equals(key)) {
+          dto.put(key, this.fNode.getProperty(key));
+        }
       }
     } else {
       copyRelMapped(dto, fields);
 
       final Set<String> newProps = new HashSet<String>(fields);
       newProps.removeAll(GraphActivityEntry.HELPER.getRelationshipMapped());
+      newProps.remove(ActivityTime.TIMESTAMP_FIELD);
 
       for (final String prop : newProps) {
         if (this.fNode.hasProperty(prop)) {
@@ -164,13 +190,56 @@ public class GraphActivityEntry implements IGraphObject {
     copyIcon(dto);
   }
 
+  private Map<String, Object> convertObject(Node objNode) {
+    if (this.fObjectCache == null) {
+      return new GraphActivityObject(objNode, this.fImpl).toMap(null);
+    }
+
+    Map<String, Object> cached = this.fObjectCache.get(objNode.getId());
+    if (cached == null) {
+      cached = new GraphActivityObject(objNode, this.fImpl).toMap(null);
+      this.fObjectCache.put(objNode.getId(), cached);
+    }
+
+    // deep copy so that modifying a result does not alter the cached object
+    return copyMap(cached);
+  }
+
+  private Map<String, Object> copyMap(Map<?, ?> map) {
+    final Map<String, Object> copy = this.fImpl.newMap();
+    for (final Entry<?, ?> entry : map.entrySet()) {
+      copy.put((String) entry.getKey(), copyValue(entry.getValue()));
+    }
+    return copy;
+  }
+
+  private Object copyValue(Object value) {
+    Object copy = value;
+
+    if (value instanceof Map) {
+      copy = copyMap((Map<?, ?>) value);
+    } else if (value instanceof List) {
+      final List<Object> list = this.fImpl.newList();
+      for (final Object element : (List<?>) value) {
+        list.add(copyValue(element));
+      }
+      copy = list;
+    } else if (value != null && value.getClass().isArray()) {
+      final int length = Array.getLength(value);
+      copy = Array.newInstance(value.getClass().getComponentType(), length);
+      System.arraycopy(value, 0, copy, 0, length);
+    }
+
+    return copy;
+  }
+
   private void copyActor(Map<String, Object> dto) {
     final Relationship actRel = this.fNode.getSingleRelationship(ShindigRelTypes.ACTOR,
             Direction.OUTGOING);
 
     if (actRel != null) {
       final Node actNode = actRel.getEndNode();
-      final Map<String, Object> actDTO = new GraphActivityObject(actNode, this.fImpl).toMap(null);
+      final Map<String, Object> actDTO = convertObject(actNode);
 
       dto.put(GraphActivityEntry.ACTOR_FIELD, actDTO);
     }
@@ -182,7 +251,7 @@ public class GraphActivityEntry implements IGraphObject {
 
     if (genRel != null) {
       final Node genNode = genRel.getEndNode();
-      final Map<String, Object> genDTO = new GraphActivityObject(genNode, this.fImpl).toMap(null);
+      final Map<String, Object> genDTO = convertObject(genNode);
 
       dto.put(GraphActivityEntry.GENERATOR_FIELD, genDTO);
     }
@@ -194,7 +263,7 @@ public class GraphActivityEntry implements IGraphObject {
 
     if (objRel != null) {
       final Node objNode = objRel.getEndNode();
-      final Map<String, Object> objDTO = new GraphActivityObject(objNode, this.fImpl).toMap(null);
+      final Map<String, Object> objDTO = convertObject(objNode);
 
       dto.put(GraphActivityEntry.OBJECT_FIELD, objDTO);
     }
@@ -206,7 +275,7 @@ public class GraphActivityEntry implements IGraphObject {
 
     if (provRel != null) {
       final Node provNode = provRel.getEndNode();
-      final Map<String, Object> provDTO = new GraphActivityObject(provNode, this.fImpl).toMap(null);
+      final Map<String, Object> provDTO = convertObject(provNode);
 
       dto.put(GraphActivityEntry.PROVIDER_FIELD, provDTO);
     }
@@ -218,7 +287,7 @@ public class GraphActivityEntry implements IGraphObject {
 
     if (tarRel != null) {
       final Node tarNode = tarRel.getEndNode();
-      final Map<String, Object> tarDTO = new GraphActivityObject(tarNode, this.fImpl).toMap(null);
+      final Map<String, Object> tarDTO = convertObject(tarNode);
 
       dto.put(GraphActivityEntry.TARGET_FIELD, tarDTO);
     }
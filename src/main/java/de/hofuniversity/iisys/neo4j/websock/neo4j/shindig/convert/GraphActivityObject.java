@@ -33,6 +33,7 @@ import org.neo4j.graphdb.Relationship;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.ConvHelper;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.IGraphObject;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.SimpleGraphObject;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ShindigConstants;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
@@ -104,13 +105,16 @@ public class GraphActivityObject implements IGraphObject {
       copyAllRelMapped(dto);
 
       for (final String key : this.fNode.getPropertyKeys()) {
-        dto.put(key, this.fNode.getProperty(key));
+        if (!ShindigConstants.ACT_OBJ_HASH_FIELD.equals(key)) {
+          dto.put(key, this.fNode.getProperty(key));
+        }
       }
     } else {
       copyRelMapped(dto, fields);
 
       final Set<String> newProps = new HashSet<String>(fields);
       newProps.removeAll(GraphActivityObject.HELPER.getRelationshipMapped());
+      newProps.remove(ShindigConstants.ACT_OBJ_HASH_FIELD);
 
       for (final String prop : newProps) {
         if (this.fNode.hasProperty(prop)) {
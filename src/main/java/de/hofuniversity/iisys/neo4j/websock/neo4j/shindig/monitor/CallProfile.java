@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Per-call profile breaking down the time spent in the phases of a list query and counting the
+ * work done. A profile is only recorded for the current thread if the query's options contain
+ * the profiling flag or if a procedure wrapper began one, otherwise all static methods return
+ * immediately. Nested queries are attributed to the outermost profiled call. Queries release
+ * their level in a finally block, so that calls failing before finish() do not leave a stale
+ * profile behind for the next call on the same thread.
+ */
+public class CallProfile {
+  /**
+   * Option enabling profiling for a call.
+   */
+  public static final String PROFILE_OPTION = "_profile";
+
+  /**
+   * Metadata key under which the profile is attached to list results.
+   */
+  public static final String PROFILE_FIELD = "profile";
+
+  /**
+   * Key of the total duration in microseconds in the profile map.
+   */
+  public static final String TOTAL_FIELD = "total";
+
+  /**
+   * Phases of a list query.
+   */
+  public static enum Phase {
+    LOOKUP("lookup"), TRAVERSAL("traversal"), FILTER("filter"), SORT("sort"), CONVERT("convert");
+
+    private final String fName;
+
+    private Phase(String name) {
+      this.fName = name;
+    }
+
+    /**
+     * @return key of the phase's duration in microseconds in the profile map
+     */
+    public String getName() {
+      return this.fName;
+    }
+  }
+
+  /**
+   * Work counters of a list query.
+   */
+  public static enum Counter {
+    INDEX_HITS("indexHits"), RELATIONSHIPS("relationships"), NODES("nodes"),
+    FILTER_INPUT("filterInput"), FILTER_OUTPUT("filterOutput"), CONVERSIONS("conversions");
+
+    private final String fName;
+
+    private Counter(String name) {
+      this.fName = name;
+    }
+
+    /**
+     * @return key of the counter in the profile map
+     */
+    public String getName() {
+      return this.fName;
+    }
+  }
+
+  private static final ThreadLocal<CallProfile> PROFILES = new ThreadLocal<CallProfile>();
+
+  private static final Logger LOGGER = Logger.getLogger(CallProfile.class.getName());
+
+  private final boolean fExternal;
+  private final long fStart;
+  private final long[] fPhaseTimes;
+  private final long[] fCounters;
+
+  private Phase fPhase;
+  private long fPhaseStart;
+  private long fEnd;
+  private int fDepth;
+  private boolean fAttach;
+
+  private CallProfile(boolean external) {
+    this.fExternal = external;
+    this.fStart = System.nanoTime();
+    this.fPhaseTimes = new long[Phase.values().length];
+    this.fCounters = new long[Counter.values().length];
+  }
+
+  /**
+   * Begins a profile for the current thread on behalf of a procedure wrapper, regardless of the
+   * call's options. The profile is only attached to the result if the options request it and has
+   * to be collected using end().
+   */
+  public static void begin() {
+    CallProfile.PROFILES.set(new CallProfile(true));
+  }
+
+  /**
+   * Ends and removes a profile begun by a procedure wrapper.
+   *
+   * @return profile of the current call or null if there is none
+   */
+  public static CallProfile end() {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile != null) {
+      CallProfile.PROFILES.remove();
+      profile.stop(System.nanoTime());
+    }
+
+    return profile;
+  }
+
+  /**
+   * Starts profiling the current call if the given options request it. Calls to this method must
+   * be paired with calls to finish() and the returned level has to be passed to release() in a
+   * finally block.
+   *
+   * @param options
+   *          options of the call, may be null
+   * @return nesting level of the call or 0 if it is not profiled
+   */
+  public static int start(Map<String, Object> options) {
+    CallProfile profile = CallProfile.PROFILES.get();
+    final boolean requested = options != null
+            && isSet(options.get(CallProfile.PROFILE_OPTION));
+
+    if (profile == null) {
+      if (!requested) {
+        return 0;
+      }
+      profile = new CallProfile(false);
+      CallProfile.PROFILES.set(profile);
+    }
+
+    if (profile.fDepth == 0 && requested) {
+      profile.fAttach = true;
+    }
+    return ++profile.fDepth;
+  }
+
+  /**
+   * Releases the given nesting level if the call did not reach finish(), e.g. because it threw an
+   * exception. Levels that were already finished are left untouched, so that this method can be
+   * called unconditionally in a finally block.
+   *
+   * @param level
+   *          nesting level returned by start()
+   */
+  public static void release(int level) {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile == null || level <= 0 || profile.fDepth < level) {
+      return;
+    }
+
+    profile.fDepth = level - 1;
+    if (profile.fDepth == 0 && !profile.fExternal) {
+      CallProfile.PROFILES.remove();
+    }
+  }
+
+  private static boolean isSet(Object flag) {
+    return Boolean.TRUE.equals(flag) || "true".equals(flag);
+  }
+
+  /**
+   * @return whether the current call is being profiled
+   */
+  public static boolean isActive() {
+    return CallProfile.PROFILES.get() != null;
+  }
+
+  /**
+   * Ends the currently running phase and starts the given one.
+   *
+   * @param phase
+   *          phase the current call is entering
+   */
+  public static void phase(Phase phase) {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile != null) {
+      final long now = System.nanoTime();
+      profile.endPhase(now);
+      profile.fPhase = phase;
+      profile.fPhaseStart = now;
+    }
+  }
+
+  /**
+   * Adds the given amount to a work counter of the current call.
+   *
+   * @param counter
+   *          counter to increment
+   * @param amount
+   *          amount to add
+   */
+  public static void count(Counter counter, long amount) {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile != null) {
+      profile.fCounters[counter.ordinal()] += amount;
+    }
+  }
+
+  /**
+   * Finishes profiling the current call. If the outermost profiled call is finished, the profile
+   * is logged and attached to a copy of the given result, which is returned instead.
+   *
+   * @param result
+   *          result of the call, may be null
+   * @param impl
+   *          implementation utility to create the profile map with
+   * @return given result or profiled copy
+   */
+  public static ListResult finish(ListResult result, ImplUtil impl) {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile == null) {
+      return result;
+    }
+    if (profile.fDepth > 0) {
+      --profile.fDepth;
+    }
+    if (profile.fDepth > 0) {
+      return result;
+    }
+
+    if (!profile.fExternal) {
+      CallProfile.PROFILES.remove();
+      profile.stop(System.nanoTime());
+    } else {
+      profile.endPhase(System.nanoTime());
+    }
+
+    if (!profile.fAttach) {
+      return result;
+    }
+
+    final Map<String, Object> profMap = profile.toMap(impl);
+    CallProfile.LOGGER.log(Level.INFO, "call profile: " + profMap);
+
+    if (result == null) {
+      return null;
+    }
+
+    final ShindigListResult profiled = new ShindigListResult(result);
+    profiled.setMetadata(CallProfile.PROFILE_FIELD, profMap);
+    return profiled;
+  }
+
+  /**
+   * Discards any profile of the current thread left behind by a call that did not finish. Profiles
+   * begun by a procedure wrapper are kept for it to collect.
+   */
+  public static void clear() {
+    final CallProfile profile = CallProfile.PROFILES.get();
+
+    if (profile != null) {
+      if (profile.fExternal) {
+        profile.fDepth = 0;
+      } else {
+        CallProfile.PROFILES.remove();
+      }
+    }
+  }
+
+  private void stop(long now) {
+    endPhase(now);
+    this.fEnd = now;
+  }
+
+  private void endPhase(long now) {
+    if (this.fPhase != null) {
+      this.fPhaseTimes[this.fPhase.ordinal()] += now - this.fPhaseStart;
+      this.fPhase = null;
+    }
+  }
+
+  /**
+   * Creates a transferable map containing the durations of all phases in microseconds and all
+   * work counters.
+   *
+   * @param impl
+   *          implementation utility to create the map with
+   * @return map representation of the profile
+   */
+  public Map<String, Object> toMap(ImplUtil impl) {
+    final Map<String, Object> map = impl.newMap();
+
+    final long end = this.fEnd != 0 ? this.fEnd : System.nanoTime();
+    map.put(CallProfile.TOTAL_FIELD, TimeUnit.NANOSECONDS.toMicros(end - this.fStart));
+    for (final Phase phase : Phase.values()) {
+      map.put(phase.getName(),
+              TimeUnit.NANOSECONDS.toMicros(this.fPhaseTimes[phase.ordinal()]));
+    }
+    for (final Counter counter : Counter.values()) {
+      map.put(counter.getName(), this.fCounters[counter.ordinal()]);
+    }
+
+    return map;
+  }
+}
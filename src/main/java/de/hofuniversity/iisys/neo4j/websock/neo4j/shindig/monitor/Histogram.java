@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram for non-negative long values using logarithmic buckets. Every power of two
+ * is split into eight linear sub-buckets, so percentiles are accurate to about 12.5 percent while
+ * the whole value range only needs a few hundred counters. Recording a value only consists of
+ * atomic increments, so it can be called from any number of threads.
+ */
+public class Histogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << Histogram.SUB_BITS;
+  private static final int BUCKETS = (64 - Histogram.SUB_BITS + 1) * Histogram.SUB_BUCKETS;
+
+  private final AtomicLongArray fBuckets;
+  private final AtomicLong fCount;
+  private final AtomicLong fSum;
+  private final AtomicLong fMax;
+
+  /**
+   * Creates an empty histogram.
+   */
+  public Histogram() {
+    this.fBuckets = new AtomicLongArray(Histogram.BUCKETS);
+    this.fCount = new AtomicLong();
+    this.fSum = new AtomicLong();
+    this.fMax = new AtomicLong();
+  }
+
+  private static int index(long value) {
+    if (value < Histogram.SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    final int exp = 63 - Long.numberOfLeadingZeros(value);
+    final int sub = (int) (value >>> (exp - Histogram.SUB_BITS)) & (Histogram.SUB_BUCKETS - 1);
+    return (exp - Histogram.SUB_BITS + 1) * Histogram.SUB_BUCKETS + sub;
+  }
+
+  private static long upperBound(int index) {
+    if (index < Histogram.SUB_BUCKETS) {
+      return index;
+    }
+
+    final int exp = index / Histogram.SUB_BUCKETS + Histogram.SUB_BITS - 1;
+    final long sub = index % Histogram.SUB_BUCKETS;
+    final long width = 1L << (exp - Histogram.SUB_BITS);
+    return ((Histogram.SUB_BUCKETS + sub) << (exp - Histogram.SUB_BITS)) + width - 1;
+  }
+
+  /**
+   * Records a value, negative values are treated as zero.
+   *
+   * @param value
+   *          value to record
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+
+    this.fBuckets.incrementAndGet(Histogram.index(value));
+    this.fCount.incrementAndGet();
+    this.fSum.addAndGet(value);
+
+    long max = this.fMax.get();
+    while (value > max) {
+      if (this.fMax.compareAndSet(max, value)) {
+        break;
+      }
+      max = this.fMax.get();
+    }
+  }
+
+  /**
+   * @return number of recorded values
+   */
+  public long getCount() {
+    return this.fCount.get();
+  }
+
+  /**
+   * @return highest recorded value
+   */
+  public long getMax() {
+    return this.fMax.get();
+  }
+
+  /**
+   * @return arithmetic mean of all recorded values, 0 if there are none
+   */
+  public double getMean() {
+    final long count = this.fCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    return (double) this.fSum.get() / count;
+  }
+
+  /**
+   * Determines an upper bound for the given percentile of the recorded values, which is never
+   * higher than the maximum. Concurrent updates may not be reflected.
+   *
+   * @param percentile
+   *          percentile between 0 and 100
+   * @return value at the given percentile, 0 if there are no values
+   */
+  public long getPercentile(double percentile) {
+    final long[] counts = new long[Histogram.BUCKETS];
+    long total = 0;
+    for (int i = 0; i < Histogram.BUCKETS; ++i) {
+      counts[i] = this.fBuckets.get(i);
+      total += counts[i];
+    }
+
+    if (total == 0) {
+      return 0;
+    }
+
+    final long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < Histogram.BUCKETS; ++i) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(Histogram.upperBound(i), this.fMax.get());
+      }
+    }
+
+    return this.fMax.get();
+  }
+}
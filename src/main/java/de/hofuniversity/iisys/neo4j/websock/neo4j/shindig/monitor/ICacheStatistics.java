@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+/**
+ * Interface for caches reporting their usage statistics to the procedure monitor.
+ */
+public interface ICacheStatistics {
+  /**
+   * @return number of lookups that were answered from the cache
+   */
+  public long getHits();
+
+  /**
+   * @return number of lookups that were not answered from the cache
+   */
+  public long getMisses();
+
+  /**
+   * @return current number of cached entries
+   */
+  public int getSize();
+
+  /**
+   * @return maximum number of cached entries, -1 if the cache is not bounded by entries
+   */
+  public int getCapacity();
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+
+/**
+ * Stored procedure wrapper measuring the duration and result size of every invocation of the
+ * actual procedure.
+ */
+public class InstrumentedProcedure implements IStoredProcedure {
+  private final IStoredProcedure fDelegate;
+  private final ProcedureMetrics fMetrics;
+
+  /**
+   * Creates an instrumenting wrapper for the given procedure, recording to the given metrics.
+   * Throws a NullPointerException if any parameter is null.
+   *
+   * @param delegate
+   *          procedure to wrap
+   * @param metrics
+   *          metrics to record calls to
+   */
+  public InstrumentedProcedure(IStoredProcedure delegate, ProcedureMetrics metrics) {
+    if (delegate == null) {
+      throw new NullPointerException("wrapped procedure was null");
+    }
+    if (metrics == null) {
+      throw new NullPointerException("procedure metrics were null");
+    }
+
+    this.fDelegate = delegate;
+    this.fMetrics = metrics;
+  }
+
+  /**
+   * @return wrapped procedure
+   */
+  public IStoredProcedure getDelegate() {
+    return this.fDelegate;
+  }
+
+  @Override
+  public String getName() {
+    return this.fDelegate.getName();
+  }
+
+  @Override
+  public AResult call(Map<String, Object> parameters) throws Exception {
+    final long start = System.nanoTime();
+
+    final AResult result;
+    try {
+      result = this.fDelegate.call(parameters);
+    } catch (final Exception e) {
+      this.fMetrics.failure(System.nanoTime() - start);
+      throw e;
+    }
+
+    int size = 0;
+    if (result instanceof ListResult) {
+      size = ((ListResult) result).getSize();
+    } else if (result != null) {
+      size = 1;
+    }
+    this.fMetrics.success(System.nanoTime() - start, size);
+
+    return result;
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Call counters, latency and result size histograms for a single stored procedure.
+ */
+public class ProcedureMetrics implements ProcedureMetricsMXBean {
+  /**
+   * Key of the number of calls in the metrics map.
+   */
+  public static final String CALLS_FIELD = "calls";
+
+  /**
+   * Key of the number of failed calls in the metrics map.
+   */
+  public static final String ERRORS_FIELD = "errors";
+
+  /**
+   * Key of the mean latency in microseconds in the metrics map.
+   */
+  public static final String MEAN_LATENCY_FIELD = "latencyMean";
+
+  /**
+   * Key of the median latency in microseconds in the metrics map.
+   */
+  public static final String LATENCY_50_FIELD = "latency50";
+
+  /**
+   * Key of the 95th percentile latency in microseconds in the metrics map.
+   */
+  public static final String LATENCY_95_FIELD = "latency95";
+
+  /**
+   * Key of the 99th percentile latency in microseconds in the metrics map.
+   */
+  public static final String LATENCY_99_FIELD = "latency99";
+
+  /**
+   * Key of the maximum latency in microseconds in the metrics map.
+   */
+  public static final String MAX_LATENCY_FIELD = "latencyMax";
+
+  /**
+   * Key of the mean result size in the metrics map.
+   */
+  public static final String MEAN_SIZE_FIELD = "sizeMean";
+
+  /**
+   * Key of the 95th percentile result size in the metrics map.
+   */
+  public static final String SIZE_95_FIELD = "size95";
+
+  /**
+   * Key of the maximum result size in the metrics map.
+   */
+  public static final String MAX_SIZE_FIELD = "sizeMax";
+
+  private final String fName;
+
+  private final AtomicLong fCalls;
+  private final AtomicLong fErrors;
+
+  private final Histogram fLatencies;
+  private final Histogram fSizes;
+
+  /**
+   * Creates an empty set of metrics for the procedure with the given name. Throws a
+   * NullPointerException if the name is null.
+   *
+   * @param name
+   *          query name of the procedure
+   */
+  public ProcedureMetrics(String name) {
+    if (name == null) {
+      throw new NullPointerException("procedure name was null");
+    }
+
+    this.fName = name;
+
+    this.fCalls = new AtomicLong();
+    this.fErrors = new AtomicLong();
+
+    this.fLatencies = new Histogram();
+    this.fSizes = new Histogram();
+  }
+
+  /**
+   * Records a successful call.
+   *
+   * @param nanos
+   *          duration of the call in nanoseconds
+   * @param size
+   *          number of returned entries
+   */
+  public void success(long nanos, int size) {
+    this.fCalls.incrementAndGet();
+    this.fLatencies.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    this.fSizes.record(size);
+  }
+
+  /**
+   * Records a call that threw an exception.
+   *
+   * @param nanos
+   *          duration of the call in nanoseconds
+   */
+  public void failure(long nanos) {
+    this.fCalls.incrementAndGet();
+    this.fErrors.incrementAndGet();
+    this.fLatencies.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+
+  @Override
+  public String getName() {
+    return this.fName;
+  }
+
+  @Override
+  public long getCalls() {
+    return this.fCalls.get();
+  }
+
+  @Override
+  public long getErrors() {
+    return this.fErrors.get();
+  }
+
+  @Override
+  public double getMeanLatency() {
+    return this.fLatencies.getMean();
+  }
+
+  @Override
+  public long getLatency50() {
+    return this.fLatencies.getPercentile(50);
+  }
+
+  @Override
+  public long getLatency95() {
+    return this.fLatencies.getPercentile(95);
+  }
+
+  @Override
+  public long getLatency99() {
+    return this.fLatencies.getPercentile(99);
+  }
+
+  @Override
+  public long getMaxLatency() {
+    return this.fLatencies.getMax();
+  }
+
+  @Override
+  public double getMeanResultSize() {
+    return this.fSizes.getMean();
+  }
+
+  @Override
+  public long getResultSize95() {
+    return this.fSizes.getPercentile(95);
+  }
+
+  @Override
+  public long getMaxResultSize() {
+    return this.fSizes.getMax();
+  }
+
+  /**
+   * Creates a transferable map containing all metrics of the procedure.
+   *
+   * @param impl
+   *          implementation utility to create the map with
+   * @return map of metrics
+   */
+  public Map<String, Object> toMap(ImplUtil impl) {
+    final Map<String, Object> metrics = impl.newMap();
+
+    metrics.put(ProcedureMetrics.CALLS_FIELD, getCalls());
+    metrics.put(ProcedureMetrics.ERRORS_FIELD, getErrors());
+    metrics.put(ProcedureMetrics.MEAN_LATENCY_FIELD, getMeanLatency());
+    metrics.put(ProcedureMetrics.LATENCY_50_FIELD, getLatency50());
+    metrics.put(ProcedureMetrics.LATENCY_95_FIELD, getLatency95());
+    metrics.put(ProcedureMetrics.LATENCY_99_FIELD, getLatency99());
+    metrics.put(ProcedureMetrics.MAX_LATENCY_FIELD, getMaxLatency());
+    metrics.put(ProcedureMetrics.MEAN_SIZE_FIELD, getMeanResultSize());
+    metrics.put(ProcedureMetrics.SIZE_95_FIELD, getResultSize95());
+    metrics.put(ProcedureMetrics.MAX_SIZE_FIELD, getMaxResultSize());
+
+    return metrics;
+  }
+}
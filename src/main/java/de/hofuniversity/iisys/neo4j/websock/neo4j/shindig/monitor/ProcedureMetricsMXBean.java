@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+/**
+ * JMX management interface exposing the metrics of a single stored procedure. All latencies are
+ * given in microseconds.
+ */
+public interface ProcedureMetricsMXBean {
+  /**
+   * @return query name of the procedure
+   */
+  public String getName();
+
+  /**
+   * @return number of completed calls
+   */
+  public long getCalls();
+
+  /**
+   * @return number of calls that threw an exception
+   */
+  public long getErrors();
+
+  /**
+   * @return mean latency in microseconds
+   */
+  public double getMeanLatency();
+
+  /**
+   * @return median latency in microseconds
+   */
+  public long getLatency50();
+
+  /**
+   * @return 95th percentile latency in microseconds
+   */
+  public long getLatency95();
+
+  /**
+   * @return 99th percentile latency in microseconds
+   */
+  public long getLatency99();
+
+  /**
+   * @return maximum latency in microseconds
+   */
+  public long getMaxLatency();
+
+  /**
+   * @return mean number of returned entries
+   */
+  public double getMeanResultSize();
+
+  /**
+   * @return 95th percentile of the number of returned entries
+   */
+  public long getResultSize95();
+
+  /**
+   * @return maximum number of returned entries
+   */
+  public long getMaxResultSize();
+}
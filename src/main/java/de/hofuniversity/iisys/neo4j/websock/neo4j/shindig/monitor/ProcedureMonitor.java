@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Registry of the metrics of all instrumented stored procedures, optionally exposing them via JMX.
+ */
+public class ProcedureMonitor {
+  /**
+   * JMX domain under which procedure metrics are registered.
+   */
+  public static final String JMX_DOMAIN = "de.hofuniversity.iisys.neo4j.websock.shindig";
+
+  /**
+   * Key of the monitoring start time in milliseconds in the server metrics map.
+   */
+  public static final String START_TIME_FIELD = "startTime";
+
+  /**
+   * Key of the map of procedure metrics in the server metrics map.
+   */
+  public static final String PROCEDURES_FIELD = "procedures";
+
+  /**
+   * Key of the map of cache statistics in the server metrics map.
+   */
+  public static final String CACHES_FIELD = "caches";
+
+  /**
+   * Key of the number of cache hits in a cache statistics map.
+   */
+  public static final String HITS_FIELD = "hits";
+
+  /**
+   * Key of the number of cache misses in a cache statistics map.
+   */
+  public static final String MISSES_FIELD = "misses";
+
+  /**
+   * Key of the ratio of hits to lookups in a cache statistics map.
+   */
+  public static final String HIT_RATE_FIELD = "hitRate";
+
+  /**
+   * Key of the number of cached entries in a cache statistics map.
+   */
+  public static final String SIZE_FIELD = "size";
+
+  /**
+   * Key of the maximum number of cached entries in a cache statistics map.
+   */
+  public static final String CAPACITY_FIELD = "capacity";
+
+  private final Map<String, ProcedureMetrics> fMetrics;
+  private final Map<String, ICacheStatistics> fCaches;
+  private final long fStartTime;
+
+  private final Logger fLogger;
+
+  /**
+   * Creates an empty procedure monitor.
+   */
+  public ProcedureMonitor() {
+    this.fMetrics = new ConcurrentHashMap<String, ProcedureMetrics>();
+    this.fCaches = new ConcurrentHashMap<String, ICacheStatistics>();
+    this.fStartTime = System.currentTimeMillis();
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  /**
+   * Wraps all given procedures in place with instrumenting wrappers, using their query names as
+   * metric names.
+   *
+   * @param procedures
+   *          procedures to instrument
+   */
+  public void instrument(Map<String, IStoredProcedure> procedures) {
+    for (final Entry<String, IStoredProcedure> procE : procedures.entrySet()) {
+      procE.setValue(new InstrumentedProcedure(procE.getValue(), getMetrics(procE.getKey())));
+    }
+  }
+
+  /**
+   * Retrieves the metrics for the given query name, creating them if necessary.
+   *
+   * @param query
+   *          query name of the procedure
+   * @return metrics of the procedure
+   */
+  public ProcedureMetrics getMetrics(String query) {
+    ProcedureMetrics metrics = this.fMetrics.get(query);
+
+    if (metrics == null) {
+      synchronized (this.fMetrics) {
+        metrics = this.fMetrics.get(query);
+        if (metrics == null) {
+          metrics = new ProcedureMetrics(query);
+          this.fMetrics.put(query, metrics);
+        }
+      }
+    }
+
+    return metrics;
+  }
+
+  /**
+   * Adds a cache whose statistics are to be reported under the given name. Throws a
+   * NullPointerException if any parameter is null.
+   *
+   * @param name
+   *          name of the cache
+   * @param cache
+   *          statistics of the cache
+   */
+  public void addCache(String name, ICacheStatistics cache) {
+    if (name == null) {
+      throw new NullPointerException("cache name was null");
+    }
+    if (cache == null) {
+      throw new NullPointerException("cache statistics were null");
+    }
+
+    this.fCaches.put(name, cache);
+  }
+
+  /**
+   * Registers the metrics of all procedures known so far with the platform MBean server. Failures
+   * are logged and otherwise ignored.
+   */
+  public void registerMBeans() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    for (final ProcedureMetrics metrics : this.fMetrics.values()) {
+      try {
+        final ObjectName name = getObjectName(metrics);
+
+        if (server.isRegistered(name)) {
+          server.unregisterMBean(name);
+        }
+        server.registerMBean(metrics, name);
+      } catch (final JMException e) {
+        this.fLogger.log(Level.WARNING, "could not register metrics for " + metrics.getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Unregisters the metrics of all procedures from the platform MBean server, so that they are not
+   * kept alive after the procedures are closed. Failures are logged and otherwise ignored.
+   */
+  public void unregisterMBeans() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    for (final ProcedureMetrics metrics : this.fMetrics.values()) {
+      try {
+        final ObjectName name = getObjectName(metrics);
+
+        if (server.isRegistered(name)) {
+          server.unregisterMBean(name);
+        }
+      } catch (final JMException e) {
+        this.fLogger.log(Level.WARNING, "could not unregister metrics for " + metrics.getName(),
+                e);
+      }
+    }
+  }
+
+  private ObjectName getObjectName(ProcedureMetrics metrics) throws JMException {
+    return new ObjectName(ProcedureMonitor.JMX_DOMAIN + ":type=ProcedureMetrics,name="
+            + ObjectName.quote(metrics.getName()));
+  }
+
+  /**
+   * Creates a transferable map containing the metrics of all procedures and the statistics of all
+   * caches.
+   *
+   * @param impl
+   *          implementation utility to create maps with
+   * @return map of server metrics
+   */
+  public Map<String, Object> toMap(ImplUtil impl) {
+    final Map<String, Object> procedures = impl.newMap();
+    for (final ProcedureMetrics metrics : this.fMetrics.values()) {
+      procedures.put(metrics.getName(), metrics.toMap(impl));
+    }
+
+    final Map<String, Object> caches = impl.newMap();
+    for (final Entry<String, ICacheStatistics> cacheE : this.fCaches.entrySet()) {
+      final ICacheStatistics stats = cacheE.getValue();
+      final long hits = stats.getHits();
+      final long lookups = hits + stats.getMisses();
+
+      final Map<String, Object> cache = impl.newMap();
+      cache.put(ProcedureMonitor.HITS_FIELD, hits);
+      cache.put(ProcedureMonitor.MISSES_FIELD, lookups - hits);
+      cache.put(ProcedureMonitor.HIT_RATE_FIELD, lookups > 0 ? (double) hits / lookups : 0.0);
+      cache.put(ProcedureMonitor.SIZE_FIELD, stats.getSize());
+      cache.put(ProcedureMonitor.CAPACITY_FIELD, stats.getCapacity());
+      caches.put(cacheE.getKey(), cache);
+    }
+
+    final Map<String, Object> server = impl.newMap();
+    server.put(ProcedureMonitor.START_TIME_FIELD, this.fStartTime);
+    server.put(ProcedureMonitor.PROCEDURES_FIELD, procedures);
+    server.put(ProcedureMonitor.CACHES_FIELD, caches);
+
+    return server;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Log of procedure calls exceeding a configured duration. Slow calls are written to a dedicated
+ * logger and the most recent ones are kept in a fixed-size ring buffer. Parameters are sanitized
+ * before they are stored, so that no complete objects or long values end up in the log.
+ */
+public class SlowCallLog {
+  /**
+   * Name of the dedicated logger slow calls are written to.
+   */
+  public static final String LOGGER_NAME = "de.hofuniversity.iisys.neo4j.websock.shindig.slowlog";
+
+  /**
+   * Key of the time the call was made in milliseconds in a slow call map.
+   */
+  public static final String TIME_FIELD = "time";
+
+  /**
+   * Key of the procedure's query name in a slow call map.
+   */
+  public static final String QUERY_FIELD = "query";
+
+  /**
+   * Key of the ID of the requesting user in a slow call map.
+   */
+  public static final String USER_FIELD = "userId";
+
+  /**
+   * Key of the call's duration in microseconds in a slow call map.
+   */
+  public static final String DURATION_FIELD = "duration";
+
+  /**
+   * Key of the number of returned entries in a slow call map.
+   */
+  public static final String SIZE_FIELD = "size";
+
+  /**
+   * Key of the sanitized parameters in a slow call map.
+   */
+  public static final String PARAMS_FIELD = "parameters";
+
+  /**
+   * Key of the phase breakdown in a slow call map.
+   */
+  public static final String PROFILE_FIELD = "profile";
+
+  /**
+   * Key of the error message of failed calls in a slow call map.
+   */
+  public static final String ERROR_FIELD = "error";
+
+  private static final int MAX_STRING_LENGTH = 64;
+  private static final int MAX_LIST_LENGTH = 10;
+
+  private final long fThreshold;
+  private final Map<String, Object>[] fEntries;
+  private final ImplUtil fImpl;
+
+  private final Logger fLogger;
+
+  private int fNext;
+  private int fCount;
+
+  /**
+   * Creates a slow call log recording calls taking at least the given number of milliseconds,
+   * keeping the given number of entries. Throws a NullPointerException if the implementation
+   * utility is null and an IllegalArgumentException if the size is not positive.
+   *
+   * @param threshold
+   *          minimum duration of recorded calls in milliseconds
+   * @param size
+   *          number of calls to keep
+   * @param impl
+   *          implementation utility to create entries with
+   */
+  @SuppressWarnings("unchecked")
+  public SlowCallLog(long threshold, int size, ImplUtil impl) {
+    if (impl == null) {
+      throw new NullPointerException("implementation utility was null");
+    }
+    if (size <= 0) {
+      throw new IllegalArgumentException("slow call log size must be positive");
+    }
+
+    this.fThreshold = TimeUnit.MILLISECONDS.toNanos(threshold);
+    this.fEntries = new Map[size];
+    this.fImpl = impl;
+
+    this.fLogger = Logger.getLogger(SlowCallLog.LOGGER_NAME);
+  }
+
+  /**
+   * @param nanos
+   *          duration of a call in nanoseconds
+   * @return whether a call of the given duration is slow
+   */
+  public boolean isSlow(long nanos) {
+    return nanos >= this.fThreshold;
+  }
+
+  /**
+   * Records a slow call, writing it to the slow log and adding it to the ring buffer.
+   *
+   * @param query
+   *          query name of the procedure
+   * @param parameters
+   *          call parameters
+   * @param nanos
+   *          duration of the call in nanoseconds
+   * @param size
+   *          number of returned entries
+   * @param profile
+   *          phase breakdown of the call, may be null
+   * @param error
+   *          exception thrown by the call, null if it succeeded
+   */
+  public void record(String query, Map<String, Object> parameters, long nanos, int size,
+          CallProfile profile, Exception error) {
+    final Map<String, Object> entry = this.fImpl.newMap();
+    entry.put(SlowCallLog.TIME_FIELD, System.currentTimeMillis());
+    entry.put(SlowCallLog.QUERY_FIELD, query);
+    entry.put(SlowCallLog.USER_FIELD, getUserId(parameters));
+    entry.put(SlowCallLog.DURATION_FIELD, TimeUnit.NANOSECONDS.toMicros(nanos));
+    entry.put(SlowCallLog.SIZE_FIELD, size);
+    entry.put(SlowCallLog.PARAMS_FIELD, sanitize(parameters));
+
+    if (profile != null) {
+      entry.put(SlowCallLog.PROFILE_FIELD, profile.toMap(this.fImpl));
+    }
+    if (error != null) {
+      entry.put(SlowCallLog.ERROR_FIELD, String.valueOf(error.getMessage()));
+    }
+
+    synchronized (this.fEntries) {
+      this.fEntries[this.fNext] = entry;
+      this.fNext = (this.fNext + 1) % this.fEntries.length;
+      if (this.fCount < this.fEntries.length) {
+        ++this.fCount;
+      }
+    }
+
+    this.fLogger.log(Level.WARNING, "slow call: " + entry);
+  }
+
+  /**
+   * @return list of the recorded slow calls, newest first
+   */
+  public List<Map<String, Object>> getEntries() {
+    final List<Map<String, Object>> entries = this.fImpl.newList();
+
+    synchronized (this.fEntries) {
+      int index = this.fNext;
+      for (int i = 0; i < this.fCount; ++i) {
+        index = (index - 1 + this.fEntries.length) % this.fEntries.length;
+        entries.add(this.fEntries[index]);
+      }
+    }
+
+    return entries;
+  }
+
+  private Object getUserId(Map<String, Object> parameters) {
+    if (parameters == null) {
+      return null;
+    }
+
+    Object userId = parameters.get(ShindigNativeQueries.USER_ID);
+    if (userId == null) {
+      final Object userIds = parameters.get(ShindigNativeQueries.USER_ID_LIST);
+      if (userIds instanceof List && !((List<?>) userIds).isEmpty()) {
+        userId = ((List<?>) userIds).get(0);
+      }
+    }
+
+    return userId == null ? null : userId.toString();
+  }
+
+  private Map<String, Object> sanitize(Map<String, Object> parameters) {
+    final Map<String, Object> sanitized = this.fImpl.newMap();
+
+    if (parameters != null) {
+      for (final Entry<String, Object> paramE : parameters.entrySet()) {
+        final Object value = paramE.getValue();
+
+        // keep retrieval options, only describe payload objects
+        if (value instanceof Map && !ShindigNativeQueries.OPTIONS_MAP.equals(paramE.getKey())) {
+          sanitized.put(paramE.getKey(), "{" + ((Map<?, ?>) value).size() + " entries}");
+        } else {
+          sanitized.put(paramE.getKey(), sanitizeValue(value, true));
+        }
+      }
+    }
+
+    return sanitized;
+  }
+
+  private Object sanitizeValue(Object value, boolean nested) {
+    Object sanitized = value;
+
+    if (value instanceof String) {
+      final String string = (String) value;
+      if (string.length() > SlowCallLog.MAX_STRING_LENGTH) {
+        sanitized = string.substring(0, SlowCallLog.MAX_STRING_LENGTH) + "...";
+      }
+    } else if (value instanceof List) {
+      final List<?> list = (List<?>) value;
+      final List<Object> copy = this.fImpl.newList();
+
+      for (int i = 0; i < list.size() && i < SlowCallLog.MAX_LIST_LENGTH; ++i) {
+        copy.add(sanitizeValue(list.get(i), false));
+      }
+      if (list.size() > SlowCallLog.MAX_LIST_LENGTH) {
+        copy.add("... " + list.size() + " total");
+      }
+
+      sanitized = copy;
+    } else if (value instanceof Map) {
+      final Map<?, ?> map = (Map<?, ?>) value;
+
+      if (nested) {
+        final Map<String, Object> copy = this.fImpl.newMap();
+        for (final Entry<?, ?> valE : map.entrySet()) {
+          copy.put(String.valueOf(valE.getKey()), sanitizeValue(valE.getValue(), false));
+        }
+        sanitized = copy;
+      } else {
+        sanitized = "{" + map.size() + " entries}";
+      }
+    } else if (value != null && !(value instanceof Number) && !(value instanceof Boolean)) {
+      sanitized = value.getClass().getSimpleName();
+    }
+
+    return sanitized;
+  }
+}
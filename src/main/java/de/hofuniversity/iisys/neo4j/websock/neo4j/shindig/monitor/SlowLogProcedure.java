@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+
+/**
+ * Stored procedure wrapper profiling every invocation of the actual procedure and reporting it to
+ * the slow call log if it exceeded the configured threshold.
+ */
+public class SlowLogProcedure implements IStoredProcedure {
+  private final String fQuery;
+  private final IStoredProcedure fDelegate;
+  private final SlowCallLog fLog;
+
+  /**
+   * Creates a slow call logging wrapper for the given procedure, reporting to the given log.
+   * Throws a NullPointerException if any parameter is null.
+   *
+   * @param query
+   *          query name of the procedure
+   * @param delegate
+   *          procedure to wrap
+   * @param log
+   *          slow call log to report to
+   */
+  public SlowLogProcedure(String query, IStoredProcedure delegate, SlowCallLog log) {
+    if (query == null) {
+      throw new NullPointerException("query name was null");
+    }
+    if (delegate == null) {
+      throw new NullPointerException("wrapped procedure was null");
+    }
+    if (log == null) {
+      throw new NullPointerException("slow call log was null");
+    }
+
+    this.fQuery = query;
+    this.fDelegate = delegate;
+    this.fLog = log;
+  }
+
+  /**
+   * @return wrapped procedure
+   */
+  public IStoredProcedure getDelegate() {
+    return this.fDelegate;
+  }
+
+  @Override
+  public String getName() {
+    return this.fDelegate.getName();
+  }
+
+  @Override
+  public AResult call(Map<String, Object> parameters) throws Exception {
+    final long start = System.nanoTime();
+    CallProfile.begin();
+
+    final AResult result;
+    try {
+      result = this.fDelegate.call(parameters);
+    } catch (final Exception e) {
+      final CallProfile profile = CallProfile.end();
+      final long duration = System.nanoTime() - start;
+      if (this.fLog.isSlow(duration)) {
+        this.fLog.record(this.fQuery, parameters, duration, 0, profile, e);
+      }
+      throw e;
+    }
+
+    final CallProfile profile = CallProfile.end();
+    final long duration = System.nanoTime() - start;
+    if (this.fLog.isSlow(duration)) {
+      int size = 0;
+      if (result instanceof ListResult) {
+        size = ((ListResult) result).getSize();
+      } else if (result != null) {
+        size = 1;
+      }
+      this.fLog.record(this.fQuery, parameters, duration, size, profile, null);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Binary format of recorded procedure calls. A log starts with a magic number and a version and
+ * is followed by records, each consisting of a time stamp, the query name and the parameter map.
+ * Values are written with a one byte type tag; unsupported types are stored as strings. Numbers
+ * keep their type, since procedures may check it.
+ */
+public final class CallLogFormat {
+  /**
+   * Magic number at the start of a call log ("SHRL").
+   */
+  public static final int MAGIC = 0x5348524C;
+
+  /**
+   * Current format version.
+   */
+  public static final short VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte INTEGER = 2;
+  private static final byte LONG = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte FLOAT = 5;
+  private static final byte BOOLEAN = 6;
+  private static final byte LIST = 7;
+  private static final byte MAP = 8;
+  private static final byte ARRAY = 9;
+  private static final byte STRING_ARRAY = 10;
+  private static final byte SHORT = 11;
+  private static final byte BYTE = 12;
+  private static final byte BIG_INTEGER = 13;
+  private static final byte BIG_DECIMAL = 14;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private CallLogFormat() {
+    // static utility
+  }
+
+  /**
+   * Writes a string as its length followed by its UTF-8 representation. Does not support null.
+   *
+   * @param out
+   *          stream to write to
+   * @param value
+   *          string to write
+   * @throws IOException
+   *           if writing fails
+   */
+  public static void writeString(DataOutputStream out, String value) throws IOException {
+    final byte[] bytes = value.getBytes(CallLogFormat.UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by writeString.
+   *
+   * @param in
+   *          stream to read from
+   * @return string read
+   * @throws IOException
+   *           if reading fails
+   */
+  public static String readString(DataInputStream in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, CallLogFormat.UTF8);
+  }
+
+  /**
+   * Writes a tagged value, recursively handling lists, maps and arrays.
+   *
+   * @param out
+   *          stream to write to
+   * @param value
+   *          value to write, may be null
+   * @throws IOException
+   *           if writing fails
+   */
+  public static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(CallLogFormat.NULL);
+    } else if (value instanceof String) {
+      out.writeByte(CallLogFormat.STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(CallLogFormat.INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(CallLogFormat.LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(CallLogFormat.DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      out.writeByte(CallLogFormat.FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Short) {
+      out.writeByte(CallLogFormat.SHORT);
+      out.writeShort((Short) value);
+    } else if (value instanceof Byte) {
+      out.writeByte(CallLogFormat.BYTE);
+      out.writeByte((Byte) value);
+    } else if (value instanceof BigInteger) {
+      out.writeByte(CallLogFormat.BIG_INTEGER);
+      writeString(out, value.toString());
+    } else if (value instanceof BigDecimal) {
+      out.writeByte(CallLogFormat.BIG_DECIMAL);
+      writeString(out, value.toString());
+    } else if (value instanceof Boolean) {
+      out.writeByte(CallLogFormat.BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof List) {
+      final List<?> list = (List<?>) value;
+      out.writeByte(CallLogFormat.LIST);
+      out.writeInt(list.size());
+      for (final Object o : list) {
+        writeValue(out, o);
+      }
+    } else if (value instanceof Map) {
+      out.writeByte(CallLogFormat.MAP);
+      writeMap(out, (Map<?, ?>) value);
+    } else if (value instanceof String[]) {
+      final String[] array = (String[]) value;
+      out.writeByte(CallLogFormat.STRING_ARRAY);
+      out.writeInt(array.length);
+      for (final String s : array) {
+        writeValue(out, s);
+      }
+    } else if (value instanceof Object[]) {
+      final Object[] array = (Object[]) value;
+      out.writeByte(CallLogFormat.ARRAY);
+      out.writeInt(array.length);
+      for (final Object o : array) {
+        writeValue(out, o);
+      }
+    } else {
+      out.writeByte(CallLogFormat.STRING);
+      writeString(out, value.toString());
+    }
+  }
+
+  /**
+   * Writes a map as its size followed by key-value pairs. Keys are stored as strings.
+   *
+   * @param out
+   *          stream to write to
+   * @param map
+   *          map to write, may be null
+   * @throws IOException
+   *           if writing fails
+   */
+  public static void writeMap(DataOutputStream out, Map<?, ?> map) throws IOException {
+    if (map == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    out.writeInt(map.size());
+    for (final Entry<?, ?> e : map.entrySet()) {
+      writeString(out, String.valueOf(e.getKey()));
+      writeValue(out, e.getValue());
+    }
+  }
+
+  /**
+   * Reads a tagged value written by writeValue.
+   *
+   * @param in
+   *          stream to read from
+   * @return value read, may be null
+   * @throws IOException
+   *           if reading fails or an unknown tag is encountered
+   */
+  public static Object readValue(DataInputStream in) throws IOException {
+    final byte tag = in.readByte();
+    int size = 0;
+
+    switch (tag) {
+    case NULL:
+      return null;
+    case STRING:
+      return readString(in);
+    case INTEGER:
+      return in.readInt();
+    case LONG:
+      return in.readLong();
+    case DOUBLE:
+      return in.readDouble();
+    case FLOAT:
+      return in.readFloat();
+    case SHORT:
+      return in.readShort();
+    case BYTE:
+      return in.readByte();
+    case BIG_INTEGER:
+      return new BigInteger(readString(in));
+    case BIG_DECIMAL:
+      return new BigDecimal(readString(in));
+    case BOOLEAN:
+      return in.readBoolean();
+    case LIST:
+      size = in.readInt();
+      final List<Object> list = new ArrayList<Object>(size);
+      for (int i = 0; i < size; ++i) {
+        list.add(readValue(in));
+      }
+      return list;
+    case MAP:
+      return readMap(in);
+    case STRING_ARRAY:
+      size = in.readInt();
+      final String[] strings = new String[size];
+      for (int i = 0; i < size; ++i) {
+        strings[i] = (String) readValue(in);
+      }
+      return strings;
+    case ARRAY:
+      size = in.readInt();
+      final Object[] array = new Object[size];
+      for (int i = 0; i < size; ++i) {
+        array[i] = readValue(in);
+      }
+      return array;
+    default:
+      throw new IOException("unknown value tag " + tag);
+    }
+  }
+
+  /**
+   * Reads a map written by writeMap.
+   *
+   * @param in
+   *          stream to read from
+   * @return map read, may be null
+   * @throws IOException
+   *           if reading fails
+   */
+  public static Map<String, Object> readMap(DataInputStream in) throws IOException {
+    final int size = in.readInt();
+    if (size < 0) {
+      return null;
+    }
+
+    final Map<String, Object> map = new HashMap<String, Object>();
+    for (int i = 0; i < size; ++i) {
+      final String key = readString(in);
+      map.put(key, readValue(in));
+    }
+    return map;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads procedure calls from a binary call log written by the CallRecorder. Logs appended by
+ * several server runs are read in sequence. A truncated last record is treated as the end of the
+ * log.
+ */
+public class CallLogReader {
+  private final DataInputStream fIn;
+
+  /**
+   * Opens the given call log file. Throws a NullPointerException if the file is null and an
+   * IOException if it can not be opened or is not a call log.
+   *
+   * @param file
+   *          call log to read
+   * @throws IOException
+   *           if the file can not be opened or has an invalid header
+   */
+  public CallLogReader(File file) throws IOException {
+    if (file == null) {
+      throw new NullPointerException("log file was null");
+    }
+
+    this.fIn = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    checkHeader(this.fIn.readInt());
+  }
+
+  private void checkHeader(int magic) throws IOException {
+    if (magic != CallLogFormat.MAGIC) {
+      this.fIn.close();
+      throw new IOException("not a call log");
+    }
+
+    final short version = this.fIn.readShort();
+    if (version != CallLogFormat.VERSION) {
+      this.fIn.close();
+      throw new IOException("unsupported call log version " + version);
+    }
+  }
+
+  /**
+   * Reads the next call from the log.
+   *
+   * @return next call or null if the end of the log has been reached
+   * @throws IOException
+   *           if reading fails
+   */
+  public RecordedCall next() throws IOException {
+    try {
+      return new RecordedCall(this.fIn.readLong(), CallLogFormat.readString(this.fIn),
+              CallLogFormat.readMap(this.fIn));
+    } catch (final EOFException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Closes the underlying file.
+   *
+   * @throws IOException
+   *           if closing fails
+   */
+  public void close() throws IOException {
+    this.fIn.close();
+  }
+}
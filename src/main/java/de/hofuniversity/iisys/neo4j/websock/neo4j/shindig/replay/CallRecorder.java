@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes procedure invocations to a binary call log file as defined by CallLogFormat. Parameters
+ * are serialized before the call is executed, since procedures may modify them. Records are
+ * buffered and flushed by a background thread every second and on shutdown; a crash may lose the
+ * last buffered records and leave a truncated record at the end of the file. New logs are appended
+ * to existing files, which are truncated back to their last complete record first.
+ */
+public class CallRecorder implements Runnable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long FLUSH_INTERVAL = 1000;
+
+  private static final int HEADER_SIZE = 6;
+
+  private final DataOutputStream fOut;
+
+  private final Thread fFlusher;
+  private final Thread fShutdownHook;
+
+  private final Logger fLogger;
+
+  private int fUnflushed;
+  private volatile boolean fClosed;
+
+  /**
+   * Creates a recorder writing to the given file. Throws a NullPointerException if the file is
+   * null and a RuntimeException if it can not be opened.
+   *
+   * @param file
+   *          file to write the call log to
+   */
+  public CallRecorder(File file) {
+    if (file == null) {
+      throw new NullPointerException("log file was null");
+    }
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+
+    try {
+      final boolean empty = truncate(file) == 0;
+      this.fOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true),
+              CallRecorder.BUFFER_SIZE));
+
+      if (empty) {
+        this.fOut.writeInt(CallLogFormat.MAGIC);
+        this.fOut.writeShort(CallLogFormat.VERSION);
+      }
+    } catch (final IOException e) {
+      throw new RuntimeException("could not open call log " + file, e);
+    }
+
+    this.fFlusher = new Thread(this, "call log flusher");
+    this.fFlusher.setDaemon(true);
+    this.fFlusher.start();
+
+    this.fShutdownHook = new Thread() {
+      @Override
+      public void run() {
+        close();
+      }
+    };
+    Runtime.getRuntime().addShutdownHook(this.fShutdownHook);
+  }
+
+  /*
+   * truncates an existing log to its last complete record, returning its remaining length
+   */
+  private long truncate(File file) throws IOException {
+    if (!file.exists()) {
+      return 0;
+    }
+
+    final CountingInputStream counter = new CountingInputStream(new BufferedInputStream(
+            new FileInputStream(file)));
+    final DataInputStream in = new DataInputStream(counter);
+    long valid = 0;
+
+    try {
+      if (in.readInt() != CallLogFormat.MAGIC || in.readShort() != CallLogFormat.VERSION) {
+        throw new IOException("not a call log of version " + CallLogFormat.VERSION);
+      }
+      valid = counter.getCount();
+
+      while (true) {
+        in.readLong();
+        CallLogFormat.readString(in);
+        CallLogFormat.readMap(in);
+        valid = counter.getCount();
+      }
+    } catch (final EOFException e) {
+      // end of the log or of its last complete record
+    } finally {
+      in.close();
+    }
+
+    // an incomplete header is rewritten
+    if (valid < CallRecorder.HEADER_SIZE) {
+      valid = 0;
+    }
+
+    final long length = file.length();
+    if (valid < length) {
+      this.fLogger.log(Level.WARNING, "truncating incomplete record at the end of call log "
+              + file + ", " + (length - valid) + " bytes");
+
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+        raf.setLength(valid);
+      } finally {
+        raf.close();
+      }
+    }
+
+    return valid;
+  }
+
+  /**
+   * Flushes buffered records every second until the recorder is closed.
+   */
+  @Override
+  public void run() {
+    while (!this.fClosed) {
+      try {
+        Thread.sleep(CallRecorder.FLUSH_INTERVAL);
+      } catch (final InterruptedException e) {
+        return;
+      }
+
+      synchronized (this) {
+        if (this.fClosed || this.fUnflushed == 0) {
+          continue;
+        }
+
+        try {
+          this.fOut.flush();
+          this.fUnflushed = 0;
+        } catch (final IOException e) {
+          this.fLogger.log(Level.WARNING, "could not flush call log", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Records a call of the query with the given name and parameters. Failures are logged but not
+   * propagated, so capturing never breaks a request.
+   *
+   * @param query
+   *          name of the query called
+   * @param parameters
+   *          parameters of the call
+   */
+  public void record(String query, Map<String, Object> parameters) {
+    final long timestamp = System.currentTimeMillis();
+
+    // serialize outside of the lock
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(buffer);
+    try {
+      out.writeLong(timestamp);
+      CallLogFormat.writeString(out, query);
+      CallLogFormat.writeMap(out, parameters);
+    } catch (final Exception e) {
+      this.fLogger.log(Level.WARNING, "could not serialize call to " + query, e);
+      return;
+    }
+
+    synchronized (this) {
+      if (this.fClosed) {
+        return;
+      }
+
+      try {
+        buffer.writeTo(this.fOut);
+        ++this.fUnflushed;
+      } catch (final IOException e) {
+        this.fLogger.log(Level.WARNING, "could not record call to " + query, e);
+      }
+    }
+  }
+
+  /**
+   * Flushes all buffered records, stops the flushing thread and closes the log file.
+   */
+  public void close() {
+    synchronized (this) {
+      if (this.fClosed) {
+        return;
+      }
+      this.fClosed = true;
+
+      try {
+        this.fOut.close();
+      } catch (final IOException e) {
+        this.fLogger.log(Level.WARNING, "could not close call log", e);
+      }
+    }
+
+    this.fFlusher.interrupt();
+
+    try {
+      Runtime.getRuntime().removeShutdownHook(this.fShutdownHook);
+    } catch (final IllegalStateException e) {
+      // called by the hook while the virtual machine is shutting down
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    private long fCount;
+
+    public CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        ++this.fCount;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      final int read = super.read(b, off, len);
+      if (read > 0) {
+        this.fCount += read;
+      }
+      return read;
+    }
+
+    public long getCount() {
+      return this.fCount;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.util.Map;
+
+/**
+ * A single procedure call read from a call log.
+ */
+public class RecordedCall {
+  private final long fTimestamp;
+  private final String fQuery;
+  private final Map<String, Object> fParameters;
+
+  /**
+   * Creates a recorded call with the given data. Throws a NullPointerException if the query name
+   * is null.
+   *
+   * @param timestamp
+   *          time of the call in milliseconds since the epoch
+   * @param query
+   *          name of the query that was called
+   * @param parameters
+   *          parameters of the call
+   */
+  public RecordedCall(long timestamp, String query, Map<String, Object> parameters) {
+    if (query == null) {
+      throw new NullPointerException("query name was null");
+    }
+
+    this.fTimestamp = timestamp;
+    this.fQuery = query;
+    this.fParameters = parameters;
+  }
+
+  /**
+   * @return time of the call in milliseconds since the epoch
+   */
+  public long getTimestamp() {
+    return this.fTimestamp;
+  }
+
+  /**
+   * @return name of the query that was called
+   */
+  public String getQuery() {
+    return this.fQuery;
+  }
+
+  /**
+   * @return parameters of the call
+   */
+  public Map<String, Object> getParameters() {
+    return this.fParameters;
+  }
+}
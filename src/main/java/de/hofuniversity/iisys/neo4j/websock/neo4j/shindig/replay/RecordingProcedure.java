@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.util.Map;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+
+/**
+ * Stored procedure wrapper recording every invocation with a CallRecorder before delegating to the
+ * actual procedure.
+ */
+public class RecordingProcedure implements IStoredProcedure {
+  private final String fQuery;
+  private final IStoredProcedure fDelegate;
+  private final CallRecorder fRecorder;
+
+  /**
+   * Creates a recording wrapper for the given procedure, registered under the given query name.
+   * Throws a NullPointerException if any parameter is null.
+   *
+   * @param query
+   *          query name the procedure is registered under
+   * @param delegate
+   *          procedure to wrap
+   * @param recorder
+   *          recorder to write calls to
+   */
+  public RecordingProcedure(String query, IStoredProcedure delegate, CallRecorder recorder) {
+    if (query == null) {
+      throw new NullPointerException("query name was null");
+    }
+    if (delegate == null) {
+      throw new NullPointerException("wrapped procedure was null");
+    }
+    if (recorder == null) {
+      throw new NullPointerException("call recorder was null");
+    }
+
+    this.fQuery = query;
+    this.fDelegate = delegate;
+    this.fRecorder = recorder;
+  }
+
+  /**
+   * @return wrapped procedure
+   */
+  public IStoredProcedure getDelegate() {
+    return this.fDelegate;
+  }
+
+  @Override
+  public String getName() {
+    return this.fDelegate.getName();
+  }
+
+  @Override
+  public AResult call(Map<String, Object> parameters) throws Exception {
+    this.fRecorder.record(this.fQuery, parameters);
+    return this.fDelegate.call(parameters);
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.factory.GraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigNativeProcedures;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Plays back a call log recorded by the CallRecorder against a database, using a configurable
+ * number of threads and a speed-up factor for the recorded inter-arrival times, and reports
+ * throughput and latency percentiles per procedure. Write procedures are replayed as well, so the
+ * driver should be run against a copy of the database.
+ *
+ * Usage: ReplayDriver &lt;database directory&gt; &lt;call log&gt; [threads] [speed-up]
+ *
+ * A speed-up of 0 replays calls as fast as possible. Latencies are measured from the time a call
+ * was due according to the log, or submitted when replaying as fast as possible, so that waiting
+ * for a free thread counts towards them. The number of calls waiting for a thread is bounded. The
+ * first failure of each procedure is logged.
+ */
+public class ReplayDriver {
+  private static final int DEFAULT_THREADS = 4;
+  private static final double DEFAULT_SPEEDUP = 1.0;
+  private static final int QUEUED_PER_THREAD = 16;
+
+  private final Map<String, IStoredProcedure> fProcedures;
+  private final int fThreads;
+  private final double fSpeedup;
+
+  private final Map<String, Stats> fStats;
+
+  private final Logger fLogger;
+
+  /**
+   * Statistics for a single procedure.
+   */
+  private static class Stats {
+    private long[] fLatencies = new long[64];
+    private int fCount;
+    private int fErrors;
+
+    /*
+     * returns whether this was the first error
+     */
+    synchronized boolean add(long nanos, boolean error) {
+      if (this.fCount == this.fLatencies.length) {
+        this.fLatencies = Arrays.copyOf(this.fLatencies, this.fCount * 2);
+      }
+      this.fLatencies[this.fCount++] = nanos;
+
+      if (error) {
+        ++this.fErrors;
+      }
+      return error && this.fErrors == 1;
+    }
+
+    synchronized long percentile(double p) {
+      if (this.fCount == 0) {
+        return 0;
+      }
+
+      final long[] sorted = Arrays.copyOf(this.fLatencies, this.fCount);
+      Arrays.sort(sorted);
+      final int index = (int) Math.ceil(p * this.fCount) - 1;
+      return sorted[Math.max(0, Math.min(this.fCount - 1, index))];
+    }
+  }
+
+  /**
+   * Creates a replay driver calling the given procedures. Throws a NullPointerException if the
+   * procedure map is null.
+   *
+   * @param procedures
+   *          procedures by query name
+   * @param threads
+   *          number of concurrently replaying threads
+   * @param speedup
+   *          factor by which recorded inter-arrival times are shortened, 0 for no delays
+   */
+  public ReplayDriver(Map<String, IStoredProcedure> procedures, int threads, double speedup) {
+    if (procedures == null) {
+      throw new NullPointerException("procedure map was null");
+    }
+
+    this.fProcedures = procedures;
+    this.fThreads = Math.max(1, threads);
+    this.fSpeedup = Math.max(0, speedup);
+    this.fStats = new TreeMap<String, Stats>();
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  private Stats getStats(String query) {
+    synchronized (this.fStats) {
+      Stats stats = this.fStats.get(query);
+      if (stats == null) {
+        stats = new Stats();
+        this.fStats.put(query, stats);
+      }
+      return stats;
+    }
+  }
+
+  /**
+   * Replays all calls from the given log and waits for their completion.
+   *
+   * @param reader
+   *          reader for the call log to replay
+   * @return wall clock duration of the replay in nanoseconds
+   * @throws IOException
+   *           if reading the log fails
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  public long replay(CallLogReader reader) throws IOException, InterruptedException {
+    final ExecutorService executor = Executors.newFixedThreadPool(this.fThreads);
+    final Semaphore slots = new Semaphore(this.fThreads * ReplayDriver.QUEUED_PER_THREAD);
+
+    final long start = System.nanoTime();
+    long firstRecorded = -1;
+
+    RecordedCall call = reader.next();
+    while (call != null) {
+      if (firstRecorded < 0) {
+        firstRecorded = call.getTimestamp();
+      }
+
+      // wait until the call is due
+      long due = 0;
+      if (this.fSpeedup > 0) {
+        due = start + (long) ((call.getTimestamp() - firstRecorded) * 1000000L / this.fSpeedup);
+        final long wait = due - System.nanoTime();
+        if (wait > 0) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+      }
+
+      // bounds the number of waiting calls, blocking past the due time counts as latency
+      slots.acquire();
+      if (this.fSpeedup == 0) {
+        due = System.nanoTime();
+      }
+
+      final RecordedCall current = call;
+      final long scheduled = due;
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            execute(current, scheduled);
+          } finally {
+            slots.release();
+          }
+        }
+      });
+
+      call = reader.next();
+    }
+
+    executor.shutdown();
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+    return System.nanoTime() - start;
+  }
+
+  private void execute(RecordedCall call, long due) {
+    final IStoredProcedure proc = this.fProcedures.get(call.getQuery());
+    Exception error = null;
+
+    try {
+      if (proc == null) {
+        error = new IllegalArgumentException("unknown procedure");
+      } else {
+        proc.call(call.getParameters());
+      }
+    } catch (final Exception e) {
+      error = e;
+    }
+    final long latency = System.nanoTime() - due;
+
+    if (getStats(call.getQuery()).add(latency, error != null)) {
+      this.fLogger.log(Level.WARNING, "replaying " + call.getQuery() + " failed", error);
+    }
+  }
+
+  /**
+   * Prints throughput and latency percentiles per procedure.
+   *
+   * @param out
+   *          stream to print to
+   * @param duration
+   *          wall clock duration of the replay in nanoseconds
+   */
+  public void report(PrintStream out, long duration) {
+    final double seconds = duration / 1e9;
+
+    out.println(String.format("replayed in %.3f s with %d threads, speed-up %.2f", seconds,
+            this.fThreads, this.fSpeedup));
+    out.println(String.format("%-40s %8s %8s %10s %10s %10s %10s %10s", "procedure", "calls",
+            "errors", "calls/s", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+
+    synchronized (this.fStats) {
+      for (final Entry<String, Stats> e : this.fStats.entrySet()) {
+        final Stats stats = e.getValue();
+        out.println(String.format("%-40s %8d %8d %10.1f %10.3f %10.3f %10.3f %10.3f", e.getKey(),
+                stats.fCount, stats.fErrors, stats.fCount / seconds, stats.percentile(0.5) / 1e6,
+                stats.percentile(0.95) / 1e6, stats.percentile(0.99) / 1e6,
+                stats.percentile(1.0) / 1e6));
+      }
+    }
+  }
+
+  /**
+   * Replays a call log against an embedded database.
+   *
+   * @param args
+   *          database directory, call log, optional thread count and speed-up
+   * @throws Exception
+   *           if the replay fails
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("usage: ReplayDriver <database directory> <call log> [threads] "
+              + "[speed-up]");
+      System.exit(1);
+    }
+
+    int threads = ReplayDriver.DEFAULT_THREADS;
+    if (args.length > 2) {
+      threads = Integer.parseInt(args[2]);
+    }
+
+    double speedup = ReplayDriver.DEFAULT_SPEEDUP;
+    if (args.length > 3) {
+      speedup = Double.parseDouble(args[3]);
+    }
+
+    final GraphDatabaseService db = new GraphDatabaseFactory().newEmbeddedDatabase(args[0]);
+    final ShindigNativeProcedures provider = new ShindigNativeProcedures(db, new ImplUtil(
+            BasicBSONList.class, BasicBSONObject.class));
+
+    try {
+      final Map<String, IStoredProcedure> procedures = provider.getProcedures();
+
+      // never record the replay itself
+      final List<String> queries = new ArrayList<String>(procedures.keySet());
+      for (final String query : queries) {
+        final IStoredProcedure proc = procedures.get(query);
+        if (proc instanceof RecordingProcedure) {
+          procedures.put(query, ((RecordingProcedure) proc).getDelegate());
+        }
+      }
+
+      final ReplayDriver driver = new ReplayDriver(procedures, threads, speedup);
+      final CallLogReader reader = new CallLogReader(new File(args[1]));
+      try {
+        final long duration = driver.replay(reader);
+        driver.report(System.out, duration);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      // create queued activities while the database is still available
+      provider.close();
+      db.shutdown();
+    }
+
+    System.exit(0);
+  }
+}
@@ -18,25 +18,50 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphActivityObject;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
  * Service retrieving and storing and indexing activity objects, returning special objects
  * containing profile information for people. Can deduplicate activity objects by always returning
  * already registered objects for id-type-combinations (default: off). Can also update these unique
- * objects (default: off).
+ * objects (default: off). Objects without an ID or without ID-based deduplication can be
+ * deduplicated by a hash of their content instead (default: off). The node IDs of deduplicated
+ * objects are remembered, so that shared objects are resolved without querying an index. Keeps a
+ * cache of converted activity objects, from which objects are removed once the transaction
+ * updating or deleting them has finished.
  */
 public class ActivityObjectService {
+  private static final int DEFAULT_CACHE_SIZE = 1000;
+  private static final int DEFAULT_LOOKUP_SIZE = 10000;
+
+  private static final String HASH_ALGORITHM = "SHA-1";
+
   private final GraphDatabaseService fDatabase;
   private final Index<Node> fPersonNodes;
 
@@ -44,7 +69,11 @@ public class ActivityObjectService {
 
   private final ImplUtil fImpl;
 
-  private final boolean fDedupObjects, fUpdateObjects;
+  private final boolean fDedupObjects, fUpdateObjects, fDedupContent;
+
+  private final ConcurrentMap<String, Index<Node>> fIndices;
+  private final LruCache<String, Long> fObjectIds;
+  private final LruCache<Long, Map<String, Object>> fObjectCache;
 
   /**
    * Creates an activity object service retrieving data from the given database service, as
@@ -75,6 +104,7 @@ public class ActivityObjectService {
 
     final String dedup = config.get(ShindigConstants.ACT_OBJ_DEDUP_PROP);
     final String update = config.get(ShindigConstants.ACT_OBJ_UPDATE_PROP);
+    final String dedupContent = config.get(ShindigConstants.ACT_OBJ_DEDUP_CONTENT_PROP);
 
     if (dedup != null) {
       this.fDedupObjects = Boolean.parseBoolean(dedup);
@@ -88,12 +118,252 @@ public class ActivityObjectService {
       this.fUpdateObjects = false;
     }
 
+    if (dedupContent != null) {
+      this.fDedupContent = Boolean.parseBoolean(dedupContent);
+    } else {
+      this.fDedupContent = false;
+    }
+
     this.fDatabase = database;
     this.fPersonNodes = this.fDatabase.index().forNodes(ShindigConstants.PERSON_NODES);
+    this.fIndices = new ConcurrentHashMap<String, Index<Node>>();
 
     this.fIdMan = idMan;
 
     this.fImpl = impl;
+
+    // node ID to converted object cache, disabled with a size of 0
+    int cacheSize = ActivityObjectService.DEFAULT_CACHE_SIZE;
+    final String cacheProp = config.get(ShindigConstants.ACT_OBJ_CACHE_PROP);
+    if (cacheProp != null && !cacheProp.trim().isEmpty()) {
+      cacheSize = Integer.parseInt(cacheProp.trim());
+    }
+    if (cacheSize > 0) {
+      this.fObjectCache = new LruCache<Long, Map<String, Object>>(cacheSize);
+    } else {
+      this.fObjectCache = null;
+    }
+
+    // object key to node ID table, disabled with a size of 0
+    int lookupSize = ActivityObjectService.DEFAULT_LOOKUP_SIZE;
+    final String lookupProp = config.get(ShindigConstants.ACT_OBJ_LOOKUP_PROP);
+    if (lookupProp != null && !lookupProp.trim().isEmpty()) {
+      lookupSize = Integer.parseInt(lookupProp.trim());
+    }
+    if (lookupSize > 0) {
+      this.fObjectIds = new LruCache<String, Long>(lookupSize);
+    } else {
+      this.fObjectIds = null;
+    }
+  }
+
+  /**
+   * @return table of deduplicated objects' node IDs or null if it is disabled
+   */
+  public LruCache<String, Long> getObjectIds() {
+    return this.fObjectIds;
+  }
+
+  /**
+   * @return cache of converted activity objects by node ID or null if it is disabled
+   */
+  public LruCache<Long, Map<String, Object>> getObjectCache() {
+    return this.fObjectCache;
+  }
+
+  /**
+   * Removes the converted forms of the given activity objects from the cache, as needed after
+   * they or nodes they link to have been modified. Has to be called after the modifying
+   * transaction has finished, since concurrent readers may cache the old values until then.
+   *
+   * @param nodeIds
+   *          node IDs of the modified activity objects
+   */
+  public void invalidate(Collection<Long> nodeIds) {
+    if (this.fObjectCache != null) {
+      for (final Long id : nodeIds) {
+        this.fObjectCache.remove(id);
+      }
+    }
+  }
+
+  private Index<Node> getIndex(String type) {
+    Index<Node> index = this.fIndices.get(type);
+
+    if (index == null) {
+      index = this.fDatabase.index().forNodes(type);
+
+      final Index<Node> existing = this.fIndices.putIfAbsent(type, index);
+      if (existing != null) {
+        index = existing;
+      }
+    }
+
+    return index;
+  }
+
+  /*
+   * calculates a hash of all of an object's atomic values, which are the ones stored in its node;
+   * keys and values are length-prefixed and values are tagged with their kind, so that different
+   * contents can not produce the same input, arrays are hashed by their elements
+   */
+  private String getContentHash(Map<String, Object> object) {
+    final Map<String, Object> values = new TreeMap<String, Object>();
+    for (final Entry<String, Object> valE : object.entrySet()) {
+      if (isAtomic(valE.getValue())) {
+        values.put(valE.getKey(), valE.getValue());
+      }
+    }
+
+    MessageDigest digest = null;
+    try {
+      digest = MessageDigest.getInstance(ActivityObjectService.HASH_ALGORITHM);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+
+    for (final Entry<String, Object> valE : values.entrySet()) {
+      update(digest, 'k', valE.getKey());
+      updateValue(digest, valE.getValue());
+    }
+
+    final StringBuilder hash = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+
+  /*
+   * only values that can be stored in a node property are part of the content
+   */
+  private boolean isAtomic(Object value) {
+    return value instanceof String || value instanceof Number || value instanceof Boolean
+            || value instanceof Character || value != null && value.getClass().isArray();
+  }
+
+  private void updateValue(MessageDigest digest, Object value) {
+    if (value == null) {
+      update(digest, 'z', "");
+    } else if (value.getClass().isArray()) {
+      final int length = Array.getLength(value);
+      update(digest, 'a', String.valueOf(length));
+      for (int i = 0; i < length; ++i) {
+        updateValue(digest, Array.get(value, i));
+      }
+    } else if (value instanceof Number) {
+      update(digest, 'n', value.toString());
+    } else if (value instanceof Boolean) {
+      update(digest, 'b', value.toString());
+    } else {
+      update(digest, 's', value.toString());
+    }
+  }
+
+  private void update(MessageDigest digest, char tag, String value) {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update((byte) tag);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+
+  /*
+   * looks up a deduplicated object by a unique key, using the table of known node IDs if possible
+   */
+  private Node lookUp(Index<Node> index, String type, String key, String value) {
+    final String tableKey = type + '|' + key + '|' + value;
+    Node node = null;
+
+    if (this.fObjectIds != null) {
+      final Long nodeId = this.fObjectIds.get(tableKey);
+
+      if (nodeId != null) {
+        try {
+          node = this.fDatabase.getNodeById(nodeId);
+
+          // node IDs are reused, make sure it is still the same object
+          if (!value.equals(node.getProperty(key, null))
+                  || !type.equals(node.getProperty(OSFields.OBJECT_TYPE, null)
+                          + ShindigConstants.ACT_OBJ_TYPE_SUFF)) {
+            node = null;
+          }
+        } catch (final NotFoundException e) {
+          node = null;
+        }
+
+        if (node == null) {
+          this.fObjectIds.remove(tableKey);
+        }
+      }
+    }
+
+    if (node == null) {
+      node = getFirst(index.get(key, value));
+
+      if (node != null) {
+        remember(type, key, value, node);
+      }
+    }
+
+    return node;
+  }
+
+  /*
+   * returns the node with the lowest ID, tolerating duplicates created before objects were
+   * claimed atomically
+   */
+  private Node getFirst(IndexHits<Node> hits) {
+    Node first = null;
+
+    try {
+      for (final Node node : hits) {
+        if (first == null || node.getId() < first.getId()) {
+          first = node;
+        }
+      }
+    } finally {
+      hits.close();
+    }
+
+    return first;
+  }
+
+  /*
+   * indexes a new object by its key unless another transaction did so concurrently, in which case
+   * the new node is discarded and the existing one is returned
+   */
+  private Node claim(Index<Node> index, String type, String key, String value, Node node) {
+    Node claimed = node;
+
+    final Node existing = index.putIfAbsent(node, key, value);
+    if (existing != null) {
+      index.remove(node);
+      node.delete();
+      claimed = existing;
+    }
+
+    remember(type, key, value, claimed);
+    return claimed;
+  }
+
+  private void remember(String type, String key, String value, Node node) {
+    if (this.fObjectIds != null) {
+      this.fObjectIds.put(type + '|' + key + '|' + value, node.getId());
+    }
+  }
+
+  private void forget(Node object, String type) {
+    if (this.fObjectIds != null) {
+      final Object id = object.getProperty(OSFields.ID_FIELD, null);
+      final Object hash = object.getProperty(ShindigConstants.ACT_OBJ_HASH_FIELD, null);
+
+      if (id != null) {
+        this.fObjectIds.remove(type + '|' + OSFields.ID_FIELD + '|' + id);
+      }
+      if (hash != null) {
+        this.fObjectIds.remove(type + '|' + ShindigConstants.ACT_OBJ_HASH_FIELD + '|' + hash);
+      }
+    }
   }
 
   private Node create(Index<Node> index, Map<String, Object> object, String id) {
@@ -130,28 +400,42 @@ public class ActivityObjectService {
     if (ShindigConstants.PERSON_NODES.equals(object.get(OSFields.OBJECT_TYPE))) {
       // return person nodes for people
       node = this.fPersonNodes.get(OSFields.ID_FIELD, id).getSingle();
-    } else if (id == null) {
-      // generate ID if there is none
-      id = this.fIdMan.genID(type);
     }
 
     /*
      * either the object is not a person or just not a person known to Shindig
      */
     if (node == null) {
-      final Index<Node> index = this.fDatabase.index().forNodes(type);
-
-      if (this.fDedupObjects) {
-        node = index.get(OSFields.ID_FIELD, id).getSingle();
+      final Index<Node> index = getIndex(type);
+      String hash = null;
+
+      if (this.fDedupObjects && id != null) {
+        node = lookUp(index, type, OSFields.ID_FIELD, id);
+      } else if (this.fDedupContent) {
+        // objects without a usable ID are identified by their content
+        hash = getContentHash(object);
+        node = lookUp(index, type, ShindigConstants.ACT_OBJ_HASH_FIELD, hash);
       }
 
       if (node == null) {
+        // generate ID if there is none
+        if (id == null) {
+          id = this.fIdMan.genID(type);
+        }
+
         // no node available or no deduplication
         node = create(index, object, id);
-      } else if (this.fUpdateObjects) {
+
+        if (hash != null) {
+          node.setProperty(ShindigConstants.ACT_OBJ_HASH_FIELD, hash);
+          node = claim(index, type, ShindigConstants.ACT_OBJ_HASH_FIELD, hash, node);
+        } else if (this.fDedupObjects) {
+          remember(type, OSFields.ID_FIELD, id, node);
+        }
+      } else if (hash == null && this.fUpdateObjects) {
         // deduplication active
         // update properties
-        new GraphActivityObject(node, this.fImpl).setData(object);
+        updateObject(node, object);
 
         // TODO: attachments, author, image?
       }
@@ -160,6 +444,24 @@ public class ActivityObjectService {
     return node;
   }
 
+  private void updateObject(Node node, Map<String, Object> object) {
+    final Transaction tx = this.fDatabase.beginTx();
+
+    try {
+      new GraphActivityObject(node, this.fImpl).setData(object);
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    invalidate(Collections.singleton(node.getId()));
+  }
+
   /**
    * Deletes a set of activity object nodes in case they aren't used by any activity entries
    * anymore.
@@ -170,6 +472,7 @@ public class ActivityObjectService {
   public void deleteIfUnused(Set<Node> objects) {
     Index<Node> index = null;
     String type = null;
+    final List<Long> deleted = new ArrayList<Long>();
 
     final Transaction tx = this.fDatabase.beginTx();
 
@@ -186,10 +489,13 @@ public class ActivityObjectService {
 
         if (!object.hasRelationship()) {
           type += ShindigConstants.ACT_OBJ_TYPE_SUFF;
-          index = this.fDatabase.index().forNodes(type);
+          index = getIndex(type);
 
           index.remove(object);
 
+          // node IDs are reused
+          forget(object, type);
+          deleted.add(object.getId());
           object.delete();
         }
       }
@@ -204,5 +510,7 @@ public class ActivityObjectService {
 
       throw new RuntimeException(e);
     }
+
+    invalidate(deleted);
   }
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Bounded queue for automatically generated activities, drained by a background worker that
+ * creates them in batches. A batch is created once it reaches the configured size or the oldest
+ * queued activity reaches the configured latency, committing each user's activities in a separate
+ * transaction so that the locks on their activity chain and their friends' timelines are not held
+ * for the whole batch. Submitting blocks for a limited time while the queue is full, activities
+ * that could not be queued in time or were submitted after the queue was closed are created
+ * synchronously. Queued activities are flushed when the queue is closed, which has to happen
+ * before the database shuts down. Activities that cannot be created are logged.
+ */
+public class AutoActivityQueue implements Runnable {
+  private static final long IDLE_WAIT = 500;
+  private static final long CLOSE_TIMEOUT = 30000;
+  private static final long SUBMIT_TIMEOUT = 5000;
+
+  private final GraphDatabaseService fDatabase;
+  private final GraphActivityStreamSPI fActivities;
+
+  private final BlockingQueue<PendingActivity> fQueue;
+  private final int fBatchSize;
+  private final long fLatency;
+
+  private final Thread fWorker;
+  private final Logger fLogger;
+
+  private final Object fPendingLock = new Object();
+  private int fPending;
+
+  private volatile boolean fClosed;
+
+  /**
+   * Creates and starts an activity queue creating activities using the given activitystreams
+   * service. Throws a NullPointerException if any parameter is null and an
+   * IllegalArgumentException if the capacity or batch size is not positive.
+   *
+   * @param database
+   *          graph database to use
+   * @param activities
+   *          activitystreams service to create activities with
+   * @param capacity
+   *          maximum number of queued activities
+   * @param batchSize
+   *          maximum number of activities created in one transaction
+   * @param latency
+   *          maximum time in milliseconds an activity waits for its batch to fill up
+   */
+  public AutoActivityQueue(GraphDatabaseService database, GraphActivityStreamSPI activities,
+          int capacity, int batchSize, long latency) {
+    if (database == null) {
+      throw new NullPointerException("graph database service was null");
+    }
+    if (activities == null) {
+      throw new NullPointerException("activitystreams service was null");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("queue capacity must be positive");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batch size must be positive");
+    }
+
+    this.fDatabase = database;
+    this.fActivities = activities;
+
+    this.fQueue = new ArrayBlockingQueue<PendingActivity>(capacity);
+    this.fBatchSize = batchSize;
+    this.fLatency = Math.max(0, latency);
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+
+    this.fWorker = new Thread(this, "auto activity worker");
+    this.fWorker.setDaemon(true);
+    this.fWorker.start();
+  }
+
+  /**
+   * Queues an activity to be created for the given user, blocking for a limited time while the
+   * queue is full. If the queue has been closed, stays full or the calling thread is interrupted,
+   * the activity is created synchronously instead. Failures are logged but not propagated.
+   *
+   * @param userId
+   *          ID of the user the activity is created for
+   * @param appId
+   *          ID of the application creating the activity
+   * @param activity
+   *          activity to create
+   */
+  public void submit(String userId, String appId, Map<String, Object> activity) {
+    final PendingActivity pending = new PendingActivity(userId, appId, activity);
+
+    if (!this.fClosed) {
+      synchronized (this.fPendingLock) {
+        ++this.fPending;
+      }
+
+      try {
+        // the worker may have stopped after closing timed out, do not wait forever
+        if (this.fQueue.offer(pending, AutoActivityQueue.SUBMIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+          // closed in the meantime, create it unless the worker already took it
+          if (!this.fClosed || !this.fQueue.remove(pending)) {
+            return;
+          }
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      create(pending);
+      done(1);
+      return;
+    }
+
+    create(pending);
+  }
+
+  /**
+   * @return number of activities that have been submitted but not yet created
+   */
+  public int getPending() {
+    synchronized (this.fPendingLock) {
+      return this.fPending;
+    }
+  }
+
+  /**
+   * Blocks until all activities submitted so far have been created or the given timeout has
+   * passed.
+   *
+   * @param timeout
+   *          maximum time to wait in milliseconds
+   * @return whether all submitted activities have been created
+   * @throws InterruptedException
+   *           if the calling thread is interrupted while waiting
+   */
+  public boolean flush(long timeout) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeout;
+
+    synchronized (this.fPendingLock) {
+      long remaining = timeout;
+      while (this.fPending > 0 && remaining > 0) {
+        this.fPendingLock.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+
+      return this.fPending == 0;
+    }
+  }
+
+  /**
+   * Stops accepting activities, creates all queued ones and stops the worker thread. Has to be
+   * called before the database shuts down.
+   */
+  public void close() {
+    if (this.fClosed) {
+      return;
+    }
+    this.fClosed = true;
+
+    // the worker is not interrupted as that could close the database's file channels
+    try {
+      this.fWorker.join(AutoActivityQueue.CLOSE_TIMEOUT);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // activities queued while the worker was stopping
+    final List<PendingActivity> batch = new ArrayList<PendingActivity>();
+    this.fQueue.drainTo(batch);
+    if (!batch.isEmpty()) {
+      createBatch(batch);
+    }
+  }
+
+  @Override
+  public void run() {
+    final List<PendingActivity> batch = new ArrayList<PendingActivity>(this.fBatchSize);
+
+    while (!this.fClosed) {
+      try {
+        final PendingActivity first = this.fQueue.poll(AutoActivityQueue.IDLE_WAIT,
+                TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+
+        // wait for the batch to fill up until the first activity's latency is reached
+        final long deadline = System.currentTimeMillis() + this.fLatency;
+        while (batch.size() < this.fBatchSize) {
+          if (this.fQueue.drainTo(batch, this.fBatchSize - batch.size()) > 0) {
+            continue;
+          }
+
+          // waits in slices so that closing does not have to wait for the latency
+          final long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0 || this.fClosed) {
+            break;
+          }
+
+          final PendingActivity next = this.fQueue.poll(
+                  Math.min(remaining, AutoActivityQueue.IDLE_WAIT), TimeUnit.MILLISECONDS);
+          if (next != null) {
+            batch.add(next);
+          }
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+
+      if (!batch.isEmpty()) {
+        createBatch(batch);
+        batch.clear();
+      }
+    }
+
+    // flush remaining activities on shutdown
+    this.fQueue.drainTo(batch);
+    if (!batch.isEmpty()) {
+      createBatch(batch);
+    }
+  }
+
+  private void createBatch(List<PendingActivity> batch) {
+    // one transaction per user, keeping their order
+    final Map<String, List<PendingActivity>> byUser =
+            new LinkedHashMap<String, List<PendingActivity>>();
+    for (final PendingActivity pending : batch) {
+      List<PendingActivity> activities = byUser.get(pending.fUserId);
+      if (activities == null) {
+        activities = new ArrayList<PendingActivity>();
+        byUser.put(pending.fUserId, activities);
+      }
+      activities.add(pending);
+    }
+
+    for (final List<PendingActivity> activities : byUser.values()) {
+      createAll(activities);
+    }
+  }
+
+  private void createAll(List<PendingActivity> activities) {
+    boolean committed = false;
+
+    // nested transactions of the activity service join the user's transaction
+    Transaction trans = null;
+    try {
+      trans = this.fDatabase.beginTx();
+      for (final PendingActivity pending : activities) {
+        this.fActivities.createActivityEntry(pending.fUserId, null, pending.fAppId,
+                pending.fActivity, null);
+      }
+
+      trans.success();
+      trans.finish();
+      committed = true;
+    } catch (final Exception e) {
+      try {
+        if (trans != null) {
+          trans.failure();
+          trans.finish();
+        }
+      } catch (final Exception e2) {
+        // rolled back
+      }
+    }
+
+    if (committed) {
+      done(activities.size());
+    } else {
+      // a single failure rolls back all of the user's activities, retry one by one
+      for (final PendingActivity pending : activities) {
+        create(pending);
+        done(1);
+      }
+    }
+  }
+
+  private void create(PendingActivity pending) {
+    try {
+      this.fActivities.createActivityEntry(pending.fUserId, null, pending.fAppId,
+              pending.fActivity, null);
+    } catch (final Exception e) {
+      this.fLogger.log(Level.WARNING, "could not create activity for " + pending.fUserId, e);
+    }
+  }
+
+  private void done(int count) {
+    synchronized (this.fPendingLock) {
+      this.fPending -= count;
+      if (this.fPending <= 0) {
+        this.fPending = 0;
+        this.fPendingLock.notifyAll();
+      }
+    }
+  }
+
+  private static class PendingActivity {
+    private final String fUserId;
+    private final String fAppId;
+    private final Map<String, Object> fActivity;
+
+    public PendingActivity(String userId, String appId, Map<String, Object> activity) {
+      this.fUserId = userId;
+      this.fAppId = appId;
+      this.fActivity = activity;
+    }
+  }
+}
@@ -19,9 +19,15 @@
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,14 +35,26 @@ import java.util.logging.Logger;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphActivityEntry;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityChain;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ChainMerger;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ChunkedDeleter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -47,18 +65,74 @@ import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
  * graph database.
  */
 public class GraphActivityStreamSPI {
+  /**
+   * Name of the migration adding existing activity entries to the activity ID index.
+   */
+  public static final String ID_INDEX_MIGRATION = "activityentry_ids";
+
+  /**
+   * Name of the migration linking existing activity entries in time-ordered chains.
+   */
+  public static final String CHAIN_MIGRATION = "activityentry_chains";
+
+  /**
+   * Name of the migration adding numeric publishing timestamps to existing activity entries.
+   */
+  public static final String TIMESTAMP_MIGRATION = "activityentry_timestamps";
+
+  /**
+   * Name of the migration adding existing activity entries to the application activity index.
+   */
+  public static final String APP_INDEX_MIGRATION = "activityentry_apps";
+
+  /**
+   * Key of the user's ID in an entry of a bulk creation.
+   */
+  public static final String BULK_USER_FIELD = "userId";
+
+  /**
+   * Key of the optional application ID in an entry of a bulk creation.
+   */
+  public static final String BULK_APP_FIELD = "appId";
+
+  /**
+   * Key of the activity data in an entry of a bulk creation.
+   */
+  public static final String BULK_ACTIVITY_FIELD = "activity";
+
+  /**
+   * Key of the created activity's ID in a bulk creation status map.
+   */
+  public static final String BULK_ID_FIELD = "id";
+
+  /**
+   * Key of the error message of a failed entry in a bulk creation status map.
+   */
+  public static final String BULK_ERROR_FIELD = "error";
+
   private static final String ID_FIELD = "id";
 
+  private static final int INDEX_CHUNK_SIZE = 1000;
+  private static final int PROGRESS_INTERVAL = 100000;
+  private static final int DEFAULT_BULK_CHUNK_SIZE = 1000;
+
   private final GraphDatabaseService fDatabase;
+  private final Index<Node> fActivityNodes;
+  private final Index<Node> fAppActivityNodes;
   private final GraphPersonSPI fPersonSPI;
   private final ActivityObjectService fActObjSPI;
   private final ApplicationService fApplicationSPI;
   private final IDManager fIDMan;
 
   private final ImplUtil fImpl;
+  private final LruCache<Long, Map<String, Object>> fObjectCache;
 
   private final Logger fLogger;
 
+  private TimelineService fTimelines;
+  private int fBulkChunkSize = GraphActivityStreamSPI.DEFAULT_BULK_CHUNK_SIZE;
+  private int fDeletionChunkSize = ChunkedDeleter.DEFAULT_CHUNK_SIZE;
+
   /**
    * Creates a graph activity stream service using data from the given provider of person data and
    * activity object service. Throws a NullPointerException if one of the parameters is null.
@@ -98,70 +172,188 @@ public class GraphActivityStreamSPI {
     }
 
     this.fDatabase = database;
+    this.fActivityNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.ACTIVITY_ENTRY_NODES);
+    this.fAppActivityNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.APP_ACTIVITY_NODES);
     this.fPersonSPI = personSPI;
     this.fActObjSPI = actObjSPI;
     this.fApplicationSPI = appSPI;
     this.fIDMan = idMan;
 
     this.fImpl = impl;
-
-    // TODO: index
+    this.fObjectCache = actObjSPI.getObjectCache();
 
     this.fLogger = Logger.getLogger(this.getClass().getName());
   }
 
-  private void addActivities(Node person, Set<String> actIds, final List<Node> activities) {
-    Node actNode = null;
-
-    final Iterable<Relationship> actRels = person.getRelationships(Neo4jRelTypes.ACTED);
+  /**
+   * Sets the timeline service used to read and maintain materialized friend timelines.
+   *
+   * @param timelines
+   *          timeline service to use
+   */
+  public void setTimelines(TimelineService timelines) {
+    this.fTimelines = timelines;
+  }
 
-    // id-filter?
-    if (actIds != null) {
-      for (final Relationship rel : actRels) {
-        actNode = rel.getEndNode();
+  /**
+   * Sets the number of activities created in one transaction by bulk creations. Throws an
+   * IllegalArgumentException if the size is not positive.
+   *
+   * @param size
+   *          number of activities per transaction
+   */
+  public void setBulkChunkSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("bulk chunk size must be positive");
+    }
 
-        if (actIds.contains(actNode.getProperty(OSFields.ID_FIELD))) {
-          activities.add(actNode);
+    this.fBulkChunkSize = size;
+  }
 
-          // check if complete
-          if (activities.size() == actIds.size()) {
-            break;
-          }
-        }
-      }
+  /**
+   * Sets the number of activities deleted in one transaction. Throws an IllegalArgumentException
+   * if the size is not positive.
+   *
+   * @param size
+   *          number of activities per transaction
+   */
+  public void setDeletionChunkSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("deletion chunk size must be positive");
     }
-    // copy all
-    else {
-      for (final Relationship rel : actRels) {
-        actNode = rel.getEndNode();
-        activities.add(actNode);
-      }
+
+    this.fDeletionChunkSize = size;
+  }
+
+  private void addActivities(Node person, final List<Node> activities) {
+    int relCount = 0;
+
+    CallProfile.phase(Phase.TRAVERSAL);
+    final Iterable<Relationship> actRels = person.getRelationships(Neo4jRelTypes.ACTED);
+
+    for (final Relationship rel : actRels) {
+      activities.add(rel.getEndNode());
+      ++relCount;
     }
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
   }
 
-  private void addActivities(String userId, Set<String> actIds, final List<Node> activities) {
+  private void addActivities(String userId, final List<Node> activities) {
+    CallProfile.phase(Phase.LOOKUP);
     final Node person = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
 
     if (person != null) {
-      addActivities(person, actIds, activities);
+      addActivities(person, activities);
     }
   }
 
-  private void addFriendActivities(String userId, Set<String> actIds, final List<Node> activities) {
+  private void addFriendActivities(String userId, final List<Node> activities) {
+    CallProfile.phase(Phase.LOOKUP);
     final Node person = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
 
     if (person != null) {
       final Iterable<Relationship> friendships = person.getRelationships(Direction.OUTGOING,
               Neo4jRelTypes.FRIEND_OF);
 
+      int relCount = 0;
       for (final Relationship rel : friendships) {
-        addActivities(rel.getEndNode(), actIds, activities);
+        addActivities(rel.getEndNode(), activities);
+        ++relCount;
+      }
+      CallProfile.count(Counter.RELATIONSHIPS, relCount);
+    }
+  }
+
+  private Node getOwner(Node actNode) {
+    final Relationship rel = actNode.getSingleRelationship(Neo4jRelTypes.ACTED,
+            Direction.INCOMING);
+
+    Node owner = null;
+    if (rel != null) {
+      owner = rel.getStartNode();
+    }
+    return owner;
+  }
+
+  private Set<Node> getFriendNodes(Node person) {
+    final Set<Node> friends = new HashSet<Node>();
+
+    int relCount = 0;
+    for (final Relationship rel : person.getRelationships(Direction.OUTGOING,
+            Neo4jRelTypes.FRIEND_OF)) {
+      friends.add(rel.getEndNode());
+      ++relCount;
+    }
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
+
+    return friends;
+  }
+
+  /*
+   * looks up activities by ID using the index and only adds those the given user may see in the
+   * given group context, i.e. their own, their friends' or those of the group's members
+   */
+  private void addIndexedActivities(String userId, String groupId, Set<String> actIds,
+          final List<Node> activities) {
+    CallProfile.phase(Phase.LOOKUP);
+    final Node person = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
+
+    if (person == null) {
+      return;
+    }
+
+    final boolean self = groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
+            || groupId.equals(OSFields.GROUP_TYPE_ALL);
+    final boolean friends = groupId != null
+            && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
+                    .equals(OSFields.GROUP_TYPE_ALL));
+
+    Set<Node> members = null;
+    if (groupId != null && groupId.charAt(0) != '@') {
+      members = this.fPersonSPI.getGroupMemberNodes(groupId);
+    }
+    Set<Node> friendNodes = null;
+
+    IndexHits<Node> hits = null;
+    Node owner = null;
+    for (final String id : actIds) {
+      // IDs are not necessarily unique across people
+      hits = this.fActivityNodes.get(GraphActivityStreamSPI.ID_FIELD, id);
+
+      try {
+        for (final Node actNode : hits) {
+          CallProfile.count(Counter.INDEX_HITS, 1);
+          owner = getOwner(actNode);
+
+          if (owner == null) {
+            continue;
+          } else if (self && owner.equals(person) || members != null
+                  && members.contains(owner)) {
+            activities.add(actNode);
+          } else if (friends) {
+            // only load friends if needed
+            if (friendNodes == null) {
+              friendNodes = getFriendNodes(person);
+            }
+
+            if (friendNodes.contains(owner)) {
+              activities.add(actNode);
+            }
+          }
+        }
+      } finally {
+        hits.close();
       }
     }
   }
 
   private ListResult convertRequested(final List<Node> actNodes, final Set<String> fields,
-          Map<String, Object> options) {
+          Map<String, Object> options, int first) {
     final List<Map<String, Object>> actEntries = this.fImpl.newList();
 
     GraphActivityEntry gActEntry = null;
@@ -178,30 +370,417 @@ public class GraphActivityStreamSPI {
       max = actNodes.size();
     }
 
+    final int last = Math.min(actNodes.size(), first + max);
+
+    // convert the items requested
+    CallProfile.phase(Phase.CONVERT);
+    for (int index = first; index < last; ++index) {
+      gActEntry = new GraphActivityEntry(actNodes.get(index), this.fImpl, this.fObjectCache);
+      tmpEntry = gActEntry.toMap(fields);
+      actEntries.add(tmpEntry);
+    }
+    CallProfile.count(Counter.CONVERSIONS, actEntries.size());
+
+    final ListResult actColl = new ListResult(actEntries);
+    actColl.setFirst(first);
+    actColl.setMax(max);
+    actColl.setTotal(actNodes.size());
+    return PageCursor.attach(actColl, actNodes, options);
+  }
+
+  /*
+   * reads the requested page of a person's newest entries from their activity chain, only
+   * touching the entries up to the end of the page
+   */
+  private ListResult getNewestEntries(Node person, final Set<String> fields,
+          Map<String, Object> options) {
+    final List<Map<String, Object>> actEntries = this.fImpl.newList();
+    final int total = ActivityChain.getCount(person);
+
+    // determine the first and last index of entries to fetch
+    int max = 0;
+    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+    }
+
+    // if parameters are undefined, return all
+    if (max == 0) {
+      max = total;
+    }
+
     int first = 0;
     if (options.get(WebsockConstants.SUBSET_START) != null) {
       first = (Integer) options.get(WebsockConstants.SUBSET_START);
     }
 
-    final int last = Math.min(actNodes.size(), first + max);
+    CallProfile.phase(Phase.TRAVERSAL);
+    Node entry = ActivityChain.getFirst(person);
+    int relCount = 1;
+
+    // skip entries up to the cursor's position or the start of the subset
+    final PageCursor cursor = PageCursor.fromOptions(options);
+    if (cursor != null) {
+      if (!ActivityChain.ORDER_FIELD.equals(cursor.getField()) || !cursor.isDescending()) {
+        throw new IllegalArgumentException("cursor does not match the requested sort order");
+      }
+
+      first = 0;
+      while (entry != null
+              && PartialNodeSorter.compare(entry, cursor.getValue(), cursor.getNodeId(),
+                      ActivityChain.ORDER_FIELD, true) <= 0) {
+        entry = ActivityChain.getNext(entry);
+        ++first;
+        ++relCount;
+      }
+    } else {
+      for (int i = 0; i < first && entry != null; ++i) {
+        entry = ActivityChain.getNext(entry);
+        ++relCount;
+      }
+    }
 
     // convert the items requested
+    CallProfile.phase(Phase.CONVERT);
+    Node last = null;
+    while (entry != null && actEntries.size() < max) {
+      actEntries.add(new GraphActivityEntry(entry, this.fImpl, this.fObjectCache).toMap(fields));
+      last = entry;
+      entry = ActivityChain.getNext(entry);
+      ++relCount;
+    }
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
+    CallProfile.count(Counter.CONVERSIONS, actEntries.size());
+
+    final ListResult actColl = new ListResult(actEntries);
+    actColl.setFirst(first);
+    actColl.setMax(max);
+    actColl.setTotal(total);
+
+    // only continue if there are entries left
+    if (entry == null) {
+      last = null;
+    }
+    return PageCursor.attach(actColl, last, options);
+  }
+
+  /*
+   * adds the activities of the given people that came from the given application, using the
+   * application activity index instead of the people's complete histories
+   */
+  private void addAppActivities(Set<Node> people, String appId, final List<Node> activities) {
+    CallProfile.phase(Phase.LOOKUP);
+
+    IndexHits<Node> hits = null;
+    for (final Node person : people) {
+      hits = this.fAppActivityNodes.get(appId,
+              person.getProperty(GraphActivityStreamSPI.ID_FIELD));
+
+      try {
+        for (final Node actNode : hits) {
+          activities.add(actNode);
+        }
+        CallProfile.count(Counter.INDEX_HITS, hits.size());
+      } finally {
+        hits.close();
+      }
+    }
+  }
+
+  /*
+   * collects the people whose activities are requested, returns null if one of them has
+   * activities that are not linked in a chain yet
+   */
+  private Set<Node> getChainedPeople(List<String> userIds, String groupId) {
+    final Set<Node> people = getRequestedPeople(userIds, groupId);
+
+    for (final Node member : people) {
+      if (!ActivityChain.exists(member)
+              && member.hasRelationship(Direction.OUTGOING, Neo4jRelTypes.ACTED)) {
+        return null;
+      }
+    }
+
+    return people;
+  }
+
+  /*
+   * collects the people whose activities are requested, i.e. the people themselves, their
+   * friends or the members of a group
+   */
+  private Set<Node> getRequestedPeople(List<String> userIds, String groupId) {
+    final Set<Node> people = new LinkedHashSet<Node>();
+
+    final boolean self = groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
+            || groupId.equals(OSFields.GROUP_TYPE_ALL);
+    final boolean friends = groupId != null
+            && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
+                    .equals(OSFields.GROUP_TYPE_ALL));
+
+    CallProfile.phase(Phase.LOOKUP);
+    Node person = null;
+    for (final String id : userIds) {
+      person = this.fPersonSPI.getPersonNode(id);
+      CallProfile.count(Counter.INDEX_HITS, 1);
+
+      if (person == null) {
+        continue;
+      }
+      if (self) {
+        people.add(person);
+      }
+      if (friends) {
+        people.addAll(getFriendNodes(person));
+      }
+    }
+
+    if (groupId != null && groupId.charAt(0) != '@') {
+      people.addAll(this.fPersonSPI.getGroupMemberNodes(groupId));
+    }
+
+    return people;
+  }
+
+  /*
+   * reads the requested page of the newest entries of several people by merging their activity
+   * chains, stopping as soon as the page is complete; within a time range, entries newer than the
+   * range are skipped and the merge stops at the first entry older than the range, counting the
+   * entries in between for the total
+   */
+  private ListResult getMergedEntries(Set<Node> people, final Set<String> fields,
+          Map<String, Object> options) {
+    final List<Map<String, Object>> actEntries = this.fImpl.newList();
+    final boolean range = ActivityTime.isRange(options);
+    final long since = ActivityTime.getSince(options);
+    final long until = ActivityTime.getUntil(options);
+
+    // the chains' counts add up to the total without reading any entries
+    int total = 0;
+    for (final Node person : people) {
+      total += ActivityChain.getCount(person);
+    }
+
+    // determine the first and last index of entries to fetch
+    int max = 0;
+    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+    }
+
+    // if parameters are undefined, return all
+    if (max == 0) {
+      max = total;
+    }
+
+    int first = 0;
+    if (options.get(WebsockConstants.SUBSET_START) != null) {
+      first = (Integer) options.get(WebsockConstants.SUBSET_START);
+    }
+
+    CallProfile.phase(Phase.TRAVERSAL);
+    final ChainMerger merger = new ChainMerger(people);
+    Node entry = nextInRange(merger, range, since);
+
+    // skip entries newer than the range
+    while (range && entry != null && ActivityTime.getTimestamp(entry) > until) {
+      entry = nextInRange(merger, range, since);
+    }
+
+    // skip entries up to the cursor's position or the start of the subset
+    final PageCursor cursor = PageCursor.fromOptions(options);
+    if (cursor != null) {
+      if (!ActivityChain.ORDER_FIELD.equals(cursor.getField()) || !cursor.isDescending()) {
+        throw new IllegalArgumentException("cursor does not match the requested sort order");
+      }
+
+      first = 0;
+      while (entry != null
+              && PartialNodeSorter.compare(entry, cursor.getValue(), cursor.getNodeId(),
+                      ActivityChain.ORDER_FIELD, true) <= 0) {
+        entry = nextInRange(merger, range, since);
+        ++first;
+      }
+    } else {
+      int skipped = 0;
+      while (skipped < first && entry != null) {
+        entry = nextInRange(merger, range, since);
+        ++skipped;
+      }
+
+      // the position is needed to count the entries within the range
+      if (range) {
+        first = skipped;
+      }
+    }
+
+    // convert the items requested
+    CallProfile.phase(Phase.CONVERT);
+    Node last = null;
+    while (entry != null && actEntries.size() < max) {
+      actEntries.add(new GraphActivityEntry(entry, this.fImpl, this.fObjectCache).toMap(fields));
+      last = entry;
+      entry = nextInRange(merger, range, since);
+    }
+    CallProfile.count(Counter.CONVERSIONS, actEntries.size());
+
+    // only continue if there are entries left
+    if (entry == null) {
+      last = null;
+    }
+
+    // count the remaining entries within the range
+    if (range) {
+      total = first + actEntries.size();
+      while (entry != null) {
+        ++total;
+        entry = nextInRange(merger, range, since);
+      }
+    }
+    CallProfile.count(Counter.RELATIONSHIPS, merger.getTraversed());
+
+    final ListResult actColl = new ListResult(actEntries);
+    actColl.setFirst(first);
+    actColl.setMax(max);
+    actColl.setTotal(total);
+    return PageCursor.attach(actColl, last, options);
+  }
+
+  /*
+   * returns the next merged entry or null if there is none or it is older than the range, which
+   * ends the range since the chains are ordered by time
+   */
+  private Node nextInRange(ChainMerger merger, boolean range, long since) {
+    Node entry = null;
+    if (merger.hasNext()) {
+      entry = merger.next();
+
+      if (range) {
+        final Long timestamp = ActivityTime.getTimestamp(entry);
+        if (timestamp == null || timestamp < since) {
+          entry = null;
+        }
+      }
+    }
+    return entry;
+  }
+
+  /*
+   * reads the requested page of the newest entries of a person's friends from their timeline,
+   * returns null if there is no timeline, if the page reaches beyond the stored entries or if
+   * stored entries are no longer entries of the person's friends
+   */
+  private ListResult getTimelineEntries(Node person, final Set<String> fields,
+          Map<String, Object> options) {
+    try {
+      return readTimeline(person, fields, options);
+    } catch (final NotFoundException e) {
+      // entries deleted while reading, pruned on the next push
+      this.fLogger.log(Level.WARNING, "timeline contains missing entries", e);
+      return null;
+    }
+  }
+
+  private ListResult readTimeline(Node person, final Set<String> fields,
+          Map<String, Object> options) {
+    CallProfile.phase(Phase.LOOKUP);
+
+    // timelines are only built by writes, reading does not lock the person
+    if (!this.fTimelines.exists(person)) {
+      return null;
+    }
+
+    final long[] entries = this.fTimelines.getEntries(person);
+    final int total = this.fTimelines.getTotal(person);
+    final boolean complete = entries.length == total;
+
+    // determine the first and last index of entries to fetch
+    int max = 0;
+    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+    }
+
+    // if parameters are undefined, return all
+    if (max == 0) {
+      max = total;
+    }
+
+    int first = 0;
+    if (options.get(WebsockConstants.SUBSET_START) != null) {
+      first = (Integer) options.get(WebsockConstants.SUBSET_START);
+    }
+
+    // binary search for the first entry after the cursor's position
+    Set<Node> friends = null;
+    final PageCursor cursor = PageCursor.fromOptions(options);
+    if (cursor != null) {
+      if (!ActivityChain.ORDER_FIELD.equals(cursor.getField()) || !cursor.isDescending()) {
+        throw new IllegalArgumentException("cursor does not match the requested sort order");
+      }
+
+      friends = getFriendNodes(person);
+
+      int low = 0;
+      int high = entries.length;
+      Node node = null;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        node = this.fTimelines.getEntry(entries[mid], friends);
+        if (node == null) {
+          return null;
+        }
+
+        if (PartialNodeSorter.compare(node, cursor.getValue(), cursor.getNodeId(),
+                ActivityChain.ORDER_FIELD, true) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      first = low;
+    }
+
+    // the timeline does not contain the requested entries
+    final int last = (int) Math.min((long) first + max, total);
+    if (!complete && last > entries.length) {
+      return null;
+    }
+
+    // node IDs are reused, resolve all entries before converting any
+    if (friends == null && first < last) {
+      friends = getFriendNodes(person);
+    }
+    final List<Node> nodes = new ArrayList<Node>(Math.max(0, last - first));
+    Node node = null;
     for (int index = first; index < last; ++index) {
-      gActEntry = new GraphActivityEntry(actNodes.get(index), this.fImpl);
-      tmpEntry = gActEntry.toMap(fields);
-      actEntries.add(tmpEntry);
+      node = this.fTimelines.getEntry(entries[index], friends);
+      if (node == null) {
+        return null;
+      }
+      nodes.add(node);
+    }
+
+    final List<Map<String, Object>> actEntries = this.fImpl.newList();
+
+    CallProfile.phase(Phase.CONVERT);
+    for (final Node entry : nodes) {
+      actEntries.add(new GraphActivityEntry(entry, this.fImpl, this.fObjectCache).toMap(fields));
     }
+    CallProfile.count(Counter.CONVERSIONS, actEntries.size());
 
     final ListResult actColl = new ListResult(actEntries);
     actColl.setFirst(first);
     actColl.setMax(max);
-    actColl.setTotal(actNodes.size());
-    return actColl;
+    actColl.setTotal(total);
+
+    // only continue if there are entries left
+    if (last >= total) {
+      node = null;
+    }
+    return PageCursor.attach(actColl, node, options);
   }
 
   /**
    * Retrieves activities for the people and groups specified, as defined by the given options. User
-   * IDs may not be null or empty.
+   * IDs may not be null or empty. If an application ID is given, only activities that came from
+   * this application are retrieved.
    *
    * @param userIds
    *          set of user IDs to base the request on
@@ -217,52 +796,112 @@ public class GraphActivityStreamSPI {
    */
   public ListResult getActivityEntries(List<String> userIds, String groupId, String appId,
           Map<String, Object> options, List<String> fields) {
-    // TODO: retrieve by application
-
     final Set<String> fieldSet = new HashSet<String>();
     if (fields != null) {
       fieldSet.addAll(fields);
     }
     final List<Node> activities = new ArrayList<Node>();
 
-    // activities of the people themselves
-    if (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
-            || groupId.equals(OSFields.GROUP_TYPE_ALL)) {
-      for (final String id : userIds) {
-        addActivities(id, null, activities);
+    final int level = CallProfile.start(options);
+    try {
+      ActivityTime.normalizeSort(options);
+
+      // an application's activities are looked up in the application activity index
+      if (appId != null) {
+        addAppActivities(getRequestedPeople(userIds, groupId), appId, activities);
       }
-    }
 
-    // activities for friends
-    if (groupId != null
-            && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
-                    .equals(OSFields.GROUP_TYPE_ALL))) {
-      for (final String id : userIds) {
-        addFriendActivities(id, null, activities);
+      // a single person's newest activities can be read from their chain
+      if (appId == null && userIds.size() == 1
+              && (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF))
+              && options.get(WebsockConstants.FILTER_FIELD) == null
+              && !ActivityTime.isRange(options) && ActivityChain.isChainOrder(options)) {
+        CallProfile.phase(Phase.LOOKUP);
+        final Node person = this.fPersonSPI.getPersonNode(userIds.get(0));
+        CallProfile.count(Counter.INDEX_HITS, 1);
+
+        if (person != null && ActivityChain.exists(person)) {
+          return CallProfile.finish(getNewestEntries(person, fieldSet, options), this.fImpl);
+        }
       }
-    }
 
-    // activities for the members of a group
-    if (groupId != null && groupId.charAt(0) != '@') {
-      final Set<Node> memNodes = this.fPersonSPI.getGroupMemberNodes(groupId);
+      // a single person's friends stream can be read from their timeline
+      if (appId == null && this.fTimelines != null && userIds.size() == 1
+              && OSFields.GROUP_TYPE_FRIENDS.equals(groupId)
+              && options.get(WebsockConstants.FILTER_FIELD) == null
+              && !ActivityTime.isRange(options) && ActivityChain.isChainOrder(options)) {
+        CallProfile.phase(Phase.LOOKUP);
+        final Node person = this.fPersonSPI.getPersonNode(userIds.get(0));
+        CallProfile.count(Counter.INDEX_HITS, 1);
+
+        if (person != null) {
+          final ListResult result = getTimelineEntries(person, fieldSet, options);
+          if (result != null) {
+            return CallProfile.finish(result, this.fImpl);
+          }
+        }
+      }
 
-      for (final Node memNode : memNodes) {
-        addActivities(memNode, null, activities);
+      // the newest activities of several people can be merged from their chains, also within a
+      // time range
+      if (appId == null && options.get(WebsockConstants.FILTER_FIELD) == null
+              && ActivityChain.isChainOrder(options)) {
+        final Set<Node> people = getChainedPeople(userIds, groupId);
+
+        if (people != null) {
+          return CallProfile.finish(getMergedEntries(people, fieldSet, options), this.fImpl);
+        }
       }
-    }
 
-    // filter
-    NodeFilter.filterNodes(activities, options);
-    // TODO: other filters?
+      // activities of the people themselves
+      if (appId == null
+              && (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF) || groupId
+                      .equals(OSFields.GROUP_TYPE_ALL))) {
+        for (final String id : userIds) {
+          addActivities(id, activities);
+        }
+      }
 
-    // sort as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null) {
-      options.put(WebsockConstants.SORT_FIELD, OSFields.ID_FIELD);
-    }
-    NodeSorter.sortNodes(activities, options);
+      // activities for friends
+      if (appId == null
+              && groupId != null
+              && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
+                      .equals(OSFields.GROUP_TYPE_ALL))) {
+        for (final String id : userIds) {
+          addFriendActivities(id, activities);
+        }
+      }
+
+      // activities for the members of a group
+      if (appId == null && groupId != null && groupId.charAt(0) != '@') {
+        final Set<Node> memNodes = this.fPersonSPI.getGroupMemberNodes(groupId);
+
+        for (final Node memNode : memNodes) {
+          addActivities(memNode, activities);
+        }
+      }
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, activities.size());
+      NodeFilter.filterNodes(activities, options);
+      ActivityTime.filter(activities, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, activities.size());
+
+      // sort as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null) {
+        options.put(WebsockConstants.SORT_FIELD, OSFields.ID_FIELD);
+      }
+      final int first = PartialNodeSorter.sortNodes(activities, options);
 
-    return convertRequested(activities, fieldSet, options);
+      return CallProfile.finish(convertRequested(activities, fieldSet, options, first),
+              this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   /**
@@ -293,46 +932,37 @@ public class GraphActivityStreamSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final Set<String> actIdSet = new HashSet<String>();
-    if (activityIds != null) {
-      actIdSet.addAll(activityIds);
-    }
+    final Set<String> actIdSet = new HashSet<String>(activityIds);
     final List<Node> activities = new ArrayList<Node>();
 
-    // activities of the people themselves
-    if (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
-            || groupId.equals(OSFields.GROUP_TYPE_ALL)) {
-      addActivities(userId, actIdSet, activities);
-    }
-
-    // activities for friends
-    if (groupId != null
-            && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
-                    .equals(OSFields.GROUP_TYPE_ALL))) {
-      addFriendActivities(userId, actIdSet, activities);
-    }
-
-    // activities for the members of a group
-    if (groupId != null && groupId.charAt(0) != '@') {
-      final Set<Node> memNodes = this.fPersonSPI.getGroupMemberNodes(groupId);
-
-      for (final Node memNode : memNodes) {
-        addActivities(memNode, null, activities);
+    final int level = CallProfile.start(options);
+    try {
+      ActivityTime.normalizeSort(options);
+
+      // look up requested activities visible to the user
+      addIndexedActivities(userId, groupId, actIdSet, activities);
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, activities.size());
+      NodeFilter.filterNodes(activities, options);
+      ActivityTime.filter(activities, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, activities.size());
+
+      // sort as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null) {
+        options.put(WebsockConstants.SORT_FIELD, ActivityTime.TIMESTAMP_FIELD);
       }
-    }
+      final int first = PartialNodeSorter.sortNodes(activities, options);
 
-    // filter
-    NodeFilter.filterNodes(activities, options);
-    // TODO: other filters?
-
-    // sort as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null) {
-      options.put(WebsockConstants.SORT_FIELD, OSFields.ACT_PUBLISHED_FIELD);
+      return CallProfile.finish(convertRequested(activities, fieldSet, options, first),
+              this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-    NodeSorter.sortNodes(activities, options);
-
-    return convertRequested(activities, fieldSet, options);
   }
 
   /**
@@ -362,26 +992,12 @@ public class GraphActivityStreamSPI {
     }
     Map<String, Object> activity = null;
 
-    // TODO: groups, friends?
+    final List<Node> activities = new ArrayList<Node>(1);
+    addIndexedActivities(userId, groupId, Collections.singleton(activityId), activities);
 
-    // TODO: are those IDs unique? - maybe build an index
-
-    final Node person = this.fPersonSPI.getPersonNode(userId);
-
-    if (person != null) {
-      final Iterable<Relationship> actRels = person.getRelationships(Neo4jRelTypes.ACTED);
-
-      String id = null;
-      Node actNode = null;
-      for (final Relationship rel : actRels) {
-        actNode = rel.getEndNode();
-        id = actNode.getProperty(OSFields.ID_FIELD).toString();
-
-        if (activityId.equals(id)) {
-          activity = new GraphActivityEntry(actNode, this.fImpl).toMap(fieldSet);
-          break;
-        }
-      }
+    if (!activities.isEmpty()) {
+      activity = new GraphActivityEntry(activities.get(0), this.fImpl, this.fObjectCache)
+              .toMap(fieldSet);
     }
 
     return new SingleResult(activity);
@@ -406,29 +1022,43 @@ public class GraphActivityStreamSPI {
       actIdSet.addAll(activityIds);
     }
     final List<Node> activities = new ArrayList<Node>();
-    addActivities(userId, actIdSet, activities);
+    addIndexedActivities(userId, OSFields.GROUP_TYPE_SELF, actIdSet, activities);
 
     final Set<Node> actObjs = new HashSet<Node>();
-    Iterable<Relationship> objRels = null;
 
+    // deleted entries are no longer found, so a failed deletion can be repeated
+    new ChunkedDeleter(this.fDatabase, this.fDeletionChunkSize).delete(activities,
+            new ChunkedDeleter.Deletion() {
+              @Override
+              public void delete(Node activity) {
+                deleteEntry(activity, actObjs);
+              }
+
+              @Override
+              public void finishChunk() {
+                // free objects only used by the chunk's entries
+                GraphActivityStreamSPI.this.fActObjSPI.deleteIfUnused(actObjs);
+                actObjs.clear();
+              }
+            });
+  }
+
+  /**
+   * Deletes the given activity entry nodes and the activity objects only they used in one
+   * transaction, joining the calling thread's transaction if there is one.
+   *
+   * @param activities
+   *          activity entry nodes to delete
+   */
+  public void deleteActivityNodes(Collection<Node> activities) {
+    final Set<Node> actObjs = new HashSet<Node>();
     final Transaction tx = this.fDatabase.beginTx();
 
     try {
       for (final Node activity : activities) {
-        // collect activity objects
-        objRels = activity.getRelationships(Neo4jRelTypes.ACTOR, Neo4jRelTypes.GENERATOR,
-                Neo4jRelTypes.OBJECT, Neo4jRelTypes.TARGET, Neo4jRelTypes.PROVIDER);
-
-        for (final Relationship rel : objRels) {
-          actObjs.add(rel.getEndNode());
-        }
-
-        // delete activity entry
-        for (final Relationship rel : activity.getRelationships()) {
-          rel.delete();
-        }
-        activity.delete();
+        deleteEntry(activity, actObjs);
       }
+      this.fActObjSPI.deleteIfUnused(actObjs);
 
       tx.success();
       tx.finish();
@@ -438,9 +1068,35 @@ public class GraphActivityStreamSPI {
 
       throw new RuntimeException(e);
     }
+  }
+
+  private void deleteEntry(Node activity, Set<Node> actObjs) {
+    // collect activity objects
+    final Iterable<Relationship> objRels = activity.getRelationships(Neo4jRelTypes.ACTOR,
+            Neo4jRelTypes.GENERATOR, Neo4jRelTypes.OBJECT, Neo4jRelTypes.TARGET,
+            Neo4jRelTypes.PROVIDER);
+
+    for (final Relationship rel : objRels) {
+      actObjs.add(rel.getEndNode());
+    }
 
-    // free unused objects if possible
-    this.fActObjSPI.deleteIfUnused(actObjs);
+    // unlink from the owner's chain
+    final Node owner = getOwner(activity);
+    if (owner != null) {
+      ActivityChain.remove(owner, activity);
+
+      if (this.fTimelines != null) {
+        this.fTimelines.remove(owner, activity);
+      }
+    }
+
+    // delete activity entry
+    for (final Relationship rel : activity.getRelationships()) {
+      rel.delete();
+    }
+    this.fActivityNodes.remove(activity);
+    this.fAppActivityNodes.remove(activity);
+    activity.delete();
   }
 
   public SingleResult updateActivityEntry(String userId, String groupId, String appId,
@@ -448,23 +1104,18 @@ public class GraphActivityStreamSPI {
     // TODO: appId?
 
     // get activity
-    Node actNode = null;
     final Node person = this.fPersonSPI.getPersonNode(userId);
     if (person == null) {
       throw new RuntimeException("person not found");
     }
 
-    final Iterable<Relationship> actRels = person.getRelationships(Neo4jRelTypes.ACTED,
-            Direction.OUTGOING);
-    Node tmpNode = null;
-    for (final Relationship rel : actRels) {
-      tmpNode = rel.getEndNode();
-
-      if (activityId.equals(tmpNode.getProperty(GraphActivityStreamSPI.ID_FIELD))) {
-        actNode = tmpNode;
-        break;
-      }
+    final List<Node> activities = new ArrayList<Node>(1);
+    addIndexedActivities(userId, OSFields.GROUP_TYPE_SELF, Collections.singleton(activityId),
+            activities);
+    if (activities.isEmpty()) {
+      throw new RuntimeException("activity " + activityId + " not found");
     }
+    final Node actNode = activities.get(0);
 
     final Transaction tx = this.fDatabase.beginTx();
 
@@ -485,6 +1136,17 @@ public class GraphActivityStreamSPI {
       // update
       storeEntry(actNode, activity);
 
+      // move within the chain if the publishing date changed
+      if (activity.containsKey(OSFields.ACT_PUBLISHED_FIELD)) {
+        ActivityChain.remove(person, actNode);
+        ActivityChain.insert(person, actNode);
+
+        if (this.fTimelines != null) {
+          this.fTimelines.remove(person, actNode);
+          this.fTimelines.push(person, actNode);
+        }
+      }
+
       tx.success();
       tx.finish();
     } catch (final Exception e) {
@@ -493,15 +1155,18 @@ public class GraphActivityStreamSPI {
       tx.finish();
     }
 
-    final GraphActivityEntry actEntry = new GraphActivityEntry(actNode, this.fImpl);
+    final GraphActivityEntry actEntry = new GraphActivityEntry(actNode, this.fImpl,
+            this.fObjectCache);
     return new SingleResult(actEntry.toMap(null));
   }
 
   @SuppressWarnings("unchecked")
   private GraphActivityEntry storeEntry(final Node actNode, final Map<String, Object> entry) {
-    final GraphActivityEntry gActEntry = new GraphActivityEntry(actNode, this.fImpl);
+    final GraphActivityEntry gActEntry = new GraphActivityEntry(actNode, this.fImpl,
+            this.fObjectCache);
 
     gActEntry.setData(entry);
+    ActivityTime.update(actNode);
 
     // link to activity objects
     Node actObject = null;
@@ -584,22 +1249,13 @@ public class GraphActivityStreamSPI {
     final Transaction tx = this.fDatabase.beginTx();
 
     try {
-
-      final Node actNode = this.fDatabase.createNode();
-      activity.put(OSFields.ID_FIELD, id);
-
-      // store information
-      gActEntry = storeEntry(actNode, activity);
-
-      // link to user
-      person.createRelationshipTo(actNode, Neo4jRelTypes.ACTED);
-
-      // link to application
+      Node application = null;
       if (appId != null) {
-        final Node application = this.fApplicationSPI.getApplication(appId);
-        actNode.createRelationshipTo(application, Neo4jRelTypes.CAME_FROM);
+        application = this.fApplicationSPI.getApplication(appId);
       }
 
+      gActEntry = createEntry(person, application, id, activity);
+
       tx.success();
       tx.finish();
     } catch (final Exception e) {
@@ -614,4 +1270,438 @@ public class GraphActivityStreamSPI {
     final Map<String, Object> entry = gActEntry.toMap(fieldSet);
     return new SingleResult(entry);
   }
+
+  private GraphActivityEntry createEntry(Node person, Node application, String id,
+          Map<String, Object> activity) {
+    final Node actNode = this.fDatabase.createNode();
+    final GraphActivityEntry gActEntry = createUnlinked(actNode, person, application, id,
+            activity);
+
+    ActivityChain.insert(person, actNode);
+    if (this.fTimelines != null) {
+      this.fTimelines.push(person, actNode);
+    }
+
+    return gActEntry;
+  }
+
+  /*
+   * stores an entry in the given node without linking it into its person's chain and the
+   * timelines
+   */
+  private GraphActivityEntry createUnlinked(Node actNode, Node person, Node application,
+          String id, Map<String, Object> activity) {
+    activity.put(OSFields.ID_FIELD, id);
+    this.fActivityNodes.add(actNode, GraphActivityStreamSPI.ID_FIELD, id);
+
+    // store information
+    final GraphActivityEntry gActEntry = storeEntry(actNode, activity);
+
+    // link to user
+    person.createRelationshipTo(actNode, Neo4jRelTypes.ACTED);
+
+    // link to application
+    if (application != null) {
+      actNode.createRelationshipTo(application, Neo4jRelTypes.CAME_FROM);
+      this.fAppActivityNodes.add(actNode, (String) application.getProperty(OSFields.ID_FIELD),
+              person.getProperty(GraphActivityStreamSPI.ID_FIELD));
+    }
+
+    return gActEntry;
+  }
+
+  /**
+   * Creates a list of activities for possibly different users and applications. Each entry is a
+   * map containing the user's ID, an optional application ID and the activity data. People and
+   * applications are only looked up once per call, IDs are reserved for a whole chunk before its
+   * transaction is opened and activities are committed in chunks of the configured size. Failing
+   * entries do not abort the call; the returned list contains a status map for each entry, in
+   * the same order, holding either the new activity's ID or an error message.
+   *
+   * @param entries
+   *          list of entries to create
+   * @return list of status maps
+   */
+  public ListResult createActivityEntries(List<Map<String, Object>> entries) {
+    if (entries == null) {
+      throw new RuntimeException("activity entry list was null");
+    }
+
+    final List<Map<String, Object>> results = this.fImpl.newList();
+    final Map<String, Node> people = new HashMap<String, Node>();
+    final Map<String, Node> applications = new HashMap<String, Node>();
+    final List<BulkEntry> chunk = new ArrayList<BulkEntry>();
+
+    for (final Map<String, Object> entry : entries) {
+      final Map<String, Object> status = this.fImpl.newMap();
+      results.add(status);
+
+      final String userId = (String) entry.get(GraphActivityStreamSPI.BULK_USER_FIELD);
+      @SuppressWarnings("unchecked")
+      final Map<String, Object> activity = (Map<String, Object>) entry
+              .get(GraphActivityStreamSPI.BULK_ACTIVITY_FIELD);
+      if (activity == null) {
+        status.put(GraphActivityStreamSPI.BULK_ERROR_FIELD, "activity data map was null");
+        continue;
+      }
+
+      Node person = people.get(userId);
+      if (person == null && !people.containsKey(userId)) {
+        person = this.fPersonSPI.getPersonNode(userId);
+        people.put(userId, person);
+      }
+      if (person == null) {
+        status.put(GraphActivityStreamSPI.BULK_ERROR_FIELD, "User with ID \"" + userId
+                + "\" not found");
+        continue;
+      }
+
+      chunk.add(new BulkEntry(person,
+              (String) entry.get(GraphActivityStreamSPI.BULK_APP_FIELD), activity, status));
+      if (chunk.size() >= this.fBulkChunkSize) {
+        createChunk(chunk, applications);
+        chunk.clear();
+      }
+    }
+
+    if (!chunk.isEmpty()) {
+      createChunk(chunk, applications);
+    }
+
+    return new ListResult(results);
+  }
+
+  private void createChunk(List<BulkEntry> chunk, Map<String, Node> applications) {
+    // reserve the chunk's IDs outside of its transaction
+    for (final BulkEntry entry : chunk) {
+      entry.fId = this.fIDMan.genID(ShindigConstants.ACTIVITY_ENTRY_NODES);
+    }
+
+    final Transaction tx = this.fDatabase.beginTx();
+    try {
+      // new entries grouped by person, linked in one walk along each chain
+      final Map<Node, List<Node>> created = new LinkedHashMap<Node, List<Node>>();
+      List<Node> personEntries = null;
+      Node actNode = null;
+      for (final BulkEntry entry : chunk) {
+        personEntries = created.get(entry.fPerson);
+        if (personEntries == null) {
+          personEntries = new ArrayList<Node>();
+          created.put(entry.fPerson, personEntries);
+        }
+
+        actNode = this.fDatabase.createNode();
+        createUnlinked(actNode, entry.fPerson, getApplication(entry.fAppId, applications),
+                entry.fId, entry.fActivity);
+        personEntries.add(actNode);
+      }
+
+      final Map<String, Object> order = new HashMap<String, Object>();
+      order.put(WebsockConstants.SORT_FIELD, ActivityChain.ORDER_FIELD);
+      order.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+      for (final Entry<Node, List<Node>> personE : created.entrySet()) {
+        PartialNodeSorter.sortNodes(personE.getValue(), order, true);
+
+        ActivityChain.insertAll(personE.getKey(), personE.getValue());
+        if (this.fTimelines != null) {
+          this.fTimelines.pushAll(personE.getKey(), personE.getValue());
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      this.fLogger.log(Level.WARNING, "bulk chunk failed, creating entries one by one", e);
+
+      tx.failure();
+      tx.finish();
+
+      // applications created in the chunk were rolled back
+      applications.clear();
+      createSingly(chunk, applications);
+      return;
+    }
+
+    for (final BulkEntry entry : chunk) {
+      entry.fStatus.put(GraphActivityStreamSPI.BULK_ID_FIELD, entry.fId);
+    }
+  }
+
+  private void createSingly(List<BulkEntry> chunk, Map<String, Node> applications) {
+    for (final BulkEntry entry : chunk) {
+      final Transaction tx = this.fDatabase.beginTx();
+      try {
+        createEntry(entry.fPerson, getApplication(entry.fAppId, applications), entry.fId,
+                entry.fActivity);
+
+        tx.success();
+        tx.finish();
+
+        entry.fStatus.put(GraphActivityStreamSPI.BULK_ID_FIELD, entry.fId);
+      } catch (final Exception e) {
+        tx.failure();
+        tx.finish();
+
+        applications.clear();
+        entry.fStatus.put(GraphActivityStreamSPI.BULK_ERROR_FIELD, String.valueOf(e.getMessage()));
+      }
+    }
+  }
+
+  private Node getApplication(String appId, Map<String, Node> applications) {
+    Node application = null;
+
+    if (appId != null) {
+      application = applications.get(appId);
+      if (application == null) {
+        application = this.fApplicationSPI.getApplication(appId);
+        applications.put(appId, application);
+      }
+    }
+
+    return application;
+  }
+
+  /**
+   * Adds all activity entries of all people to the activity ID index, as needed for entries
+   * created before the index was introduced. Entries that are already indexed are indexed again
+   * without duplicates, so that an interrupted run can simply be repeated. Changes are committed in
+   * chunks.
+   */
+  public void indexActivityIds() {
+    final Index<Node> personNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.PERSON_NODES);
+    final IndexHits<Node> people = personNodes.query(GraphActivityStreamSPI.ID_FIELD, "*");
+
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+
+    try {
+      Node actNode = null;
+      Object id = null;
+      for (final Node person : people) {
+        for (final Relationship rel : person.getRelationships(Neo4jRelTypes.ACTED,
+                Direction.OUTGOING)) {
+          actNode = rel.getEndNode();
+          id = actNode.getProperty(GraphActivityStreamSPI.ID_FIELD, null);
+
+          if (id != null) {
+            // remove first so that repeated runs do not add duplicates
+            this.fActivityNodes.remove(actNode, GraphActivityStreamSPI.ID_FIELD, id);
+            this.fActivityNodes.add(actNode, GraphActivityStreamSPI.ID_FIELD, id);
+
+            // commit in chunks to limit the transaction's size
+            if (++count % GraphActivityStreamSPI.INDEX_CHUNK_SIZE == 0) {
+              tx.success();
+              tx.finish();
+              tx = this.fDatabase.beginTx();
+            }
+            logProgress("indexed", count - 1, count);
+          }
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      this.fLogger.log(Level.SEVERE, "failed to index activity entries", e);
+
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    } finally {
+      people.close();
+    }
+
+    this.fLogger.log(Level.INFO, "indexed " + count + " activity entries");
+  }
+
+  /**
+   * Adds all activity entries of all people that came from an application to the application
+   * activity index, as needed for entries created before the index was introduced. Entries that
+   * are already indexed are indexed again without duplicates, so that an interrupted run can simply
+   * be repeated. Changes are committed in chunks.
+   */
+  public void indexActivityApps() {
+    final Index<Node> personNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.PERSON_NODES);
+    final IndexHits<Node> people = personNodes.query(GraphActivityStreamSPI.ID_FIELD, "*");
+
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+
+    try {
+      Node actNode = null;
+      Relationship appRel = null;
+      String appId = null;
+      Object userId = null;
+      for (final Node person : people) {
+        userId = person.getProperty(GraphActivityStreamSPI.ID_FIELD);
+
+        for (final Relationship rel : person.getRelationships(Neo4jRelTypes.ACTED,
+                Direction.OUTGOING)) {
+          actNode = rel.getEndNode();
+          appRel = actNode.getSingleRelationship(Neo4jRelTypes.CAME_FROM, Direction.OUTGOING);
+
+          if (appRel != null) {
+            appId = (String) appRel.getEndNode().getProperty(OSFields.ID_FIELD);
+
+            // remove first so that repeated runs do not add duplicates
+            this.fAppActivityNodes.remove(actNode, appId, userId);
+            this.fAppActivityNodes.add(actNode, appId, userId);
+
+            // commit in chunks to limit the transaction's size
+            if (++count % GraphActivityStreamSPI.INDEX_CHUNK_SIZE == 0) {
+              tx.success();
+              tx.finish();
+              tx = this.fDatabase.beginTx();
+            }
+            logProgress("indexed", count - 1, count);
+          }
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      this.fLogger.log(Level.SEVERE, "failed to index activity entries by application", e);
+
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    } finally {
+      people.close();
+    }
+
+    this.fLogger.log(Level.INFO, "indexed " + count + " activity entries by application");
+  }
+
+  /**
+   * Adds numeric publishing timestamps to all activity entries of all people, as needed for
+   * entries created before timestamps were introduced. Existing chains are rebuilt, as they were
+   * ordered by the dates' string representation. Timestamps are recalculated, so that an
+   * interrupted run can simply be repeated. Timestamps are committed in chunks, each chain is
+   * rebuilt in chunks of its own afterwards.
+   */
+  public void addTimestamps() {
+    final Index<Node> personNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.PERSON_NODES);
+    final IndexHits<Node> people = personNodes.query(GraphActivityStreamSPI.ID_FIELD, "*");
+
+    int count = 0;
+    try {
+      int added = 0;
+      for (final Node person : people) {
+        added = addTimestamps(person);
+
+        if (ActivityChain.exists(person)) {
+          ActivityChain.rebuild(person, GraphActivityStreamSPI.INDEX_CHUNK_SIZE);
+        }
+
+        logProgress("added timestamps to", count, count + added);
+        count += added;
+      }
+    } catch (final RuntimeException e) {
+      this.fLogger.log(Level.SEVERE, "failed to add activity timestamps", e);
+
+      throw e;
+    } finally {
+      people.close();
+    }
+
+    this.fLogger.log(Level.INFO, "added timestamps to " + count + " activity entries");
+  }
+
+  private int addTimestamps(Node person) {
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+
+    try {
+      for (final Relationship rel : person.getRelationships(Neo4jRelTypes.ACTED,
+              Direction.OUTGOING)) {
+        ActivityTime.update(rel.getEndNode());
+
+        // commit in chunks to limit the transaction's size
+        if (++count % GraphActivityStreamSPI.INDEX_CHUNK_SIZE == 0) {
+          tx.success();
+          tx.finish();
+          tx = this.fDatabase.beginTx();
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    return count;
+  }
+
+  /**
+   * Links the activity entries of all people without a chain in time-ordered chains, as needed
+   * for entries created before chains were introduced. People that already have a chain are
+   * skipped, so that an interrupted run can simply be repeated. Changes are committed in chunks,
+   * also within a person's chain.
+   */
+  public void buildActivityChains() {
+    final Index<Node> personNodes = this.fDatabase.index().forNodes(
+            ShindigConstants.PERSON_NODES);
+    final IndexHits<Node> people = personNodes.query(GraphActivityStreamSPI.ID_FIELD, "*");
+
+    int count = 0;
+    try {
+      int linked = 0;
+      for (final Node person : people) {
+        if (!ActivityChain.exists(person)) {
+          linked = ActivityChain.rebuild(person, GraphActivityStreamSPI.INDEX_CHUNK_SIZE);
+
+          logProgress("linked", count, count + linked);
+          count += linked;
+        }
+      }
+    } catch (final RuntimeException e) {
+      this.fLogger.log(Level.SEVERE, "failed to build activity chains", e);
+
+      throw e;
+    } finally {
+      people.close();
+    }
+
+    this.fLogger.log(Level.INFO, "linked " + count + " activity entries in chains");
+  }
+
+  /*
+   * logs the progress of a migration whenever the number of processed entries passes a multiple
+   * of the progress interval
+   */
+  private void logProgress(String action, int before, int after) {
+    final int interval = GraphActivityStreamSPI.PROGRESS_INTERVAL;
+    if (after / interval > before / interval) {
+      this.fLogger.log(Level.INFO, action + " " + after / interval * interval
+              + " activity entries so far");
+    }
+  }
+
+  private static class BulkEntry {
+    private final Node fPerson;
+    private final String fAppId;
+    private final Map<String, Object> fActivity;
+    private final Map<String, Object> fStatus;
+
+    private String fId;
+
+    public BulkEntry(Node person, String appId, Map<String, Object> activity,
+            Map<String, Object> status) {
+      this.fPerson = person;
+      this.fAppId = appId;
+      this.fActivity = activity;
+      this.fStatus = status;
+    }
+  }
 }
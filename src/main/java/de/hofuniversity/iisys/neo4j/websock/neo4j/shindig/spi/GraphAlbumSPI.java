@@ -35,8 +35,8 @@ import org.neo4j.graphdb.Transaction;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphAlbum;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -148,7 +148,7 @@ public class GraphAlbumSPI {
     if (sortField == null) {
       options.put(WebsockConstants.SORT_FIELD, OSFields.ID_FIELD);
     }
-    NodeSorter.sortNodes(albNodes, options);
+    final int first = PartialNodeSorter.sortNodes(albNodes, options);
 
     GraphAlbum gAlbum = null;
     Map<String, Object> tmpAlbum = null;
@@ -164,11 +164,6 @@ public class GraphAlbumSPI {
       max = albNodes.size();
     }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
     final int last = Math.min(albNodes.size(), first + max);
 
     // convert the items requested
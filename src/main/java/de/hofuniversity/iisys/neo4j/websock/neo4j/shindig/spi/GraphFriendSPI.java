@@ -39,8 +39,9 @@ import org.neo4j.graphdb.Transaction;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphPerson;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -89,6 +90,8 @@ public class GraphFriendSPI {
   private final Logger fLogger;
 
   private GraphActivityStreamSPI fActivities;
+  private AutoActivityQueue fActivityQueue;
+  private TimelineService fTimelines;
 
   /**
    * Creates a friendship service using people from the given person service. Throws a
@@ -156,6 +159,27 @@ public class GraphFriendSPI {
     this.fActivities = activities;
   }
 
+  /**
+   * Sets the queue event-based activities are created asynchronously with. If it is not set,
+   * activities are created synchronously using the activitystreams service.
+   *
+   * @param queue
+   *          activity queue to use, may be null
+   */
+  public void setActivityQueue(AutoActivityQueue queue) {
+    this.fActivityQueue = queue;
+  }
+
+  /**
+   * Sets the timeline service whose friend timelines are updated when friendships change.
+   *
+   * @param timelines
+   *          timeline service to use
+   */
+  public void setTimelines(TimelineService timelines) {
+    this.fTimelines = timelines;
+  }
+
   private List<Node> getRequestPeople(String id) {
     final Node person = this.fPersonSPI.getPersonNode(id);
     final List<Node> nodeList = new ArrayList<Node>();
@@ -202,7 +226,7 @@ public class GraphFriendSPI {
     if (sortField == null || sortField.equals(OSFields.NAME_FIELD)) {
       options.put(WebsockConstants.SORT_FIELD, OSFields.FORMATTED_FIELD);
     }
-    NodeSorter.sortNodes(nodeList, options);
+    final int first = PartialNodeSorter.sortNodes(nodeList, options);
 
     GraphPerson gPerson = null;
     Map<String, Object> tmpPerson = null;
@@ -218,11 +242,6 @@ public class GraphFriendSPI {
       max = nodeList.size();
     }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
     final int last = Math.min(nodeList.size(), first + max);
 
     // convert the items requested
@@ -239,7 +258,7 @@ public class GraphFriendSPI {
     people.setMax(max);
     people.setTotal(nodeList.size());
 
-    return people;
+    return PageCursor.attach(people, nodeList, options);
   }
 
   private List<Relationship> areFriends(Node user, Node target) {
@@ -300,6 +319,11 @@ public class GraphFriendSPI {
           user.createRelationshipTo(friend, Neo4jRelTypes.FRIEND_OF);
           friend.createRelationshipTo(user, Neo4jRelTypes.FRIEND_OF);
 
+          if (this.fTimelines != null) {
+            this.fTimelines.addFriend(user, friend);
+            this.fTimelines.addFriend(friend, user);
+          }
+
           tx.success();
           tx.finish();
         } catch (final Exception e) {
@@ -396,6 +420,11 @@ public class GraphFriendSPI {
             rel.delete();
           }
 
+          if (this.fTimelines != null) {
+            this.fTimelines.removeFriend(user, friend);
+            this.fTimelines.removeFriend(friend, user);
+          }
+
           tx.success();
           tx.finish();
         } catch (final Exception e) {
@@ -498,6 +527,11 @@ public class GraphFriendSPI {
       final String timestamp = this.fDateFormat.format(new Date(System.currentTimeMillis()));
       activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp);
 
+      if (this.fActivityQueue != null) {
+        this.fActivityQueue.submit(userId, OSFields.SHINDIG_ID, activity);
+        return;
+      }
+
       try {
         this.fActivities.createActivityEntry(userId, null, OSFields.SHINDIG_ID, activity, null);
       } catch (final Exception e) {
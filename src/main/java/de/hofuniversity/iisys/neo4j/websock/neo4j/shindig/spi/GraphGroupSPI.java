@@ -30,8 +30,8 @@ import org.neo4j.graphdb.Relationship;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphGroup;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -108,7 +108,7 @@ public class GraphGroupSPI {
     if (sortField == null) {
       options.put(WebsockConstants.SORT_FIELD, GraphGroupSPI.TITLE_FIELD);
     }
-    NodeSorter.sortNodes(groupNodes, options);
+    final int first = PartialNodeSorter.sortNodes(groupNodes, options);
 
     // determine the first and last index of entries to fetch
     int max = 0;
@@ -121,11 +121,6 @@ public class GraphGroupSPI {
       max = groupNodes.size();
     }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
     final int last = Math.min(groupNodes.size(), first + max);
 
     // convert the items requested
@@ -34,8 +34,12 @@ import org.neo4j.graphdb.Transaction;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphMediaItem;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -159,17 +163,22 @@ public class GraphMediaItemSPI {
   private ListResult convert(final List<Node> itemNodes, final Map<String, Object> options,
           final Set<String> fields) {
     final List<Map<String, Object>> itemMaps = this.fImpl.newList();
+    CallProfile.count(Counter.RELATIONSHIPS, itemNodes.size());
 
     // filter
+    CallProfile.phase(Phase.FILTER);
+    CallProfile.count(Counter.FILTER_INPUT, itemNodes.size());
     NodeFilter.filterNodes(itemNodes, options);
     // TODO: other filters?
+    CallProfile.count(Counter.FILTER_OUTPUT, itemNodes.size());
 
     // sort as defined by parameters
+    CallProfile.phase(Phase.SORT);
     final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
     if (sortField == null) {
       options.put(WebsockConstants.SORT_FIELD, OSFields.ID_FIELD);
     }
-    NodeSorter.sortNodes(itemNodes, options);
+    final int first = PartialNodeSorter.sortNodes(itemNodes, options);
 
     GraphMediaItem gItem = null;
     Map<String, Object> tmpItem = null;
@@ -185,25 +194,22 @@ public class GraphMediaItemSPI {
       max = itemNodes.size();
     }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
     final int last = Math.min(itemNodes.size(), first + max);
 
     // convert the items requested
+    CallProfile.phase(Phase.CONVERT);
     for (int index = first; index < last; ++index) {
       gItem = new GraphMediaItem(itemNodes.get(index), this.fImpl);
       tmpItem = gItem.toMap(fields);
       itemMaps.add(tmpItem);
     }
+    CallProfile.count(Counter.CONVERSIONS, itemMaps.size());
 
     final ListResult result = new ListResult(itemMaps);
     result.setFirst(first);
     result.setMax(max);
     result.setTotal(itemNodes.size());
-    return result;
+    return CallProfile.finish(PageCursor.attach(result, itemNodes, options), this.fImpl);
   }
 
   /**
@@ -229,48 +235,58 @@ public class GraphMediaItemSPI {
     final List<Node> itemNodes = new ArrayList<Node>();
     Node albNode = null;
 
-    final Node person = this.fPersonSPI.getPersonNode(userId);
-    final Iterable<Relationship> albRels = person.getRelationships(Neo4jRelTypes.OWNER_OF,
-            Direction.OUTGOING);
-
-    // find album
-    Node tmpNode = null;
-    for (final Relationship rel : albRels) {
-      tmpNode = rel.getEndNode();
+    final int level = CallProfile.start(options);
+    try {
 
-      if (albumId.equals(tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD))) {
-        albNode = tmpNode;
-        break;
-      }
-    }
+      CallProfile.phase(Phase.LOOKUP);
+      final Node person = this.fPersonSPI.getPersonNode(userId);
+      CallProfile.count(Counter.INDEX_HITS, 1);
 
-    // find media items
-    if (albNode != null) {
-      final Iterable<Relationship> itemRels = albNode.getRelationships(Neo4jRelTypes.CONTAINS,
+      CallProfile.phase(Phase.TRAVERSAL);
+      final Iterable<Relationship> albRels = person.getRelationships(Neo4jRelTypes.OWNER_OF,
               Direction.OUTGOING);
 
-      for (final Relationship rel : itemRels) {
+      // find album
+      Node tmpNode = null;
+      for (final Relationship rel : albRels) {
         tmpNode = rel.getEndNode();
 
-        if (mediaItemIds.contains((tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD)))) {
-          itemNodes.add(tmpNode);
+        if (albumId.equals(tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD))) {
+          albNode = tmpNode;
+          break;
+        }
+      }
+
+      // find media items
+      if (albNode != null) {
+        final Iterable<Relationship> itemRels = albNode.getRelationships(Neo4jRelTypes.CONTAINS,
+                Direction.OUTGOING);
+
+        for (final Relationship rel : itemRels) {
+          tmpNode = rel.getEndNode();
+
+          if (mediaItemIds.contains((tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD)))) {
+            itemNodes.add(tmpNode);
 
-          // break when all items have been found
-          if (itemNodes.size() == mediaItemIds.size()) {
-            break;
+            // break when all items have been found
+            if (itemNodes.size() == mediaItemIds.size()) {
+              break;
+            }
           }
         }
+      } else {
+        throw new NotFoundException("album not found");
       }
-    } else {
-      throw new NotFoundException("album not found");
-    }
 
-    Set<String> fieldSet = null;
-    if (fields != null && !fields.isEmpty()) {
-      fieldSet = new HashSet<String>(fields);
-    }
+      Set<String> fieldSet = null;
+      if (fields != null && !fields.isEmpty()) {
+        fieldSet = new HashSet<String>(fields);
+      }
 
-    return convert(itemNodes, options, fieldSet);
+      return convert(itemNodes, options, fieldSet);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   /**
@@ -293,39 +309,49 @@ public class GraphMediaItemSPI {
     final List<Node> itemNodes = new ArrayList<Node>();
     Node albNode = null;
 
-    final Node person = this.fPersonSPI.getPersonNode(userId);
-    final Iterable<Relationship> albRels = person.getRelationships(Neo4jRelTypes.OWNER_OF,
-            Direction.OUTGOING);
+    final int level = CallProfile.start(options);
+    try {
 
-    // find album
-    Node tmpNode = null;
-    for (final Relationship rel : albRels) {
-      tmpNode = rel.getEndNode();
+      CallProfile.phase(Phase.LOOKUP);
+      final Node person = this.fPersonSPI.getPersonNode(userId);
+      CallProfile.count(Counter.INDEX_HITS, 1);
 
-      if (albumId.equals(tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD))) {
-        albNode = tmpNode;
-        break;
+      CallProfile.phase(Phase.TRAVERSAL);
+      final Iterable<Relationship> albRels = person.getRelationships(Neo4jRelTypes.OWNER_OF,
+              Direction.OUTGOING);
+
+      // find album
+      Node tmpNode = null;
+      for (final Relationship rel : albRels) {
+        tmpNode = rel.getEndNode();
+
+        if (albumId.equals(tmpNode.getProperty(GraphMediaItemSPI.ID_FIELD))) {
+          albNode = tmpNode;
+          break;
+        }
       }
-    }
 
-    // add all item nodes
-    if (albNode != null) {
-      final Iterable<Relationship> itemRels = albNode.getRelationships(Neo4jRelTypes.CONTAINS,
-              Direction.OUTGOING);
+      // add all item nodes
+      if (albNode != null) {
+        final Iterable<Relationship> itemRels = albNode.getRelationships(Neo4jRelTypes.CONTAINS,
+                Direction.OUTGOING);
 
-      for (final Relationship rel : itemRels) {
-        itemNodes.add(rel.getEndNode());
+        for (final Relationship rel : itemRels) {
+          itemNodes.add(rel.getEndNode());
+        }
+      } else {
+        throw new NotFoundException("album not found");
       }
-    } else {
-      throw new NotFoundException("album not found");
-    }
 
-    Set<String> fieldSet = null;
-    if (fields != null && !fields.isEmpty()) {
-      fieldSet = new HashSet<String>(fields);
-    }
+      Set<String> fieldSet = null;
+      if (fields != null && !fields.isEmpty()) {
+        fieldSet = new HashSet<String>(fields);
+      }
 
-    return convert(itemNodes, options, fieldSet);
+      return convert(itemNodes, options, fieldSet);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   private void addAllMediaItems(Node person, final List<Node> itemNodes) {
@@ -363,45 +389,54 @@ public class GraphMediaItemSPI {
     final List<Node> itemNodes = new ArrayList<Node>();
     Node person = null;
 
-    // people themselves
-    if (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
-            || groupId.equals(OSFields.GROUP_TYPE_ALL)) {
-      for (final String uid : userIds) {
-        person = this.fPersonSPI.getPersonNode(uid);
-        addAllMediaItems(person, itemNodes);
+    final int level = CallProfile.start(options);
+    try {
+      CallProfile.phase(Phase.TRAVERSAL);
+
+      // people themselves
+      if (groupId == null || groupId.equals(OSFields.GROUP_TYPE_SELF)
+              || groupId.equals(OSFields.GROUP_TYPE_ALL)) {
+        for (final String uid : userIds) {
+          person = this.fPersonSPI.getPersonNode(uid);
+          addAllMediaItems(person, itemNodes);
+        }
+        CallProfile.count(Counter.INDEX_HITS, userIds.size());
       }
-    }
 
-    // people's friends
-    if (groupId != null
-            && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
-                    .equals(OSFields.GROUP_TYPE_ALL))) {
-      Iterable<Relationship> friendRels = null;
+      // people's friends
+      if (groupId != null
+              && (groupId.equals(OSFields.GROUP_TYPE_FRIENDS) || groupId
+                      .equals(OSFields.GROUP_TYPE_ALL))) {
+        Iterable<Relationship> friendRels = null;
 
-      for (final String uid : userIds) {
-        person = this.fPersonSPI.getPersonNode(uid);
+        for (final String uid : userIds) {
+          person = this.fPersonSPI.getPersonNode(uid);
 
-        friendRels = person.getRelationships(Neo4jRelTypes.FRIEND_OF, Direction.OUTGOING);
-        for (final Relationship rel : friendRels) {
-          addAllMediaItems(rel.getEndNode(), itemNodes);
+          friendRels = person.getRelationships(Neo4jRelTypes.FRIEND_OF, Direction.OUTGOING);
+          for (final Relationship rel : friendRels) {
+            addAllMediaItems(rel.getEndNode(), itemNodes);
+          }
         }
+        CallProfile.count(Counter.INDEX_HITS, userIds.size());
       }
-    }
 
-    // actual groups
-    if (groupId != null && groupId.charAt(0) != '@') {
-      final Set<Node> memNodes = this.fPersonSPI.getGroupMemberNodes(groupId);
-      for (final Node pNode : memNodes) {
-        addAllMediaItems(pNode, itemNodes);
+      // actual groups
+      if (groupId != null && groupId.charAt(0) != '@') {
+        final Set<Node> memNodes = this.fPersonSPI.getGroupMemberNodes(groupId);
+        for (final Node pNode : memNodes) {
+          addAllMediaItems(pNode, itemNodes);
+        }
       }
-    }
 
-    Set<String> fieldSet = null;
-    if (fields != null && !fields.isEmpty()) {
-      fieldSet = new HashSet<String>(fields);
-    }
+      Set<String> fieldSet = null;
+      if (fields != null && !fields.isEmpty()) {
+        fieldSet = new HashSet<String>(fields);
+      }
 
-    return convert(itemNodes, options, fieldSet);
+      return convert(itemNodes, options, fieldSet);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   /**
@@ -18,8 +18,11 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -38,8 +41,13 @@ import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphMessage;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphMessageCollection;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ChunkedDeleter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -73,6 +81,8 @@ public class GraphMessageSPI {
 
   private final Logger fLogger;
 
+  private int fDeletionChunkSize = ChunkedDeleter.DEFAULT_CHUNK_SIZE;
+
   /**
    * Creates a graph person service using data from the given person data provider and the given
    * graph database. Throws a NullPointerException if one of the given services is null.
@@ -113,6 +123,21 @@ public class GraphMessageSPI {
     this.fLogger = Logger.getLogger(this.getClass().getName());
   }
 
+  /**
+   * Sets the number of messages deleted in one transaction when deleting a message collection.
+   * Throws an IllegalArgumentException if the size is not positive.
+   *
+   * @param size
+   *          number of messages per transaction
+   */
+  public void setDeletionChunkSize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("deletion chunk size must be positive");
+    }
+
+    this.fDeletionChunkSize = size;
+  }
+
   private Node getCollection(String userId, String collId) {
     final Node person = this.fPersonSPI.getPersonNode(userId);
     Node collection = null;
@@ -139,9 +164,12 @@ public class GraphMessageSPI {
   private List<Node> getCollectionNodes(String userId) {
     final List<Node> nodes = new LinkedList<Node>();
 
+    CallProfile.phase(Phase.LOOKUP);
     final Node userNode = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
 
     if (userNode != null) {
+      CallProfile.phase(Phase.TRAVERSAL);
       final Iterable<Relationship> hasColls = userNode.getRelationships(Neo4jRelTypes.OWNS);
 
       Node collection = null;
@@ -149,6 +177,7 @@ public class GraphMessageSPI {
         collection = rel.getEndNode();
         nodes.add(collection);
       }
+      CallProfile.count(Counter.RELATIONSHIPS, nodes.size());
     }
 
     return nodes;
@@ -171,51 +200,57 @@ public class GraphMessageSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final List<Node> collNodes = getCollectionNodes(userId);
-
-    final List<Map<String, Object>> collections = this.fImpl.newList();
-
-    // filter
-    NodeFilter.filterNodes(collNodes, options);
-    // TODO: other filters?
-
-    // sort as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null) {
-      options.put(WebsockConstants.SORT_FIELD, GraphMessageSPI.TITLE_FIELD);
-    }
-    NodeSorter.sortNodes(collNodes, options);
+    final int level = CallProfile.start(options);
+    try {
+      final List<Node> collNodes = getCollectionNodes(userId);
+
+      final List<Map<String, Object>> collections = this.fImpl.newList();
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, collNodes.size());
+      NodeFilter.filterNodes(collNodes, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, collNodes.size());
+
+      // sort as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null) {
+        options.put(WebsockConstants.SORT_FIELD, GraphMessageSPI.TITLE_FIELD);
+      }
+      final int first = PartialNodeSorter.sortNodes(collNodes, options);
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = collNodes.size();
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = collNodes.size();
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      final int last = Math.min(collNodes.size(), first + max);
 
-    final int last = Math.min(collNodes.size(), first + max);
+      // convert the items requested
+      CallProfile.phase(Phase.CONVERT);
+      Map<String, Object> dto = null;
+      for (int index = first; index < last; ++index) {
+        dto = new GraphMessageCollection(collNodes.get(index), this.fImpl).toMap(fieldSet);
+        collections.add(dto);
+      }
+      CallProfile.count(Counter.CONVERSIONS, collections.size());
 
-    // convert the items requested
-    Map<String, Object> dto = null;
-    for (int index = first; index < last; ++index) {
-      dto = new GraphMessageCollection(collNodes.get(index), this.fImpl).toMap(fieldSet);
-      collections.add(dto);
+      final ListResult collColl = new ListResult(collections);
+      collColl.setFirst(first);
+      collColl.setMax(max);
+      collColl.setTotal(collNodes.size());
+      return CallProfile.finish(collColl, this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-
-    final ListResult collColl = new ListResult(collections);
-    collColl.setFirst(first);
-    collColl.setMax(max);
-    collColl.setTotal(collNodes.size());
-    return collColl;
   }
 
   /**
@@ -345,35 +380,51 @@ public class GraphMessageSPI {
     }
 
     // check which messages were in that collection
-    final List<Node> msgs = new LinkedList<Node>();
+    final Set<Node> msgs = new LinkedHashSet<Node>();
     final Iterable<Relationship> conRels = collection.getRelationships(Neo4jRelTypes.CONTAINS,
             Direction.OUTGOING);
     for (final Relationship rel : conRels) {
       msgs.add(rel.getEndNode());
     }
 
+    // empty the collection in chunks, a failed deletion can be repeated for the remaining ones
+    final Node coll = collection;
+    try {
+      new ChunkedDeleter(this.fDatabase, this.fDeletionChunkSize).delete(msgs,
+              new ChunkedDeleter.Deletion() {
+                @Override
+                public void delete(Node msg) {
+                  for (final Relationship rel : msg.getRelationships(Neo4jRelTypes.CONTAINS,
+                          Direction.INCOMING)) {
+                    if (rel.getStartNode().equals(coll)) {
+                      rel.delete();
+                    }
+                  }
+
+                  // delete all messages that are not stored in any collection anymore
+                  // TODO: possibility to deactivate
+                  if (!msg.hasRelationship(Neo4jRelTypes.CONTAINS, Direction.INCOMING)) {
+                    deleteCompletely(msg);
+                  }
+                }
+
+                @Override
+                public void finishChunk() {
+                  // nothing to collect
+                }
+              });
+    } catch (final Exception e) {
+      throw new RuntimeException("message collection could not be deleted:\n" + e.getMessage());
+    }
+
+    // delete the then empty collection
     final Transaction tx = this.fDatabase.beginTx();
     try {
-      // delete the collection
-      Iterable<Relationship> rels = collection.getRelationships();
-      for (final Relationship rel : rels) {
+      for (final Relationship rel : collection.getRelationships()) {
         rel.delete();
       }
       collection.delete();
 
-      // delete all messages that are not stored in any collection anymore
-      // TODO: possibility to deactivate
-      for (final Node msg : msgs) {
-        if (!msg.hasRelationship(Neo4jRelTypes.CONTAINS, Direction.INCOMING)) {
-          rels = msg.getRelationships();
-
-          for (final Relationship rel : rels) {
-            rel.delete();
-          }
-          msg.delete();
-        }
-      }
-
       tx.success();
       tx.finish();
     } catch (final Exception e) {
@@ -470,60 +521,78 @@ public class GraphMessageSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final List<Node> messNodes = new LinkedList<Node>();
+    final List<Node> messNodes = new ArrayList<Node>();
     List<Relationship> messRels = null;
 
     final List<Map<String, Object>> messages = this.fImpl.newList();
 
-    if (msgCollId == null || msgCollId.equals(GraphMessageSPI.ALL_NAME)) {
-      // go directly over sent/received relationships
-      messRels = addAllMessages(userId, msgIds, messNodes);
-    } else {
-      final Node collNode = getCollection(userId, msgCollId);
-      messRels = addMessages(collNode, msgIds, messNodes);
-    }
+    final int level = CallProfile.start(options);
+    try {
 
-    // filter
-    NodeFilter.filterNodes(messNodes, options);
-    // TODO: other filters?
+      CallProfile.phase(Phase.TRAVERSAL);
+      if (msgCollId == null || msgCollId.equals(GraphMessageSPI.ALL_NAME)) {
+        // go directly over sent/received relationships
+        messRels = addAllMessages(userId, msgIds, messNodes);
+      } else {
+        final Node collNode = getCollection(userId, msgCollId);
+        messRels = addMessages(collNode, msgIds, messNodes);
+      }
+      CallProfile.count(Counter.INDEX_HITS, 1);
+      CallProfile.count(Counter.RELATIONSHIPS, messRels.size());
+
+      // keep relationships with their nodes while filtering and sorting
+      final Map<Node, Relationship> relsByNode = new HashMap<Node, Relationship>();
+      final Iterator<Relationship> relIter = messRels.iterator();
+      for (final Node messNode : messNodes) {
+        relsByNode.put(messNode, relIter.next());
+      }
 
-    // sort as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null) {
-      options.put(WebsockConstants.SORT_FIELD, GraphMessageSPI.ID_FIELD);
-    }
-    NodeSorter.sortNodes(messNodes, options);
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, messNodes.size());
+      NodeFilter.filterNodes(messNodes, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, messNodes.size());
+
+      // sort as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null) {
+        options.put(WebsockConstants.SORT_FIELD, GraphMessageSPI.ID_FIELD);
+      }
+      final int first = PartialNodeSorter.sortNodes(messNodes, options);
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = messNodes.size();
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = messNodes.size();
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      final int last = Math.min(messNodes.size(), first + max);
 
-    final int last = Math.min(messNodes.size(), first + max);
+      // convert the items requested
+      CallProfile.phase(Phase.CONVERT);
+      Map<String, Object> dto = null;
+      for (int index = first; index < last; ++index) {
+        final Node messNode = messNodes.get(index);
+        dto = new GraphMessage(messNode, relsByNode.get(messNode), this.fImpl).toMap(fieldSet);
+        messages.add(dto);
+      }
+      CallProfile.count(Counter.CONVERSIONS, messages.size());
 
-    // convert the items requested
-    Map<String, Object> dto = null;
-    for (int index = first; index < last; ++index) {
-      dto = new GraphMessage(messNodes.get(index), messRels.get(index), this.fImpl).toMap(fieldSet);
-      messages.add(dto);
+      final ListResult messageColl = new ListResult(messages);
+      messageColl.setFirst(first);
+      messageColl.setMax(max);
+      messageColl.setTotal(messNodes.size());
+      return CallProfile.finish(PageCursor.attach(messageColl, messNodes, options), this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-
-    final ListResult messageColl = new ListResult(messages);
-    messageColl.setFirst(first);
-    messageColl.setMax(max);
-    messageColl.setTotal(messNodes.size());
-    return messageColl;
   }
 
   private void addReply(String msgId, Node reply) {
@@ -21,6 +21,7 @@ package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +35,7 @@ import java.util.logging.Logger;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
@@ -41,10 +43,16 @@ import org.neo4j.graphdb.index.IndexHits;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphPerson;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ListFieldListFilter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PersonFilter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ResultSnapshotCache;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
@@ -72,6 +80,9 @@ public class GraphPersonSPI {
   private static final String STATUS_TITLE_PROP = "titles.status.updated";
   private static final String STATUS_MSG_TITLE_PROP = "titles.statusmessage.updated";
 
+  private static final String NODE_CACHE_PROP = "persons.cache.size";
+  private static final int DEFAULT_NODE_CACHE_SIZE = 10000;
+
   private static final int TYPE_CREATE = 0;
   private static final int TYPE_UPDATE = 1;
   private static final int TYPE_DELETE = 2;
@@ -86,6 +97,8 @@ public class GraphPersonSPI {
 
   private static final String ANONYMOUS_ID = "-1";
 
+  private static final String ALL_PEOPLE_SCOPE = "getAllPeople";
+
   private static final String ID_FIELD = "id";
   private static final String NAME_FIELD = "name";
   private static final String FORMATTED_FIELD = "formatted";
@@ -107,11 +120,17 @@ public class GraphPersonSPI {
 
   private final ImplUtil fImpl;
 
+  private final ThreadLocal<Map<String, Node>> fBatchNodes;
+  private final LruCache<String, Long> fNodeCache;
+
   private final Logger fLogger;
 
   private GraphMessageSPI fMessages;
   private GraphActivityStreamSPI fActivities;
+  private AutoActivityQueue fActivityQueue;
   private GraphSkillSPI fSkillSPI;
+  private ResultSnapshotCache fSnapshots;
+  private ActivityObjectService fActObjSPI;
 
   /**
    * Creates a graph person service using data from the given neo4j database service, according to
@@ -163,6 +182,20 @@ public class GraphPersonSPI {
 
     this.fImpl = impl;
 
+    this.fBatchNodes = new ThreadLocal<Map<String, Node>>();
+
+    // person ID to node ID cache, disabled with a size of 0
+    int cacheSize = GraphPersonSPI.DEFAULT_NODE_CACHE_SIZE;
+    final String cacheProp = config.get(GraphPersonSPI.NODE_CACHE_PROP);
+    if (cacheProp != null && !cacheProp.trim().isEmpty()) {
+      cacheSize = Integer.parseInt(cacheProp.trim());
+    }
+    if (cacheSize > 0) {
+      this.fNodeCache = new LruCache<String, Long>(cacheSize);
+    } else {
+      this.fNodeCache = null;
+    }
+
     this.fLogger = Logger.getLogger(this.getClass().getName());
 
     // activity generator object
@@ -197,6 +230,17 @@ public class GraphPersonSPI {
     this.fActivities = activities;
   }
 
+  /**
+   * Sets the queue event-based activities are created asynchronously with. If it is not set,
+   * activities are created synchronously using the activitystreams service.
+   *
+   * @param queue
+   *          activity queue to use, may be null
+   */
+  public void setActivityQueue(AutoActivityQueue queue) {
+    this.fActivityQueue = queue;
+  }
+
   /**
    * Sets the skill service used for additional skill-based lookups.
    *
@@ -207,30 +251,118 @@ public class GraphPersonSPI {
     this.fSkillSPI = skills;
   }
 
+  /**
+   * Sets the snapshot cache used to page through large results without repeating their queries.
+   *
+   * @param snapshots
+   *          snapshot cache to use
+   */
+  public void setSnapshots(ResultSnapshotCache snapshots) {
+    this.fSnapshots = snapshots;
+  }
+
+  /**
+   * Sets the activity object service, whose cache people are removed from when they are updated,
+   * as they can be the actors of activities.
+   *
+   * @param actObjSPI
+   *          activity object service to use
+   */
+  public void setActivityObjects(ActivityObjectService actObjSPI) {
+    this.fActObjSPI = actObjSPI;
+  }
+
+  /**
+   * @return cache of person node IDs or null if it is disabled
+   */
+  public LruCache<String, Long> getNodeCache() {
+    return this.fNodeCache;
+  }
+
+  /**
+   * Starts sharing person node lookups between all calls made by the current thread until
+   * endBatch() is called.
+   */
+  public void beginBatch() {
+    this.fBatchNodes.set(new HashMap<String, Node>());
+  }
+
+  /**
+   * Stops sharing person node lookups for the current thread.
+   */
+  public void endBatch() {
+    this.fBatchNodes.remove();
+  }
+
   /**
    * Tries to retrieve the person with the given id from the database. Returns null if there is no
-   * such person.
+   * such person. Within a batch, persons that were already found are not looked up again.
    *
    * @param id
    *          id of the user to retrieve
    * @return user node or null
    */
   public Node getPersonNode(String id) {
+    final Map<String, Node> batchNodes = this.fBatchNodes.get();
     Node personNode = null;
 
+    if (batchNodes != null && id != null) {
+      personNode = batchNodes.get(id);
+      if (personNode != null) {
+        return personNode;
+      }
+    }
+
+    if (id != null && this.fNodeCache != null) {
+      personNode = getCachedNode(id);
+    }
+
     try {
-      if (id != null) {
+      if (personNode == null && id != null) {
         final IndexHits<Node> matching = this.fPersonNodes.get(GraphPersonSPI.ID_FIELD, id);
         personNode = matching.getSingle();
         matching.close();
+
+        if (personNode != null && this.fNodeCache != null) {
+          this.fNodeCache.put(id, personNode.getId());
+        }
       }
     } catch (final NoSuchElementException e) {
       e.printStackTrace();
     }
 
+    // only remember existing persons, they might be created later in the batch
+    if (batchNodes != null && personNode != null) {
+      batchNodes.put(id, personNode);
+    }
+
     return personNode;
   }
 
+  private Node getCachedNode(String id) {
+    final Long nodeId = this.fNodeCache.get(id);
+    Node node = null;
+
+    if (nodeId != null) {
+      try {
+        node = this.fDatabase.getNodeById(nodeId);
+
+        // node IDs of deleted nodes may be reused
+        if (!id.equals(node.getProperty(GraphPersonSPI.ID_FIELD, null))) {
+          node = null;
+        }
+      } catch (final NotFoundException e) {
+        node = null;
+      }
+
+      if (node == null) {
+        this.fNodeCache.remove(id);
+      }
+    }
+
+    return node;
+  }
+
   /**
    * Tries to retrieve the person with the given id from the database and creates a data map
    * containing the requested fields. An empty set of fields implies all. Returns null if there is
@@ -293,6 +425,7 @@ public class GraphPersonSPI {
       for (final String id : userIds) {
         people.add(getPersonNode(id));
       }
+      CallProfile.count(Counter.INDEX_HITS, userIds.size());
     } else {
       switch (groupId) {
       case OSFields.GROUP_TYPE_ALL:
@@ -318,17 +451,23 @@ public class GraphPersonSPI {
     Node startNode = null;
     Iterable<Relationship> relations = null;
 
+    int relCount = 0;
     for (final String id : userIds) {
+      CallProfile.phase(Phase.LOOKUP);
       startNode = getPersonNode(id);
 
       if (startNode != null) {
+        CallProfile.phase(Phase.TRAVERSAL);
         relations = startNode.getRelationships(Direction.OUTGOING, types);
 
         for (final Relationship rel : relations) {
           people.add(rel.getEndNode());
+          ++relCount;
         }
       }
     }
+    CallProfile.count(Counter.INDEX_HITS, userIds.size());
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
 
     return people;
   }
@@ -348,12 +487,15 @@ public class GraphPersonSPI {
     group = getGroupNode(groupId);
 
     if (group != null) {
+      CallProfile.phase(Phase.TRAVERSAL);
       final Iterable<Relationship> relations = group.getRelationships(Direction.INCOMING,
               Neo4jRelTypes.MEMBER_OF);
 
       for (final Relationship rel : relations) {
         people.add(rel.getStartNode());
       }
+      CallProfile.count(Counter.INDEX_HITS, 1);
+      CallProfile.count(Counter.RELATIONSHIPS, people.size());
     }
 
     return people;
@@ -382,71 +524,79 @@ public class GraphPersonSPI {
 
     final List<Map<String, Object>> personList = this.fImpl.newList();
 
-    // retrieve people
-    final Set<Node> targets = getPeopleNodes(idSet, groupId);
-    final List<Node> nodeList = new ArrayList<Node>(targets);
+    final int level = CallProfile.start(options);
+    try {
 
-    // filter
-    if ("isFriendsWith".equals(options.get(WebsockConstants.FILTER_FIELD))) {
-      final String filterId = (String) options.get(WebsockConstants.FILTER_VALUE);
-      final Node filterNode = getPersonNode(filterId);
-
-      PersonFilter.filterNodes(nodeList, filterNode);
-    } else if (OSFields.GROUP_TYPE_ALL.equals(options.get(WebsockConstants.FILTER_FIELD))) {
-      PersonFilter.filterNodes(nodeList, options.get(WebsockConstants.FILTER_VALUE).toString());
-    }
-    // use list field list filter for certain fields
-    else if (ListFieldListFilter.SUPPORTED_FIELDS.contains(options
-            .get(WebsockConstants.FILTER_FIELD))) {
-      ListFieldListFilter.filterNodes(nodeList, options);
-    } else {
-      NodeFilter.filterNodes(nodeList, options);
-    }
-    // TODO: other filters?
+      // retrieve people
+      CallProfile.phase(Phase.LOOKUP);
+      final Set<Node> targets = getPeopleNodes(idSet, groupId);
+      final List<Node> nodeList = new ArrayList<Node>(targets);
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, nodeList.size());
+      if ("isFriendsWith".equals(options.get(WebsockConstants.FILTER_FIELD))) {
+        final String filterId = (String) options.get(WebsockConstants.FILTER_VALUE);
+        final Node filterNode = getPersonNode(filterId);
+
+        PersonFilter.filterNodes(nodeList, filterNode);
+      } else if (OSFields.GROUP_TYPE_ALL.equals(options.get(WebsockConstants.FILTER_FIELD))) {
+        PersonFilter.filterNodes(nodeList, options.get(WebsockConstants.FILTER_VALUE).toString());
+      }
+      // use list field list filter for certain fields
+      else if (ListFieldListFilter.SUPPORTED_FIELDS.contains(options
+              .get(WebsockConstants.FILTER_FIELD))) {
+        ListFieldListFilter.filterNodes(nodeList, options);
+      } else {
+        NodeFilter.filterNodes(nodeList, options);
+      }
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, nodeList.size());
+
+      // create a sorted list as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null || sortField.equals(GraphPersonSPI.NAME_FIELD)) {
+        options.put(WebsockConstants.SORT_FIELD, GraphPersonSPI.FORMATTED_FIELD);
+      }
+      final int first = PartialNodeSorter.sortNodes(nodeList, options);
 
-    // create a sorted list as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null || sortField.equals(GraphPersonSPI.NAME_FIELD)) {
-      options.put(WebsockConstants.SORT_FIELD, GraphPersonSPI.FORMATTED_FIELD);
-    }
-    NodeSorter.sortNodes(nodeList, options);
+      Node personNode = null;
+      Map<String, Object> tmpPerson = null;
 
-    Node personNode = null;
-    Map<String, Object> tmpPerson = null;
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = nodeList.size();
+      }
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = nodeList.size();
-    }
+      final int last = Math.min(nodeList.size(), first + max);
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      // convert the items requested
+      CallProfile.phase(Phase.CONVERT);
+      for (int index = first; index < last; ++index) {
+        personNode = nodeList.get(index);
+        tmpPerson = convertPerson(personNode, fieldSet);
 
-    final int last = Math.min(nodeList.size(), first + max);
+        personList.add(tmpPerson);
+      }
+      CallProfile.count(Counter.CONVERSIONS, personList.size());
 
-    // convert the items requested
-    for (int index = first; index < last; ++index) {
-      personNode = nodeList.get(index);
-      tmpPerson = convertPerson(personNode, fieldSet);
+      // return search query information
+      final ListResult people = new ListResult(personList);
+      people.setFirst(first);
+      people.setMax(max);
+      people.setTotal(nodeList.size());
 
-      personList.add(tmpPerson);
+      return CallProfile.finish(people, this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-
-    // return search query information
-    final ListResult people = new ListResult(personList);
-    people.setFirst(first);
-    people.setMax(max);
-    people.setTotal(nodeList.size());
-
-    return people;
   }
 
   /**
@@ -576,6 +726,10 @@ public class GraphPersonSPI {
       trans.finish();
       e.printStackTrace();
       throw new RuntimeException("could not update person:\n" + e.getMessage());
+    } finally {
+      if (this.fActObjSPI != null) {
+        this.fActObjSPI.invalidate(Collections.singleton(personNode.getId()));
+      }
     }
 
     // generate activities if configured
@@ -616,16 +770,96 @@ public class GraphPersonSPI {
 
     final List<Map<String, Object>> personList = this.fImpl.newList();
 
+    final int level = CallProfile.start(options);
+    try {
+
+      // continue from a previous call's snapshot if available
+      final String scope = ResultSnapshotCache.getScope(GraphPersonSPI.ALL_PEOPLE_SCOPE, options);
+      List<Node> nodeList = null;
+      if (this.fSnapshots != null && ResultSnapshotCache.isRequested(options)) {
+        nodeList = this.fSnapshots.restore(scope, options);
+      }
+
+      int first = 0;
+      if (options.get(WebsockConstants.SUBSET_START) != null) {
+        first = (Integer) options.get(WebsockConstants.SUBSET_START);
+      }
+
+      if (nodeList == null) {
+        nodeList = getAllPeopleNodes(options);
+
+        // create a sorted list as defined by parameters
+        CallProfile.phase(Phase.SORT);
+        final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+        if (sortField == null || sortField.equals(GraphPersonSPI.NAME_FIELD)) {
+          options.put(WebsockConstants.SORT_FIELD, GraphPersonSPI.FORMATTED_FIELD);
+        }
+        // snapshots need a completely sorted list
+        first = PartialNodeSorter.sortNodes(nodeList, options,
+                ResultSnapshotCache.isRequested(options));
+      }
+
+      Node personNode = null;
+      Map<String, Object> tmpPerson = null;
+
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
+
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = nodeList.size();
+      }
+
+      final int last = Math.min(nodeList.size(), first + max);
+
+      // convert the items requested
+      CallProfile.phase(Phase.CONVERT);
+      for (int index = first; index < last; ++index) {
+        personNode = nodeList.get(index);
+        if (personNode == null) {
+          // deleted since the snapshot was taken
+          continue;
+        }
+        tmpPerson = convertPerson(personNode, fieldSet);
+
+        personList.add(tmpPerson);
+      }
+      CallProfile.count(Counter.CONVERSIONS, personList.size());
+
+      // return search query information
+      ListResult people = new ListResult(personList);
+      people.setFirst(first);
+      people.setMax(max);
+      people.setTotal(nodeList.size());
+
+      if (this.fSnapshots != null) {
+        people = this.fSnapshots.store(scope, nodeList, options, people);
+      }
+
+      return CallProfile.finish(PageCursor.attach(people, nodeList, options), this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
+  }
+
+  private List<Node> getAllPeopleNodes(Map<String, Object> options) {
     final List<Node> nodeList = new ArrayList<Node>();
     // TODO: visibility?
 
     // retrieve all person nodes
+    CallProfile.phase(Phase.LOOKUP);
     final IndexHits<Node> result = this.fPersonNodes.query(GraphPersonSPI.ID_FIELD, "*");
     for (final Node node : result) {
       nodeList.add(node);
     }
+    CallProfile.count(Counter.INDEX_HITS, nodeList.size());
 
     // filter
+    CallProfile.phase(Phase.FILTER);
+    CallProfile.count(Counter.FILTER_INPUT, nodeList.size());
     if (options != null && options.get(WebsockConstants.FILTER_OPERATION) != null) {
       // filter by all fields, including skills
       if (OSFields.GROUP_TYPE_ALL.equals(options.get(WebsockConstants.FILTER_FIELD))) {
@@ -653,50 +887,9 @@ public class GraphPersonSPI {
       }
     }
     // TODO: other filters?
+    CallProfile.count(Counter.FILTER_OUTPUT, nodeList.size());
 
-    // create a sorted list as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null || sortField.equals(GraphPersonSPI.NAME_FIELD)) {
-      options.put(WebsockConstants.SORT_FIELD, GraphPersonSPI.FORMATTED_FIELD);
-    }
-    NodeSorter.sortNodes(nodeList, options);
-
-    Node personNode = null;
-    Map<String, Object> tmpPerson = null;
-
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
-
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = nodeList.size();
-    }
-
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
-    final int last = Math.min(nodeList.size(), first + max);
-
-    // convert the items requested
-    for (int index = first; index < last; ++index) {
-      personNode = nodeList.get(index);
-      tmpPerson = convertPerson(personNode, fieldSet);
-
-      personList.add(tmpPerson);
-    }
-
-    // return search query information
-    final ListResult people = new ListResult(personList);
-    people.setFirst(first);
-    people.setMax(max);
-    people.setTotal(nodeList.size());
-
-    return people;
+    return nodeList;
   }
 
   /**
@@ -757,6 +950,9 @@ public class GraphPersonSPI {
       success = false;
       e.printStackTrace();
       throw new RuntimeException("could not create person:\n" + e.getMessage());
+    } finally {
+      // lookups during creation may have cached a node that was rolled back
+      invalidate(personId);
     }
 
     // create activity if configured
@@ -798,6 +994,8 @@ public class GraphPersonSPI {
       trans.finish();
       success = false;
       e.printStackTrace();
+    } finally {
+      invalidate(id);
     }
 
     if (this.fPersonDeleteActivity && success) {
@@ -805,6 +1003,17 @@ public class GraphPersonSPI {
     }
   }
 
+  private void invalidate(String id) {
+    if (this.fNodeCache != null) {
+      this.fNodeCache.remove(id);
+    }
+
+    final Map<String, Node> batchNodes = this.fBatchNodes.get();
+    if (batchNodes != null) {
+      batchNodes.remove(id);
+    }
+  }
+
   private String getUserName(Node user) {
     String name = null;
 
@@ -868,6 +1077,11 @@ public class GraphPersonSPI {
       final String timestamp = this.fDateFormat.format(new Date(System.currentTimeMillis()));
       activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp);
 
+      if (this.fActivityQueue != null) {
+        this.fActivityQueue.submit(userId, OSFields.SHINDIG_ID, activity);
+        return;
+      }
+
       try {
         this.fActivities.createActivityEntry(userId, null, OSFields.SHINDIG_ID, activity, null);
       } catch (final Exception e) {
@@ -902,6 +1116,11 @@ public class GraphPersonSPI {
       final String timestamp = this.fDateFormat.format(new Date(System.currentTimeMillis()));
       activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp);
 
+      if (this.fActivityQueue != null) {
+        this.fActivityQueue.submit(userId, OSFields.SHINDIG_ID, activity);
+        return;
+      }
+
       try {
         this.fActivities.createActivityEntry(userId, null, OSFields.SHINDIG_ID, activity, null);
       } catch (final Exception e) {
@@ -936,6 +1155,11 @@ public class GraphPersonSPI {
       final String timestamp = this.fDateFormat.format(new Date(System.currentTimeMillis()));
       activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp);
 
+      if (this.fActivityQueue != null) {
+        this.fActivityQueue.submit(userId, OSFields.SHINDIG_ID, activity);
+        return;
+      }
+
       try {
         this.fActivities.createActivityEntry(userId, null, OSFields.SHINDIG_ID, activity, null);
       } catch (final Exception e) {
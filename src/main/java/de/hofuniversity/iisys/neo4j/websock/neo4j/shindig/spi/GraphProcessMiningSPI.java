@@ -18,18 +18,12 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.bind.DatatypeConverter;
-
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
@@ -41,6 +35,7 @@ import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphActivityEntry;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphProcessCycle;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.processmining.MiningController;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -285,26 +280,13 @@ public class GraphProcessMiningSPI {
       addActivities(person, actNodes);
     }
 
-    // filter by timestamp and convert
-    String published = null;
-    long timestamp = 0;
+    // filter by stored timestamp and convert
+    Long timestamp = null;
     GraphActivityEntry gActEntry = null;
     for (final Node actNode : actNodes) {
-      // convert iso8601 timestamp to unix timestamp
-      published = (String) actNode.getProperty(GraphProcessMiningSPI.PUBLISHED_FIELD, null);
-
-      if (published != null && !published.isEmpty()) {
-        try {
-        	timestamp = DatatypeConverter.parseDateTime(published).getTimeInMillis();
-        } catch(IllegalArgumentException e) {
-        	DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
-        	format.setTimeZone(TimeZone.getTimeZone("GMT"));
-        	try {
-				timestamp = format.parse(published).getTime();
-			} catch (ParseException e1) {
-				e1.printStackTrace();
-			}
-        }
+      timestamp = ActivityTime.getTimestamp(actNode);
+
+      if (timestamp != null) {
         if (timestamp >= start && timestamp <= end) {
           gActEntry = new GraphActivityEntry(actNode, this.fImpl);
           activities.add(gActEntry.toMap(null));
@@ -44,9 +44,12 @@ import org.neo4j.kernel.Uniqueness;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphGroup;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphPerson;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -111,7 +114,7 @@ public class GraphSPI {
   }
 
   private ListResult convertRequested(final List<Node> people, final Set<String> fields,
-          Map<String, Object> options) {
+          Map<String, Object> options, int first) {
     final List<Map<String, Object>> dtos = this.fImpl.newList();
 
     // return empty response if no people available
@@ -134,20 +137,17 @@ public class GraphSPI {
       max = people.size();
     }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
-
     final int last = Math.min(people.size(), first + max);
 
     // convert the items requested
+    CallProfile.phase(Phase.CONVERT);
     for (int index = first; index < last; ++index) {
       gPerson = new GraphPerson(people.get(index), this.fImpl);
       tmpPerson = gPerson.toMap(fields);
 
       dtos.add(tmpPerson);
     }
+    CallProfile.count(Counter.CONVERSIONS, dtos.size());
 
     final ListResult peopleColl = new ListResult(dtos);
     peopleColl.setFirst(first);
@@ -199,53 +199,74 @@ public class GraphSPI {
       depth = GraphSPI.MAX_FOF_DEPTH;
     }
 
-    // breadth first traversal through friend graph
-    Node person = null;
-
-    TraversalDescription trav = getFofTrav(depth);
-
-    for (final String id : userIds) {
-      person = this.fPersonSPI.getPersonNode(id);
-      requested.add(person);
+    final int level = CallProfile.start(options);
+    try {
 
-      for (final Node node : trav.traverse(person).nodes()) {
-        people.add(node);
-      }
-    }
+      // breadth first traversal through friend graph
+      Node person = null;
+      int visited = 0;
 
-    // remove first-level friends if desired
-    if (unknown) {
-      final Set<Node> knownNodes = new HashSet<Node>();
-      trav = getFofTrav(1);
+      TraversalDescription trav = getFofTrav(depth);
 
       for (final String id : userIds) {
+        CallProfile.phase(Phase.LOOKUP);
         person = this.fPersonSPI.getPersonNode(id);
+        requested.add(person);
 
+        CallProfile.phase(Phase.TRAVERSAL);
         for (final Node node : trav.traverse(person).nodes()) {
-          knownNodes.add(node);
+          people.add(node);
+          ++visited;
         }
       }
+      CallProfile.count(Counter.INDEX_HITS, userIds.size());
+
+      // remove first-level friends if desired
+      if (unknown) {
+        final Set<Node> knownNodes = new HashSet<Node>();
+        trav = getFofTrav(1);
+
+        for (final String id : userIds) {
+          CallProfile.phase(Phase.LOOKUP);
+          person = this.fPersonSPI.getPersonNode(id);
+
+          CallProfile.phase(Phase.TRAVERSAL);
+          for (final Node node : trav.traverse(person).nodes()) {
+            knownNodes.add(node);
+            ++visited;
+          }
+        }
+        CallProfile.count(Counter.INDEX_HITS, userIds.size());
 
-      people.removeAll(knownNodes);
-    }
-
-    // remove the people from the request
-    people.removeAll(requested);
-
-    // filter
-    final List<Node> peopleList = new ArrayList<Node>(people);
-    NodeFilter.filterNodes(peopleList, options);
-    // TODO: other filters?
+        people.removeAll(knownNodes);
+      }
+      CallProfile.count(Counter.NODES, visited);
+
+      // remove the people from the request
+      people.removeAll(requested);
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      final List<Node> peopleList = new ArrayList<Node>(people);
+      CallProfile.count(Counter.FILTER_INPUT, peopleList.size());
+      NodeFilter.filterNodes(peopleList, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, peopleList.size());
+
+      // sort as defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null || sortField.equals(GraphSPI.NAME_FIELD)) {
+        options.put(WebsockConstants.SORT_FIELD, GraphSPI.FORMATTED_FIELD);
+      }
+      final int first = PartialNodeSorter.sortNodes(peopleList, options);
 
-    // sort as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null || sortField.equals(GraphSPI.NAME_FIELD)) {
-      options.put(WebsockConstants.SORT_FIELD, GraphSPI.FORMATTED_FIELD);
+      // convert all requested
+      return CallProfile.finish(convertRequested(peopleList, fieldSet, options, first),
+              this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-    NodeSorter.sortNodes(peopleList, options);
-
-    // convert all requested
-    return convertRequested(peopleList, fieldSet, options);
   }
 
   /**
@@ -268,34 +289,52 @@ public class GraphSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final Node person = this.fPersonSPI.getPersonNode(userId);
-    final Node target = this.fPersonSPI.getPersonNode(targetId);
+    final int level = CallProfile.start(options);
+    try {
+
+      CallProfile.phase(Phase.LOOKUP);
+      final Node person = this.fPersonSPI.getPersonNode(userId);
+      final Node target = this.fPersonSPI.getPersonNode(targetId);
+      CallProfile.count(Counter.INDEX_HITS, 2);
 
-    List<Node> people = null;
+      List<Node> people = null;
 
-    if (!person.equals(target)) {
-      final Path path = GraphSPI.SPATH.findSinglePath(person, target);
+      if (!person.equals(target)) {
+        CallProfile.phase(Phase.TRAVERSAL);
+        final Path path = GraphSPI.SPATH.findSinglePath(person, target);
 
-      if (path != null) {
-        people = new ArrayList<Node>();
-        for (final Node n : path.nodes()) {
-          people.add(n);
+        if (path != null) {
+          people = new ArrayList<Node>();
+          for (final Node n : path.nodes()) {
+            people.add(n);
+          }
+          CallProfile.count(Counter.RELATIONSHIPS, path.length());
         }
       }
-    }
 
-    // filter
-    NodeFilter.filterNodes(people, options);
-    // TODO: other filters?
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      if (people != null) {
+        CallProfile.count(Counter.FILTER_INPUT, people.size());
+      }
+      NodeFilter.filterNodes(people, options);
+      // TODO: other filters?
+      if (people != null) {
+        CallProfile.count(Counter.FILTER_OUTPUT, people.size());
+      }
 
-    // sort if defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField != null) {
-      NodeSorter.sortNodes(people, options);
-    }
+      // sort if defined by parameters
+      CallProfile.phase(Phase.SORT);
+      int first = 0;
+      if (people != null) {
+        first = PartialNodeSorter.sortNodes(people, options);
+      }
 
-    // convert all requested
-    return convertRequested(people, fieldSet, options);
+      // convert all requested
+      return CallProfile.finish(convertRequested(people, fieldSet, options, first), this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   private Map<Node, Integer> getFriendMemberships(Node person) {
@@ -308,12 +347,15 @@ public class GraphSPI {
 
     Node friend = null;
     Node group = null;
+    int relCount = 0;
     for (final Relationship fRel : friendRels) {
       friend = fRel.getEndNode();
       memRels = friend.getRelationships(ShindigRelTypes.MEMBER_OF);
+      ++relCount;
 
       for (final Relationship mRel : memRels) {
         group = mRel.getEndNode();
+        ++relCount;
 
         count = memCounts.get(group);
         if (count == null) {
@@ -325,6 +367,7 @@ public class GraphSPI {
         memCounts.put(group, count);
       }
     }
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
 
     return memCounts;
   }
@@ -332,7 +375,11 @@ public class GraphSPI {
   private List<Node> getGroupSuggNodes(String userId, final int number) {
     final List<Entry<Node, Integer>> sortGroups = new ArrayList<Map.Entry<Node, Integer>>();
 
+    CallProfile.phase(Phase.LOOKUP);
     final Node person = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
+
+    CallProfile.phase(Phase.TRAVERSAL);
     final Map<Node, Integer> memCounts = getFriendMemberships(person);
 
     // remove groups the user is already a member of
@@ -382,59 +429,63 @@ public class GraphSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final List<Node> groups = getGroupSuggNodes(userId, number);
-
-    // filter
-    NodeFilter.filterNodes(groups, options);
-    // TODO: other filters?
-
-    // sort if defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField != null) {
-      NodeSorter.sortNodes(groups, options);
-    }
-
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+    final int level = CallProfile.start(options);
+    try {
+      final List<Node> groups = getGroupSuggNodes(userId, number);
+
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, groups.size());
+      NodeFilter.filterNodes(groups, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, groups.size());
+
+      // sort if defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final int first = PartialNodeSorter.sortNodes(groups, options);
+
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = groups.size();
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = groups.size();
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      final int last = Math.min(groups.size(), first + max);
 
-    final int last = Math.min(groups.size(), first + max);
+      // convert the items requested
+      final List<Map<String, Object>> groupList = this.fImpl.newList();
 
-    // convert the items requested
-    final List<Map<String, Object>> groupList = this.fImpl.newList();
+      CallProfile.phase(Phase.CONVERT);
+      Map<String, Object> dto = null;
+      for (int index = first; index < last; ++index) {
+        dto = new GraphGroup(groups.get(index), this.fImpl).toMap(fieldSet);
+        groupList.add(dto);
+      }
+      CallProfile.count(Counter.CONVERSIONS, groupList.size());
 
-    Map<String, Object> dto = null;
-    for (int index = first; index < last; ++index) {
-      dto = new GraphGroup(groups.get(index), this.fImpl).toMap(fieldSet);
-      groupList.add(dto);
+      final ListResult groupColl = new ListResult(groupList);
+      groupColl.setFirst(first);
+      groupColl.setMax(max);
+      groupColl.setTotal(groups.size());
+      return CallProfile.finish(groupColl, this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-
-    final ListResult groupColl = new ListResult(groupList);
-    groupColl.setFirst(first);
-    groupColl.setMax(max);
-    groupColl.setTotal(groups.size());
-    return groupColl;
   }
 
-  private void addFriendCounts(Node person, final Map<Node, Integer> counts) {
+  private int addFriendCounts(Node person, final Map<Node, Integer> counts) {
     // add up friendships for all friends
     final Iterable<Relationship> friendRels = person.getRelationships(Direction.OUTGOING,
             ShindigRelTypes.FRIEND_OF);
 
     Node friend = null;
     Integer count = null;
+    int relCount = 0;
     for (final Relationship rel : friendRels) {
       friend = rel.getEndNode();
 
@@ -445,11 +496,16 @@ public class GraphSPI {
         ++count;
       }
       counts.put(friend, count);
+      ++relCount;
     }
+
+    return relCount;
   }
 
   private List<Node> getFriendSuggNodes(String userId, final int number) {
+    CallProfile.phase(Phase.LOOKUP);
     final Node person = this.fPersonSPI.getPersonNode(userId);
+    CallProfile.count(Counter.INDEX_HITS, 1);
 
     // return nothing if the person does not exist
     if (person == null) {
@@ -460,13 +516,16 @@ public class GraphSPI {
     final List<Entry<Node, Integer>> sortFriends = new ArrayList<Map.Entry<Node, Integer>>();
 
     // add up friendships for all friends of friends
+    CallProfile.phase(Phase.TRAVERSAL);
     Iterable<Relationship> friendRels = person.getRelationships(Direction.OUTGOING,
             ShindigRelTypes.FRIEND_OF);
     Node friend = null;
+    int relCount = 0;
     for (final Relationship rel : friendRels) {
       friend = rel.getEndNode();
-      addFriendCounts(friend, friendCounts);
+      relCount += 1 + addFriendCounts(friend, friendCounts);
     }
+    CallProfile.count(Counter.RELATIONSHIPS, relCount);
 
     // remove the people the person is already friends with and self
     friendRels = person.getRelationships(Direction.OUTGOING, ShindigRelTypes.FRIEND_OF);
@@ -516,63 +575,66 @@ public class GraphSPI {
     if (fields != null) {
       fieldSet.addAll(fields);
     }
-    final List<Node> friends = getFriendSuggNodes(userId, number);
-
-    // stop processing if retrieval failed
-    if (friends == null) {
-      return null;
-    }
-
-    // filter
-    NodeFilter.filterNodes(friends, options);
-    // TODO: other filters?
+    final int level = CallProfile.start(options);
+    try {
+      final List<Node> friends = getFriendSuggNodes(userId, number);
 
-    // sort if defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField != null) {
-      NodeSorter.sortNodes(friends, options);
-    }
+      // stop processing if retrieval failed
+      if (friends == null) {
+        return CallProfile.finish(null, this.fImpl);
+      }
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // filter
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, friends.size());
+      NodeFilter.filterNodes(friends, options);
+      // TODO: other filters?
+      CallProfile.count(Counter.FILTER_OUTPUT, friends.size());
+
+      // sort if defined by parameters
+      CallProfile.phase(Phase.SORT);
+      final int first = PartialNodeSorter.sortNodes(friends, options);
+
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = friends.size();
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = friends.size();
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      final int last = Math.min(friends.size(), first + max);
 
-    final int last = Math.min(friends.size(), first + max);
+      // convert the items requested
+      List<Map<String, Object>> peopleList;
+      try {
+        peopleList = this.fImpl.newList();
+      } catch (final Exception e) {
+        e.printStackTrace();
+        this.fLogger.log(Level.SEVERE, "could not instantiate list", e);
+        throw new RuntimeException(e);
+      }
 
-    // convert the items requested
-    List<Map<String, Object>> peopleList;
-    try {
-      peopleList = this.fImpl.newList();
-    } catch (final Exception e) {
-      e.printStackTrace();
-      this.fLogger.log(Level.SEVERE, "could not instantiate list", e);
-      throw new RuntimeException(e);
-    }
+      Map<String, Object> dto = null;
 
-    Map<String, Object> dto = null;
+      CallProfile.phase(Phase.CONVERT);
+      for (int index = first; index < last; ++index) {
+        dto = new GraphPerson(friends.get(index), this.fImpl).toMap(fieldSet);
 
-    for (int index = first; index < last; ++index) {
-      dto = new GraphPerson(friends.get(index), this.fImpl).toMap(fieldSet);
+        peopleList.add(dto);
+      }
+      CallProfile.count(Counter.CONVERSIONS, peopleList.size());
 
-      peopleList.add(dto);
+      final ListResult peopleColl = new ListResult(peopleList);
+      peopleColl.setFirst(first);
+      peopleColl.setMax(max);
+      peopleColl.setTotal(friends.size());
+      return CallProfile.finish(peopleColl, this.fImpl);
+    } finally {
+      CallProfile.release(level);
     }
-
-    final ListResult peopleColl = new ListResult(peopleList);
-    peopleColl.setFirst(first);
-    peopleColl.setMax(max);
-    peopleColl.setTotal(friends.size());
-    return peopleColl;
   }
 }
@@ -43,9 +43,13 @@ import org.neo4j.graphdb.index.IndexHits;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphPerson;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphSkillSet;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Counter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.CallProfile.Phase;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ResultSnapshotCache;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeFilter;
-import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -76,6 +80,8 @@ public class GraphSkillSPI {
 
   private static final String SKILL_OBJ_TYPE = "skill";
 
+  private static final String PEOPLE_BY_SKILL_SCOPE = "getPeopleBySkill:";
+
   private final GraphDatabaseService fDatabase;
   private final GraphPersonSPI fPersonSPI;
 
@@ -95,6 +101,8 @@ public class GraphSkillSPI {
   private final String fNonRefAddVerb;
 
   private GraphActivityStreamSPI fActivities;
+  private AutoActivityQueue fActivityQueue;
+  private ResultSnapshotCache fSnapshots;
 
   /**
    * Creates a graph skill service using data from the given neo4j database service, according to
@@ -173,6 +181,27 @@ public class GraphSkillSPI {
     this.fActivities = activities;
   }
 
+  /**
+   * Sets the queue event-based activities are created asynchronously with. If it is not set,
+   * activities are created synchronously using the activitystreams service.
+   *
+   * @param queue
+   *          activity queue to use, may be null
+   */
+  public void setActivityQueue(AutoActivityQueue queue) {
+    this.fActivityQueue = queue;
+  }
+
+  /**
+   * Sets the snapshot cache used to page through large results without repeating their queries.
+   *
+   * @param snapshots
+   *          snapshot cache to use
+   */
+  public void setSnapshots(ResultSnapshotCache snapshots) {
+    this.fSnapshots = snapshots;
+  }
+
   /**
    * Retrieves case insensitive skill autocompletion results based on a text fragment. If no
    * fragment is given, all skills will be returned.
@@ -193,46 +222,56 @@ public class GraphSkillSPI {
       queryString += sanitizeFragment(fragment) + "*";
     }
 
-    final IndexHits<Node> qResult = this.fSkillNodes.query(GraphSkillSPI.ID_FIELD, queryString);
-    for (final Node node : qResult) {
-      nodeList.add(node);
-    }
+    final int level = CallProfile.start(options);
+    try {
 
-    // filter and sort
-    NodeFilter.filterNodes(nodeList, options);
-    options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.NAME_FIELD);
-    NodeSorter.sortNodes(nodeList, options);
+      CallProfile.phase(Phase.LOOKUP);
+      final IndexHits<Node> qResult = this.fSkillNodes.query(GraphSkillSPI.ID_FIELD, queryString);
+      for (final Node node : qResult) {
+        nodeList.add(node);
+      }
+      CallProfile.count(Counter.INDEX_HITS, nodeList.size());
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // filter and sort
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, nodeList.size());
+      NodeFilter.filterNodes(nodeList, options);
+      CallProfile.count(Counter.FILTER_OUTPUT, nodeList.size());
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = nodeList.size();
-    }
+      CallProfile.phase(Phase.SORT);
+      options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.NAME_FIELD);
+      final int first = PartialNodeSorter.sortNodes(nodeList, options);
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    final int last = Math.min(nodeList.size(), first + max);
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = nodeList.size();
+      }
 
-    // add skills after filtering and sorting
-    Node skillNode = null;
-    for (int index = first; index < last; ++index) {
-      skillNode = nodeList.get(index);
-      skills.add(skillNode.getProperty(GraphSkillSPI.NAME_FIELD).toString());
-    }
+      final int last = Math.min(nodeList.size(), first + max);
 
-    final ListResult result = new ListResult(skills);
-    result.setFirst(first);
-    result.setMax(max);
-    result.setTotal(nodeList.size());
-    return result;
+      // add skills after filtering and sorting
+      CallProfile.phase(Phase.CONVERT);
+      Node skillNode = null;
+      for (int index = first; index < last; ++index) {
+        skillNode = nodeList.get(index);
+        skills.add(skillNode.getProperty(GraphSkillSPI.NAME_FIELD).toString());
+      }
+      CallProfile.count(Counter.CONVERSIONS, skills.size());
+
+      final ListResult result = new ListResult(skills);
+      result.setFirst(first);
+      result.setMax(max);
+      result.setTotal(nodeList.size());
+      return CallProfile.finish(result, this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   // delivers a lower case fragment with syntax character escaped
@@ -282,63 +321,81 @@ public class GraphSkillSPI {
    */
   public ListResult getSkills(String userId, Map<String, Object> options) {
     final List<Map<String, Object>> skills = this.fImpl.newList();
-    final Node person = this.fPersonSPI.getPersonNode(userId);
 
-    if (person == null) {
-      throw new RuntimeException("person with id '" + userId + "' not found");
-    }
+    final int level = CallProfile.start(options);
+    try {
 
-    // get all skill link nodes
-    final List<Node> nodeList = new ArrayList<Node>();
-    final Iterable<Relationship> skillRels = person.getRelationships(ShindigRelTypes.HAS_SKILL,
-            Direction.OUTGOING);
-    for (final Relationship r : skillRels) {
-      nodeList.add(r.getEndNode());
-    }
+      CallProfile.phase(Phase.LOOKUP);
+      final Node person = this.fPersonSPI.getPersonNode(userId);
+      CallProfile.count(Counter.INDEX_HITS, 1);
 
-    // filtering/sorting
-    filterSkills(nodeList, options);
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null) {
-      options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.NAME_FIELD);
-    }
+      if (person == null) {
+        throw new RuntimeException("person with id '" + userId + "' not found");
+      }
 
-    // normal sorting functions won't work since these nodes are structural
-    sortSkills(nodeList, options);
+      // get all skill link nodes
+      CallProfile.phase(Phase.TRAVERSAL);
+      final List<Node> nodeList = new ArrayList<Node>();
+      final Iterable<Relationship> skillRels = person.getRelationships(ShindigRelTypes.HAS_SKILL,
+              Direction.OUTGOING);
+      for (final Relationship r : skillRels) {
+        nodeList.add(r.getEndNode());
+      }
+      CallProfile.count(Counter.RELATIONSHIPS, nodeList.size());
+
+      // filtering/sorting
+      CallProfile.phase(Phase.FILTER);
+      CallProfile.count(Counter.FILTER_INPUT, nodeList.size());
+      filterSkills(nodeList, options);
+      CallProfile.count(Counter.FILTER_OUTPUT, nodeList.size());
+
+      CallProfile.phase(Phase.SORT);
+      final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+      if (sortField == null) {
+        options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.NAME_FIELD);
+      }
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+      // normal sorting functions won't work since these nodes are structural
+      sortSkills(nodeList, options);
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = nodeList.size();
-    }
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = nodeList.size();
+      }
 
-    final int last = Math.min(nodeList.size(), first + max);
+      int first = 0;
+      if (options.get(WebsockConstants.SUBSET_START) != null) {
+        first = (Integer) options.get(WebsockConstants.SUBSET_START);
+      }
 
-    // add skills after filtering and sorting
-    Node skillNode = null;
-    for (int index = first; index < last; ++index) {
-      skillNode = nodeList.get(index);
+      final int last = Math.min(nodeList.size(), first + max);
 
-      final GraphSkillSet skillSet = new GraphSkillSet(skillNode, this.fImpl);
-      final Map<String, Object> skillSetDTO = skillSet.toMap(null);
-      skills.add(skillSetDTO);
-    }
+      // add skills after filtering and sorting
+      CallProfile.phase(Phase.CONVERT);
+      Node skillNode = null;
+      for (int index = first; index < last; ++index) {
+        skillNode = nodeList.get(index);
 
-    final ListResult result = new ListResult(skills);
-    result.setFirst(first);
-    result.setMax(max);
-    result.setTotal(nodeList.size());
-    return result;
+        final GraphSkillSet skillSet = new GraphSkillSet(skillNode, this.fImpl);
+        final Map<String, Object> skillSetDTO = skillSet.toMap(null);
+        skills.add(skillSetDTO);
+      }
+      CallProfile.count(Counter.CONVERSIONS, skills.size());
+
+      final ListResult result = new ListResult(skills);
+      result.setFirst(first);
+      result.setMax(max);
+      result.setTotal(nodeList.size());
+      return CallProfile.finish(result, this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   private void filterSkills(List<Node> nodes, Map<String, Object> options) {
@@ -777,57 +834,87 @@ public class GraphSkillSPI {
 
     // TODO: visibility?
 
-    // retrieve person nodes
-    final Set<Node> personNodeSet = getPersonNodesForSkill(skill);
+    final int level = CallProfile.start(options);
+    try {
 
-    // TODO: alternatively sort by number of links?
+      // continue from a previous call's snapshot if available
+      final String scope = ResultSnapshotCache.getScope(GraphSkillSPI.PEOPLE_BY_SKILL_SCOPE + skill,
+              options);
+      List<Node> nodeList = null;
+      if (this.fSnapshots != null && ResultSnapshotCache.isRequested(options)) {
+        nodeList = this.fSnapshots.restore(scope, options);
+      }
 
-    // create a list to add sortability
-    final List<Node> nodeList = new ArrayList<Node>(personNodeSet);
+      int first = 0;
+      if (options.get(WebsockConstants.SUBSET_START) != null) {
+        first = (Integer) options.get(WebsockConstants.SUBSET_START);
+      }
 
-    // create a sorted list as defined by parameters
-    final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
-    if (sortField == null || sortField.equals(GraphSkillSPI.NAME_FIELD)) {
-      options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.FORMATTED_FIELD);
-    }
-    NodeSorter.sortNodes(nodeList, options);
+      if (nodeList == null) {
+        // retrieve person nodes
+        CallProfile.phase(Phase.TRAVERSAL);
+        final Set<Node> personNodeSet = getPersonNodesForSkill(skill);
 
-    Node personNode = null;
-    Map<String, Object> tmpPerson = null;
+        // TODO: alternatively sort by number of links?
 
-    // determine the first and last index of entries to fetch
-    int max = 0;
-    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
-      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
-    }
+        // create a list to add sortability
+        nodeList = new ArrayList<Node>(personNodeSet);
+        CallProfile.count(Counter.RELATIONSHIPS, nodeList.size());
 
-    // if parameters are undefined, return all
-    if (max == 0) {
-      max = nodeList.size();
-    }
+        // create a sorted list as defined by parameters, completely for snapshots
+        CallProfile.phase(Phase.SORT);
+        final String sortField = (String) options.get(WebsockConstants.SORT_FIELD);
+        if (sortField == null || sortField.equals(GraphSkillSPI.NAME_FIELD)) {
+          options.put(WebsockConstants.SORT_FIELD, GraphSkillSPI.FORMATTED_FIELD);
+        }
+        first = PartialNodeSorter.sortNodes(nodeList, options,
+                ResultSnapshotCache.isRequested(options));
+      }
 
-    int first = 0;
-    if (options.get(WebsockConstants.SUBSET_START) != null) {
-      first = (Integer) options.get(WebsockConstants.SUBSET_START);
-    }
+      Node personNode = null;
+      Map<String, Object> tmpPerson = null;
 
-    final int last = Math.min(nodeList.size(), first + max);
+      // determine the first and last index of entries to fetch
+      int max = 0;
+      if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+        max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+      }
 
-    // convert the items requested
-    for (int index = first; index < last; ++index) {
-      personNode = nodeList.get(index);
-      tmpPerson = new GraphPerson(personNode, this.fImpl).toMap(fieldSet);
+      // if parameters are undefined, return all
+      if (max == 0) {
+        max = nodeList.size();
+      }
 
-      personList.add(tmpPerson);
-    }
+      final int last = Math.min(nodeList.size(), first + max);
 
-    // return search query information
-    final ListResult people = new ListResult(personList);
-    people.setFirst(first);
-    people.setMax(max);
-    people.setTotal(nodeList.size());
+      // convert the items requested
+      CallProfile.phase(Phase.CONVERT);
+      for (int index = first; index < last; ++index) {
+        personNode = nodeList.get(index);
+        if (personNode == null) {
+          // deleted since the snapshot was taken
+          continue;
+        }
+        tmpPerson = new GraphPerson(personNode, this.fImpl).toMap(fieldSet);
+
+        personList.add(tmpPerson);
+      }
+      CallProfile.count(Counter.CONVERSIONS, personList.size());
 
-    return people;
+      // return search query information
+      ListResult people = new ListResult(personList);
+      people.setFirst(first);
+      people.setMax(max);
+      people.setTotal(nodeList.size());
+
+      if (this.fSnapshots != null) {
+        people = this.fSnapshots.store(scope, nodeList, options, people);
+      }
+
+      return CallProfile.finish(people, this.fImpl);
+    } finally {
+      CallProfile.release(level);
+    }
   }
 
   private void skillActivity(String userId, String otherUserId, String skill, boolean add) {
@@ -881,6 +968,11 @@ public class GraphSkillSPI {
     final String timestamp = this.fDateFormat.format(new Date(System.currentTimeMillis()));
     activity.put(OSFields.ACT_PUBLISHED_FIELD, timestamp);
 
+    if (this.fActivityQueue != null) {
+      this.fActivityQueue.submit(userId, OSFields.SHINDIG_ID, activity);
+      return;
+    }
+
     try {
       this.fActivities.createActivityEntry(userId, null, OSFields.SHINDIG_ID, activity, null);
     } catch (final Exception e) {
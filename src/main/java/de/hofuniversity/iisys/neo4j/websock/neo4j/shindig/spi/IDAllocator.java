@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+
+/**
+ * ID manager reserving blocks of IDs per type and handing them out from memory without locking.
+ * The end of the latest reserved block is committed before any of its IDs is handed out, so that
+ * IDs of blocks that were not used up before a crash or restart are skipped rather than reused.
+ * Reservations are committed in their own transaction on a dedicated thread, independent of any
+ * transaction of the calling thread.
+ *
+ * The allocator keeps its own persistent counter per type, advanced by a whole block in a single
+ * write. Only the first block of a type continues after the last ID generated by the underlying
+ * ID manager, which is not used for that type afterwards. Once blocks were reserved, IDs have to
+ * be generated by an allocator from then on, if necessary with a block size of 1, as the
+ * underlying ID manager would generate IDs again that were already handed out. Types whose IDs are
+ * not numeric are passed on to the underlying ID manager.
+ */
+public class IDAllocator extends IDManager {
+  private static final String TYPE_FIELD = "type";
+  private static final String NEXT_FIELD = "next";
+
+  private final GraphDatabaseService fDatabase;
+  private final Index<Node> fBlockNodes;
+  private final int fBlockSize;
+
+  private final ConcurrentMap<String, Block> fBlocks;
+  private final Object fReserveLock = new Object();
+  private final ExecutorService fReserver;
+
+  private final Logger fLogger;
+
+  /**
+   * Creates an allocator reserving blocks of the given size in the given database. Throws a
+   * NullPointerException if the database is null and an IllegalArgumentException if the block
+   * size is not positive.
+   *
+   * @param database
+   *          graph database to use
+   * @param blockSize
+   *          number of IDs to reserve at once
+   */
+  public IDAllocator(GraphDatabaseService database, int blockSize) {
+    super(database);
+
+    if (database == null) {
+      throw new NullPointerException("graph database service was null");
+    }
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("block size must be positive");
+    }
+
+    this.fDatabase = database;
+    this.fBlockNodes = this.fDatabase.index().forNodes(ShindigConstants.ID_BLOCK_NODES);
+    this.fBlockSize = blockSize;
+
+    this.fBlocks = new ConcurrentHashMap<String, Block>();
+    this.fReserver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        final Thread thread = new Thread(runnable, "ID block reserver");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  @Override
+  public String genID(String type) {
+    Block block = this.fBlocks.get(type);
+
+    while (true) {
+      if (block != null) {
+        if (block.fDelegate) {
+          return super.genID(type);
+        }
+
+        final long id = block.fNext.getAndIncrement();
+        if (id < block.fEnd) {
+          return String.valueOf(id);
+        }
+      }
+
+      block = nextBlock(type, block);
+    }
+  }
+
+  /**
+   * Stops the thread reserving blocks. IDs left in blocks that were already reserved can still be
+   * generated, reserving further blocks fails afterwards.
+   */
+  public void close() {
+    this.fReserver.shutdown();
+  }
+
+  private Block nextBlock(String type, Block exhausted) {
+    // not synchronized on the allocator itself, which the reserving ID manager may lock
+    synchronized (this.fReserveLock) {
+      // another thread may have reserved a new block in the meantime
+      final Block current = this.fBlocks.get(type);
+      if (current != exhausted) {
+        return current;
+      }
+
+      final Block block = submit(type);
+      this.fBlocks.put(type, block);
+      return block;
+    }
+  }
+
+  private Block submit(final String type) {
+    try {
+      return this.fReserver.submit(new Callable<Block>() {
+        @Override
+        public Block call() {
+          return reserve(type);
+        }
+      }).get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("interrupted while reserving IDs for " + type, e);
+    } catch (final ExecutionException e) {
+      throw new RuntimeException("could not reserve IDs for " + type, e.getCause());
+    }
+  }
+
+  private Block reserve(String type) {
+    Node counter = this.fBlockNodes.get(IDAllocator.TYPE_FIELD, type).getSingle();
+
+    long start;
+    if (counter != null) {
+      start = (Long) counter.getProperty(IDAllocator.NEXT_FIELD);
+    } else {
+      // first block, continue after the IDs generated so far
+      try {
+        start = Long.parseLong(super.genID(type));
+      } catch (final NumberFormatException e) {
+        this.fLogger.log(Level.WARNING, "IDs of type " + type + " are not numeric, "
+                + "not allocating them in blocks");
+        return new Block();
+      }
+    }
+    final long end = start + this.fBlockSize;
+
+    final Transaction trans = this.fDatabase.beginTx();
+    try {
+      if (counter == null) {
+        counter = this.fDatabase.createNode();
+        counter.setProperty(IDAllocator.TYPE_FIELD, type);
+        this.fBlockNodes.add(counter, IDAllocator.TYPE_FIELD, type);
+      }
+      counter.setProperty(IDAllocator.NEXT_FIELD, end);
+
+      trans.success();
+      trans.finish();
+    } catch (final RuntimeException e) {
+      trans.failure();
+      trans.finish();
+      throw e;
+    }
+
+    return new Block(start, end);
+  }
+
+  private static class Block {
+    private final AtomicLong fNext;
+    private final long fEnd;
+    private final boolean fDelegate;
+
+    public Block() {
+      this.fNext = null;
+      this.fEnd = 0;
+      this.fDelegate = true;
+    }
+
+    public Block(long start, long end) {
+      this.fNext = new AtomicLong(start);
+      this.fEnd = end;
+      this.fDelegate = false;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+
+/**
+ * Service running one-time data migrations, such as filling newly introduced indices with
+ * existing data. Applied migrations are recorded by name in their own index, so that every
+ * migration only runs once per database.
+ */
+public class MigrationService {
+  private static final String NAME_FIELD = "name";
+  private static final String APPLIED_FIELD = "applied";
+
+  private final GraphDatabaseService fDatabase;
+  private final Index<Node> fMigrations;
+
+  private final Logger fLogger;
+
+  /**
+   * Creates a migration service recording migrations in the given database. Throws a
+   * NullPointerException if the given service is null.
+   *
+   * @param database
+   *          database service to use
+   */
+  public MigrationService(GraphDatabaseService database) {
+    if (database == null) {
+      throw new NullPointerException("database service was null");
+    }
+
+    this.fDatabase = database;
+    this.fMigrations = this.fDatabase.index().forNodes(ShindigConstants.MIGRATION_NODES);
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  /**
+   * @param name
+   *          name of a migration
+   * @return whether the migration has already been applied
+   */
+  public boolean isApplied(String name) {
+    return this.fMigrations.get(MigrationService.NAME_FIELD, name).getSingle() != null;
+  }
+
+  /**
+   * Runs the given migration if it has not been applied yet and records it afterwards. The
+   * migration manages its own transactions. If it fails, it is not recorded and will be run again
+   * the next time, so migrations need to be able to resume. Throws a NullPointerException if a
+   * parameter is null.
+   *
+   * @param name
+   *          unique name of the migration
+   * @param migration
+   *          migration to run
+   */
+  public void runOnce(String name, Runnable migration) {
+    if (name == null) {
+      throw new NullPointerException("migration name was null");
+    }
+    if (migration == null) {
+      throw new NullPointerException("migration was null");
+    }
+
+    if (isApplied(name)) {
+      return;
+    }
+
+    this.fLogger.log(Level.INFO, "running migration " + name);
+    final long start = System.currentTimeMillis();
+    migration.run();
+
+    final Transaction trans = this.fDatabase.beginTx();
+    try {
+      final Node node = this.fDatabase.createNode();
+      node.setProperty(MigrationService.NAME_FIELD, name);
+      node.setProperty(MigrationService.APPLIED_FIELD, System.currentTimeMillis());
+      this.fMigrations.add(node, MigrationService.NAME_FIELD, name);
+
+      trans.success();
+      trans.finish();
+    } catch (final Exception e) {
+      trans.failure();
+      trans.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    this.fLogger.log(Level.INFO, "migration " + name + " finished after "
+            + (System.currentTimeMillis() - start) + "ms");
+  }
+}
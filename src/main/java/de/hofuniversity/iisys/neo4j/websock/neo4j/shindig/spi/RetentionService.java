@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.IndexHits;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityChain;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
+
+/**
+ * Service enforcing a retention policy on the activity entries people acted, limiting them by age
+ * and by number per person. Expired entries and the activity objects only they used are deleted
+ * in small batches, each in its own transaction. Optionally, deleted entries are counted in
+ * monthly summary nodes linked to their owner before they are deleted. Runs periodically in a
+ * background thread if an interval and a limit are configured, which has to be stopped before the
+ * database shuts down.
+ */
+public class RetentionService implements Runnable {
+  /**
+   * Property containing the interval in milliseconds between retention runs.
+   */
+  public static final String INTERVAL_PROP = "retention.interval";
+
+  /**
+   * Property containing the maximum age of activity entries in days.
+   */
+  public static final String MAX_AGE_PROP = "retention.max_age";
+
+  /**
+   * Property containing the maximum number of activity entries per person.
+   */
+  public static final String MAX_COUNT_PROP = "retention.max_count";
+
+  /**
+   * Property containing the number of activity entries deleted per transaction.
+   */
+  public static final String BATCH_SIZE_PROP = "retention.batch_size";
+
+  /**
+   * Property defining whether deleted entries are recorded in summary nodes.
+   */
+  public static final String SUMMARIES_PROP = "retention.summaries";
+
+  /**
+   * Key of a summary's period in the format yyyy-MM.
+   */
+  public static final String PERIOD_FIELD = "period";
+
+  /**
+   * Key of the number of summarized activity entries.
+   */
+  public static final String COUNT_FIELD = "count";
+
+  /**
+   * Key of the oldest summarized entry's timestamp.
+   */
+  public static final String FIRST_FIELD = "first";
+
+  /**
+   * Key of the newest summarized entry's timestamp.
+   */
+  public static final String LAST_FIELD = "last";
+
+  private static final String ID_FIELD = "id";
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final long STOP_TIMEOUT = 30000;
+
+  private final GraphDatabaseService fDatabase;
+  private final GraphActivityStreamSPI fActivities;
+
+  private final long fInterval;
+  private final long fMaxAge;
+  private final int fMaxCount;
+  private final int fBatchSize;
+  private final boolean fSummaries;
+
+  private final DateFormat fPeriodFormat;
+  private final Logger fLogger;
+
+  private final Object fStopLock;
+  private Thread fThread;
+  private volatile boolean fStopped;
+
+  /**
+   * Creates a retention service deleting activity entries using the given activitystreams
+   * service, configured by the given configuration. Starts a background thread if an interval
+   * and at least one limit are configured. Throws a NullPointerException if a parameter is null.
+   *
+   * @param database
+   *          graph database to use
+   * @param activities
+   *          activitystreams service to delete entries with
+   * @param config
+   *          configuration to use
+   */
+  public RetentionService(GraphDatabaseService database, GraphActivityStreamSPI activities,
+          Map<String, String> config) {
+    if (database == null) {
+      throw new NullPointerException("graph database service was null");
+    }
+    if (activities == null) {
+      throw new NullPointerException("activitystreams service was null");
+    }
+    if (config == null) {
+      throw new NullPointerException("configuration object was null");
+    }
+
+    this.fDatabase = database;
+    this.fActivities = activities;
+
+    this.fInterval = getLong(config, RetentionService.INTERVAL_PROP, 0);
+    this.fMaxAge = TimeUnit.DAYS.toMillis(getLong(config, RetentionService.MAX_AGE_PROP, 0));
+    this.fMaxCount = (int) getLong(config, RetentionService.MAX_COUNT_PROP, 0);
+    this.fBatchSize = Math.max(1, (int) getLong(config, RetentionService.BATCH_SIZE_PROP,
+            RetentionService.DEFAULT_BATCH_SIZE));
+    this.fSummaries = Boolean.parseBoolean(config.get(RetentionService.SUMMARIES_PROP));
+
+    this.fPeriodFormat = new SimpleDateFormat("yyyy-MM");
+    this.fPeriodFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+
+    this.fStopLock = new Object();
+
+    // start background thread if configured
+    if (this.fInterval > 0 && isLimited()) {
+      this.fThread = new Thread(this, "activity retention");
+      this.fThread.setDaemon(true);
+      this.fThread.start();
+    }
+  }
+
+  private static long getLong(Map<String, String> config, String key, long def) {
+    final String value = config.get(key);
+
+    long result = def;
+    if (value != null && !value.trim().isEmpty()) {
+      result = Long.parseLong(value.trim());
+    }
+    return result;
+  }
+
+  /**
+   * @return whether entries are limited by age or number
+   */
+  public boolean isLimited() {
+    return this.fMaxAge > 0 || this.fMaxCount > 0;
+  }
+
+  @Override
+  public void run() {
+    while (!this.fStopped) {
+      try {
+        synchronized (this.fStopLock) {
+          if (!this.fStopped) {
+            this.fStopLock.wait(this.fInterval);
+          }
+        }
+
+        if (!this.fStopped) {
+          apply();
+        }
+      } catch (final InterruptedException e) {
+        return;
+      } catch (final Exception e) {
+        this.fLogger.log(Level.SEVERE, "activity retention failed", e);
+      }
+    }
+  }
+
+  /**
+   * Stops the background thread, waiting for a running retention run to finish its current
+   * person. The thread is not interrupted as that could close the database's file channels.
+   */
+  public void stop() {
+    synchronized (this.fStopLock) {
+      this.fStopped = true;
+      this.fStopLock.notifyAll();
+    }
+
+    if (this.fThread != null && this.fThread != Thread.currentThread()) {
+      try {
+        this.fThread.join(RetentionService.STOP_TIMEOUT);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Deletes all activity entries exceeding the configured limits.
+   *
+   * @return number of deleted entries
+   */
+  public synchronized int apply() {
+    if (!isLimited()) {
+      return 0;
+    }
+
+    final long cutoff = this.fMaxAge > 0 ? System.currentTimeMillis() - this.fMaxAge
+            : Long.MIN_VALUE;
+
+    // collect people first, as their entries are deleted in separate transactions
+    final List<Node> people = new ArrayList<Node>();
+    final IndexHits<Node> hits = this.fDatabase.index().forNodes(ShindigConstants.PERSON_NODES)
+            .query(RetentionService.ID_FIELD, "*");
+    try {
+      for (final Node person : hits) {
+        people.add(person);
+      }
+    } finally {
+      hits.close();
+    }
+
+    int deleted = 0;
+    for (final Node person : people) {
+      if (this.fStopped) {
+        break;
+      }
+
+      // a single broken or concurrently deleted person must not stop the whole run
+      try {
+        deleted += apply(person, cutoff);
+      } catch (final Exception e) {
+        this.fLogger.log(Level.WARNING, "could not apply retention to person " + person.getId(),
+                e);
+      }
+    }
+
+    if (deleted > 0) {
+      this.fLogger.log(Level.INFO, "deleted " + deleted + " expired activity entries");
+    }
+    return deleted;
+  }
+
+  private int apply(Node person, long cutoff) {
+    final List<Node> expired = getExpired(person, cutoff);
+
+    // delete in batches, each one committed with its summaries
+    final Map<String, Node> summaries = new HashMap<String, Node>();
+    int deleted = 0;
+    for (int start = 0; start < expired.size(); start += this.fBatchSize) {
+      final List<Node> batch = expired.subList(start,
+              Math.min(start + this.fBatchSize, expired.size()));
+
+      final Transaction tx = this.fDatabase.beginTx();
+      try {
+        if (this.fSummaries) {
+          for (final Node entry : batch) {
+            summarize(person, entry, summaries);
+          }
+        }
+        this.fActivities.deleteActivityNodes(batch);
+
+        tx.success();
+        tx.finish();
+        deleted += batch.size();
+      } catch (final Exception e) {
+        tx.failure();
+        tx.finish();
+
+        // summary nodes created or changed in this batch have been rolled back
+        summaries.clear();
+        this.fLogger.log(Level.WARNING, "could not delete expired activity entries of person "
+                + person.getId(), e);
+      }
+    }
+
+    return deleted;
+  }
+
+  private List<Node> getExpired(Node person, long cutoff) {
+    final List<Node> expired = new ArrayList<Node>();
+
+    if (ActivityChain.exists(person)) {
+      /*
+       * chains are ordered newest first with entries without a timestamp last, so expired entries
+       * are found walking from the oldest entry towards newer ones, up to the first dated entry
+       * that is neither too old nor beyond the maximum count
+       */
+      Node entry = ActivityChain.getLast(person);
+      int index = ActivityChain.getCount(person) - 1;
+      while (entry != null) {
+        if (isExpired(entry, index, cutoff)) {
+          expired.add(entry);
+        } else if (entry.hasProperty(ActivityChain.ORDER_FIELD)) {
+          break;
+        }
+        entry = ActivityChain.getPrevious(entry);
+        --index;
+      }
+
+      return expired;
+    }
+
+    final List<Node> entries = new ArrayList<Node>();
+    for (final Relationship rel : person.getRelationships(Neo4jRelTypes.ACTED,
+            Direction.OUTGOING)) {
+      entries.add(rel.getEndNode());
+    }
+
+    Collections.sort(entries, new Comparator<Node>() {
+      @Override
+      public int compare(Node o1, Node o2) {
+        final Long ts1 = ActivityTime.getTimestamp(o1);
+        final Long ts2 = ActivityTime.getTimestamp(o2);
+
+        // newest first, entries without dates last
+        if (ts1 == null) {
+          return ts2 == null ? 0 : 1;
+        } else if (ts2 == null) {
+          return -1;
+        }
+        return ts2.compareTo(ts1);
+      }
+    });
+
+    for (int index = 0; index < entries.size(); ++index) {
+      if (isExpired(entries.get(index), index, cutoff)) {
+        expired.add(entries.get(index));
+      }
+    }
+
+    return expired;
+  }
+
+  private boolean isExpired(Node entry, int index, long cutoff) {
+    if (this.fMaxCount > 0 && index >= this.fMaxCount) {
+      return true;
+    }
+
+    // only read timestamps if there is an age limit
+    if (this.fMaxAge > 0) {
+      final Long timestamp = ActivityTime.getTimestamp(entry);
+      return timestamp != null && timestamp < cutoff;
+    }
+    return false;
+  }
+
+  private void summarize(Node person, Node entry, Map<String, Node> summaries) {
+    final Long timestamp = ActivityTime.getTimestamp(entry);
+    final String period = timestamp != null ? this.fPeriodFormat.format(new Date(timestamp))
+            : "";
+
+    Node summary = summaries.get(period);
+    if (summary == null) {
+      summary = getSummary(person, period);
+      summaries.put(period, summary);
+    }
+
+    summary.setProperty(RetentionService.COUNT_FIELD,
+            (Integer) summary.getProperty(RetentionService.COUNT_FIELD, 0) + 1);
+
+    if (timestamp != null) {
+      final Long first = (Long) summary.getProperty(RetentionService.FIRST_FIELD, null);
+      if (first == null || timestamp < first) {
+        summary.setProperty(RetentionService.FIRST_FIELD, timestamp);
+      }
+
+      final Long last = (Long) summary.getProperty(RetentionService.LAST_FIELD, null);
+      if (last == null || timestamp > last) {
+        summary.setProperty(RetentionService.LAST_FIELD, timestamp);
+      }
+    }
+  }
+
+  private Node getSummary(Node person, String period) {
+    for (final Relationship rel : person.getRelationships(ShindigRelTypes.ACTIVITY_SUMMARY,
+            Direction.OUTGOING)) {
+      if (period.equals(rel.getEndNode().getProperty(RetentionService.PERIOD_FIELD, null))) {
+        return rel.getEndNode();
+      }
+    }
+
+    final Node summary = this.fDatabase.createNode();
+    summary.setProperty(RetentionService.PERIOD_FIELD, period);
+    person.createRelationshipTo(summary, ShindigRelTypes.ACTIVITY_SUMMARY);
+    return summary;
+  }
+}
@@ -25,11 +25,15 @@ public class ShindigConstants {
   // configuration
   public static final String ACT_OBJ_DEDUP_PROP = "activityobjects.deduplicate";
   public static final String ACT_OBJ_UPDATE_PROP = "activityobjects.update";
+  public static final String ACT_OBJ_CACHE_PROP = "activityobjects.cache.size";
+  public static final String ACT_OBJ_DEDUP_CONTENT_PROP = "activityobjects.deduplicate.content";
+  public static final String ACT_OBJ_LOOKUP_PROP = "activityobjects.lookup.size";
 
   // indices
   public static final String PERSON_NODES = "persons";
   public static final String APP_NODES = "applications";
   public static final String ACTIVITY_ENTRY_NODES = "activityentry";
+  public static final String APP_ACTIVITY_NODES = "appactivityentry";
   public static final String MESSAGE_NODES = "messages";
   public static final String GROUP_NODES = "groups";
   public static final String ID_NODE = "id";
@@ -37,10 +41,14 @@ public class ShindigConstants {
   public static final String ORG_UNIT_NODES = "orgunits";
   public static final String ORG_NODE = "organization";
   public static final String DOC_TYPE_NODES = "doctypes";
+  public static final String MIGRATION_NODES = "migrations";
+  public static final String TIMELINE_NODES = "timelines";
+  public static final String ID_BLOCK_NODES = "idblocks";
 
   // other
   public static final String PERSON_TYPE = "person";
   public static final String ACT_OBJ_TYPE_SUFF = "_activityobject";
+  public static final String ACT_OBJ_HASH_FIELD = "contentHash";
   public static final String MESSAGE_COLLECTION_NODES = "message_collections";
   public static final String ALBUM_NODES = "albums";
   public static final String MEDIA_ITEM_NODES = "mediaItems";
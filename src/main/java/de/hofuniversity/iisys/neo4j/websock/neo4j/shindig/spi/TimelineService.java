@@ -0,0 +1,736 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.graphdb.index.IndexHits;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityChain;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Service maintaining materialized timelines of the newest activity entries of each person's
+ * friends. A timeline stores the node IDs of up to a configured number of entries in the order of
+ * the activity chains and the total number of the friends' entries. New entries are pushed to the
+ * timelines of all friends of their owner, so that a friends stream can be read without visiting
+ * the friends. Timelines are only maintained for people who already have one. They are built
+ * from the friends' activity chains by a backfill of all people without one and when a person
+ * without one gains a friend, never while reading, so that reads do not take any locks.
+ *
+ * A timeline always holds the beginning of its person's friend stream, but it may hold less than
+ * the whole stream, for example after a friend was removed. Requests reaching beyond the stored
+ * entries have to be answered by traversing the friends. All modifying methods have to be called
+ * within a transaction.
+ */
+public class TimelineService {
+  private static final String ID_FIELD = "id";
+  private static final String ENTRIES_PROP = "entries";
+  private static final String TOTAL_PROP = "total";
+
+  private static final int CLEAR_CHUNK_SIZE = 1000;
+  private static final int BUILD_CHUNK_SIZE = 100;
+
+  private final GraphDatabaseService fDatabase;
+  private final Index<Node> fTimelines;
+  private final int fLength;
+
+  private final Logger fLogger;
+
+  /**
+   * Creates a timeline service storing up to the given number of entries per timeline in the given
+   * database. Throws a NullPointerException if the database service is null and an
+   * IllegalArgumentException if the length is not positive.
+   *
+   * @param database
+   *          database service to use
+   * @param length
+   *          maximum number of entries per timeline
+   */
+  public TimelineService(GraphDatabaseService database, int length) {
+    if (database == null) {
+      throw new NullPointerException("database service was null");
+    }
+    if (length <= 0) {
+      throw new IllegalArgumentException("timeline length must be positive");
+    }
+
+    this.fDatabase = database;
+    this.fTimelines = this.fDatabase.index().forNodes(ShindigConstants.TIMELINE_NODES);
+    this.fLength = length;
+
+    this.fLogger = Logger.getLogger(this.getClass().getName());
+  }
+
+  /**
+   * @return maximum number of entries per timeline
+   */
+  public int getLength() {
+    return this.fLength;
+  }
+
+  private Node getTimeline(Node person) {
+    final Relationship rel = person.getSingleRelationship(ShindigRelTypes.TIMELINE,
+            Direction.OUTGOING);
+
+    Node timeline = null;
+    if (rel != null) {
+      timeline = rel.getEndNode();
+    }
+    return timeline;
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return whether the person has a timeline
+   */
+  public boolean exists(Node person) {
+    return getTimeline(person) != null;
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return node IDs of the newest entries of the person's friends or null if there is no
+   *         timeline
+   */
+  public long[] getEntries(Node person) {
+    final Node timeline = getTimeline(person);
+
+    long[] entries = null;
+    if (timeline != null) {
+      entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+    }
+    return entries;
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return total number of entries of the person's friends according to the timeline
+   */
+  public int getTotal(Node person) {
+    final Node timeline = getTimeline(person);
+
+    int total = 0;
+    if (timeline != null) {
+      total = (Integer) timeline.getProperty(TimelineService.TOTAL_PROP);
+    }
+    return total;
+  }
+
+  /**
+   * Builds or rebuilds the timeline of a person from their friends' activity chains.
+   *
+   * @param person
+   *          person node to build the timeline for
+   */
+  public void build(Node person) {
+    // prevent concurrent builds from creating two timelines
+    lock(person);
+    Node timeline = getTimeline(person);
+
+    if (timeline == null) {
+      timeline = this.fDatabase.createNode();
+      person.createRelationshipTo(timeline, ShindigRelTypes.TIMELINE);
+      this.fTimelines.add(timeline, TimelineService.ID_FIELD,
+              person.getProperty(TimelineService.ID_FIELD));
+    } else {
+      lock(timeline);
+    }
+
+    final List<Node> candidates = new ArrayList<Node>();
+    Node bound = null;
+    int total = 0;
+
+    for (final Relationship rel : person.getRelationships(Direction.OUTGOING,
+            ShindigRelTypes.FRIEND_OF)) {
+      bound = addNewest(rel.getEndNode(), candidates, bound);
+      total += ActivityChain.getCount(rel.getEndNode());
+    }
+
+    store(timeline, candidates, bound, total);
+  }
+
+  /**
+   * Builds the timelines of all people who do not have one yet, for example after enabling
+   * timelines. Manages its own transactions, building timelines in chunks.
+   */
+  public void buildMissing() {
+    final List<Node> people = new ArrayList<Node>();
+    final IndexHits<Node> hits = this.fDatabase.index().forNodes(ShindigConstants.PERSON_NODES)
+            .query(TimelineService.ID_FIELD, "*");
+    try {
+      for (final Node person : hits) {
+        if (!exists(person)) {
+          people.add(person);
+        }
+      }
+    } finally {
+      hits.close();
+    }
+
+    if (people.isEmpty()) {
+      return;
+    }
+
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+    try {
+      for (final Node person : people) {
+        build(person);
+
+        // commit in chunks to limit the transaction's size
+        if (++count % TimelineService.BUILD_CHUNK_SIZE == 0) {
+          tx.success();
+          tx.finish();
+          tx = this.fDatabase.beginTx();
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    this.fLogger.log(Level.INFO, "built " + count + " timelines");
+  }
+
+  /*
+   * adds up to the timeline's length of a friend's newest entries to the candidates, returning the
+   * new bound up to which merged candidates are complete
+   */
+  private Node addNewest(Node friend, List<Node> candidates, Node bound) {
+    Node entry = ActivityChain.getFirst(friend);
+    Node last = null;
+
+    int count = 0;
+    while (entry != null && count < this.fLength) {
+      candidates.add(entry);
+      last = entry;
+      entry = ActivityChain.getNext(entry);
+      ++count;
+    }
+
+    // older entries of this friend are missing
+    if (entry != null) {
+      bound = earlier(bound, last);
+    }
+
+    return bound;
+  }
+
+  private Node earlier(Node bound, Node node) {
+    Node earlier = node;
+    if (bound != null
+            && PartialNodeSorter.compare(bound, node, ActivityChain.ORDER_FIELD, true) < 0) {
+      earlier = bound;
+    }
+    return earlier;
+  }
+
+  /*
+   * sorts the candidates and stores them in the timeline up to the bound and the maximum length
+   */
+  private void store(Node timeline, List<Node> candidates, Node bound, int total) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, ActivityChain.ORDER_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(WebsockConstants.SUBSET_SIZE, this.fLength);
+    PartialNodeSorter.sortNodes(candidates, options);
+
+    final int size = Math.min(candidates.size(), this.fLength);
+    final long[] entries = new long[size];
+
+    int index = 0;
+    for (final Node node : candidates) {
+      if (index == size || bound != null
+              && PartialNodeSorter.compare(node, bound, ActivityChain.ORDER_FIELD, true) > 0) {
+        break;
+      }
+      entries[index++] = node.getId();
+    }
+
+    timeline.setProperty(TimelineService.ENTRIES_PROP, copy(entries, index));
+    timeline.setProperty(TimelineService.TOTAL_PROP, total);
+  }
+
+  private long[] copy(long[] entries, int length) {
+    long[] copy = entries;
+    if (length != entries.length) {
+      copy = new long[length];
+      System.arraycopy(entries, 0, copy, 0, length);
+    }
+    return copy;
+  }
+
+  private void lock(Node node) {
+    // joins the surrounding transaction, keeping the lock until it finishes
+    final Transaction tx = this.fDatabase.beginTx();
+    tx.acquireWriteLock(node);
+    tx.success();
+    tx.finish();
+  }
+
+  /**
+   * Pushes a new activity entry to the timelines of all people its owner is a friend of.
+   *
+   * @param owner
+   *          person node the entry belongs to
+   * @param entry
+   *          new activity entry node
+   */
+  public void push(Node owner, Node entry) {
+    Node timeline = null;
+    for (final Relationship rel : owner.getRelationships(Direction.INCOMING,
+            ShindigRelTypes.FRIEND_OF)) {
+      timeline = getTimeline(rel.getStartNode());
+
+      if (timeline != null) {
+        lock(timeline);
+        insert(timeline, entry, new FriendCheck(rel.getStartNode(), owner));
+      }
+    }
+  }
+
+  /**
+   * Pushes several new activity entries of the same owner to the timelines of all people the
+   * owner is a friend of, merging them into each timeline at once. The entries have to be sorted
+   * in the order of the activity chains.
+   *
+   * @param owner
+   *          person node the entries belong to
+   * @param newEntries
+   *          new activity entry nodes in the chains' order
+   */
+  public void pushAll(Node owner, List<Node> newEntries) {
+    if (newEntries.isEmpty()) {
+      return;
+    }
+
+    Node timeline = null;
+    for (final Relationship rel : owner.getRelationships(Direction.INCOMING,
+            ShindigRelTypes.FRIEND_OF)) {
+      timeline = getTimeline(rel.getStartNode());
+
+      if (timeline != null) {
+        lock(timeline);
+        merge(timeline, newEntries, new FriendCheck(rel.getStartNode(), owner));
+      }
+    }
+  }
+
+  private void merge(Node timeline, List<Node> newEntries, FriendCheck friends) {
+    final long[] entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+    final int total = (Integer) timeline.getProperty(TimelineService.TOTAL_PROP);
+
+    // entries behind an incomplete timeline are unknown
+    final boolean complete = entries.length == total;
+
+    // only stored entries compared to new ones are resolved, missing ones are dropped on the way
+    final long[] merged = new long[Math.min(entries.length + newEntries.size(), this.fLength)];
+    int length = 0;
+    int storedIndex = 0;
+    int newIndex = 0;
+    Node stored = null;
+    while (length < merged.length) {
+      if (newIndex == newEntries.size()) {
+        if (storedIndex == entries.length) {
+          break;
+        }
+        merged[length++] = entries[storedIndex++];
+        continue;
+      }
+
+      if (stored == null && storedIndex < entries.length) {
+        stored = getEntry(entries[storedIndex], friends);
+        if (stored == null) {
+          ++storedIndex;
+          continue;
+        }
+      }
+
+      if (stored != null
+              && PartialNodeSorter.compare(stored, newEntries.get(newIndex),
+                      ActivityChain.ORDER_FIELD, true) < 0) {
+        merged[length++] = entries[storedIndex++];
+        stored = null;
+      } else if (stored != null || complete) {
+        merged[length++] = newEntries.get(newIndex++).getId();
+      } else {
+        break;
+      }
+    }
+
+    timeline.setProperty(TimelineService.ENTRIES_PROP, copy(merged, length));
+    timeline.setProperty(TimelineService.TOTAL_PROP, total + newEntries.size());
+  }
+
+  private void insert(Node timeline, Node entry, FriendCheck friends) {
+    long[] entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+    final int total = (Integer) timeline.getProperty(TimelineService.TOTAL_PROP);
+
+    int low = search(entries, entry, friends);
+    if (low < 0) {
+      entries = prune(timeline, entries, friends);
+      low = search(entries, entry, friends);
+    }
+
+    // entries behind an incomplete timeline are unknown
+    final boolean complete = entries.length == total;
+    if (low < this.fLength && (low < entries.length || complete)) {
+      final int length = Math.min(entries.length + 1, this.fLength);
+      final long[] inserted = new long[length];
+
+      System.arraycopy(entries, 0, inserted, 0, low);
+      inserted[low] = entry.getId();
+      System.arraycopy(entries, low, inserted, low + 1, length - low - 1);
+
+      timeline.setProperty(TimelineService.ENTRIES_PROP, inserted);
+    }
+    timeline.setProperty(TimelineService.TOTAL_PROP, total + 1);
+  }
+
+  /*
+   * binary search for the first entry coming after the new one, returns -1 if an entry no longer
+   * exists
+   */
+  private int search(long[] entries, Node entry, FriendCheck friends) {
+    int low = 0;
+    int high = entries.length;
+    Node node = null;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      node = getEntry(entries[mid], friends);
+      if (node == null) {
+        return -1;
+      }
+
+      if (PartialNodeSorter.compare(node, entry, ActivityChain.ORDER_FIELD, true) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private Set<Node> getFriends(Node person) {
+    final Set<Node> friends = new HashSet<Node>();
+    for (final Relationship rel : person.getRelationships(Direction.OUTGOING,
+            ShindigRelTypes.FRIEND_OF)) {
+      friends.add(rel.getEndNode());
+    }
+    return friends;
+  }
+
+  /**
+   * Resolves a stored entry ID, returning null if the node no longer exists or, since node IDs are
+   * reused, is not an activity entry of one of the given friends anymore.
+   *
+   * @param id
+   *          stored node ID
+   * @param friends
+   *          friends of the timeline's person
+   * @return activity entry node or null
+   */
+  public Node getEntry(long id, Set<Node> friends) {
+    final Node entry = resolve(id);
+
+    Node valid = null;
+    if (entry != null && friends.contains(getOwner(entry))) {
+      valid = entry;
+    }
+    return valid;
+  }
+
+  private Node getEntry(long id, FriendCheck friends) {
+    final Node entry = resolve(id);
+
+    Node valid = null;
+    if (entry != null && friends.isFriend(getOwner(entry))) {
+      valid = entry;
+    }
+    return valid;
+  }
+
+  private Node resolve(long id) {
+    Node entry = null;
+    try {
+      entry = this.fDatabase.getNodeById(id);
+    } catch (final NotFoundException e) {
+      // deleted without updating the timeline
+      entry = null;
+    }
+    return entry;
+  }
+
+  private Node getOwner(Node entry) {
+    final Relationship acted = entry.getSingleRelationship(ShindigRelTypes.ACTED,
+            Direction.INCOMING);
+
+    Node owner = null;
+    if (acted != null) {
+      owner = acted.getStartNode();
+    }
+    return owner;
+  }
+
+  /*
+   * removes the IDs of entries that no longer exist from a timeline, leaving the total as it is,
+   * since it is not known whether they were counted
+   */
+  private long[] prune(Node timeline, long[] entries, FriendCheck friends) {
+    final long[] remaining = new long[entries.length];
+    int length = 0;
+    for (final long id : entries) {
+      if (getEntry(id, friends) != null) {
+        remaining[length++] = id;
+      }
+    }
+
+    final long[] pruned = copy(remaining, length);
+    timeline.setProperty(TimelineService.ENTRIES_PROP, pruned);
+    this.fLogger.log(Level.WARNING, "removed " + (entries.length - length)
+            + " missing entries from timeline " + timeline.getId());
+    return pruned;
+  }
+
+  /**
+   * Removes an activity entry from the timelines of all people its owner is a friend of.
+   *
+   * @param owner
+   *          person node the entry belongs to
+   * @param entry
+   *          activity entry node to remove
+   */
+  public void remove(Node owner, Node entry) {
+    final long id = entry.getId();
+
+    Node timeline = null;
+    for (final Relationship rel : owner.getRelationships(Direction.INCOMING,
+            ShindigRelTypes.FRIEND_OF)) {
+      timeline = getTimeline(rel.getStartNode());
+
+      if (timeline != null) {
+        lock(timeline);
+
+        final long[] entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+        final long[] remaining = new long[entries.length];
+        int length = 0;
+        for (final long entryId : entries) {
+          if (entryId != id) {
+            remaining[length++] = entryId;
+          }
+        }
+
+        timeline.setProperty(TimelineService.ENTRIES_PROP, copy(remaining, length));
+        timeline.setProperty(TimelineService.TOTAL_PROP,
+                Math.max(0, (Integer) timeline.getProperty(TimelineService.TOTAL_PROP) - 1));
+      }
+    }
+  }
+
+  /**
+   * Merges the newest entries of a new friend into a person's timeline if there is one.
+   *
+   * @param person
+   *          person node who has a new friend
+   * @param friend
+   *          new friend's person node
+   */
+  public void addFriend(Node person, Node friend) {
+    final Node timeline = getTimeline(person);
+    if (timeline == null) {
+      // the friendship is a write anyway, the new friend is already included
+      build(person);
+      return;
+    }
+    lock(timeline);
+
+    final long[] entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+    final int total = (Integer) timeline.getProperty(TimelineService.TOTAL_PROP);
+
+    // the new friend's entries are not stored yet
+    final Set<Node> friends = getFriends(person);
+    friends.remove(friend);
+
+    final List<Node> candidates = new ArrayList<Node>();
+    Node bound = null;
+    Node node = null;
+    for (final long id : entries) {
+      node = getEntry(id, friends);
+      if (node != null) {
+        candidates.add(node);
+      }
+    }
+    if (entries.length < total && !candidates.isEmpty()) {
+      bound = candidates.get(candidates.size() - 1);
+    }
+
+    bound = addNewest(friend, candidates, bound);
+    store(timeline, candidates, bound, total + ActivityChain.getCount(friend));
+  }
+
+  /**
+   * Removes the entries of a former friend from a person's timeline if there is one.
+   *
+   * @param person
+   *          person node who lost a friend
+   * @param friend
+   *          former friend's person node
+   */
+  public void removeFriend(Node person, Node friend) {
+    final Node timeline = getTimeline(person);
+    if (timeline == null) {
+      return;
+    }
+    lock(timeline);
+
+    final long[] entries = (long[]) timeline.getProperty(TimelineService.ENTRIES_PROP);
+    final long[] remaining = new long[entries.length];
+    int length = 0;
+
+    // the former friend's entries are dropped along with missing ones
+    final Set<Node> friends = getFriends(person);
+    friends.remove(friend);
+
+    for (final long id : entries) {
+      if (getEntry(id, friends) != null) {
+        remaining[length++] = id;
+      }
+    }
+
+    final int total = (Integer) timeline.getProperty(TimelineService.TOTAL_PROP)
+            - ActivityChain.getCount(friend);
+    timeline.setProperty(TimelineService.ENTRIES_PROP, copy(remaining, length));
+    timeline.setProperty(TimelineService.TOTAL_PROP, Math.max(length, total));
+  }
+
+  /**
+   * Deletes all timelines, for example because they were not maintained for a while. Manages its
+   * own transactions, deleting timelines in chunks.
+   */
+  public void clear() {
+    final List<Node> timelines = new ArrayList<Node>();
+    final IndexHits<Node> hits = this.fTimelines.query(TimelineService.ID_FIELD, "*");
+    try {
+      for (final Node timeline : hits) {
+        timelines.add(timeline);
+      }
+    } finally {
+      hits.close();
+    }
+
+    if (timelines.isEmpty()) {
+      return;
+    }
+
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+    try {
+      for (final Node timeline : timelines) {
+        try {
+          for (final Relationship rel : timeline.getRelationships()) {
+            rel.delete();
+          }
+          this.fTimelines.remove(timeline);
+          timeline.delete();
+        } catch (final NotFoundException e) {
+          // already deleted
+        }
+
+        // commit in chunks to limit the transaction's size
+        if (++count % TimelineService.CLEAR_CHUNK_SIZE == 0) {
+          tx.success();
+          tx.finish();
+          tx = this.fDatabase.beginTx();
+        }
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    this.fLogger.log(Level.INFO, "deleted " + count + " timelines");
+  }
+
+  /*
+   * checks whether entry owners are friends of a timeline's person by looking for a direct
+   * friendship, remembering the owners checked, so that writes do not load the person's friends
+   */
+  private static class FriendCheck {
+    private final Node fPerson;
+    private final Map<Node, Boolean> fChecked;
+
+    public FriendCheck(Node person, Node friend) {
+      this.fPerson = person;
+      this.fChecked = new HashMap<Node, Boolean>();
+
+      // the friendship was just traversed
+      this.fChecked.put(friend, Boolean.TRUE);
+    }
+
+    public boolean isFriend(Node owner) {
+      if (owner == null) {
+        return false;
+      }
+
+      Boolean friend = this.fChecked.get(owner);
+      if (friend == null) {
+        friend = Boolean.FALSE;
+        for (final Relationship rel : this.fPerson.getRelationships(Direction.OUTGOING,
+                ShindigRelTypes.FRIEND_OF)) {
+          if (rel.getEndNode().equals(owner)) {
+            friend = Boolean.TRUE;
+            break;
+          }
+        }
+        this.fChecked.put(owner, friend);
+      }
+      return friend;
+    }
+  }
+}
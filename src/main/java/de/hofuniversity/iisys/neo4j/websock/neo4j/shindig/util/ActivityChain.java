@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Time-ordered chain of a person's activity entries, linking the person to the newest entry and
+ * every entry to the next older one. Entries are ordered by their publishing timestamp in
+ * descending order, exactly like the node sorter orders them, so that the newest entries of a
+ * stream can be read without loading the whole history. The number of entries is stored on the
+ * head relationship, as is the ID of the oldest entry, so that entries older than all others are
+ * appended without walking the chain. All modifying methods have to be called within a
+ * transaction and lock the person node until it finishes.
+ */
+public class ActivityChain {
+  /**
+   * Field the chain is ordered by in descending order.
+   */
+  public static final String ORDER_FIELD = ActivityTime.TIMESTAMP_FIELD;
+
+  private static final String COUNT_PROP = "count";
+  private static final String TAIL_PROP = "tail";
+
+  private static Relationship getHead(Node person) {
+    return person.getSingleRelationship(ShindigRelTypes.LATEST_ACTIVITY, Direction.OUTGOING);
+  }
+
+  private static Relationship setHead(Node person, Node first, int count, Node tail) {
+    final Relationship head = person.createRelationshipTo(first,
+            ShindigRelTypes.LATEST_ACTIVITY);
+    head.setProperty(ActivityChain.COUNT_PROP, count);
+    if (tail != null) {
+      head.setProperty(ActivityChain.TAIL_PROP, tail.getId());
+    }
+    return head;
+  }
+
+  private static Node getTail(Relationship head) {
+    final Object id = head.getProperty(ActivityChain.TAIL_PROP, null);
+
+    Node tail = null;
+    if (id != null) {
+      try {
+        tail = head.getGraphDatabase().getNodeById((Long) id);
+      } catch (final NotFoundException e) {
+        // stale reference, the chain is walked instead
+        head.removeProperty(ActivityChain.TAIL_PROP);
+      }
+    }
+    return tail;
+  }
+
+  private static void lock(Node person) {
+    // joins the surrounding transaction, keeping the lock until it finishes
+    final Transaction tx = person.getGraphDatabase().beginTx();
+    tx.acquireWriteLock(person);
+    tx.success();
+    tx.finish();
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return whether the person's entries are linked in a chain
+   */
+  public static boolean exists(Node person) {
+    return getHead(person) != null;
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return number of entries in the person's chain
+   */
+  public static int getCount(Node person) {
+    final Relationship head = getHead(person);
+
+    int count = 0;
+    if (head != null) {
+      count = (Integer) head.getProperty(ActivityChain.COUNT_PROP, 0);
+    }
+    return count;
+  }
+
+  /**
+   * @param person
+   *          person node
+   * @return person's newest entry or null if there is no chain
+   */
+  public static Node getFirst(Node person) {
+    final Relationship head = getHead(person);
+
+    Node first = null;
+    if (head != null) {
+      first = head.getEndNode();
+    }
+    return first;
+  }
+
+  /**
+   * @param entry
+   *          activity entry node within a chain
+   * @return next older entry or null if it is the oldest one
+   */
+  public static Node getNext(Node entry) {
+    final Relationship rel = entry.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+            Direction.OUTGOING);
+
+    Node next = null;
+    if (rel != null) {
+      next = rel.getEndNode();
+    }
+    return next;
+  }
+
+  /**
+   * @param entry
+   *          activity entry node within a chain
+   * @return next newer entry or null if it is the newest one
+   */
+  public static Node getPrevious(Node entry) {
+    final Relationship rel = entry.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+            Direction.INCOMING);
+
+    Node previous = null;
+    if (rel != null) {
+      previous = rel.getStartNode();
+    }
+    return previous;
+  }
+
+  /**
+   * Returns a person's oldest entry using the ID stored on the chain's head, only walking the
+   * chain if the stored ID is missing or stale. Does not modify the chain.
+   *
+   * @param person
+   *          person node
+   * @return person's oldest entry or null if there is no chain
+   */
+  public static Node getLast(Node person) {
+    final Relationship head = getHead(person);
+    if (head == null) {
+      return null;
+    }
+
+    final Object id = head.getProperty(ActivityChain.TAIL_PROP, null);
+    if (id != null) {
+      try {
+        final Node tail = head.getGraphDatabase().getNodeById((Long) id);
+
+        // node IDs are reused, the tail has to be an entry of the person ending the chain
+        final Relationship acted = tail.getSingleRelationship(ShindigRelTypes.ACTED,
+                Direction.INCOMING);
+        if (acted != null && acted.getStartNode().equals(person)
+                && (tail.equals(head.getEndNode()) || tail.hasRelationship(
+                        ShindigRelTypes.OLDER_ACTIVITY, Direction.INCOMING))
+                && !tail.hasRelationship(ShindigRelTypes.OLDER_ACTIVITY, Direction.OUTGOING)) {
+          return tail;
+        }
+      } catch (final NotFoundException e) {
+        // stale reference, the chain is walked instead
+      }
+    }
+
+    Node last = head.getEndNode();
+    Node next = getNext(last);
+    while (next != null) {
+      last = next;
+      next = getNext(last);
+    }
+    return last;
+  }
+
+  /**
+   * @param options
+   *          retrieval options
+   * @return whether the options request the chain's order
+   */
+  public static boolean isChainOrder(Map<String, Object> options) {
+    return ActivityChain.ORDER_FIELD.equals(options.get(WebsockConstants.SORT_FIELD))
+            && WebsockConstants.DESCENDING.equals(options.get(WebsockConstants.SORT_ORDER));
+  }
+
+  /**
+   * Links a new activity entry of a person into its chain at the position defined by its
+   * publishing date. Usually, new entries are the newest ones and are linked in front. Entries
+   * without a date or older than all others are appended at the end. Entries in between are
+   * linked after walking the chain up to their position. If the person has older entries but no
+   * chain yet, the chain is built from all of them.
+   *
+   * @param person
+   *          person node the entry belongs to
+   * @param entry
+   *          new activity entry node
+   */
+  public static void insert(Node person, Node entry) {
+    // serialize concurrent modifications of the head and its count
+    lock(person);
+    final Relationship head = getHead(person);
+
+    if (head == null) {
+      final Iterator<Relationship> acted = person.getRelationships(ShindigRelTypes.ACTED,
+              Direction.OUTGOING).iterator();
+      if (acted.hasNext()) {
+        acted.next();
+      }
+      if (acted.hasNext()) {
+        rebuild(person);
+      } else {
+        setHead(person, entry, 1, entry);
+      }
+      return;
+    }
+
+    final int count = (Integer) head.getProperty(ActivityChain.COUNT_PROP, 0) + 1;
+
+    // append entries that are not newer than the oldest one directly
+    final Node tail = getTail(head);
+    if (tail != null && PartialNodeSorter.compare(tail, entry, ActivityChain.ORDER_FIELD,
+            true) <= 0) {
+      tail.createRelationshipTo(entry, ShindigRelTypes.OLDER_ACTIVITY);
+      head.setProperty(ActivityChain.COUNT_PROP, count);
+      head.setProperty(ActivityChain.TAIL_PROP, entry.getId());
+      return;
+    }
+
+    // find the entry to link behind
+    Node previous = null;
+    Node current = head.getEndNode();
+    while (current != null && PartialNodeSorter.compare(current, entry,
+            ActivityChain.ORDER_FIELD, true) < 0) {
+      previous = current;
+      current = getNext(current);
+    }
+
+    Node newTail = tail;
+    if (current == null) {
+      newTail = entry;
+    }
+
+    if (previous == null) {
+      head.delete();
+      setHead(person, entry, count, newTail);
+    } else {
+      final Relationship link = previous.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+              Direction.OUTGOING);
+      if (link != null) {
+        link.delete();
+      }
+      previous.createRelationshipTo(entry, ShindigRelTypes.OLDER_ACTIVITY);
+      head.setProperty(ActivityChain.COUNT_PROP, count);
+      if (newTail != null) {
+        head.setProperty(ActivityChain.TAIL_PROP, newTail.getId());
+      }
+    }
+
+    if (current != null) {
+      entry.createRelationshipTo(current, ShindigRelTypes.OLDER_ACTIVITY);
+    }
+  }
+
+  /**
+   * Links several new activity entries of a person into its chain, merging them in a single walk
+   * along the chain. The entries have to be sorted in the chain's order. If the person has no
+   * chain yet, the chain is built from all of their entries.
+   *
+   * @param person
+   *          person node the entries belong to
+   * @param entries
+   *          new activity entry nodes in the chain's order
+   */
+  public static void insertAll(Node person, List<Node> entries) {
+    if (entries.isEmpty()) {
+      return;
+    }
+
+    lock(person);
+    final Relationship head = getHead(person);
+    if (head == null) {
+      rebuild(person);
+      return;
+    }
+
+    final int count = (Integer) head.getProperty(ActivityChain.COUNT_PROP, 0) + entries.size();
+    Node tail = getTail(head);
+    Node first = head.getEndNode();
+
+    // last linked node and whether it still has to be linked to the current one
+    Node previous = null;
+    boolean pending = false;
+    Node current = first;
+
+    // entries that are all older than the oldest one are appended directly
+    if (tail != null && PartialNodeSorter.compare(tail, entries.get(0), ActivityChain.ORDER_FIELD,
+            true) <= 0) {
+      previous = tail;
+      current = null;
+    }
+
+    Relationship link = null;
+    for (final Node entry : entries) {
+      while (current != null && PartialNodeSorter.compare(current, entry,
+              ActivityChain.ORDER_FIELD, true) < 0) {
+        if (pending) {
+          previous.createRelationshipTo(current, ShindigRelTypes.OLDER_ACTIVITY);
+          pending = false;
+        }
+        previous = current;
+        current = getNext(current);
+      }
+
+      if (previous == null) {
+        first = entry;
+      } else {
+        if (!pending) {
+          link = previous.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+                  Direction.OUTGOING);
+          if (link != null) {
+            link.delete();
+          }
+        }
+        previous.createRelationshipTo(entry, ShindigRelTypes.OLDER_ACTIVITY);
+      }
+
+      previous = entry;
+      pending = true;
+      if (current == null) {
+        tail = entry;
+      }
+    }
+
+    if (current != null) {
+      previous.createRelationshipTo(current, ShindigRelTypes.OLDER_ACTIVITY);
+    }
+
+    if (first.equals(head.getEndNode())) {
+      head.setProperty(ActivityChain.COUNT_PROP, count);
+      if (tail != null) {
+        head.setProperty(ActivityChain.TAIL_PROP, tail.getId());
+      }
+    } else {
+      head.delete();
+      setHead(person, first, count, tail);
+    }
+  }
+
+  /**
+   * Unlinks an activity entry from its person's chain, linking its neighbors with each other. Does
+   * nothing if the entry is not part of a chain.
+   *
+   * @param person
+   *          person node the entry belongs to
+   * @param entry
+   *          activity entry node to remove
+   */
+  public static void remove(Node person, Node entry) {
+    lock(person);
+    final Relationship head = getHead(person);
+    if (head == null) {
+      return;
+    }
+
+    final Relationship older = entry.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+            Direction.OUTGOING);
+    final Relationship newer = entry.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY,
+            Direction.INCOMING);
+    final int count = (Integer) head.getProperty(ActivityChain.COUNT_PROP, 0) - 1;
+    final Node tail = getTail(head);
+
+    Node next = null;
+    if (older != null) {
+      next = older.getEndNode();
+      older.delete();
+    }
+
+    if (head.getEndNode().equals(entry)) {
+      head.delete();
+      if (next != null) {
+        setHead(person, next, count, tail);
+      }
+    } else if (newer != null) {
+      final Node previous = newer.getStartNode();
+      newer.delete();
+      if (next != null) {
+        previous.createRelationshipTo(next, ShindigRelTypes.OLDER_ACTIVITY);
+      }
+      head.setProperty(ActivityChain.COUNT_PROP, count);
+
+      if (entry.equals(tail)) {
+        head.setProperty(ActivityChain.TAIL_PROP, previous.getId());
+      }
+    }
+  }
+
+  /**
+   * Builds the chain of a person from all of their activity entries, replacing any existing
+   * chain.
+   *
+   * @param person
+   *          person node to build the chain for
+   * @return number of linked entries
+   */
+  public static int rebuild(Node person) {
+    return rebuild(person, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Builds the chain of a person from all of their activity entries, replacing any existing
+   * chain, and commits after every given number of changed links, joining the calling thread's
+   * transaction if there is one. The head is only created by the last transaction, so that the
+   * person has no chain until it is complete and an interrupted build can simply be repeated.
+   *
+   * @param person
+   *          person node to build the chain for
+   * @param chunkSize
+   *          maximum number of links changed per transaction
+   * @return number of linked entries
+   */
+  public static int rebuild(Node person, int chunkSize) {
+    final List<Node> entries = new ArrayList<Node>();
+    for (final Relationship rel : person.getRelationships(ShindigRelTypes.ACTED,
+            Direction.OUTGOING)) {
+      entries.add(rel.getEndNode());
+    }
+
+    Transaction tx = person.getGraphDatabase().beginTx();
+    try {
+      lock(person);
+      int uncommitted = 0;
+
+      // remove old chain
+      final Relationship head = getHead(person);
+      if (head != null) {
+        head.delete();
+      }
+      Relationship link = null;
+      for (final Node entry : entries) {
+        link = entry.getSingleRelationship(ShindigRelTypes.OLDER_ACTIVITY, Direction.OUTGOING);
+        if (link != null) {
+          link.delete();
+
+          if (++uncommitted >= chunkSize) {
+            tx = commit(tx, person);
+            uncommitted = 0;
+          }
+        }
+      }
+
+      if (!entries.isEmpty()) {
+        final Map<String, Object> options = new HashMap<String, Object>();
+        options.put(WebsockConstants.SORT_FIELD, ActivityChain.ORDER_FIELD);
+        options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+        PartialNodeSorter.sortNodes(entries, options, true);
+
+        Node previous = null;
+        for (final Node entry : entries) {
+          if (previous != null) {
+            previous.createRelationshipTo(entry, ShindigRelTypes.OLDER_ACTIVITY);
+
+            if (++uncommitted >= chunkSize) {
+              tx = commit(tx, person);
+              uncommitted = 0;
+            }
+          }
+          previous = entry;
+        }
+
+        setHead(person, entries.get(0), entries.size(), entries.get(entries.size() - 1));
+      }
+
+      tx.success();
+      tx.finish();
+    } catch (final RuntimeException e) {
+      tx.failure();
+      tx.finish();
+
+      throw e;
+    }
+
+    return entries.size();
+  }
+
+  private static Transaction commit(Transaction tx, Node person) {
+    tx.success();
+    tx.finish();
+
+    final Transaction next = person.getGraphDatabase().beginTx();
+    lock(person);
+    return next;
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.neo4j.graphdb.Node;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.OSFields;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Utility normalizing the ISO 8601 publishing dates of activity entries to numeric timestamps in
+ * milliseconds since the epoch. The timestamp is stored in an internal property next to the date,
+ * so that entries can be sorted and filtered by time without parsing any dates. Modifying methods
+ * have to be called within a transaction.
+ */
+public class ActivityTime {
+  /**
+   * Internal property holding the publishing date's timestamp in milliseconds.
+   */
+  public static final String TIMESTAMP_FIELD = "publishedTs";
+
+  /**
+   * Option defining the earliest timestamp of retrieved entries in milliseconds, inclusive. May
+   * also be given as a string containing a timestamp or an ISO 8601 date.
+   */
+  public static final String SINCE_OPTION = "_publishedSince";
+
+  /**
+   * Option defining the latest timestamp of retrieved entries in milliseconds, inclusive. May also
+   * be given as a string containing a timestamp or an ISO 8601 date.
+   */
+  public static final String UNTIL_OPTION = "_publishedUntil";
+
+  private static final String SHORT_FORMAT = "yyyy-MM-dd'T'HH:mm'Z'";
+
+  /**
+   * Parses an ISO 8601 date, also accepting dates without seconds.
+   *
+   * @param published
+   *          date to parse, may be null
+   * @return timestamp in milliseconds or null if the date is missing or invalid
+   */
+  public static Long parse(String published) {
+    if (published == null || published.isEmpty()) {
+      return null;
+    }
+
+    Long timestamp = null;
+    try {
+      timestamp = DatatypeConverter.parseDateTime(published).getTimeInMillis();
+    } catch (final IllegalArgumentException e) {
+      // formats are not thread-safe
+      final DateFormat format = new SimpleDateFormat(ActivityTime.SHORT_FORMAT);
+      format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+      try {
+        timestamp = format.parse(published).getTime();
+      } catch (final ParseException e1) {
+        // invalid dates do not have a timestamp
+      }
+    }
+
+    return timestamp;
+  }
+
+  /**
+   * Sets or removes an activity entry's timestamp according to its current publishing date.
+   *
+   * @param entry
+   *          activity entry node
+   */
+  public static void update(Node entry) {
+    final Object published = entry.getProperty(OSFields.ACT_PUBLISHED_FIELD, null);
+
+    Long timestamp = null;
+    if (published instanceof String) {
+      timestamp = parse((String) published);
+    }
+
+    if (timestamp != null) {
+      entry.setProperty(ActivityTime.TIMESTAMP_FIELD, timestamp);
+    } else if (entry.hasProperty(ActivityTime.TIMESTAMP_FIELD)) {
+      entry.removeProperty(ActivityTime.TIMESTAMP_FIELD);
+    }
+  }
+
+  /**
+   * Reads an activity entry's timestamp, parsing its publishing date if it has not been stored.
+   *
+   * @param entry
+   *          activity entry node
+   * @return timestamp in milliseconds or null if the entry has no valid publishing date
+   */
+  public static Long getTimestamp(Node entry) {
+    Object timestamp = entry.getProperty(ActivityTime.TIMESTAMP_FIELD, null);
+
+    if (timestamp == null) {
+      final Object published = entry.getProperty(OSFields.ACT_PUBLISHED_FIELD, null);
+      if (published instanceof String) {
+        timestamp = parse((String) published);
+      }
+    }
+
+    return (Long) timestamp;
+  }
+
+  /**
+   * @param options
+   *          retrieval options
+   * @return whether the options restrict the time range of entries
+   */
+  public static boolean isRange(Map<String, ?> options) {
+    return options.get(ActivityTime.SINCE_OPTION) != null
+            || options.get(ActivityTime.UNTIL_OPTION) != null;
+  }
+
+  /**
+   * Reads the earliest timestamp of the range defined by the given options. Throws an
+   * IllegalArgumentException if the option is neither a number nor a timestamp or date string.
+   *
+   * @param options
+   *          retrieval options
+   * @return earliest timestamp in milliseconds, inclusive, or Long.MIN_VALUE if there is none
+   */
+  public static long getSince(Map<String, ?> options) {
+    return getBound(options, ActivityTime.SINCE_OPTION, Long.MIN_VALUE);
+  }
+
+  /**
+   * Reads the latest timestamp of the range defined by the given options. Throws an
+   * IllegalArgumentException if the option is neither a number nor a timestamp or date string.
+   *
+   * @param options
+   *          retrieval options
+   * @return latest timestamp in milliseconds, inclusive, or Long.MAX_VALUE if there is none
+   */
+  public static long getUntil(Map<String, ?> options) {
+    return getBound(options, ActivityTime.UNTIL_OPTION, Long.MAX_VALUE);
+  }
+
+  private static long getBound(Map<String, ?> options, String option, long fallback) {
+    final Object value = options.get(option);
+
+    long bound = fallback;
+    if (value instanceof Number) {
+      bound = ((Number) value).longValue();
+    } else if (value instanceof String) {
+      try {
+        bound = Long.parseLong((String) value);
+      } catch (final NumberFormatException e) {
+        final Long timestamp = parse((String) value);
+        if (timestamp == null) {
+          throw new IllegalArgumentException("invalid " + option + ": " + value);
+        }
+        bound = timestamp;
+      }
+    } else if (value != null) {
+      throw new IllegalArgumentException("invalid " + option + ": " + value);
+    }
+
+    return bound;
+  }
+
+  /**
+   * Removes all entries outside of the time range defined by the given options from the list.
+   * Entries without a valid publishing date are removed if a range is defined.
+   *
+   * @param entries
+   *          activity entry nodes to filter
+   * @param options
+   *          retrieval options
+   */
+  public static void filter(List<Node> entries, Map<String, ?> options) {
+    if (!isRange(options)) {
+      return;
+    }
+
+    final long start = getSince(options);
+    final long end = getUntil(options);
+
+    final Iterator<Node> entryIter = entries.iterator();
+    Long timestamp = null;
+    while (entryIter.hasNext()) {
+      timestamp = getTimestamp(entryIter.next());
+
+      if (timestamp == null || timestamp < start || timestamp > end) {
+        entryIter.remove();
+      }
+    }
+  }
+
+  /**
+   * Maps sorting by publishing date to sorting by the numeric timestamp in the given options.
+   *
+   * @param options
+   *          retrieval options to modify
+   */
+  public static void normalizeSort(Map<String, Object> options) {
+    if (OSFields.ACT_PUBLISHED_FIELD.equals(options.get(WebsockConstants.SORT_FIELD))) {
+      options.put(WebsockConstants.SORT_FIELD, ActivityTime.TIMESTAMP_FIELD);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.neo4j.graphdb.Node;
+
+/**
+ * Iterator merging the activity chains of several people into a single stream ordered like the
+ * chains themselves. Only the current head of each chain is kept in a priority queue, so that
+ * reading the newest entries of many people only touches as many entries as are read plus one per
+ * person, regardless of the size of their histories. The sort value of each entry is read once,
+ * when it enters the queue.
+ */
+public class ChainMerger implements Iterator<Node> {
+  private static final Comparator<Head> CHAIN_ORDER = new Comparator<Head>() {
+    @Override
+    public int compare(Head head1, Head head2) {
+      return PartialNodeSorter.compare(head1.fValue, head1.fNode.getId(), head2.fValue,
+              head2.fNode.getId(), true);
+    }
+  };
+
+  private final PriorityQueue<Head> fHeads;
+
+  private int fTraversed;
+
+  /**
+   * Creates a merging iterator over the chains of the given people. People without a chain do not
+   * contribute any entries. Throws a NullPointerException if the collection of people is null.
+   *
+   * @param people
+   *          person nodes whose chains to merge
+   */
+  public ChainMerger(Collection<Node> people) {
+    if (people == null) {
+      throw new NullPointerException("collection of people was null");
+    }
+
+    this.fHeads = new PriorityQueue<Head>(Math.max(1, people.size()), ChainMerger.CHAIN_ORDER);
+
+    Node first = null;
+    for (final Node person : people) {
+      first = ActivityChain.getFirst(person);
+      if (first != null) {
+        this.fHeads.add(new Head(first));
+        ++this.fTraversed;
+      }
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !this.fHeads.isEmpty();
+  }
+
+  @Override
+  public Node next() {
+    final Head head = this.fHeads.poll();
+    if (head == null) {
+      throw new NoSuchElementException();
+    }
+    final Node entry = head.fNode;
+
+    // replace the entry by the next older one of the same chain
+    final Node next = ActivityChain.getNext(entry);
+    if (next != null) {
+      this.fHeads.add(new Head(next));
+      ++this.fTraversed;
+    }
+
+    return entry;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return number of chain relationships traversed so far
+   */
+  public int getTraversed() {
+    return this.fTraversed;
+  }
+
+  private static class Head {
+    private final Node fNode;
+    private final Object fValue;
+
+    public Head(Node node) {
+      this.fNode = node;
+      this.fValue = node.getProperty(ActivityChain.ORDER_FIELD, null);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+/**
+ * Deletes a list of nodes in transactions of bounded size, so that deleting large histories
+ * neither builds up a huge transaction state nor blocks other writers for long. Every chunk is
+ * committed on its own. If a deletion fails, the chunks committed so far remain deleted and the
+ * deletion can be resumed by simply repeating it, as long as every committed chunk leaves the
+ * graph in a consistent state.
+ */
+public class ChunkedDeleter {
+  /**
+   * Deletion of single nodes within the current chunk's transaction.
+   */
+  public static interface Deletion {
+    /**
+     * Deletes the given node within the current chunk's transaction.
+     *
+     * @param node
+     *          node to delete
+     */
+    void delete(Node node);
+
+    /**
+     * Called within the current chunk's transaction before it is committed, for example to
+     * collect nodes orphaned by the chunk's deletions.
+     */
+    void finishChunk();
+  }
+
+  /**
+   * Default number of nodes deleted per transaction.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  private final GraphDatabaseService fDatabase;
+  private final int fChunkSize;
+
+  /**
+   * Creates a deleter committing after the given number of deleted nodes. Throws a
+   * NullPointerException if the database is null and an IllegalArgumentException if the chunk
+   * size is not positive.
+   *
+   * @param database
+   *          graph database to use
+   * @param chunkSize
+   *          number of nodes to delete per transaction
+   */
+  public ChunkedDeleter(GraphDatabaseService database, int chunkSize) {
+    if (database == null) {
+      throw new NullPointerException("graph database service was null");
+    }
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("chunk size must be positive");
+    }
+
+    this.fDatabase = database;
+    this.fChunkSize = chunkSize;
+  }
+
+  /**
+   * Deletes the given nodes using the given deletion, committing in chunks.
+   *
+   * @param nodes
+   *          nodes to delete
+   * @param deletion
+   *          deletion to apply to every node
+   * @return number of nodes processed
+   */
+  public int delete(Iterable<Node> nodes, Deletion deletion) {
+    int count = 0;
+    Transaction tx = this.fDatabase.beginTx();
+
+    try {
+      for (final Node node : nodes) {
+        deletion.delete(node);
+
+        if (++count % this.fChunkSize == 0) {
+          deletion.finishChunk();
+
+          tx.success();
+          tx.finish();
+          tx = this.fDatabase.beginTx();
+        }
+      }
+
+      deletion.finishChunk();
+
+      tx.success();
+      tx.finish();
+    } catch (final Exception e) {
+      tx.failure();
+      tx.finish();
+
+      throw new RuntimeException(e);
+    }
+
+    return count;
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.ICacheStatistics;
+
+/**
+ * Thread-safe cache with a fixed capacity, evicting the least recently used entry once it is full.
+ * Hits and misses are counted for monitoring purposes.
+ *
+ * @param <K>
+ *          type of keys
+ * @param <V>
+ *          type of cached values
+ */
+public class LruCache<K, V> implements ICacheStatistics {
+  private final int fCapacity;
+  private final Map<K, V> fEntries;
+
+  private final AtomicLong fHits, fMisses;
+
+  /**
+   * Creates an empty cache holding up to the given number of entries. Throws an
+   * IllegalArgumentException if the capacity is not positive.
+   *
+   * @param capacity
+   *          maximum number of entries
+   */
+  public LruCache(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("cache capacity must be positive");
+    }
+
+    this.fCapacity = capacity;
+    this.fEntries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+      }
+    };
+
+    this.fHits = new AtomicLong();
+    this.fMisses = new AtomicLong();
+  }
+
+  /**
+   * Retrieves the value cached for the given key, counting a hit or miss.
+   *
+   * @param key
+   *          key to look up
+   * @return cached value or null
+   */
+  public V get(K key) {
+    final V value;
+    synchronized (this.fEntries) {
+      value = this.fEntries.get(key);
+    }
+
+    if (value != null) {
+      this.fHits.incrementAndGet();
+    } else {
+      this.fMisses.incrementAndGet();
+    }
+
+    return value;
+  }
+
+  /**
+   * Caches the given value for the given key, possibly evicting the least recently used entry.
+   *
+   * @param key
+   *          key to cache the value for
+   * @param value
+   *          value to cache
+   */
+  public void put(K key, V value) {
+    synchronized (this.fEntries) {
+      this.fEntries.put(key, value);
+    }
+  }
+
+  /**
+   * Removes the entry for the given key if there is one.
+   *
+   * @param key
+   *          key to remove
+   */
+  public void remove(K key) {
+    synchronized (this.fEntries) {
+      this.fEntries.remove(key);
+    }
+  }
+
+  /**
+   * Removes all entries, keeping the statistics.
+   */
+  public void clear() {
+    synchronized (this.fEntries) {
+      this.fEntries.clear();
+    }
+  }
+
+  @Override
+  public long getHits() {
+    return this.fHits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.fMisses.get();
+  }
+
+  @Override
+  public int getSize() {
+    synchronized (this.fEntries) {
+      return this.fEntries.size();
+    }
+  }
+
+  @Override
+  public int getCapacity() {
+    return this.fCapacity;
+  }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.neo4j.graphdb.Node;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Opaque continuation token for keyset pagination, consisting of the sort field and order, the
+ * sort value and the node ID of the last entry of a page. Queries given a cursor skip all entries
+ * up to and including that position instead of counting an offset, so that pages do not drift
+ * when entries are added in front of them.
+ *
+ * Cursors make paging stable, they do not bound a query's work: apart from activity streams read
+ * from activity chains, which are walked from their newest entry to the cursor's position and no
+ * further, all candidates are still loaded and their sort values read before the entries up to the
+ * cursor are skipped. Cursors are attached to the result's metadata, which only reaches clients
+ * that request an envelope.
+ */
+public class PageCursor {
+  /**
+   * Option containing the cursor to continue from, empty to request a cursor for the first page.
+   */
+  public static final String CURSOR_OPTION = "_cursor";
+
+  /**
+   * Metadata key under which the cursor for the next page is attached to list results.
+   */
+  public static final String CURSOR_FIELD = "cursor";
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String SEPARATOR = "\n";
+  private static final String ASCENDING = "a", DESCENDING = "d";
+
+  private static final char NULL_TYPE = 'N', STRING_TYPE = 'S', LONG_TYPE = 'L',
+          INTEGER_TYPE = 'I', DOUBLE_TYPE = 'D', FLOAT_TYPE = 'F', BOOLEAN_TYPE = 'B';
+
+  private final String fField;
+  private final boolean fDescending;
+  private final Object fValue;
+  private final long fNodeId;
+
+  /**
+   * Creates a cursor pointing at the given position. Throws a NullPointerException if the sort
+   * field is null.
+   *
+   * @param field
+   *          field the entries are sorted by
+   * @param descending
+   *          whether the entries are sorted in descending order
+   * @param value
+   *          sort value of the last entry, may be null
+   * @param nodeId
+   *          node ID of the last entry
+   */
+  public PageCursor(String field, boolean descending, Object value, long nodeId) {
+    if (field == null) {
+      throw new NullPointerException("sort field was null");
+    }
+
+    this.fField = field;
+    this.fDescending = descending;
+    this.fValue = value;
+    this.fNodeId = nodeId;
+  }
+
+  /**
+   * Reads the cursor contained in the given retrieval options.
+   *
+   * @param options
+   *          retrieval options, may be null
+   * @return cursor or null if there is none
+   */
+  public static PageCursor fromOptions(Map<String, ?> options) {
+    PageCursor cursor = null;
+
+    if (options != null) {
+      final String token = (String) options.get(PageCursor.CURSOR_OPTION);
+      if (token != null && !token.isEmpty()) {
+        cursor = decode(token);
+      }
+    }
+
+    return cursor;
+  }
+
+  /**
+   * Decodes a cursor from its token. Throws an IllegalArgumentException if the token is malformed.
+   *
+   * @param token
+   *          encoded cursor
+   * @return decoded cursor
+   */
+  public static PageCursor decode(String token) {
+    try {
+      final String string = new String(DatatypeConverter.parseBase64Binary(token),
+              PageCursor.UTF8);
+      final String[] parts = string.split(PageCursor.SEPARATOR, 4);
+
+      final boolean descending = PageCursor.DESCENDING.equals(parts[1]);
+      final long nodeId = Long.parseLong(parts[2]);
+      final Object value = decodeValue(parts[3]);
+
+      return new PageCursor(parts[0], descending, value, nodeId);
+    } catch (final RuntimeException e) {
+      throw new IllegalArgumentException("invalid cursor: " + token, e);
+    }
+  }
+
+  private static Object decodeValue(String string) {
+    final char type = string.charAt(0);
+    final String value = string.substring(1);
+
+    switch (type) {
+    case NULL_TYPE:
+      return null;
+    case STRING_TYPE:
+      return value;
+    case LONG_TYPE:
+      return Long.parseLong(value);
+    case INTEGER_TYPE:
+      return Integer.parseInt(value);
+    case DOUBLE_TYPE:
+      return Double.parseDouble(value);
+    case FLOAT_TYPE:
+      return Float.parseFloat(value);
+    case BOOLEAN_TYPE:
+      return Boolean.parseBoolean(value);
+    default:
+      throw new IllegalArgumentException("unknown value type " + type);
+    }
+  }
+
+  /**
+   * Encodes this cursor as an opaque token. Returns null if the sort value is of a type that can
+   * not be encoded.
+   *
+   * @return encoded cursor or null
+   */
+  public String encode() {
+    char type;
+    if (this.fValue == null) {
+      type = PageCursor.NULL_TYPE;
+    } else if (this.fValue instanceof String) {
+      type = PageCursor.STRING_TYPE;
+    } else if (this.fValue instanceof Long) {
+      type = PageCursor.LONG_TYPE;
+    } else if (this.fValue instanceof Integer) {
+      type = PageCursor.INTEGER_TYPE;
+    } else if (this.fValue instanceof Double) {
+      type = PageCursor.DOUBLE_TYPE;
+    } else if (this.fValue instanceof Float) {
+      type = PageCursor.FLOAT_TYPE;
+    } else if (this.fValue instanceof Boolean) {
+      type = PageCursor.BOOLEAN_TYPE;
+    } else {
+      return null;
+    }
+
+    final StringBuilder buffer = new StringBuilder();
+    buffer.append(this.fField).append(PageCursor.SEPARATOR);
+    buffer.append(this.fDescending ? PageCursor.DESCENDING : PageCursor.ASCENDING);
+    buffer.append(PageCursor.SEPARATOR);
+    buffer.append(this.fNodeId).append(PageCursor.SEPARATOR);
+    buffer.append(type);
+    if (this.fValue != null) {
+      buffer.append(this.fValue);
+    }
+
+    return DatatypeConverter.printBase64Binary(buffer.toString().getBytes(PageCursor.UTF8));
+  }
+
+  /**
+   * Attaches a cursor pointing at the last entry of the given result to a copy of it, if the
+   * options requested cursor pagination and there are entries left after it. The node list has
+   * to be ordered as the result.
+   *
+   * @param result
+   *          converted page of results
+   * @param nodes
+   *          sorted list of nodes the page was converted from
+   * @param options
+   *          retrieval options
+   * @return given result or copy with cursor
+   */
+  public static ListResult attach(ListResult result, List<Node> nodes,
+          Map<String, Object> options) {
+    if (options == null || !options.containsKey(PageCursor.CURSOR_OPTION)) {
+      return result;
+    }
+
+    final int last = result.getFirst() + result.getSize();
+    if (result.getSize() == 0 || last >= nodes.size()) {
+      return result;
+    }
+
+    // restored snapshots contain null for stale nodes
+    Node node = null;
+    for (int index = last - 1; node == null && index >= result.getFirst(); --index) {
+      node = nodes.get(index);
+    }
+
+    return attach(result, node, options);
+  }
+
+  /**
+   * Attaches a cursor pointing behind the given node to a copy of the given result if the options
+   * request one. Returns the result itself if no cursor was requested, the given node is null or
+   * its sort value cannot be encoded.
+   *
+   * @param result
+   *          result to attach the cursor to
+   * @param node
+   *          last returned node, null if no entries are left
+   * @param options
+   *          retrieval options containing the sort field and order
+   * @return result with cursor or given result
+   */
+  public static ListResult attach(ListResult result, Node node, Map<String, Object> options) {
+    if (node == null || options == null || !options.containsKey(PageCursor.CURSOR_OPTION)) {
+      return result;
+    }
+
+    final String field = (String) options.get(WebsockConstants.SORT_FIELD);
+    if (field == null) {
+      return result;
+    }
+
+    final boolean descending = WebsockConstants.DESCENDING.equals(options
+            .get(WebsockConstants.SORT_ORDER));
+    final String token = new PageCursor(field, descending, node.getProperty(field, null),
+            node.getId()).encode();
+    if (token == null) {
+      return result;
+    }
+
+    final ShindigListResult withCursor = new ShindigListResult(result);
+    withCursor.setMetadata(PageCursor.CURSOR_FIELD, token);
+    return withCursor;
+  }
+
+  /**
+   * @return field the entries are sorted by
+   */
+  public String getField() {
+    return this.fField;
+  }
+
+  /**
+   * @return whether the entries are sorted in descending order
+   */
+  public boolean isDescending() {
+    return this.fDescending;
+  }
+
+  /**
+   * @return sort value of the last entry, may be null
+   */
+  public Object getValue() {
+    return this.fValue;
+  }
+
+  /**
+   * @return node ID of the last entry
+   */
+  public long getNodeId() {
+    return this.fNodeId;
+  }
+}
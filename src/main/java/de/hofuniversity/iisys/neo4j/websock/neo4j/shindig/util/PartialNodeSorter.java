@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.neo4j.graphdb.Node;
+
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Sorter for lists of nodes that only fully orders the part of the list that is actually
+ * requested. If a subset is requested through the retrieval options, the first "first + max"
+ * nodes are selected using a bounded heap and sorted, while the remaining nodes are left in their
+ * original order behind them. Sort keys are read once per node. Values are ordered like the
+ * library's node sorter orders them, except that nodes without a value for the sort field are
+ * sorted last in both orders and nodes with equal values are ordered by their node ID. Values of
+ * different types, which the node sorter cannot compare, are ordered consistently: numbers by
+ * their numeric value before all other values, which are grouped by type, and arrays element by
+ * element.
+ *
+ * If the options contain a page cursor, all nodes up to and including its position are moved to
+ * the front unsorted and their number is returned as the index of the first requested node, so
+ * that the requested page directly follows them. The options themselves are not modified. Since
+ * the nodes are not read from an ordered source, all of them are still loaded and compared to the
+ * cursor's position.
+ */
+public class PartialNodeSorter {
+  /**
+   * Sorts the given list of nodes as defined by the sort field, sort order, subset and cursor
+   * given in the options. Does nothing if there are no options or no sort field. Throws an
+   * IllegalArgumentException if a given cursor does not match the sort field and order.
+   *
+   * @param nodes
+   *          list of nodes to sort
+   * @param options
+   *          retrieval options
+   * @return index of the first requested node
+   */
+  public static int sortNodes(List<Node> nodes, Map<String, Object> options) {
+    return sortNodes(nodes, options, false);
+  }
+
+  /**
+   * Sorts the given list of nodes as defined by the sort field, sort order, subset and cursor
+   * given in the options, optionally sorting all nodes regardless of the requested subset. Does
+   * nothing if there are no options or no sort field. Throws an IllegalArgumentException if a
+   * given cursor does not match the sort field and order.
+   *
+   * @param nodes
+   *          list of nodes to sort
+   * @param options
+   *          retrieval options
+   * @param complete
+   *          whether to sort all nodes
+   * @return index of the first requested node
+   */
+  public static int sortNodes(List<Node> nodes, Map<String, Object> options, boolean complete) {
+    if (options == null) {
+      return 0;
+    }
+
+    int first = 0;
+    if (options.get(WebsockConstants.SUBSET_START) != null) {
+      first = (Integer) options.get(WebsockConstants.SUBSET_START);
+    }
+
+    final String field = (String) options.get(WebsockConstants.SORT_FIELD);
+    if (field == null) {
+      return first;
+    }
+
+    final boolean descending = WebsockConstants.DESCENDING.equals(options
+            .get(WebsockConstants.SORT_ORDER));
+
+    // extract values to sort by
+    final SortEntry[] entries = new SortEntry[nodes.size()];
+    int index = 0;
+    for (final Node node : nodes) {
+      entries[index++] = new SortEntry(node, node.getProperty(field, null), node.getId());
+    }
+
+    final Node[] ordered = new Node[entries.length];
+    index = 0;
+
+    final Comparator<SortEntry> comparator = new EntryComparator(descending);
+
+    // skip everything up to the cursor's position
+    final PageCursor cursor = PageCursor.fromOptions(options);
+    SortEntry[] candidates = entries;
+    if (cursor != null) {
+      if (!field.equals(cursor.getField()) || descending != cursor.isDescending()) {
+        throw new IllegalArgumentException("cursor does not match the requested sort order");
+      }
+
+      final SortEntry position = new SortEntry(null, cursor.getValue(), cursor.getNodeId());
+      final List<SortEntry> following = new ArrayList<SortEntry>();
+      for (final SortEntry entry : entries) {
+        if (comparator.compare(entry, position) <= 0) {
+          ordered[index++] = entry.fNode;
+        } else {
+          following.add(entry);
+        }
+      }
+
+      candidates = following.toArray(new SortEntry[following.size()]);
+      first = index;
+    }
+
+    int limit = candidates.length;
+    if (!complete) {
+      limit = getLimit(options, first, entries.length) - index;
+    }
+
+    if (limit >= candidates.length) {
+      // everything is requested
+      Arrays.sort(candidates, comparator);
+      for (final SortEntry entry : candidates) {
+        ordered[index++] = entry.fNode;
+      }
+    } else if (limit > 0) {
+      // keep the best entries on a heap with the worst one on top
+      final PriorityQueue<SortEntry> heap = new PriorityQueue<SortEntry>(limit,
+              Collections.reverseOrder(comparator));
+      for (final SortEntry entry : candidates) {
+        if (heap.size() < limit) {
+          heap.add(entry);
+        } else if (comparator.compare(entry, heap.peek()) < 0) {
+          heap.poll();
+          heap.add(entry);
+        }
+      }
+
+      final SortEntry[] top = heap.toArray(new SortEntry[heap.size()]);
+      Arrays.sort(top, comparator);
+
+      final Set<SortEntry> selected = new HashSet<SortEntry>(Arrays.asList(top));
+      for (final SortEntry entry : top) {
+        ordered[index++] = entry.fNode;
+      }
+
+      // remaining nodes are only counted
+      for (final SortEntry entry : candidates) {
+        if (!selected.contains(entry)) {
+          ordered[index++] = entry.fNode;
+        }
+      }
+    } else {
+      for (final SortEntry entry : candidates) {
+        ordered[index++] = entry.fNode;
+      }
+    }
+
+    // write back without random access, supporting linked lists
+    final ListIterator<Node> iter = nodes.listIterator();
+    for (final Node node : ordered) {
+      iter.next();
+      iter.set(node);
+    }
+
+    return first;
+  }
+
+  /**
+   * Compares two nodes the way they are ordered by sortNodes.
+   *
+   * @param node1
+   *          first node to compare
+   * @param node2
+   *          second node to compare
+   * @param field
+   *          field to sort by
+   * @param descending
+   *          whether to sort in descending order
+   * @return negative value if the first node comes first, positive value otherwise
+   */
+  public static int compare(Node node1, Node node2, String field, boolean descending) {
+    return compare(node1, node2.getProperty(field, null), node2.getId(), field, descending);
+  }
+
+  /**
+   * Compares a node to a position given by a sort value and node ID, such as a cursor's, the way
+   * they are ordered by sortNodes.
+   *
+   * @param node
+   *          node to compare
+   * @param value
+   *          sort value of the position, may be null
+   * @param nodeId
+   *          node ID of the position
+   * @param field
+   *          field to sort by
+   * @param descending
+   *          whether to sort in descending order
+   * @return negative value if the node comes before the position, positive value if it comes after
+   *         it and 0 if it is at the position
+   */
+  public static int compare(Node node, Object value, long nodeId, String field,
+          boolean descending) {
+    return new EntryComparator(descending).compare(
+            new SortEntry(node, node.getProperty(field, null), node.getId()),
+            new SortEntry(null, value, nodeId));
+  }
+
+  /**
+   * Compares two positions given by their sort values and node IDs the way they are ordered by
+   * sortNodes, for callers that already read the sort values.
+   *
+   * @param value1
+   *          sort value of the first position, may be null
+   * @param nodeId1
+   *          node ID of the first position
+   * @param value2
+   *          sort value of the second position, may be null
+   * @param nodeId2
+   *          node ID of the second position
+   * @param descending
+   *          whether to sort in descending order
+   * @return negative value if the first position comes first, positive value if it comes last
+   */
+  public static int compare(Object value1, long nodeId1, Object value2, long nodeId2,
+          boolean descending) {
+    return new EntryComparator(descending).compare(new SortEntry(null, value1, nodeId1),
+            new SortEntry(null, value2, nodeId2));
+  }
+
+  /**
+   * Compares two non-null sort values in ascending order. Values of the same comparable type are
+   * compared naturally and numbers numerically, other values are ordered by type name and then by
+   * their elements or string representation.
+   *
+   * @param value1
+   *          first value, not null
+   * @param value2
+   *          second value, not null
+   * @return negative value if the first value comes first, positive value if it comes last
+   */
+  @SuppressWarnings("unchecked")
+  public static int compareValues(Object value1, Object value2) {
+    final boolean number1 = value1 instanceof Number;
+    final boolean number2 = value2 instanceof Number;
+
+    if (number1 && number2) {
+      return compareNumbers((Number) value1, (Number) value2);
+    } else if (number1 != number2) {
+      return number1 ? -1 : 1;
+    }
+
+    final Class<?> type = value1.getClass();
+    if (type != value2.getClass()) {
+      return type.getName().compareTo(value2.getClass().getName());
+    }
+
+    int result = 0;
+    if (type.isArray()) {
+      final int length1 = Array.getLength(value1);
+      final int length2 = Array.getLength(value2);
+
+      Object element1 = null;
+      Object element2 = null;
+      for (int i = 0; i < length1 && i < length2 && result == 0; ++i) {
+        element1 = Array.get(value1, i);
+        element2 = Array.get(value2, i);
+
+        if (element1 == null || element2 == null) {
+          result = element1 == null ? (element2 == null ? 0 : 1) : -1;
+        } else {
+          result = compareValues(element1, element2);
+        }
+      }
+      if (result == 0) {
+        result = Integer.compare(length1, length2);
+      }
+    } else if (value1 instanceof Comparable) {
+      result = ((Comparable<Object>) value1).compareTo(value2);
+    } else {
+      result = value1.toString().compareTo(value2.toString());
+    }
+
+    return result;
+  }
+
+  private static int compareNumbers(Number number1, Number number2) {
+    if (isIntegral(number1) && isIntegral(number2)) {
+      return Long.compare(number1.longValue(), number2.longValue());
+    }
+    return Double.compare(number1.doubleValue(), number2.doubleValue());
+  }
+
+  private static boolean isIntegral(Number number) {
+    return number instanceof Long || number instanceof Integer || number instanceof Short
+            || number instanceof Byte;
+  }
+
+  private static int getLimit(Map<String, ?> options, int first, int size) {
+    int max = 0;
+    if (options.get(WebsockConstants.SUBSET_SIZE) != null) {
+      max = (Integer) options.get(WebsockConstants.SUBSET_SIZE);
+    }
+
+    // if parameters are undefined, everything is requested
+    if (max <= 0) {
+      return size;
+    }
+
+    return (int) Math.min((long) first + max, size);
+  }
+
+  private static class SortEntry {
+    private final Node fNode;
+    private final Object fValue;
+    private final long fId;
+
+    public SortEntry(Node node, Object value, long id) {
+      this.fNode = node;
+      this.fValue = value;
+      this.fId = id;
+    }
+  }
+
+  private static class EntryComparator implements Comparator<SortEntry> {
+    private final boolean fDescending;
+
+    public EntryComparator(boolean descending) {
+      this.fDescending = descending;
+    }
+
+    @Override
+    public int compare(SortEntry e1, SortEntry e2) {
+      int result = 0;
+
+      if (e1.fValue == null) {
+        result = e2.fValue == null ? 0 : 1;
+      } else if (e2.fValue == null) {
+        result = -1;
+      } else {
+        result = compareValues(e1.fValue, e2.fValue);
+        if (this.fDescending) {
+          result = -result;
+        }
+      }
+
+      // deterministic ordering for equal values, matching page cursors
+      if (result == 0) {
+        result = Long.compare(e1.fId, e2.fId);
+      }
+
+      return result;
+    }
+  }
+}
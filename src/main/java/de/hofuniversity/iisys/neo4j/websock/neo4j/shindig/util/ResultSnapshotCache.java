@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor.ICacheStatistics;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Short-lived cache of ordered node ID arrays, allowing clients to page through a large result
+ * without repeating its lookup, filtering and sorting. Snapshots are identified by random handles
+ * and bound to the query they were created by. They expire after a configured time and the oldest
+ * ones are evicted once their estimated total memory exceeds a configured limit. Handles are
+ * attached to the result's metadata, which only reaches clients that request an envelope. Since
+ * node IDs are reused, snapshots also store the "id" property of every node, which restored
+ * nodes have to match. Restored snapshots only resolve and validate the nodes of the requested
+ * page.
+ */
+public class ResultSnapshotCache implements ICacheStatistics {
+  /**
+   * Option containing the snapshot handle to continue from, empty to request a snapshot.
+   */
+  public static final String SNAPSHOT_OPTION = "_snapshot";
+
+  /**
+   * Metadata key under which the snapshot handle is attached to list results.
+   */
+  public static final String SNAPSHOT_FIELD = "snapshot";
+
+  private static final String[] SCOPE_OPTIONS = { WebsockConstants.SORT_FIELD,
+      WebsockConstants.SORT_ORDER, WebsockConstants.FILTER_FIELD,
+      WebsockConstants.FILTER_OPERATION, WebsockConstants.FILTER_VALUE };
+
+  private static final String ID_FIELD = "id";
+
+  // estimated overhead of a snapshot besides its IDs and of a stored "id" value
+  private static final long ENTRY_OVERHEAD = 128;
+  private static final long KEY_OVERHEAD = 48;
+
+  private final GraphDatabaseService fDatabase;
+  private final long fTtl;
+  private final long fMaxMemory;
+
+  private final Map<String, Snapshot> fSnapshots;
+  private long fMemory;
+
+  private final AtomicLong fHits, fMisses;
+
+  /**
+   * Creates an empty snapshot cache retrieving nodes from the given database. Throws a
+   * NullPointerException if the database is null.
+   *
+   * @param database
+   *          database to retrieve nodes from
+   * @param ttl
+   *          time in milliseconds after which snapshots expire
+   * @param maxMemory
+   *          maximum estimated memory in bytes used by all snapshots
+   */
+  public ResultSnapshotCache(GraphDatabaseService database, long ttl, long maxMemory) {
+    if (database == null) {
+      throw new NullPointerException("database service was null");
+    }
+
+    this.fDatabase = database;
+    this.fTtl = ttl;
+    this.fMaxMemory = maxMemory;
+
+    // insertion order equals expiration order
+    this.fSnapshots = new LinkedHashMap<String, Snapshot>();
+
+    this.fHits = new AtomicLong();
+    this.fMisses = new AtomicLong();
+  }
+
+  /**
+   * @param options
+   *          retrieval options, may be null
+   * @return whether the options request a snapshot or continue from one
+   */
+  public static boolean isRequested(Map<String, ?> options) {
+    return options != null && options.containsKey(ResultSnapshotCache.SNAPSHOT_OPTION);
+  }
+
+  /**
+   * Creates an identifier for a query with the given parameters, including the sorting and
+   * filtering parameters of the given options, that snapshots are bound to.
+   *
+   * @param query
+   *          name and parameters of the query
+   * @param options
+   *          retrieval options, may be null
+   * @return identifier of the query
+   */
+  public static String getScope(String query, Map<String, ?> options) {
+    final StringBuilder scope = new StringBuilder(query);
+
+    if (options != null) {
+      for (final String key : ResultSnapshotCache.SCOPE_OPTIONS) {
+        scope.append('|').append(options.get(key));
+      }
+    }
+
+    return scope.toString();
+  }
+
+  /**
+   * Restores the ordered node list of the snapshot referenced by the given options, if it was
+   * created for the same query and has not expired. The returned list has the snapshot's size and
+   * only resolves the nodes that are actually retrieved from it. Nodes that were deleted in the
+   * meantime or whose IDs were reused for other nodes are returned as null.
+   *
+   * @param scope
+   *          identifier of the query and its parameters
+   * @param options
+   *          retrieval options
+   * @return lazily resolved list of nodes or null if there is no usable snapshot
+   */
+  public List<Node> restore(String scope, Map<String, ?> options) {
+    final String handle = (String) options.get(ResultSnapshotCache.SNAPSHOT_OPTION);
+    if (handle == null || handle.isEmpty()) {
+      return null;
+    }
+
+    final Snapshot snapshot;
+    synchronized (this.fSnapshots) {
+      expire(System.currentTimeMillis());
+      snapshot = this.fSnapshots.get(handle);
+    }
+
+    if (snapshot == null || !snapshot.fScope.equals(scope)) {
+      this.fMisses.incrementAndGet();
+      return null;
+    }
+    this.fHits.incrementAndGet();
+
+    return new SnapshotView(this.fDatabase, snapshot);
+  }
+
+  /**
+   * Stores a snapshot of the given ordered node list if the options request one and attaches its
+   * handle to a copy of the given result. If the options already reference a snapshot of the same
+   * query, its handle is attached again, otherwise a new snapshot is stored.
+   *
+   * @param scope
+   *          identifier of the query and its parameters
+   * @param nodes
+   *          fully ordered list of nodes
+   * @param options
+   *          retrieval options
+   * @param result
+   *          converted page of results
+   * @return given result or copy with snapshot handle
+   */
+  public ListResult store(String scope, List<Node> nodes, Map<String, ?> options,
+          ListResult result) {
+    if (!isRequested(options)) {
+      return result;
+    }
+
+    String handle = (String) options.get(ResultSnapshotCache.SNAPSHOT_OPTION);
+    boolean known = false;
+    if (handle != null) {
+      synchronized (this.fSnapshots) {
+        final Snapshot existing = this.fSnapshots.get(handle);
+        known = existing != null && existing.fScope.equals(scope);
+      }
+    }
+
+    if (!known) {
+      long[] ids = new long[nodes.size()];
+      Object[] keys = new Object[nodes.size()];
+      int index = 0;
+      for (final Node node : nodes) {
+        // restored snapshots contain null for stale nodes
+        if (node != null) {
+          ids[index] = node.getId();
+          keys[index++] = node.getProperty(ResultSnapshotCache.ID_FIELD, null);
+        }
+      }
+      if (index < ids.length) {
+        ids = Arrays.copyOf(ids, index);
+        keys = Arrays.copyOf(keys, index);
+      }
+
+      handle = UUID.randomUUID().toString();
+      final Snapshot snapshot = new Snapshot(scope, ids, keys, System.currentTimeMillis());
+
+      synchronized (this.fSnapshots) {
+        this.fSnapshots.put(handle, snapshot);
+        this.fMemory += snapshot.getMemory();
+        evict(snapshot.fCreated);
+      }
+    }
+
+    final ShindigListResult withHandle = new ShindigListResult(result);
+    withHandle.setMetadata(ResultSnapshotCache.SNAPSHOT_FIELD, handle);
+    return withHandle;
+  }
+
+  private void expire(long now) {
+    final Iterator<Snapshot> iter = this.fSnapshots.values().iterator();
+    while (iter.hasNext()) {
+      final Snapshot snapshot = iter.next();
+      if (now - snapshot.fCreated < this.fTtl) {
+        break;
+      }
+
+      iter.remove();
+      this.fMemory -= snapshot.getMemory();
+    }
+  }
+
+  private void evict(long now) {
+    expire(now);
+
+    // remove oldest snapshots until below the memory limit
+    final Iterator<Snapshot> iter = this.fSnapshots.values().iterator();
+    while (this.fMemory > this.fMaxMemory && iter.hasNext()) {
+      this.fMemory -= iter.next().getMemory();
+      iter.remove();
+    }
+  }
+
+  /**
+   * @return estimated memory in bytes used by all snapshots
+   */
+  public long getMemory() {
+    synchronized (this.fSnapshots) {
+      return this.fMemory;
+    }
+  }
+
+  @Override
+  public long getHits() {
+    return this.fHits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.fMisses.get();
+  }
+
+  @Override
+  public int getSize() {
+    synchronized (this.fSnapshots) {
+      return this.fSnapshots.size();
+    }
+  }
+
+  @Override
+  public int getCapacity() {
+    return -1;
+  }
+
+  private static class Snapshot {
+    private final String fScope;
+    private final long[] fNodeIds;
+    private final Object[] fKeys;
+    private final long fCreated;
+    private final long fMemory;
+
+    public Snapshot(String scope, long[] nodeIds, Object[] keys, long created) {
+      this.fScope = scope;
+      this.fNodeIds = nodeIds;
+      this.fKeys = keys;
+      this.fCreated = created;
+
+      long memory = ResultSnapshotCache.ENTRY_OVERHEAD + 16L * nodeIds.length;
+      for (final Object key : keys) {
+        memory += ResultSnapshotCache.KEY_OVERHEAD;
+        if (key instanceof String) {
+          memory += 2L * ((String) key).length();
+        }
+      }
+      this.fMemory = memory;
+    }
+
+    public long getMemory() {
+      return this.fMemory;
+    }
+  }
+
+  private static class SnapshotView extends AbstractList<Node> implements RandomAccess {
+    private final GraphDatabaseService fDatabase;
+    private final Snapshot fSnapshot;
+    private final Node[] fNodes;
+    private final boolean[] fResolved;
+
+    public SnapshotView(GraphDatabaseService database, Snapshot snapshot) {
+      this.fDatabase = database;
+      this.fSnapshot = snapshot;
+      this.fNodes = new Node[snapshot.fNodeIds.length];
+      this.fResolved = new boolean[snapshot.fNodeIds.length];
+    }
+
+    @Override
+    public Node get(int index) {
+      if (!this.fResolved[index]) {
+        this.fNodes[index] = resolve(index);
+        this.fResolved[index] = true;
+      }
+
+      return this.fNodes[index];
+    }
+
+    private Node resolve(int index) {
+      try {
+        final Node node = this.fDatabase.getNodeById(this.fSnapshot.fNodeIds[index]);
+
+        // node IDs of deleted nodes may be reused
+        final Object key = node.getProperty(ResultSnapshotCache.ID_FIELD, null);
+        if (key != null && key.equals(this.fSnapshot.fKeys[index])) {
+          return node;
+        }
+      } catch (final NotFoundException e) {
+        // deleted in the meantime
+      }
+
+      return null;
+    }
+
+    @Override
+    public int size() {
+      return this.fNodes.length;
+    }
+  }
+}
@@ -24,5 +24,5 @@ import org.neo4j.graphdb.RelationshipType;
  * Neo4j relationship types for the Shindig server routines.
  */
 public enum ShindigRelTypes implements RelationshipType {
-  KNOWS, FRIEND_OF, DELETED, MEMBER_OF, OWNER_OF, OWNS, ACCOUNT, CAME_FROM, SENT, SENT_TO, REPLY_TO, LOCATED_AT, CURRENTLY_AT, HAS_DATA, USED_BY, TAGGED, HAS_TAG, ACTED, CONTAINS, ACTOR, GENERATOR, OBJECT, PROVIDER, TARGET, HAS_ICON, ATTACHED, AUTHOR, EMAILS, IMS, PHONE_NUMS, PHOTOS, FRIEND_REQUEST, UPLOADED, IS_SKILL, HAS_SKILL, LINKED_BY, EMPLOYED, IN_UNIT, PART_OF, MANAGER, SECRETARY, HEAD, CONTRIBUTED_BY, PROCESS_CYCLE;
+  KNOWS, FRIEND_OF, DELETED, MEMBER_OF, OWNER_OF, OWNS, ACCOUNT, CAME_FROM, SENT, SENT_TO, REPLY_TO, LOCATED_AT, CURRENTLY_AT, HAS_DATA, USED_BY, TAGGED, HAS_TAG, ACTED, CONTAINS, ACTOR, GENERATOR, OBJECT, PROVIDER, TARGET, HAS_ICON, ATTACHED, AUTHOR, EMAILS, IMS, PHONE_NUMS, PHOTOS, FRIEND_REQUEST, UPLOADED, IS_SKILL, HAS_SKILL, LINKED_BY, EMPLOYED, IN_UNIT, PART_OF, MANAGER, SECRETARY, HEAD, CONTRIBUTED_BY, PROCESS_CYCLE, LATEST_ACTIVITY, OLDER_ACTIVITY, TIMELINE, ACTIVITY_SUMMARY;
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ShindigConstants;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the batch procedure executing several procedures in one call.
+ */
+public class BatchProcedureTest {
+  private static final String ID_FIELD = "id";
+  private static final String JOHN_ID = "john.doe";
+
+  private static final String GET_PERSON_QUERY = "getPerson";
+  private static final String UNINDEX_QUERY = "unindex";
+  private static final String FAIL_QUERY = "fail";
+
+  private GraphDatabaseService fDb;
+  private GraphPersonSPI fPersonSPI;
+  private Index<Node> fPersonNodes;
+
+  private BatchProcedure fBatch;
+
+  /**
+   * Sets up an impermanent database with a person and a batch procedure for testing purposes.
+   */
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    // only test lookups shared within batches
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put("persons.cache.size", "0");
+
+    final ImplUtil impl = new ImplUtil(ArrayList.class, HashMap.class);
+    this.fPersonSPI = new GraphPersonSPI(this.fDb, config, impl);
+    this.fPersonNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+
+    final Transaction trans = this.fDb.beginTx();
+    final Node john = this.fDb.createNode();
+    john.setProperty(BatchProcedureTest.ID_FIELD, BatchProcedureTest.JOHN_ID);
+    this.fPersonNodes.add(john, BatchProcedureTest.ID_FIELD, BatchProcedureTest.JOHN_ID);
+    trans.success();
+    trans.finish();
+
+    final Map<String, IStoredProcedure> procedures = new HashMap<String, IStoredProcedure>();
+    procedures.put(BatchProcedureTest.GET_PERSON_QUERY, new ShindigProcedure(
+            BatchProcedureTest.GET_PERSON_QUERY) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return BatchProcedureTest.this.fPersonSPI.getPerson(
+                getString(parameters, ShindigNativeQueries.USER_ID), null);
+      }
+    });
+
+    // removes a person from the index, so that only shared lookups can find it
+    procedures.put(BatchProcedureTest.UNINDEX_QUERY, new ShindigProcedure(
+            BatchProcedureTest.UNINDEX_QUERY) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        final Node person = BatchProcedureTest.this.fPersonSPI.getPersonNode(getString(
+                parameters, ShindigNativeQueries.USER_ID));
+
+        final Transaction trans = BatchProcedureTest.this.fDb.beginTx();
+        BatchProcedureTest.this.fPersonNodes.remove(person);
+        trans.success();
+        trans.finish();
+        return null;
+      }
+    });
+
+    procedures.put(BatchProcedureTest.FAIL_QUERY, new ShindigProcedure(
+            BatchProcedureTest.FAIL_QUERY) {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        throw new RuntimeException("failure");
+      }
+    });
+
+    this.fBatch = new BatchProcedure(procedures, this.fPersonSPI, impl);
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private Map<String, Object> call(String query, String userId) {
+    final Map<String, Object> params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, userId);
+
+    final Map<String, Object> call = new HashMap<String, Object>();
+    call.put(ShindigServerQueries.BATCH_QUERY_FIELD, query);
+    call.put(ShindigServerQueries.BATCH_PARAMS_FIELD, params);
+    return call;
+  }
+
+  /**
+   * Tests the execution of a batch with shared person lookups and failing calls.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void batchTest() throws Exception {
+    final List<Map<String, Object>> calls = new ArrayList<Map<String, Object>>();
+    calls.add(call(BatchProcedureTest.UNINDEX_QUERY, BatchProcedureTest.JOHN_ID));
+    calls.add(call(BatchProcedureTest.GET_PERSON_QUERY, BatchProcedureTest.JOHN_ID));
+    calls.add(call(BatchProcedureTest.FAIL_QUERY, BatchProcedureTest.JOHN_ID));
+    calls.add(call("unknown", BatchProcedureTest.JOHN_ID));
+    calls.add(call(ShindigServerQueries.EXECUTE_BATCH_QUERY, BatchProcedureTest.JOHN_ID));
+
+    final Map<String, Object> params = new HashMap<String, Object>();
+    params.put(ShindigServerQueries.BATCH_LIST, calls);
+
+    final List<Map<String, Object>> results = (List<Map<String, Object>>) ((ListResult) this.fBatch
+            .call(params)).getResults();
+    Assert.assertEquals(5, results.size());
+
+    // person found through the lookup shared with the first call
+    Map<String, Object> result = results.get(1);
+    Assert.assertEquals(BatchProcedureTest.GET_PERSON_QUERY,
+            result.get(ShindigServerQueries.BATCH_QUERY_FIELD));
+    Assert.assertNull(result.get(ShindigServerQueries.BATCH_ERROR_FIELD));
+    final Map<String, Object> person = (Map<String, Object>) result
+            .get(ShindigServerQueries.BATCH_RESULT_FIELD);
+    Assert.assertEquals(BatchProcedureTest.JOHN_ID, person.get(BatchProcedureTest.ID_FIELD));
+
+    // failures do not abort the batch
+    result = results.get(2);
+    Assert.assertEquals("failure", result.get(ShindigServerQueries.BATCH_ERROR_FIELD));
+    Assert.assertNotNull(results.get(3).get(ShindigServerQueries.BATCH_ERROR_FIELD));
+    Assert.assertNotNull(results.get(4).get(ShindigServerQueries.BATCH_ERROR_FIELD));
+
+    // lookups are no longer shared after the batch
+    Assert.assertNull(this.fPersonSPI.getPersonNode(BatchProcedureTest.JOHN_ID));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the envelope wrapper transferring list results including their metadata.
+ */
+public class EnvelopeProcedureTest {
+  private static final String TOKEN_KEY = "token";
+
+  /**
+   * Tests that list results are only wrapped if requested and that the envelope contains the
+   * paging information and metadata.
+   */
+  @Test
+  public void envelopeTest() throws Exception {
+    final EnvelopeProcedure procedure = new EnvelopeProcedure(new ShindigProcedure("list") {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        final List<Object> list = new BasicBSONList();
+        list.add("a");
+        list.add("b");
+
+        final ShindigListResult result = new ShindigListResult(list);
+        result.setFirst(2);
+        result.setTotal(10);
+        result.setMetadata(EnvelopeProcedureTest.TOKEN_KEY, "abc");
+        return result;
+      }
+    }, new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+
+    Assert.assertEquals("list", procedure.getName());
+
+    // plain result by default
+    final Map<String, Object> parameters = new HashMap<String, Object>();
+    final Map<String, Object> options = new HashMap<String, Object>();
+    parameters.put(ShindigNativeQueries.OPTIONS_MAP, options);
+    Assert.assertTrue(procedure.call(parameters) instanceof ListResult);
+
+    // envelope if requested
+    options.put(ShindigListResult.ENVELOPE_OPTION, "true");
+    final AResult result = procedure.call(parameters);
+    Assert.assertTrue(result instanceof SingleResult);
+
+    final Map<String, ?> envelope = ((SingleResult) result).getResults();
+    Assert.assertTrue(envelope instanceof BasicBSONObject);
+    Assert.assertEquals(2, ((List<?>) envelope.get(ShindigListResult.RESULT_FIELD)).size());
+    Assert.assertEquals(2, envelope.get(ShindigListResult.FIRST_FIELD));
+    Assert.assertEquals(2, envelope.get(ShindigListResult.MAX_FIELD));
+    Assert.assertEquals(10, envelope.get(ShindigListResult.TOTAL_FIELD));
+
+    final Map<?, ?> metadata = (Map<?, ?>) envelope.get(ShindigListResult.METADATA_FIELD);
+    Assert.assertEquals("abc", metadata.get(EnvelopeProcedureTest.TOKEN_KEY));
+  }
+}
@@ -18,7 +18,13 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.bson.BasicBSONObject;
 import org.bson.types.BasicBSONList;
@@ -30,15 +36,25 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
  * Tests the registration routine for the native implementation of the server-side Apache Shindig
- * routines. Only the proper registration is tested, Calls to individual routines are a matter for
- * other tests.
+ * routines. Besides the registration, only the passing of parameters to the services is tested for
+ * a sample of routines, their results are a matter for other tests.
  */
 public class ShindigNativeProceduresTest {
+  private static final String ID_FIELD = "id";
+  private static final String NAME_FIELD = "displayName";
+  private static final String TITLE_FIELD = "title";
+
+  private static final String JOHN_ID = "john.doe", JANE_ID = "jane.doe";
+  private static final String APP_ID = "testapp";
+
   private Map<String, IStoredProcedure> fProcedures;
 
   private GraphDatabaseService fService;
@@ -69,6 +85,217 @@ public class ShindigNativeProceduresTest {
     this.fService.shutdown();
   }
 
+  /**
+   * Tests that exactly the expected procedures are registered with the default configuration,
+   * which enables monitoring but not the slow call log.
+   */
+  @Test
+  public void testQueryNames() {
+    final Set<String> expected = new HashSet<String>(Arrays.asList(
+            ShindigNativeQueries.GET_PEOPLE_QUERY, ShindigNativeQueries.GET_PERSON_QUERY,
+            ShindigNativeQueries.UPDATE_PERSON_QUERY, ShindigNativeQueries.GET_ALL_PEOPLE_QUERY,
+            ShindigNativeQueries.CREATE_PERSON_QUERY, ShindigNativeQueries.DELETE_PERSON_QUERY,
+            ShindigNativeQueries.GET_FRIEND_REQUESTS_QUERY,
+            ShindigNativeQueries.REQUEST_FRIENDSHIP_QUERY,
+            ShindigNativeQueries.DENY_FRIENDSHIP_QUERY, ShindigNativeQueries.GET_GROUPS_QUERY,
+            ShindigNativeQueries.GET_FOFS_QUERY, ShindigNativeQueries.GET_SHORTEST_PATH_QUERY,
+            ShindigNativeQueries.RECOMMEND_GROUP_QUERY,
+            ShindigNativeQueries.RECOMMEND_FRIEND_QUERY,
+            ShindigNativeQueries.GET_ACT_ENTRIES_QUERY,
+            ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_QUERY,
+            ShindigNativeQueries.GET_ACT_ENTRY_QUERY,
+            ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD,
+            ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD,
+            ShindigNativeQueries.CREATE_ACT_ENTRY_QUERY,
+            ShindigServerQueries.CREATE_ACT_ENTRIES_QUERY, ShindigNativeQueries.GET_APP_DATA_QUERY,
+            ShindigNativeQueries.DELETE_APP_DATA_QUERY, ShindigNativeQueries.UPDATE_APP_DATA_QUERY,
+            ShindigNativeQueries.GET_MESSAGE_COLLECTIONS_QUERY,
+            ShindigNativeQueries.CREATE_MESS_COLL_QUERY,
+            ShindigNativeQueries.MODIFY_MESS_COLL_QUERY,
+            ShindigNativeQueries.DELETE_MESS_COLL_QUERY, ShindigNativeQueries.GET_MESSAGES_QUERY,
+            ShindigNativeQueries.CREATE_MESSAGE_QUERY, ShindigNativeQueries.DELETE_MESSAGES_QUERY,
+            ShindigNativeQueries.MODIFY_MESSAGE_QUERY, ShindigNativeQueries.GET_ALBUM_QUERY,
+            ShindigNativeQueries.GET_ALBUMS_QUERY, ShindigNativeQueries.GET_GROUP_ALBUMS_QUERY,
+            ShindigNativeQueries.DELETE_ALBUM_QUERY, ShindigNativeQueries.CREATE_ALBUM_QUERY,
+            ShindigNativeQueries.UPDATE_ALBUM_QUERY, ShindigNativeQueries.GET_MEDIA_ITEM_QUERY,
+            ShindigNativeQueries.GET_MEDIA_ITEMS_BY_ID_QUERY,
+            ShindigNativeQueries.GET_MEDIA_ITEMS_QUERY,
+            ShindigNativeQueries.GET_GROUP_MEDIA_ITEMS_QUERY,
+            ShindigNativeQueries.DELETE_MEDIA_ITEM_QUERY,
+            ShindigNativeQueries.CREATE_MEDIA_ITEM_QUERY,
+            ShindigNativeQueries.UPDATE_MEDIA_ITEM_QUERY,
+            ShindigNativeQueries.GET_SKILL_AUTOCOMPLETION_QUERY,
+            ShindigNativeQueries.GET_SKILLS_QUERY, ShindigNativeQueries.ADD_SKILL_QUERY,
+            ShindigNativeQueries.REMOVE_SKILL_QUERY,
+            ShindigNativeQueries.GET_PEOPLE_BY_SKILL_QUERY,
+            ShindigNativeQueries.GET_HIERARCHY_PATH_QUERY,
+            ShindigNativeQueries.ADD_PROCESS_CYCLE_QUERY,
+            ShindigNativeQueries.DELETE_PROCESS_CYCLES_QUERY,
+            ShindigNativeQueries.GET_PROCESS_CYCLES_QUERY,
+            ShindigServerQueries.EXECUTE_BATCH_QUERY,
+            ShindigServerQueries.GET_SERVER_METRICS_QUERY));
+
+    Assert.assertEquals(expected, this.fProcedures.keySet());
+  }
+
+  /**
+   * Calls a sample of procedures, checking that their parameters reach the services.
+   *
+   * @throws Exception
+   *           if a call fails
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testInvocation() throws Exception {
+    // people
+    for (final String id : Arrays.asList(ShindigNativeProceduresTest.JOHN_ID,
+            ShindigNativeProceduresTest.JANE_ID)) {
+      final Map<String, Object> person = new HashMap<String, Object>();
+      person.put(ShindigNativeProceduresTest.ID_FIELD, id);
+      person.put(ShindigNativeProceduresTest.NAME_FIELD, id);
+
+      final Map<String, Object> params = new HashMap<String, Object>();
+      params.put(ShindigNativeQueries.PERSON_OBJECT, person);
+      call(ShindigNativeQueries.CREATE_PERSON_QUERY, params);
+    }
+
+    final Map<String, Object> update = new HashMap<String, Object>();
+    update.put(ShindigNativeProceduresTest.NAME_FIELD, "John Doe");
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.PERSON_OBJECT, update);
+    call(ShindigNativeQueries.UPDATE_PERSON_QUERY, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.FIELD_LIST, fields(ShindigNativeProceduresTest.ID_FIELD,
+            ShindigNativeProceduresTest.NAME_FIELD));
+    Map<String, Object> single = (Map<String, Object>) ((SingleResult) call(
+            ShindigNativeQueries.GET_PERSON_QUERY, params)).getResults();
+    Assert.assertEquals(ShindigNativeProceduresTest.JOHN_ID,
+            single.get(ShindigNativeProceduresTest.ID_FIELD));
+    Assert.assertEquals("John Doe", single.get(ShindigNativeProceduresTest.NAME_FIELD));
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID_LIST, fields(ShindigNativeProceduresTest.JANE_ID));
+    params.put(ShindigNativeQueries.GROUP_ID, "@self");
+    params.put(ShindigNativeQueries.OPTIONS_MAP, new HashMap<String, Object>());
+    params.put(ShindigNativeQueries.FIELD_LIST, fields(ShindigNativeProceduresTest.ID_FIELD));
+    Assert.assertEquals(Arrays.asList(ShindigNativeProceduresTest.JANE_ID), ids(call(
+            ShindigNativeQueries.GET_PEOPLE_QUERY, params)));
+
+    // friendship request from John to Jane
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.TARGET_USER_ID, ShindigNativeProceduresTest.JANE_ID);
+    call(ShindigNativeQueries.REQUEST_FRIENDSHIP_QUERY, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JANE_ID);
+    params.put(ShindigNativeQueries.OPTIONS_MAP, new HashMap<String, Object>());
+    params.put(ShindigNativeQueries.FIELD_LIST, fields(ShindigNativeProceduresTest.ID_FIELD));
+    Assert.assertEquals(Arrays.asList(ShindigNativeProceduresTest.JOHN_ID), ids(call(
+            ShindigNativeQueries.GET_FRIEND_REQUESTS_QUERY, params)));
+
+    // confirmation by Jane, numeric and boolean parameters
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JANE_ID);
+    params.put(ShindigNativeQueries.TARGET_USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    call(ShindigNativeQueries.REQUEST_FRIENDSHIP_QUERY, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID_LIST, fields(ShindigNativeProceduresTest.JOHN_ID));
+    params.put(ShindigNativeQueries.FOF_DEPTH, 1);
+    params.put(ShindigNativeQueries.FOF_UNKNOWN, false);
+    params.put(ShindigNativeQueries.OPTIONS_MAP, new HashMap<String, Object>());
+    params.put(ShindigNativeQueries.FIELD_LIST, fields(ShindigNativeProceduresTest.ID_FIELD));
+    Assert.assertEquals(Arrays.asList(ShindigNativeProceduresTest.JANE_ID), ids(call(
+            ShindigNativeQueries.GET_FOFS_QUERY, params)));
+
+    // activities
+    Map<String, Object> activity = new HashMap<String, Object>();
+    activity.put(ShindigNativeProceduresTest.TITLE_FIELD, "created");
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.APP_ID, ShindigNativeProceduresTest.APP_ID);
+    params.put(ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT, activity);
+    single = (Map<String, Object>) ((SingleResult) call(
+            ShindigNativeQueries.CREATE_ACT_ENTRY_QUERY, params)).getResults();
+    final String actId = single.get(ShindigNativeProceduresTest.ID_FIELD).toString();
+
+    activity = new HashMap<String, Object>();
+    activity.put(ShindigNativeProceduresTest.TITLE_FIELD, "updated");
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.ACTIVITY_ID, actId);
+    params.put(ShindigNativeQueries.ACTIVITY_ENTRY_OBJECT, activity);
+    call(ShindigNativeQueries.UPDATE_ACT_ENTRY_METHOD, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.ACTIVITY_ID, actId);
+    single = (Map<String, Object>) ((SingleResult) call(ShindigNativeQueries.GET_ACT_ENTRY_QUERY,
+            params)).getResults();
+    Assert.assertEquals("updated", single.get(ShindigNativeProceduresTest.TITLE_FIELD));
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID_LIST, fields(ShindigNativeProceduresTest.JOHN_ID));
+    params.put(ShindigNativeQueries.GROUP_ID, "@self");
+    params.put(ShindigNativeQueries.APP_ID, ShindigNativeProceduresTest.APP_ID);
+    params.put(ShindigNativeQueries.OPTIONS_MAP, new HashMap<String, Object>());
+    Assert.assertEquals(Arrays.asList(actId), ids(call(ShindigNativeQueries.GET_ACT_ENTRIES_QUERY,
+            params)));
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.ACTIVITY_IDS, fields(actId));
+    call(ShindigNativeQueries.DELETE_ACT_ENTRIES_METHOD, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JOHN_ID);
+    params.put(ShindigNativeQueries.GROUP_ID, "@self");
+    params.put(ShindigNativeQueries.OPTIONS_MAP, new HashMap<String, Object>());
+    params.put(ShindigNativeQueries.ACTIVITY_IDS, fields(actId));
+    Assert.assertTrue(ids(call(ShindigNativeQueries.GET_ACT_ENTRIES_BY_ID_QUERY, params))
+            .isEmpty());
+
+    // application data
+    final Map<String, Object> data = new HashMap<String, Object>();
+    data.put("score", "42");
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID, ShindigNativeProceduresTest.JANE_ID);
+    params.put(ShindigNativeQueries.APP_ID, ShindigNativeProceduresTest.APP_ID);
+    params.put(ShindigNativeQueries.APP_DATA, data);
+    call(ShindigNativeQueries.UPDATE_APP_DATA_QUERY, params);
+
+    params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID_LIST, fields(ShindigNativeProceduresTest.JANE_ID));
+    params.put(ShindigNativeQueries.APP_ID, ShindigNativeProceduresTest.APP_ID);
+    params.put(ShindigNativeQueries.FIELD_LIST, fields("score"));
+    single = (Map<String, Object>) ((SingleResult) call(ShindigNativeQueries.GET_APP_DATA_QUERY,
+            params)).getResults();
+    Assert.assertEquals("42", ((Map<String, Object>) single
+            .get(ShindigNativeProceduresTest.JANE_ID)).get("score"));
+  }
+
+  private AResult call(String query, Map<String, Object> parameters) throws Exception {
+    final IStoredProcedure proc = this.fProcedures.get(query);
+    Assert.assertNotNull(query, proc);
+    return proc.call(parameters);
+  }
+
+  private List<String> fields(String... fields) {
+    return new ArrayList<String>(Arrays.asList(fields));
+  }
+
+  private List<String> ids(AResult result) {
+    final List<String> ids = new ArrayList<String>();
+    for (final Object entry : ((ListResult) result).getResults()) {
+      ids.add(((Map<?, ?>) entry).get(ShindigNativeProceduresTest.ID_FIELD).toString());
+    }
+    return ids;
+  }
+
   @Test
   public void testPersonService() {
     IStoredProcedure proc = this.fProcedures.get(ShindigNativeQueries.GET_PEOPLE_QUERY);
@@ -18,6 +18,7 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -31,6 +32,8 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.convert.SimpleGraphObject;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
  * Test for the activity entry and activity object converter classes.
@@ -214,6 +217,65 @@ public class GraphActivityEntryTest {
     Assert.assertEquals(GraphActivityEntryTest.OBJ_URL, obj.get(GraphActivityEntryTest.URL_FIELD));
   }
 
+  /**
+   * Test for the conversion of linked activity objects using a cache.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void cacheTest() {
+    final LruCache<Long, Map<String, Object>> cache = new LruCache<Long, Map<String, Object>>(10);
+    final ImplUtil impl = new ImplUtil(ArrayList.class, HashMap.class);
+
+    Map<String, Object> actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    Assert.assertEquals(5, cache.getSize());
+    Assert.assertEquals(0, cache.getHits());
+
+    // results are built from the implementation's types and modifying them does not alter the
+    // cache
+    Map<String, Object> actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    Assert.assertTrue(actor instanceof HashMap);
+    Assert.assertEquals(GraphActivityEntryTest.ACTOR_ID,
+            actor.get(GraphActivityEntryTest.ID_FIELD));
+    actor.put(GraphActivityEntryTest.ID_FIELD, "modified");
+
+    actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    Assert.assertEquals(5, cache.getHits());
+
+    actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    Assert.assertEquals(GraphActivityEntryTest.ACTOR_ID,
+            actor.get(GraphActivityEntryTest.ID_FIELD));
+
+    // changes are only visible once the object is invalidated
+    final Transaction trans = this.fDb.beginTx();
+    this.fActorNode.setProperty(GraphActivityEntryTest.NAME_FIELD, "new name");
+    trans.success();
+    trans.finish();
+
+    actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    Assert.assertEquals(GraphActivityEntryTest.OBJ_DISP_NAME,
+            actor.get(GraphActivityEntryTest.NAME_FIELD));
+
+    cache.remove(this.fActorNode.getId());
+    actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    Assert.assertEquals("new name", actor.get(GraphActivityEntryTest.NAME_FIELD));
+
+    // nested values are not shared with the cache either
+    final Map<String, Object> image = new HashMap<String, Object>();
+    image.put("url", "http://example.org/image.png");
+    cache.get(this.fActorNode.getId()).put("image", image);
+
+    actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    ((Map<String, Object>) actor.get("image")).put("url", "modified");
+
+    actE = new GraphActivityEntry(this.fEntryNode, impl, cache).toMap(null);
+    actor = (Map<String, Object>) actE.get(GraphActivityEntryTest.ACTOR_ID);
+    Assert.assertEquals("http://example.org/image.png",
+            ((Map<String, Object>) actor.get("image")).get("url"));
+  }
+
   /**
    * Test for value storing capabilities.
    */
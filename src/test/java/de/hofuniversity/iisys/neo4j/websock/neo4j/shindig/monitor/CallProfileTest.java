@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ShindigConstants;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the per-call profiles of list queries.
+ */
+public class CallProfileTest {
+  private static final String ID_FIELD = "id";
+
+  private static final String[] IDS = { "john.doe", "jane.doe", "jack.doe" };
+
+  private GraphDatabaseService fDb;
+  private GraphPersonSPI fPersonSPI;
+
+  /**
+   * Sets up an impermanent database with some test data for testing purposes.
+   */
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    this.fPersonSPI = new GraphPersonSPI(this.fDb, new HashMap<String, String>(), new ImplUtil(
+            BasicBSONList.class, BasicBSONObject.class));
+
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+
+    final Transaction trans = this.fDb.beginTx();
+    for (final String id : CallProfileTest.IDS) {
+      final Node person = this.fDb.createNode();
+      person.setProperty(CallProfileTest.ID_FIELD, id);
+      personNodes.add(person, CallProfileTest.ID_FIELD, id);
+    }
+    trans.success();
+    trans.finish();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  /**
+   * Tests the profile attached to a list result if requested.
+   */
+  @Test
+  public void profileTest() {
+    final List<String> fields = new ArrayList<String>();
+    fields.add(CallProfileTest.ID_FIELD);
+
+    // no profile by default
+    Map<String, Object> options = new HashMap<String, Object>();
+    ListResult result = this.fPersonSPI.getAllPeople(options, fields);
+    Assert.assertFalse(result instanceof ShindigListResult);
+    Assert.assertEquals(3, result.getSize());
+
+    // profiled call
+    options = new HashMap<String, Object>();
+    options.put(CallProfile.PROFILE_OPTION, true);
+    options.put(WebsockConstants.SUBSET_SIZE, 2);
+    result = this.fPersonSPI.getAllPeople(options, fields);
+
+    Assert.assertTrue(result instanceof ShindigListResult);
+    Assert.assertEquals(2, result.getSize());
+    Assert.assertEquals(3, result.getTotal());
+    Assert.assertFalse(CallProfile.isActive());
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> profile = (Map<String, Object>) ((ShindigListResult) result)
+            .getMetadata().get(CallProfile.PROFILE_FIELD);
+    Assert.assertNotNull(profile);
+
+    Assert.assertEquals(3L, profile.get(CallProfile.Counter.INDEX_HITS.getName()));
+    Assert.assertEquals(3L, profile.get(CallProfile.Counter.FILTER_INPUT.getName()));
+    Assert.assertEquals(3L, profile.get(CallProfile.Counter.FILTER_OUTPUT.getName()));
+    Assert.assertEquals(2L, profile.get(CallProfile.Counter.CONVERSIONS.getName()));
+
+    final long total = (Long) profile.get(CallProfile.TOTAL_FIELD);
+    long phases = 0;
+    for (final CallProfile.Phase phase : CallProfile.Phase.values()) {
+      phases += (Long) profile.get(phase.getName());
+    }
+    Assert.assertTrue(phases <= total);
+  }
+
+  /**
+   * Tests that nested calls are attributed to the outer call and that unfinished profiles can be
+   * discarded.
+   */
+  @Test
+  public void nestingTest() {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(CallProfile.PROFILE_OPTION, "true");
+
+    final ImplUtil impl = new ImplUtil(BasicBSONList.class, BasicBSONObject.class);
+
+    CallProfile.start(options);
+    CallProfile.start(null);
+    CallProfile.count(CallProfile.Counter.RELATIONSHIPS, 5);
+
+    final ListResult inner = new ListResult(new BasicBSONList());
+    Assert.assertSame(inner, CallProfile.finish(inner, impl));
+    Assert.assertTrue(CallProfile.isActive());
+
+    final ListResult outer = CallProfile.finish(new ListResult(new BasicBSONList()), impl);
+    Assert.assertTrue(outer instanceof ShindigListResult);
+    Assert.assertFalse(CallProfile.isActive());
+
+    // left over profile
+    CallProfile.start(options);
+    Assert.assertTrue(CallProfile.isActive());
+    CallProfile.clear();
+    Assert.assertFalse(CallProfile.isActive());
+  }
+
+  /**
+   * Tests that calls failing before they finish release their profile.
+   */
+  @Test
+  public void releaseTest() {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(CallProfile.PROFILE_OPTION, true);
+
+    final ImplUtil impl = new ImplUtil(BasicBSONList.class, BasicBSONObject.class);
+
+    // unprofiled calls have nothing to release
+    Assert.assertEquals(0, CallProfile.start(null));
+    CallProfile.release(0);
+    Assert.assertFalse(CallProfile.isActive());
+
+    // a failed nested call leaves the outer profile intact
+    final int outer = CallProfile.start(options);
+    final int inner = CallProfile.start(null);
+    CallProfile.release(inner);
+    Assert.assertTrue(CallProfile.isActive());
+
+    final ListResult result = CallProfile.finish(new ListResult(new BasicBSONList()), impl);
+    Assert.assertTrue(result instanceof ShindigListResult);
+    CallProfile.release(outer);
+    Assert.assertFalse(CallProfile.isActive());
+
+    // a failed direct service call does not leak its profile
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add("unknown");
+    try {
+      new GraphSPI(this.fPersonSPI, impl).getFriendsOfFriends(userIds, 2, false, options, null);
+      Assert.fail("unknown user was accepted");
+    } catch (final RuntimeException e) {
+      // expected
+    }
+    Assert.assertFalse(CallProfile.isActive());
+  }
+}
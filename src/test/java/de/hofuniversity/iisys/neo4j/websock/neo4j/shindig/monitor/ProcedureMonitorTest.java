@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the histograms and procedure instrumentation of the procedure monitor.
+ */
+public class ProcedureMonitorTest {
+  private static final String LIST_QUERY = "listQuery";
+  private static final String FAIL_QUERY = "failQuery";
+
+  /**
+   * Tests the percentiles calculated by the histogram.
+   */
+  @Test
+  public void histogramTest() {
+    final Histogram histogram = new Histogram();
+    Assert.assertEquals(0, histogram.getPercentile(50));
+
+    for (int i = 1; i <= 1000; ++i) {
+      histogram.record(i);
+    }
+
+    Assert.assertEquals(1000, histogram.getCount());
+    Assert.assertEquals(1000, histogram.getMax());
+    Assert.assertEquals(500.5, histogram.getMean(), 0.001);
+
+    // buckets are accurate to an eighth of their power of two
+    final long p50 = histogram.getPercentile(50);
+    Assert.assertTrue(p50 >= 500 && p50 < 500 * 1.125);
+
+    final long p99 = histogram.getPercentile(99);
+    Assert.assertTrue(p99 >= 990 && p99 <= 1000);
+
+    Assert.assertEquals(1000, histogram.getPercentile(100));
+
+    // small values are exact
+    final Histogram small = new Histogram();
+    small.record(3);
+    small.record(-1);
+    Assert.assertEquals(0, small.getPercentile(50));
+    Assert.assertEquals(3, small.getPercentile(100));
+  }
+
+  /**
+   * Tests the instrumentation of procedures and the resulting metrics.
+   */
+  @Test
+  public void instrumentationTest() throws Exception {
+    final Map<String, IStoredProcedure> procedures = new HashMap<String, IStoredProcedure>();
+    procedures.put(ProcedureMonitorTest.LIST_QUERY, new IStoredProcedure() {
+      @Override
+      public String getName() {
+        return "list";
+      }
+
+      @Override
+      public AResult call(Map<String, Object> parameters) {
+        final List<Object> list = new ArrayList<Object>();
+        list.add("a");
+        list.add("b");
+        list.add("c");
+        return new ListResult(list);
+      }
+    });
+    procedures.put(ProcedureMonitorTest.FAIL_QUERY, new IStoredProcedure() {
+      @Override
+      public String getName() {
+        return "fail";
+      }
+
+      @Override
+      public AResult call(Map<String, Object> parameters) {
+        throw new RuntimeException("failure");
+      }
+    });
+
+    final ProcedureMonitor monitor = new ProcedureMonitor();
+    monitor.instrument(procedures);
+
+    final IStoredProcedure listProc = procedures.get(ProcedureMonitorTest.LIST_QUERY);
+    Assert.assertTrue(listProc instanceof InstrumentedProcedure);
+    Assert.assertEquals("list", listProc.getName());
+
+    for (int i = 0; i < 10; ++i) {
+      listProc.call(new HashMap<String, Object>());
+    }
+
+    try {
+      procedures.get(ProcedureMonitorTest.FAIL_QUERY).call(new HashMap<String, Object>());
+      Assert.fail("exception was not passed on");
+    } catch (final RuntimeException e) {
+      Assert.assertEquals("failure", e.getMessage());
+    }
+
+    final ProcedureMetrics listMetrics = monitor.getMetrics(ProcedureMonitorTest.LIST_QUERY);
+    Assert.assertEquals(10, listMetrics.getCalls());
+    Assert.assertEquals(0, listMetrics.getErrors());
+    Assert.assertEquals(3, listMetrics.getMaxResultSize());
+    Assert.assertEquals(3.0, listMetrics.getMeanResultSize(), 0.001);
+
+    final ProcedureMetrics failMetrics = monitor.getMetrics(ProcedureMonitorTest.FAIL_QUERY);
+    Assert.assertEquals(1, failMetrics.getCalls());
+    Assert.assertEquals(1, failMetrics.getErrors());
+
+    // transferable representation
+    final Map<String, Object> server = monitor.toMap(new ImplUtil(ArrayList.class,
+            HashMap.class));
+    Assert.assertNotNull(server.get(ProcedureMonitor.START_TIME_FIELD));
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> procs = (Map<String, Object>) server
+            .get(ProcedureMonitor.PROCEDURES_FIELD);
+    Assert.assertEquals(2, procs.size());
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> listMap = (Map<String, Object>) procs
+            .get(ProcedureMonitorTest.LIST_QUERY);
+    Assert.assertEquals(10L, listMap.get(ProcedureMetrics.CALLS_FIELD));
+    Assert.assertEquals(3L, listMap.get(ProcedureMetrics.MAX_SIZE_FIELD));
+  }
+}
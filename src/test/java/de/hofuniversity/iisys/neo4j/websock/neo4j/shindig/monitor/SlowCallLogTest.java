@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.monitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the slow call log and its procedure wrapper.
+ */
+public class SlowCallLogTest {
+  private static final String QUERY = "slowQuery";
+
+  private final ImplUtil fImpl = new ImplUtil(ArrayList.class, HashMap.class);
+
+  /**
+   * Tests the ring buffer and the sanitization of parameters.
+   */
+  @Test
+  public void ringBufferTest() {
+    final SlowCallLog log = new SlowCallLog(10, 3, this.fImpl);
+    Assert.assertFalse(log.isSlow(9999999L));
+    Assert.assertTrue(log.isSlow(10000000L));
+    Assert.assertTrue(log.getEntries().isEmpty());
+
+    for (int i = 0; i < 5; ++i) {
+      final Map<String, Object> params = new HashMap<String, Object>();
+      params.put(ShindigNativeQueries.USER_ID, "user" + i);
+      log.record(SlowCallLogTest.QUERY, params, i * 1000L, i, null, null);
+    }
+
+    // only the newest calls are kept
+    final List<Map<String, Object>> entries = log.getEntries();
+    Assert.assertEquals(3, entries.size());
+    Assert.assertEquals("user4", entries.get(0).get(SlowCallLog.USER_FIELD));
+    Assert.assertEquals("user3", entries.get(1).get(SlowCallLog.USER_FIELD));
+    Assert.assertEquals("user2", entries.get(2).get(SlowCallLog.USER_FIELD));
+    Assert.assertEquals(4L, entries.get(0).get(SlowCallLog.DURATION_FIELD));
+    Assert.assertEquals(4, entries.get(0).get(SlowCallLog.SIZE_FIELD));
+
+    // sanitized parameters
+    final List<String> ids = new ArrayList<String>();
+    for (int i = 0; i < 20; ++i) {
+      ids.add("user" + i);
+    }
+    final Map<String, Object> person = new HashMap<String, Object>();
+    person.put("displayName", "John Doe");
+    final StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 100; ++i) {
+      longValue.append('x');
+    }
+
+    final Map<String, Object> params = new HashMap<String, Object>();
+    params.put(ShindigNativeQueries.USER_ID_LIST, ids);
+    params.put(ShindigNativeQueries.PERSON_OBJECT, person);
+    params.put(ShindigNativeQueries.GROUP_ID, longValue.toString());
+    log.record(SlowCallLogTest.QUERY, params, 0, 0, null, new RuntimeException("failure"));
+
+    final Map<String, Object> entry = log.getEntries().get(0);
+    Assert.assertEquals("user0", entry.get(SlowCallLog.USER_FIELD));
+    Assert.assertEquals("failure", entry.get(SlowCallLog.ERROR_FIELD));
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> sanitized = (Map<String, Object>) entry
+            .get(SlowCallLog.PARAMS_FIELD);
+    Assert.assertEquals(11, ((List<?>) sanitized.get(ShindigNativeQueries.USER_ID_LIST)).size());
+    Assert.assertEquals("{1 entries}", sanitized.get(ShindigNativeQueries.PERSON_OBJECT));
+    Assert.assertTrue(((String) sanitized.get(ShindigNativeQueries.GROUP_ID)).length() < 100);
+  }
+
+  /**
+   * Tests that wrapped procedures are reported with their phase breakdown if they are slow.
+   */
+  @Test
+  public void wrapperTest() throws Exception {
+    final SlowCallLog log = new SlowCallLog(0, 10, this.fImpl);
+
+    final IStoredProcedure proc = new SlowLogProcedure(SlowCallLogTest.QUERY,
+            new IStoredProcedure() {
+              @Override
+              public String getName() {
+                return "slow";
+              }
+
+              @Override
+              public AResult call(Map<String, Object> parameters) {
+                CallProfile.start(null);
+                CallProfile.phase(CallProfile.Phase.LOOKUP);
+                CallProfile.count(CallProfile.Counter.INDEX_HITS, 2);
+
+                final List<Object> list = new ArrayList<Object>();
+                list.add("a");
+                list.add("b");
+                return CallProfile.finish(new ListResult(list), SlowCallLogTest.this.fImpl);
+              }
+            }, log);
+
+    final AResult result = proc.call(new HashMap<String, Object>());
+    Assert.assertEquals(2, ((ListResult) result).getSize());
+    Assert.assertFalse(CallProfile.isActive());
+
+    final Map<String, Object> entry = log.getEntries().get(0);
+    Assert.assertEquals(SlowCallLogTest.QUERY, entry.get(SlowCallLog.QUERY_FIELD));
+    Assert.assertEquals(2, entry.get(SlowCallLog.SIZE_FIELD));
+
+    @SuppressWarnings("unchecked")
+    final Map<String, Object> profile = (Map<String, Object>) entry
+            .get(SlowCallLog.PROFILE_FIELD);
+    Assert.assertEquals(2L, profile.get(CallProfile.Counter.INDEX_HITS.getName()));
+    Assert.assertNotNull(profile.get(CallProfile.Phase.LOOKUP.getName()));
+  }
+}
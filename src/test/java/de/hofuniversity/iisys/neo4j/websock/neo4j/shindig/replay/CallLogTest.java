@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.replay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hofuniversity.iisys.neo4j.websock.calls.IStoredProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+
+/**
+ * Test for recording procedure calls to a call log and replaying them.
+ */
+public class CallLogTest {
+  private static final String QUERY = "testQuery";
+
+  private File fLog;
+
+  @Before
+  public void createFile() throws Exception {
+    this.fLog = File.createTempFile("calls", ".log");
+    this.fLog.delete();
+  }
+
+  @After
+  public void deleteFile() {
+    this.fLog.delete();
+  }
+
+  private Map<String, Object> createParams() {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put("first", 5);
+    options.put("since", 1234567890123L);
+    options.put("ratio", 0.5);
+    options.put("flag", Boolean.TRUE);
+    options.put("empty", null);
+    options.put("count", (short) 3);
+    options.put("level", (byte) 2);
+    options.put("big", new BigInteger("123456789012345678901234567890"));
+    options.put("amount", new BigDecimal("12.50"));
+
+    final List<Object> ids = new ArrayList<Object>();
+    ids.add("john.doe");
+    ids.add("jane.doe");
+
+    final Map<String, Object> params = new HashMap<String, Object>();
+    params.put("userIds", ids);
+    params.put("options", options);
+    params.put("tags", new String[] { "a", "b" });
+    return params;
+  }
+
+  /**
+   * Tests whether recorded calls are read back with the same parameters and types.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void roundTripTest() throws Exception {
+    final CallRecorder recorder = new CallRecorder(this.fLog);
+    recorder.record(CallLogTest.QUERY, createParams());
+    recorder.record("other", null);
+    recorder.close();
+
+    final CallLogReader reader = new CallLogReader(this.fLog);
+
+    RecordedCall call = reader.next();
+    Assert.assertEquals(CallLogTest.QUERY, call.getQuery());
+    Assert.assertTrue(call.getTimestamp() > 0);
+
+    final Map<String, Object> params = call.getParameters();
+    Assert.assertEquals(createParams().get("userIds"), params.get("userIds"));
+    Assert.assertArrayEquals(new String[] { "a", "b" }, (String[]) params.get("tags"));
+
+    final Map<String, Object> options = (Map<String, Object>) params.get("options");
+    Assert.assertEquals(5, options.get("first"));
+    Assert.assertEquals(1234567890123L, options.get("since"));
+    Assert.assertEquals(0.5, options.get("ratio"));
+    Assert.assertEquals(Boolean.TRUE, options.get("flag"));
+    Assert.assertTrue(options.containsKey("empty"));
+    Assert.assertNull(options.get("empty"));
+    Assert.assertEquals(Short.valueOf((short) 3), options.get("count"));
+    Assert.assertEquals(Byte.valueOf((byte) 2), options.get("level"));
+    Assert.assertEquals(new BigInteger("123456789012345678901234567890"), options.get("big"));
+    Assert.assertEquals(new BigDecimal("12.50"), options.get("amount"));
+
+    call = reader.next();
+    Assert.assertEquals("other", call.getQuery());
+    Assert.assertNull(call.getParameters());
+
+    Assert.assertNull(reader.next());
+    reader.close();
+  }
+
+  /**
+   * Tests whether appending to a log with a truncated last record drops that record first.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void appendTest() throws Exception {
+    CallRecorder recorder = new CallRecorder(this.fLog);
+    recorder.record(CallLogTest.QUERY, createParams());
+    recorder.record("truncated", createParams());
+    recorder.close();
+
+    // simulate a crash while writing the last record
+    final RandomAccessFile raf = new RandomAccessFile(this.fLog, "rw");
+    raf.setLength(raf.length() - 3);
+    raf.close();
+
+    recorder = new CallRecorder(this.fLog);
+    recorder.record("appended", null);
+    recorder.close();
+
+    final CallLogReader reader = new CallLogReader(this.fLog);
+    Assert.assertEquals(CallLogTest.QUERY, reader.next().getQuery());
+    Assert.assertEquals("appended", reader.next().getQuery());
+    Assert.assertNull(reader.next());
+    reader.close();
+  }
+
+  /**
+   * Tests whether buffered records are written without further calls or closing the recorder.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void flushTest() throws Exception {
+    final CallRecorder recorder = new CallRecorder(this.fLog);
+    recorder.record(CallLogTest.QUERY, createParams());
+
+    final long start = System.currentTimeMillis();
+    while (this.fLog.length() <= 6 && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(50);
+    }
+
+    try {
+      final CallLogReader reader = new CallLogReader(this.fLog);
+      Assert.assertEquals(CallLogTest.QUERY, reader.next().getQuery());
+      reader.close();
+    } finally {
+      recorder.close();
+    }
+  }
+
+  /**
+   * Tests recording through the procedure wrapper and replaying the log.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void replayTest() throws Exception {
+    final AtomicInteger calls = new AtomicInteger();
+    final IStoredProcedure proc = new IStoredProcedure() {
+      @Override
+      public String getName() {
+        return CallLogTest.QUERY;
+      }
+
+      @Override
+      public AResult call(Map<String, Object> parameters) throws Exception {
+        calls.incrementAndGet();
+        return null;
+      }
+    };
+
+    final CallRecorder recorder = new CallRecorder(this.fLog);
+    final RecordingProcedure recProc = new RecordingProcedure(CallLogTest.QUERY, proc, recorder);
+    for (int i = 0; i < 10; ++i) {
+      recProc.call(createParams());
+    }
+    recorder.close();
+    Assert.assertEquals(10, calls.get());
+
+    final Map<String, IStoredProcedure> procedures = new HashMap<String, IStoredProcedure>();
+    procedures.put(CallLogTest.QUERY, proc);
+
+    final ReplayDriver driver = new ReplayDriver(procedures, 2, 0);
+    final CallLogReader reader = new CallLogReader(this.fLog);
+    final long duration = driver.replay(reader);
+    reader.close();
+
+    Assert.assertEquals(20, calls.get());
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    driver.report(new PrintStream(out), duration);
+    Assert.assertTrue(out.toString().contains(CallLogTest.QUERY));
+  }
+}
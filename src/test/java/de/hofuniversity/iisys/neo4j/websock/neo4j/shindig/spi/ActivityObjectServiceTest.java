@@ -18,10 +18,12 @@
  */
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 import org.bson.BasicBSONObject;
 import org.bson.types.BasicBSONList;
@@ -37,6 +39,7 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.convert.GraphActivityObject;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
@@ -46,6 +49,7 @@ public class ActivityObjectServiceTest {
   private static final String ID_FIELD = "id";
   private static final String NAME_FIELD = "displayName";
   private static final String TYPE_FIELD = "objectType";
+  private static final String URL_FIELD = "url";
 
   private static final String TYPE1 = "bogus", TYPE2 = "nonesense", TYPE3 = "used";
 
@@ -155,6 +159,35 @@ public class ActivityObjectServiceTest {
     trans.finish();
   }
 
+  /**
+   * Tests that converted objects are removed from the cache once an update or deletion has been
+   * committed.
+   */
+  @Test
+  public void invalidationTest() {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put("activityobjects.deduplicate", "true");
+    config.put("activityobjects.update", "true");
+
+    final ActivityObjectService service = new ActivityObjectService(this.fDb, config,
+            new IDManager(this.fDb), new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+
+    final Map<String, Object> obj = new HashMap<String, Object>();
+    obj.put(ActivityObjectServiceTest.ID_FIELD, ActivityObjectServiceTest.ID1);
+    obj.put(ActivityObjectServiceTest.NAME_FIELD, "updated");
+    obj.put(ActivityObjectServiceTest.TYPE_FIELD, ActivityObjectServiceTest.TYPE1);
+
+    // update
+    service.getObjectCache().put(this.fObj1.getId(), new HashMap<String, Object>());
+    Assert.assertEquals(this.fObj1, service.getObjectNode(obj));
+    Assert.assertNull(service.getObjectCache().get(this.fObj1.getId()));
+
+    // deletion of the unused object
+    service.getObjectCache().put(this.fObj1.getId(), new HashMap<String, Object>());
+    service.deleteIfUnused(Collections.singleton(this.fObj1));
+    Assert.assertNull(service.getObjectCache().get(this.fObj1.getId()));
+  }
+
   /**
    * Test for the deletion of unused activity objects.
    */
@@ -194,4 +227,136 @@ public class ActivityObjectServiceTest {
     trans.success();
     trans.finish();
   }
+
+  /**
+   * Test for the deduplication of activity objects by their content.
+   */
+  @Test
+  public void contentDedupTest() {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put("activityobjects.deduplicate.content", "true");
+
+    final ActivityObjectService service = new ActivityObjectService(this.fDb, config,
+            new IDManager(this.fDb), new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+
+    final Transaction trans = this.fDb.beginTx();
+
+    // identical objects without an ID share a node
+    final Map<String, Object> obj = new HashMap<String, Object>();
+    obj.put(ActivityObjectServiceTest.NAME_FIELD, "generator");
+    obj.put(ActivityObjectServiceTest.TYPE_FIELD, ActivityObjectServiceTest.TYPE2);
+    obj.put(ActivityObjectServiceTest.URL_FIELD, "http://example.org");
+
+    final Node node = service.getObjectNode(obj);
+    Assert.assertEquals(node, service.getObjectNode(new HashMap<String, Object>(obj)));
+    Assert.assertEquals(1, service.getObjectIds().getHits());
+
+    // internal hashes are not returned
+    final Map<String, Object> objMap = new GraphActivityObject(node).toMap(null);
+    Assert.assertFalse(objMap.containsKey(ShindigConstants.ACT_OBJ_HASH_FIELD));
+    Assert.assertEquals("generator", objMap.get(ActivityObjectServiceTest.NAME_FIELD));
+
+    // different content results in a different node
+    final Map<String, Object> other = new HashMap<String, Object>(obj);
+    other.put(ActivityObjectServiceTest.URL_FIELD, "http://example.com");
+    Assert.assertFalse(node.equals(service.getObjectNode(other)));
+
+    // values containing separators do not collide with other keys
+    final Map<String, Object> joined = new HashMap<String, Object>();
+    joined.put(ActivityObjectServiceTest.NAME_FIELD, "generator\nurl=http://example.org");
+    joined.put(ActivityObjectServiceTest.TYPE_FIELD, ActivityObjectServiceTest.TYPE2);
+    final Map<String, Object> split = new HashMap<String, Object>(joined);
+    split.put(ActivityObjectServiceTest.NAME_FIELD, "generator");
+    split.put(ActivityObjectServiceTest.URL_FIELD, "http://example.org");
+    Assert.assertFalse(service.getObjectNode(joined).equals(service.getObjectNode(split)));
+
+    // values of different types do not collide
+    final Map<String, Object> number = new HashMap<String, Object>(obj);
+    number.put(ActivityObjectServiceTest.NAME_FIELD, 1);
+    final Map<String, Object> string = new HashMap<String, Object>(obj);
+    string.put(ActivityObjectServiceTest.NAME_FIELD, "1");
+    Assert.assertFalse(service.getObjectNode(number).equals(service.getObjectNode(string)));
+
+    // arrays are identified by their elements
+    final Map<String, Object> array = new HashMap<String, Object>(obj);
+    array.put("tags", new String[] { "a", "b" });
+    final Map<String, Object> sameArray = new HashMap<String, Object>(obj);
+    sameArray.put("tags", new String[] { "a", "b" });
+    final Map<String, Object> otherArray = new HashMap<String, Object>(obj);
+    otherArray.put("tags", new String[] { "a,b" });
+    final Node arrayNode = service.getObjectNode(array);
+    Assert.assertEquals(arrayNode, service.getObjectNode(sameArray));
+    Assert.assertFalse(arrayNode.equals(service.getObjectNode(otherArray)));
+
+    // objects with IDs are identified by their content as well
+    other.put(ActivityObjectServiceTest.ID_FIELD, ActivityObjectServiceTest.ID2);
+    final Node idNode = service.getObjectNode(other);
+    Assert.assertEquals(idNode, service.getObjectNode(new HashMap<String, Object>(other)));
+
+    // deleted objects are not resolved anymore
+    final Set<Node> nodeSet = new HashSet<Node>();
+    nodeSet.add(node);
+    service.deleteIfUnused(nodeSet);
+    Assert.assertFalse(node.equals(service.getObjectNode(obj)));
+
+    trans.success();
+    trans.finish();
+  }
+
+  /**
+   * Tests that objects with the same content created concurrently share a node.
+   */
+  @Test
+  public void concurrentContentDedupTest() throws Exception {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put("activityobjects.deduplicate.content", "true");
+
+    final ActivityObjectService service = new ActivityObjectService(this.fDb, config,
+            new IDManager(this.fDb), new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+
+    final Map<String, Object> obj = new HashMap<String, Object>();
+    obj.put(ActivityObjectServiceTest.NAME_FIELD, "concurrent generator");
+    obj.put(ActivityObjectServiceTest.TYPE_FIELD, ActivityObjectServiceTest.TYPE2);
+
+    // second transaction starts while the first one has not committed yet
+    final CountDownLatch created = new CountDownLatch(1);
+    final Node[] nodes = new Node[2];
+    final Thread other = new Thread() {
+      @Override
+      public void run() {
+        try {
+          created.await();
+        } catch (final InterruptedException e) {
+          return;
+        }
+
+        final Transaction trans = ActivityObjectServiceTest.this.fDb.beginTx();
+        nodes[1] = service.getObjectNode(new HashMap<String, Object>(obj));
+        trans.success();
+        trans.finish();
+      }
+    };
+    other.start();
+
+    final Transaction trans = this.fDb.beginTx();
+    nodes[0] = service.getObjectNode(obj);
+    created.countDown();
+    Thread.sleep(200);
+    trans.success();
+    trans.finish();
+
+    other.join();
+    Assert.assertEquals(nodes[0], nodes[1]);
+
+    // a single indexed node that can be looked up again
+    final Index<Node> index = this.fDb.index().forNodes(
+            ActivityObjectServiceTest.TYPE2 + ShindigConstants.ACT_OBJ_TYPE_SUFF);
+    final String hash = (String) nodes[0].getProperty(ShindigConstants.ACT_OBJ_HASH_FIELD);
+    Assert.assertEquals(1, index.get(ShindigConstants.ACT_OBJ_HASH_FIELD, hash).size());
+
+    final Transaction lookup = this.fDb.beginTx();
+    Assert.assertEquals(nodes[0], service.getObjectNode(new HashMap<String, Object>(obj)));
+    lookup.success();
+    lookup.finish();
+  }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the asynchronous, batched creation of automatically generated activities.
+ */
+public class AutoActivityQueueTest {
+  private static final String ID_FIELD = "id";
+  private static final String TITLE_FIELD = "title";
+
+  private static final String JOHN_ID = "john.doe", JANE_ID = "jane.doe";
+
+  private GraphDatabaseService fDb;
+  private GraphActivityStreamSPI fActivitySPI;
+
+  /**
+   * Sets up an impermanent database with two people and an activity stream service for testing
+   * purposes.
+   */
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    final Map<String, String> config = new HashMap<String, String>();
+    final ImplUtil impl = new ImplUtil(BasicBSONList.class, BasicBSONObject.class);
+
+    final GraphPersonSPI personSPI = new GraphPersonSPI(this.fDb, config, impl);
+    final ActivityObjectService objectSPI = new ActivityObjectService(this.fDb, config,
+            new IDManager(this.fDb), impl);
+    this.fActivitySPI = new GraphActivityStreamSPI(this.fDb, personSPI, objectSPI,
+            new ApplicationService(this.fDb), new IDManager(this.fDb), impl);
+
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+    final Transaction trans = this.fDb.beginTx();
+    for (final String id : new String[] { AutoActivityQueueTest.JOHN_ID,
+        AutoActivityQueueTest.JANE_ID }) {
+      final Node person = this.fDb.createNode();
+      person.setProperty(AutoActivityQueueTest.ID_FIELD, id);
+      personNodes.add(person, AutoActivityQueueTest.ID_FIELD, id);
+    }
+    trans.success();
+    trans.finish();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private Map<String, Object> activity(String title) {
+    final Map<String, Object> activity = new HashMap<String, Object>();
+    activity.put(AutoActivityQueueTest.TITLE_FIELD, title);
+    activity.put("published", "2015-03-02T12:00:00Z");
+    return activity;
+  }
+
+  private int count(String userId) {
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(userId);
+
+    final ListResult result = this.fActivitySPI.getActivityEntries(userIds, null, null,
+            new HashMap<String, Object>(), null);
+    return result.getTotal();
+  }
+
+  /**
+   * Tests batched creation, including batches containing activities that cannot be created, and
+   * synchronous creation after closing the queue.
+   */
+  @Test
+  public void batchTest() throws Exception {
+    final AutoActivityQueue queue = new AutoActivityQueue(this.fDb, this.fActivitySPI, 5, 10,
+            20);
+
+    for (int i = 0; i < 25; ++i) {
+      queue.submit(AutoActivityQueueTest.JOHN_ID, null, activity("john " + i));
+    }
+
+    // unknown user, rolls back only its own transaction, which is then retried one by one
+    queue.submit(AutoActivityQueueTest.JANE_ID, null, activity("jane 1"));
+    queue.submit("nobody", null, activity("nobody"));
+    queue.submit(AutoActivityQueueTest.JANE_ID, null, activity("jane 2"));
+
+    Assert.assertTrue(queue.flush(10000));
+    Assert.assertEquals(0, queue.getPending());
+
+    Assert.assertEquals(25, count(AutoActivityQueueTest.JOHN_ID));
+    Assert.assertEquals(2, count(AutoActivityQueueTest.JANE_ID));
+
+    // created synchronously once closed
+    queue.close();
+    queue.submit(AutoActivityQueueTest.JANE_ID, null, activity("jane 3"));
+    Assert.assertEquals(3, count(AutoActivityQueueTest.JANE_ID));
+  }
+
+  /**
+   * Tests closing the queue without waiting for the batch latency, creating queued activities.
+   */
+  @Test
+  public void closeTest() throws Exception {
+    final AutoActivityQueue queue = new AutoActivityQueue(this.fDb, this.fActivitySPI, 100, 100,
+            60000);
+
+    for (int i = 0; i < 3; ++i) {
+      queue.submit(AutoActivityQueueTest.JOHN_ID, null, activity("john " + i));
+    }
+    Assert.assertEquals(3, queue.getPending());
+
+    final long start = System.currentTimeMillis();
+    queue.close();
+    Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+
+    Assert.assertEquals(0, queue.getPending());
+    Assert.assertEquals(3, count(AutoActivityQueueTest.JOHN_ID));
+  }
+}
@@ -19,7 +19,9 @@
 package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -30,15 +32,24 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.test.TestGraphDatabaseFactory;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityChain;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PageCursor;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.PartialNodeSorter;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
 
 /**
@@ -54,6 +65,7 @@ public class GraphActivityStreamSPITest {
   private static final String OBJECT_FIELD = "object";
   private static final String TARGET_FIELD = "target";
   private static final String GENERATOR_FIELD = "generator";
+  private static final String PUBLISHED_FIELD = "published";
 
   private static final String JOHN_ID = "john.doe", JANE_ID = "jane.doe", HORST_ID = "horst";
 
@@ -62,6 +74,7 @@ public class GraphActivityStreamSPITest {
   private ActivityObjectService fObjectSPI;
   private ApplicationService fAppSPI;
   private GraphActivityStreamSPI fActivityStreamSPI;
+  private MigrationService fMigrations;
 
   /**
    * Sets up an impermanent database with some test data, a person service and an activity stream
@@ -94,6 +107,33 @@ public class GraphActivityStreamSPITest {
                     BasicBSONList.class, BasicBSONObject.class));
 
     createTestData();
+
+    // index the activities created directly in the database
+    this.fMigrations = new MigrationService(this.fDb);
+    this.fMigrations.runOnce(GraphActivityStreamSPI.ID_INDEX_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        GraphActivityStreamSPITest.this.fActivityStreamSPI.indexActivityIds();
+      }
+    });
+    this.fMigrations.runOnce(GraphActivityStreamSPI.TIMESTAMP_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        GraphActivityStreamSPITest.this.fActivityStreamSPI.addTimestamps();
+      }
+    });
+    this.fMigrations.runOnce(GraphActivityStreamSPI.CHAIN_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        GraphActivityStreamSPITest.this.fActivityStreamSPI.buildActivityChains();
+      }
+    });
+    this.fMigrations.runOnce(GraphActivityStreamSPI.APP_INDEX_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        GraphActivityStreamSPITest.this.fActivityStreamSPI.indexActivityApps();
+      }
+    });
   }
 
   @After
@@ -122,6 +162,9 @@ public class GraphActivityStreamSPITest {
     personNodes
             .add(horst, GraphActivityStreamSPITest.ID_FIELD, GraphActivityStreamSPITest.HORST_ID);
 
+    johndoe.createRelationshipTo(janedoe, Neo4jRelTypes.FRIEND_OF);
+    janedoe.createRelationshipTo(johndoe, Neo4jRelTypes.FRIEND_OF);
+
     // activity objects
     final Node johnObject = this.fDb.createNode();
     johnObject.setProperty(GraphActivityStreamSPITest.ID_FIELD, GraphActivityStreamSPITest.JOHN_ID);
@@ -154,6 +197,8 @@ public class GraphActivityStreamSPITest {
     hireJaneAct.createRelationshipTo(janeObject, Neo4jRelTypes.TARGET);
 
     johndoe.createRelationshipTo(hireJaneAct, Neo4jRelTypes.ACTED);
+    hireJaneAct.createRelationshipTo(this.fAppSPI.getApplication("hrapp"),
+            Neo4jRelTypes.CAME_FROM);
 
     final Node postVacAct = this.fDb.createNode();
     postVacAct.setProperty(GraphActivityStreamSPITest.ID_FIELD, "2");
@@ -308,6 +353,612 @@ public class GraphActivityStreamSPITest {
     Assert.assertNotNull(entry.get(GraphActivityStreamSPITest.TARGET_FIELD));
   }
 
+  /**
+   * Tests the retrieval of other people's activity entries by ID in a friend context and the
+   * one-time migration filling the ID index.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void friendRetrievalTest() throws Exception {
+    Assert.assertTrue(this.fMigrations.isApplied(GraphActivityStreamSPI.ID_INDEX_MIGRATION));
+
+    // the migration is not run again
+    this.fMigrations.runOnce(GraphActivityStreamSPI.ID_INDEX_MIGRATION, new Runnable() {
+      @Override
+      public void run() {
+        Assert.fail("migration was run twice");
+      }
+    });
+
+    // jane's entry is only visible to john as a friend
+    Assert.assertNull(this.fActivityStreamSPI.getActivityEntry(GraphActivityStreamSPITest.JOHN_ID,
+            null, null, null, "2").getResults());
+    final Map<String, ?> entry = this.fActivityStreamSPI.getActivityEntry(
+            GraphActivityStreamSPITest.JOHN_ID, "@friends", null, null, "2").getResults();
+    Assert.assertNotNull(entry);
+    Assert.assertEquals("2", entry.get(GraphActivityStreamSPITest.ID_FIELD));
+
+    // horst is no friend of john's
+    Assert.assertNull(this.fActivityStreamSPI.getActivityEntry(GraphActivityStreamSPITest.JOHN_ID,
+            "@friends", null, null, "3").getResults());
+
+    // own and friends' entries
+    final List<String> actIds = new ArrayList<String>();
+    actIds.add("1");
+    actIds.add("2");
+    actIds.add("3");
+    actIds.add("unknown");
+
+    final ListResult entryColl = this.fActivityStreamSPI.getActivityEntries(
+            GraphActivityStreamSPITest.JOHN_ID, "@all", null, new HashMap<String, Object>(), null,
+            actIds);
+    Assert.assertEquals(2, entryColl.getSize());
+  }
+
+  /**
+   * Tests reading a person's newest activity entries from their time-ordered chain, including
+   * out-of-order creation, updates, paging and deletion.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void chainTest() throws Exception {
+    final String[] published = { "2015-03-01T10:00:00Z", "2015-03-03T10:00:00Z",
+            "2015-03-02T10:00:00Z", "2015-03-05T10:00:00Z", "2015-03-04T10:00:00Z" };
+    final List<String> ids = new ArrayList<String>();
+
+    Map<String, Object> activity = null;
+    for (final String date : published) {
+      activity = new HashMap<String, Object>();
+      activity.put(GraphActivityStreamSPITest.VERB_FIELD, "post");
+      activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, date);
+
+      ids.add(this.fActivityStreamSPI
+              .createActivityEntry(GraphActivityStreamSPITest.HORST_ID, null, null, activity,
+                      null).getResults().get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+
+    // move the oldest entry to the front
+    activity = new HashMap<String, Object>();
+    activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, "2015-03-06T10:00:00Z");
+    this.fActivityStreamSPI.updateActivityEntry(GraphActivityStreamSPITest.HORST_ID, null, null,
+            ids.get(0), activity, null);
+
+    // remove one in the middle
+    final List<String> delIds = new ArrayList<String>();
+    delIds.add(ids.get(2));
+    this.fActivityStreamSPI.deleteActivityEntries(GraphActivityStreamSPITest.HORST_ID, null, null,
+            delIds);
+
+    // expected order: 0, 3, 4, 1, migrated entry "3" without a date last
+    final String[] expected = { ids.get(0), ids.get(3), ids.get(4), ids.get(1), "3" };
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+
+    final List<String> read = new ArrayList<String>();
+    Object cursor = "";
+    while (cursor != null) {
+      final Map<String, Object> options = new HashMap<String, Object>();
+      options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+      options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+      options.put(WebsockConstants.SUBSET_SIZE, 2);
+      options.put(PageCursor.CURSOR_OPTION, cursor);
+
+      final ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null,
+              options, null);
+      Assert.assertEquals(expected.length, result.getTotal());
+
+      for (final Object entry : result.getResults()) {
+        read.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+      }
+
+      cursor = null;
+      if (result instanceof ShindigListResult) {
+        cursor = ((ShindigListResult) result).getMetadata().get(PageCursor.CURSOR_FIELD);
+      }
+    }
+
+    Assert.assertEquals(Arrays.asList(expected), read);
+
+    // same order when sorting all entries
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    final ListResult result = this.fActivityStreamSPI.getActivityEntries(
+            GraphActivityStreamSPITest.HORST_ID, null, null, options, null,
+            Arrays.asList(expected));
+
+    read.clear();
+    for (final Object entry : result.getResults()) {
+      read.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+    Assert.assertEquals(Arrays.asList(expected), read);
+  }
+
+  /**
+   * Tests rebuilding a chain in several transactions, as done by the migrations.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void chunkedRebuildTest() throws Exception {
+    final String[] published = { "2015-03-01T10:00:00Z", "2015-03-03T10:00:00Z",
+            "2015-03-02T10:00:00Z", "2015-03-05T10:00:00Z", "2015-03-04T10:00:00Z" };
+
+    Map<String, Object> activity = null;
+    for (final String date : published) {
+      activity = new HashMap<String, Object>();
+      activity.put(GraphActivityStreamSPITest.VERB_FIELD, "post");
+      activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, date);
+
+      this.fActivityStreamSPI.createActivityEntry(GraphActivityStreamSPITest.HORST_ID, null,
+              null, activity, null);
+    }
+
+    final Node horst = this.fPersonSPI.getPersonNode(GraphActivityStreamSPITest.HORST_ID);
+    final List<Node> expected = new ArrayList<Node>();
+    for (Node entry = ActivityChain.getFirst(horst); entry != null; entry = ActivityChain
+            .getNext(entry)) {
+      expected.add(entry);
+    }
+
+    // two links per transaction
+    Assert.assertEquals(expected.size(), ActivityChain.rebuild(horst, 2));
+
+    final List<Node> chain = new ArrayList<Node>();
+    for (Node entry = ActivityChain.getFirst(horst); entry != null; entry = ActivityChain
+            .getNext(entry)) {
+      chain.add(entry);
+    }
+    Assert.assertEquals(expected, chain);
+    Assert.assertEquals(expected.size(), ActivityChain.getCount(horst));
+    Assert.assertEquals(expected.get(expected.size() - 1), ActivityChain.getLast(horst));
+  }
+
+  /**
+   * Tests appending entries that are older than all others or have no date and concurrently
+   * creating entries in the same chain.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void chainAppendTest() throws Exception {
+    // appended behind the migrated entry "3" without a date
+    final String undated = createEntry(GraphActivityStreamSPITest.HORST_ID, null);
+    final String newest = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-05T10:00:00Z");
+    final String older = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-03T10:00:00Z");
+    final String oldest = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-01T10:00:00Z");
+
+    // remove the oldest entry and append one behind its predecessor
+    final List<String> delIds = new ArrayList<String>();
+    delIds.add(undated);
+    this.fActivityStreamSPI.deleteActivityEntries(GraphActivityStreamSPITest.HORST_ID, null, null,
+            delIds);
+    final String last = createEntry(GraphActivityStreamSPITest.HORST_ID, null);
+    final String middle = createEntry(GraphActivityStreamSPITest.HORST_ID,
+            "2015-03-02T10:00:00Z");
+
+    ListResult result = getChainEntries();
+    Assert.assertEquals(Arrays.asList(newest, older, middle, oldest, "3", last), getIds(result));
+    Assert.assertEquals(6, result.getTotal());
+
+    // concurrent creations must neither deadlock nor lose count updates
+    final int threads = 4;
+    final int perThread = 10;
+    final List<Thread> workers = new ArrayList<Thread>();
+    final List<Throwable> errors = new ArrayList<Throwable>();
+    for (int i = 0; i < threads; ++i) {
+      final int offset = i;
+      workers.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < perThread; ++j) {
+              createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-04-"
+                      + (10 + j) + "T10:00:0" + offset + "Z");
+            }
+          } catch (final Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        }
+      });
+    }
+    for (final Thread worker : workers) {
+      worker.start();
+    }
+    for (final Thread worker : workers) {
+      worker.join();
+    }
+    Assert.assertTrue(errors.toString(), errors.isEmpty());
+
+    result = getChainEntries();
+    final List<String> read = getIds(result);
+    Assert.assertEquals(6 + threads * perThread, result.getTotal());
+    Assert.assertEquals(6 + threads * perThread, read.size());
+    Assert.assertEquals(Arrays.asList(newest, older, middle, oldest, "3", last),
+            read.subList(threads * perThread, read.size()));
+  }
+
+  private ListResult getChainEntries() {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(WebsockConstants.SUBSET_SIZE, 100);
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+
+    return this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+  }
+
+  private List<String> getIds(ListResult result) {
+    final List<String> ids = new ArrayList<String>();
+    for (final Object entry : result.getResults()) {
+      ids.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+    return ids;
+  }
+
+  private String createEntry(String userId, String published) {
+    final Map<String, Object> activity = new HashMap<String, Object>();
+    activity.put(GraphActivityStreamSPITest.VERB_FIELD, "post");
+    if (published != null) {
+      activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, published);
+    }
+
+    return this.fActivityStreamSPI.createActivityEntry(userId, null, null, activity, null)
+            .getResults().get(GraphActivityStreamSPITest.ID_FIELD).toString();
+  }
+
+  private ListResult getFriendEntries(int first, int max) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(WebsockConstants.SUBSET_START, first);
+    options.put(WebsockConstants.SUBSET_SIZE, max);
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.JOHN_ID);
+
+    return this.fActivityStreamSPI.getActivityEntries(userIds, "@friends", null, options,
+            null);
+  }
+
+  /**
+   * Tests reading friends streams from materialized timelines and maintaining them when entries
+   * are created and deleted.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void timelineTest() throws Exception {
+    final TimelineService timelines = new TimelineService(this.fDb, 3);
+    this.fActivityStreamSPI.setTimelines(timelines);
+
+    // new friend of john's without any predefined entries
+    final Node john = this.fPersonSPI.getPersonNode(GraphActivityStreamSPITest.JOHN_ID);
+    final Transaction trans = this.fDb.beginTx();
+    final Node alice = this.fDb.createNode();
+    alice.setProperty(GraphActivityStreamSPITest.ID_FIELD, "alice");
+    this.fDb.index().forNodes(ShindigConstants.PERSON_NODES)
+            .add(alice, GraphActivityStreamSPITest.ID_FIELD, "alice");
+    john.createRelationshipTo(alice, Neo4jRelTypes.FRIEND_OF);
+    alice.createRelationshipTo(john, Neo4jRelTypes.FRIEND_OF);
+    trans.success();
+    trans.finish();
+
+    final String d1 = createEntry("alice", "2015-03-01T10:00:00Z");
+    final String d3 = createEntry("alice", "2015-03-03T10:00:00Z");
+    final String d2 = createEntry("alice", "2015-03-02T10:00:00Z");
+    final String d4 = createEntry("alice", "2015-03-04T10:00:00Z");
+
+    // not built by reads
+    ListResult result = getFriendEntries(0, 2);
+    Assert.assertEquals(Arrays.asList(d4, d3), getIds(result));
+    Assert.assertEquals(7, result.getTotal());
+    Assert.assertFalse(timelines.exists(john));
+
+    // built by the backfill
+    timelines.buildMissing();
+    result = getFriendEntries(0, 2);
+    Assert.assertEquals(Arrays.asList(d4, d3), getIds(result));
+    Assert.assertEquals(7, result.getTotal());
+    Assert.assertEquals(3, timelines.getEntries(john).length);
+    Assert.assertEquals(7, timelines.getTotal(john));
+
+    // new entries are pushed
+    final String d5 = createEntry("alice", "2015-03-05T10:00:00Z");
+    result = getFriendEntries(0, 2);
+    Assert.assertEquals(Arrays.asList(d5, d4), getIds(result));
+    Assert.assertEquals(8, result.getTotal());
+
+    // pages beyond the timeline are traversed
+    result = getFriendEntries(2, 2);
+    Assert.assertEquals(Arrays.asList(d3, d2), getIds(result));
+    Assert.assertEquals(8, result.getTotal());
+    result = getFriendEntries(4, 1);
+    Assert.assertEquals(Arrays.asList(d1), getIds(result));
+    Assert.assertEquals(8, result.getTotal());
+
+    // deleted entries are removed
+    final List<String> delIds = new ArrayList<String>();
+    delIds.add(d5);
+    this.fActivityStreamSPI.deleteActivityEntries("alice", null, null, delIds);
+    result = getFriendEntries(0, 2);
+    Assert.assertEquals(Arrays.asList(d4, d3), getIds(result));
+    Assert.assertEquals(7, result.getTotal());
+    Assert.assertEquals(2, timelines.getEntries(john).length);
+
+    // entries deleted without updating the timeline are skipped when pushing
+    final Transaction delTrans = this.fDb.beginTx();
+    final Node stale = this.fDb.getNodeById(timelines.getEntries(john)[1]);
+    for (final Relationship rel : stale.getRelationships()) {
+      rel.delete();
+    }
+    stale.delete();
+    delTrans.success();
+    delTrans.finish();
+
+    final String d6 = createEntry("alice", "2015-03-06T10:00:00Z");
+    Assert.assertEquals(2, timelines.getEntries(john).length);
+    Assert.assertEquals(d6, getIds(getFriendEntries(0, 1)).get(0));
+
+    // reused node IDs of other nodes are not read as entries
+    final Transaction reuseTrans = this.fDb.beginTx();
+    final Node timeline = john.getSingleRelationship(ShindigRelTypes.TIMELINE,
+            Direction.OUTGOING).getEndNode();
+    final long[] entries = timelines.getEntries(john);
+    entries[1] = alice.getId();
+    timeline.setProperty("entries", entries);
+    reuseTrans.success();
+    reuseTrans.finish();
+
+    Assert.assertEquals(Arrays.asList(d6, d4), getIds(getFriendEntries(0, 2)));
+    final String d7 = createEntry("alice", "2015-03-07T10:00:00Z");
+    Assert.assertEquals(2, timelines.getEntries(john).length);
+    Assert.assertEquals(Arrays.asList(d7, d6), getIds(getFriendEntries(0, 2)));
+
+    // removing all timelines
+    timelines.clear();
+    Assert.assertFalse(timelines.exists(john));
+  }
+
+  /**
+   * Tests reading the newest entries of several people by merging their activity chains, compared
+   * to sorting all of their entries.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void mergeTest() throws Exception {
+    createEntry(GraphActivityStreamSPITest.JANE_ID, "2015-03-01T10:00:00Z");
+    createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-04T10:00:00Z");
+    createEntry(GraphActivityStreamSPITest.JOHN_ID, "2015-03-02T10:00:00Z");
+    createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-03T10:00:00Z");
+
+    // john's and his friend jane's entries as well as horst's, sorted completely
+    final List<Node> nodes = new ArrayList<Node>();
+    for (final String id : new String[] { GraphActivityStreamSPITest.JOHN_ID,
+            GraphActivityStreamSPITest.JANE_ID, GraphActivityStreamSPITest.HORST_ID }) {
+      for (final Relationship rel : this.fPersonSPI.getPersonNode(id).getRelationships(
+              Direction.OUTGOING, Neo4jRelTypes.ACTED)) {
+        nodes.add(rel.getEndNode());
+      }
+    }
+
+    final Map<String, Object> sortOpts = new HashMap<String, Object>();
+    sortOpts.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    sortOpts.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    PartialNodeSorter.sortNodes(nodes, sortOpts);
+
+    final List<String> expected = new ArrayList<String>();
+    for (final Node node : nodes) {
+      expected.add(node.getProperty(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.JOHN_ID);
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+
+    // paging with cursors
+    final List<String> read = new ArrayList<String>();
+    Object cursor = "";
+    while (cursor != null) {
+      final Map<String, Object> options = new HashMap<String, Object>(sortOpts);
+      options.put(WebsockConstants.SUBSET_SIZE, 2);
+      options.put(PageCursor.CURSOR_OPTION, cursor);
+
+      final ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, "@all", null,
+              options, null);
+      Assert.assertEquals(expected.size(), result.getTotal());
+
+      for (final Object entry : result.getResults()) {
+        read.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+      }
+
+      cursor = null;
+      if (result instanceof ShindigListResult) {
+        cursor = ((ShindigListResult) result).getMetadata().get(PageCursor.CURSOR_FIELD);
+      }
+    }
+    Assert.assertEquals(expected, read);
+
+    // paging with offsets
+    final Map<String, Object> options = new HashMap<String, Object>(sortOpts);
+    options.put(WebsockConstants.SUBSET_START, 3);
+    options.put(WebsockConstants.SUBSET_SIZE, 3);
+
+    final ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, "@all", null,
+            options, null);
+    Assert.assertEquals(3, result.getFirst());
+    Assert.assertEquals(expected.size(), result.getTotal());
+
+    read.clear();
+    for (final Object entry : result.getResults()) {
+      read.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+    Assert.assertEquals(expected.subList(3, 6), read);
+  }
+
+  /**
+   * Tests retrieving only the activity entries that came from a certain application.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void appRetrievalTest() throws Exception {
+    final String[][] entries = { { GraphActivityStreamSPITest.JOHN_ID, "hrapp" },
+            { GraphActivityStreamSPITest.JANE_ID, "hrapp" },
+            { GraphActivityStreamSPITest.JOHN_ID, "otherapp" },
+            { GraphActivityStreamSPITest.HORST_ID, "hrapp" },
+            { GraphActivityStreamSPITest.JOHN_ID, "hrapp" } };
+
+    final List<String> hrIds = new ArrayList<String>();
+    for (int i = 0; i < entries.length; ++i) {
+      final Map<String, Object> activity = new HashMap<String, Object>();
+      activity.put(GraphActivityStreamSPITest.VERB_FIELD, "post");
+      activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, "2015-04-0" + (i + 1)
+              + "T10:00:00Z");
+
+      final String id = this.fActivityStreamSPI
+              .createActivityEntry(entries[i][0], null, entries[i][1], activity, null)
+              .getResults().get(GraphActivityStreamSPITest.ID_FIELD).toString();
+      if (!GraphActivityStreamSPITest.HORST_ID.equals(entries[i][0])
+              && "hrapp".equals(entries[i][1])) {
+        hrIds.add(0, id);
+      }
+    }
+
+    // john's and jane's entries from the application, newest first, the migrated one last
+    hrIds.add("1");
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.JOHN_ID);
+
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(WebsockConstants.SUBSET_START, 1);
+    options.put(WebsockConstants.SUBSET_SIZE, 2);
+
+    ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, "@all", "hrapp",
+            options, null);
+    Assert.assertEquals(hrIds.size(), result.getTotal());
+
+    final List<String> read = new ArrayList<String>();
+    for (final Object entry : result.getResults()) {
+      read.add(((Map<?, ?>) entry).get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+    Assert.assertEquals(hrIds.subList(1, 3), read);
+
+    // only john's own entries
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, null, "otherapp",
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(1, result.getTotal());
+
+    // deleted entries are no longer found
+    this.fActivityStreamSPI.deleteActivityEntries(GraphActivityStreamSPITest.JOHN_ID, null,
+            null, hrIds.subList(0, 1));
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, "@all", "hrapp",
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(hrIds.size() - 1, result.getTotal());
+
+    // unknown applications have no entries
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, "@all", "unknownapp",
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(0, result.getTotal());
+  }
+
+  /**
+   * Tests sorting and filtering activity entries by their numeric publishing timestamps.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void timeRangeTest() throws Exception {
+    final String d1 = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-01T10:00:00Z");
+    final String d2 = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-02T12:00:00+02:00");
+    final String d3 = createEntry(GraphActivityStreamSPITest.HORST_ID, "2015-03-03T10:00Z");
+
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+
+    // entries in the range, sorted by time regardless of the dates' time zones
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(ActivityTime.SINCE_OPTION, 1425290400000L);
+    options.put(ActivityTime.UNTIL_OPTION, 1425376800000L);
+
+    ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options,
+            null);
+    Assert.assertEquals(2, result.getTotal());
+
+    List<?> entries = result.getResults();
+    Assert.assertEquals(d3, ((Map<?, ?>) entries.get(0)).get(GraphActivityStreamSPITest.ID_FIELD));
+    Assert.assertEquals(d2, ((Map<?, ?>) entries.get(1)).get(GraphActivityStreamSPITest.ID_FIELD));
+
+    // internal timestamps are not returned
+    Assert.assertFalse(((Map<?, ?>) entries.get(0)).containsKey(ActivityTime.TIMESTAMP_FIELD));
+
+    // bounds as date or timestamp strings, paging within the range
+    options.put(ActivityTime.SINCE_OPTION, "2015-03-02T10:00:00Z");
+    options.put(ActivityTime.UNTIL_OPTION, "1425376800000");
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SUBSET_START, 1);
+    options.put(WebsockConstants.SUBSET_SIZE, 1);
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+    Assert.assertEquals(2, result.getTotal());
+    Assert.assertEquals(1, result.getResults().size());
+    Assert.assertEquals(d2,
+            ((Map<?, ?>) result.getResults().get(0)).get(GraphActivityStreamSPITest.ID_FIELD));
+    options.remove(WebsockConstants.SUBSET_START);
+    options.remove(WebsockConstants.SUBSET_SIZE);
+
+    // invalid bounds are rejected
+    options.put(ActivityTime.UNTIL_OPTION, "yesterday");
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    try {
+      this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+      Assert.fail("invalid time range accepted");
+    } catch (final IllegalArgumentException e) {
+      // expected
+    }
+
+    // open range, entries without a date are excluded
+    options.remove(ActivityTime.UNTIL_OPTION);
+    options.put(ActivityTime.SINCE_OPTION, 0L);
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+    Assert.assertEquals(3, result.getTotal());
+
+    entries = result.getResults();
+    Assert.assertEquals(d1, ((Map<?, ?>) entries.get(2)).get(GraphActivityStreamSPITest.ID_FIELD));
+
+    // changing the date updates the timestamp
+    final Map<String, Object> activity = new HashMap<String, Object>();
+    activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, "2015-03-04T10:00:00Z");
+    this.fActivityStreamSPI.updateActivityEntry(GraphActivityStreamSPITest.HORST_ID, null, null,
+            d1, activity, null);
+
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+    entries = result.getResults();
+    Assert.assertEquals(d1, ((Map<?, ?>) entries.get(0)).get(GraphActivityStreamSPITest.ID_FIELD));
+  }
+
   /**
    * Tests the creation of activity entries for a person. Also checks for proper conversion.
    *
@@ -401,6 +1052,160 @@ public class GraphActivityStreamSPITest {
     Assert.assertEquals("Testanwendung", object.get(GraphActivityStreamSPITest.NAME_FIELD));
   }
 
+  private Map<String, Object> bulkEntry(String userId, String appId, String title) {
+    final Map<String, Object> entry = new HashMap<String, Object>();
+    entry.put(GraphActivityStreamSPI.BULK_USER_FIELD, userId);
+    entry.put(GraphActivityStreamSPI.BULK_APP_FIELD, appId);
+
+    if (title != null) {
+      final Map<String, Object> activity = new HashMap<String, Object>();
+      activity.put(GraphActivityStreamSPITest.TITLE_FIELD, title);
+      activity.put(GraphActivityStreamSPITest.PUBLISHED_FIELD, "2015-03-02T12:00:00Z");
+      entry.put(GraphActivityStreamSPI.BULK_ACTIVITY_FIELD, activity);
+    }
+
+    return entry;
+  }
+
+  /**
+   * Tests creating activities for several people in chunks, including invalid entries.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void bulkCreationTest() throws Exception {
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+    final int before = this.fActivityStreamSPI.getActivityEntries(userIds, null, null,
+            new HashMap<String, Object>(), null).getTotal();
+
+    final List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+    entries.add(bulkEntry(GraphActivityStreamSPITest.HORST_ID, null, "bulk 1"));
+    entries.add(bulkEntry(GraphActivityStreamSPITest.HORST_ID, "bulkapp", "bulk 2"));
+    entries.add(bulkEntry("nobody", null, "bulk 3"));
+    entries.add(bulkEntry(GraphActivityStreamSPITest.HORST_ID, null, null));
+    entries.add(bulkEntry(GraphActivityStreamSPITest.HORST_ID, "bulkapp", "bulk 4"));
+
+    this.fActivityStreamSPI.setBulkChunkSize(2);
+    final ListResult result = this.fActivityStreamSPI.createActivityEntries(entries);
+
+    // one status per entry, in order
+    final List<Map<String, Object>> statuses = (List<Map<String, Object>>) result.getResults();
+    Assert.assertEquals(5, statuses.size());
+
+    final List<String> ids = new ArrayList<String>();
+    for (final int i : new int[] { 0, 1, 4 }) {
+      Assert.assertNull(statuses.get(i).get(GraphActivityStreamSPI.BULK_ERROR_FIELD));
+      ids.add((String) statuses.get(i).get(GraphActivityStreamSPI.BULK_ID_FIELD));
+    }
+    for (final int i : new int[] { 2, 3 }) {
+      Assert.assertNull(statuses.get(i).get(GraphActivityStreamSPI.BULK_ID_FIELD));
+      Assert.assertNotNull(statuses.get(i).get(GraphActivityStreamSPI.BULK_ERROR_FIELD));
+    }
+
+    // all created and retrievable by their IDs
+    final ListResult entryColl = this.fActivityStreamSPI.getActivityEntries(userIds, null, null,
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(before + 3, entryColl.getTotal());
+
+    final ListResult byId = this.fActivityStreamSPI.getActivityEntries(
+            GraphActivityStreamSPITest.HORST_ID, null, null, new HashMap<String, Object>(),
+            null, ids);
+    Assert.assertEquals(3, byId.getTotal());
+
+    // both application entries linked to the same application
+    final Node app = new ApplicationService(this.fDb).getApplication("bulkapp");
+    int linked = 0;
+    for (final Iterator<Relationship> rels = app.getRelationships(Neo4jRelTypes.CAME_FROM)
+            .iterator(); rels.hasNext(); rels.next()) {
+      ++linked;
+    }
+    Assert.assertEquals(2, linked);
+  }
+
+  /**
+   * Tests merging bulk created entries in arbitrary order into existing chains and timelines.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void bulkMergeTest() throws Exception {
+    final TimelineService timelines = new TimelineService(this.fDb, 4);
+    this.fActivityStreamSPI.setTimelines(timelines);
+
+    // new friend of john's with a chain and a timeline containing its entries
+    final Node john = this.fPersonSPI.getPersonNode(GraphActivityStreamSPITest.JOHN_ID);
+    final Transaction trans = this.fDb.beginTx();
+    final Node alice = this.fDb.createNode();
+    alice.setProperty(GraphActivityStreamSPITest.ID_FIELD, "alice");
+    this.fDb.index().forNodes(ShindigConstants.PERSON_NODES)
+            .add(alice, GraphActivityStreamSPITest.ID_FIELD, "alice");
+    john.createRelationshipTo(alice, Neo4jRelTypes.FRIEND_OF);
+    alice.createRelationshipTo(john, Neo4jRelTypes.FRIEND_OF);
+    trans.success();
+    trans.finish();
+
+    final String d2 = createEntry("alice", "2015-03-02T10:00:00Z");
+    final String d5 = createEntry("alice", "2015-03-05T10:00:00Z");
+    timelines.buildMissing();
+    final int before = getFriendEntries(0, 2).getTotal();
+    Assert.assertTrue(timelines.exists(john));
+
+    final String[] published = { "2015-03-04T10:00:00Z", "2015-03-01T10:00:00Z",
+            "2015-03-06T10:00:00Z", null, "2015-03-03T10:00:00Z" };
+    final List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+    Map<String, Object> entry = null;
+    for (final String date : published) {
+      entry = bulkEntry("alice", null, "bulk");
+      ((Map<String, Object>) entry.get(GraphActivityStreamSPI.BULK_ACTIVITY_FIELD))
+              .put(GraphActivityStreamSPITest.PUBLISHED_FIELD, date);
+      entries.add(entry);
+    }
+    entries.add(bulkEntry(GraphActivityStreamSPITest.HORST_ID, null, "bulk"));
+
+    this.fActivityStreamSPI.setBulkChunkSize(10);
+    final List<String> ids = new ArrayList<String>();
+    for (final Object status : this.fActivityStreamSPI.createActivityEntries(entries)
+            .getResults()) {
+      ids.add((String) ((Map<?, ?>) status).get(GraphActivityStreamSPI.BULK_ID_FIELD));
+    }
+
+    // chain in time order, undated entries last
+    final List<String> expected = Arrays.asList(ids.get(2), d5, ids.get(0), ids.get(4), d2,
+            ids.get(1), ids.get(3));
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add("alice");
+    ListResult result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null,
+            options, null);
+    Assert.assertEquals(expected, getIds(result));
+    Assert.assertEquals(7, result.getTotal());
+
+    // new chain entries appended behind the oldest one
+    entries.clear();
+    entries.add(bulkEntry("alice", null, "bulk"));
+    ((Map<String, Object>) entries.get(0).get(GraphActivityStreamSPI.BULK_ACTIVITY_FIELD))
+            .remove(GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    final String last = (String) ((Map<?, ?>) this.fActivityStreamSPI
+            .createActivityEntries(entries).getResults().get(0))
+            .get(GraphActivityStreamSPI.BULK_ID_FIELD);
+    options.put(WebsockConstants.SORT_FIELD, GraphActivityStreamSPITest.PUBLISHED_FIELD);
+    result = this.fActivityStreamSPI.getActivityEntries(userIds, null, null, options, null);
+    Assert.assertEquals(last, getIds(result).get(7));
+
+    // merged into the friend's timeline
+    result = getFriendEntries(0, 4);
+    Assert.assertEquals(expected.subList(0, 4), getIds(result));
+    Assert.assertEquals(before + 6, result.getTotal());
+    Assert.assertEquals(4, timelines.getEntries(john).length);
+  }
+
   /**
    * Tests updating an activity for a person.
    *
@@ -525,4 +1330,69 @@ public class GraphActivityStreamSPITest {
             GraphActivityStreamSPITest.JANE_ID, null, "testapp", null, id).getResults();
     Assert.assertNull(activity);
   }
+
+  /**
+   * Tests deleting activities in several chunks, collecting objects that are no longer used.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void chunkedDeletionTest() throws Exception {
+    final List<String> actIds = new ArrayList<String>();
+
+    for (int i = 0; i < 5; ++i) {
+      final Map<String, Object> activity = new HashMap<String, Object>();
+      activity.put(GraphActivityStreamSPITest.TITLE_FIELD, "chunk " + i);
+
+      // one object shared by all entries, one per entry
+      final Map<String, Object> object = new HashMap<String, Object>();
+      object.put(GraphActivityStreamSPITest.ID_FIELD, "chunkshared");
+      object.put(GraphActivityStreamSPITest.TYPE_FIELD, "file");
+      activity.put(GraphActivityStreamSPITest.OBJECT_FIELD, object);
+
+      final Map<String, Object> target = new HashMap<String, Object>();
+      target.put(GraphActivityStreamSPITest.ID_FIELD, "chunktarget" + i);
+      target.put(GraphActivityStreamSPITest.TYPE_FIELD, "file");
+      activity.put(GraphActivityStreamSPITest.TARGET_FIELD, target);
+
+      final SingleResult result = this.fActivityStreamSPI.createActivityEntry(
+              GraphActivityStreamSPITest.HORST_ID, null, null, activity, null);
+      @SuppressWarnings("unchecked")
+      final Map<String, Object> created = (Map<String, Object>) result.getResults();
+      actIds.add(created.get(GraphActivityStreamSPITest.ID_FIELD).toString());
+    }
+
+    final Index<Node> files = this.fDb.index().forNodes(
+            "file" + ShindigConstants.ACT_OBJ_TYPE_SUFF);
+    Assert.assertNotNull(files.get(GraphActivityStreamSPITest.ID_FIELD, "chunkshared")
+            .getSingle());
+
+    // keep the last entry, delete the others in chunks of two
+    this.fActivityStreamSPI.setDeletionChunkSize(2);
+    this.fActivityStreamSPI.deleteActivityEntries(GraphActivityStreamSPITest.HORST_ID, null,
+            null, actIds.subList(0, 4));
+
+    final ListResult remaining = this.fActivityStreamSPI.getActivityEntries(
+            GraphActivityStreamSPITest.HORST_ID, null, null, new HashMap<String, Object>(), null,
+            actIds);
+    Assert.assertEquals(1, remaining.getTotal());
+
+    // orphaned objects are gone, the shared one is still in use
+    for (int i = 0; i < 4; ++i) {
+      Assert.assertNull(files.get(GraphActivityStreamSPITest.ID_FIELD, "chunktarget" + i)
+              .getSingle());
+    }
+    Assert.assertNotNull(files.get(GraphActivityStreamSPITest.ID_FIELD, "chunktarget4")
+            .getSingle());
+    Assert.assertNotNull(files.get(GraphActivityStreamSPITest.ID_FIELD, "chunkshared")
+            .getSingle());
+
+    // chain of the remaining entries is intact
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(GraphActivityStreamSPITest.HORST_ID);
+    final ListResult all = this.fActivityStreamSPI.getActivityEntries(userIds, null, null,
+            new HashMap<String, Object>(), null);
+    Assert.assertEquals(all.getTotal(), all.getResults().size());
+  }
 }
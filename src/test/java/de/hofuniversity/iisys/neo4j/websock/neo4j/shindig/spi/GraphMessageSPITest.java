@@ -332,6 +332,53 @@ public class GraphMessageSPITest {
     Assert.assertFalse(found);
   }
 
+  /**
+   * Tests the deletion of a message collection's messages in several chunks.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void chunkedCollectionDeletionTest() {
+    final Map<String, Object> msgCollection = new HashMap<String, Object>();
+    msgCollection.put(GraphMessageSPITest.ID_FIELD, "chunkColl");
+    msgCollection.put(GraphMessageSPITest.TITLE_FIELD, "chunked collection");
+    this.fMessageSPI.createMessageCollection(GraphMessageSPITest.JACK_ID, msgCollection);
+
+    for (int i = 0; i < 5; ++i) {
+      final Map<String, Object> message = new HashMap<String, Object>();
+      message.put(GraphMessageSPITest.TITLE_FIELD, "chunk " + i);
+
+      final List<String> recipients = new ArrayList<String>();
+      recipients.add(GraphMessageSPITest.JANE_ID);
+      message.put(GraphMessageSPITest.RECIPIENTS_FIELD, recipients);
+
+      this.fMessageSPI.createMessage(GraphMessageSPITest.JACK_ID, "testapp", "chunkColl",
+              message);
+    }
+
+    final ListResult result = this.fMessageSPI.getMessages(GraphMessageSPITest.JACK_ID,
+            "chunkColl", null, new HashMap<String, Object>(), null);
+    final List<String> msgIds = new ArrayList<String>();
+    for (final Map<String, Object> msg : (List<Map<String, Object>>) result.getResults()) {
+      msgIds.add(msg.get(GraphMessageSPITest.ID_FIELD).toString());
+    }
+    Assert.assertEquals(5, msgIds.size());
+
+    this.fMessageSPI.setDeletionChunkSize(2);
+    this.fMessageSPI.deleteMessageCollection(GraphMessageSPITest.JACK_ID, "chunkColl");
+
+    // messages that were only in that collection are deleted completely
+    final Index<Node> messages = this.fDb.index().forNodes(ShindigConstants.MESSAGE_NODES);
+    for (final String msgId : msgIds) {
+      Assert.assertNull(messages.get(GraphMessageSPITest.ID_FIELD, msgId).getSingle());
+    }
+
+    final ListResult colls = this.fMessageSPI.getMessageCollections(GraphMessageSPITest.JACK_ID,
+            new HashMap<String, Object>(), null);
+    for (final Map<String, Object> coll : (List<Map<String, Object>>) colls.getResults()) {
+      Assert.assertFalse("chunkColl".equals(coll.get(GraphMessageSPITest.ID_FIELD)));
+    }
+  }
+
   /**
    * Tests the retrieval of message collections.
    *
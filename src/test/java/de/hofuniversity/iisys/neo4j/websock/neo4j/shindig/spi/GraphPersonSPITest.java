@@ -38,6 +38,7 @@ import org.neo4j.test.TestGraphDatabaseFactory;
 
 import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
 import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigNativeProcedures;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.LruCache;
 import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
 import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
 import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
@@ -477,6 +478,40 @@ public class GraphPersonSPITest {
     Assert.assertTrue(johnFound && janeFound && jackFound && horstFound);
   }
 
+  /**
+   * Tests the cache of person node IDs, including the handling of stale entries.
+   */
+  @Test
+  public void nodeCacheTest() {
+    final LruCache<String, Long> cache = this.fPersonSPI.getNodeCache();
+    Assert.assertNotNull(cache);
+
+    final long hits = cache.getHits();
+    final Node john = this.fPersonSPI.getPersonNode(GraphPersonSPITest.JOHN_ID);
+    Assert.assertEquals(john.getId(), this.fPersonSPI.getPersonNode(GraphPersonSPITest.JOHN_ID)
+            .getId());
+    Assert.assertEquals(hits + 1, cache.getHits());
+
+    // deleted person
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+    Transaction trans = this.fDb.beginTx();
+    final Node temp = this.fDb.createNode();
+    temp.setProperty(GraphPersonSPITest.ID_FIELD, "temp");
+    personNodes.add(temp, GraphPersonSPITest.ID_FIELD, "temp");
+    trans.success();
+    trans.finish();
+
+    Assert.assertNotNull(this.fPersonSPI.getPersonNode("temp"));
+
+    trans = this.fDb.beginTx();
+    personNodes.remove(temp);
+    temp.delete();
+    trans.success();
+    trans.finish();
+
+    Assert.assertNull(this.fPersonSPI.getPersonNode("temp"));
+  }
+
   /**
    * Tests the deletion of a person. Currently no-op.
    */
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+
+/**
+ * Test for the allocator reserving IDs in blocks.
+ */
+public class IDAllocatorTest {
+  private static final String TYPE = "testentities";
+
+  private GraphDatabaseService fDb;
+
+  /**
+   * Sets up an impermanent database for testing purposes.
+   */
+  @Before
+  public void setupDatabase() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  /**
+   * Tests that allocation continues after previously generated IDs and that unused IDs of a
+   * reserved block are skipped after a restart.
+   */
+  @Test
+  public void blockTest() {
+    final IDManager idMan = new IDManager(this.fDb);
+    final long seed = Long.parseLong(idMan.genID(IDAllocatorTest.TYPE));
+
+    IDAllocator allocator = new IDAllocator(this.fDb, 10);
+    for (long i = 1; i <= 25; ++i) {
+      Assert.assertEquals(String.valueOf(seed + i), allocator.genID(IDAllocatorTest.TYPE));
+    }
+
+    // simulated restart, continues after the last reserved block
+    allocator = new IDAllocator(this.fDb, 10);
+    Assert.assertEquals(String.valueOf(seed + 31), allocator.genID(IDAllocatorTest.TYPE));
+  }
+
+  /**
+   * Tests that blocks are reserved without replaying the underlying ID manager and that IDs
+   * generated after changing the block size do not collide.
+   */
+  @Test
+  public void switchTest() {
+    final Set<String> unique = new HashSet<String>();
+    final IDManager idMan = new IDManager(this.fDb);
+    final long seed = Long.parseLong(idMan.genID(IDAllocatorTest.TYPE));
+
+    IDAllocator allocator = new IDAllocator(this.fDb, 10);
+    for (int i = 0; i < 15; ++i) {
+      Assert.assertTrue(unique.add(allocator.genID(IDAllocatorTest.TYPE)));
+    }
+
+    // underlying ID manager only used once for the first block
+    Assert.assertEquals(String.valueOf(seed + 2), idMan.genID(IDAllocatorTest.TYPE));
+
+    // blocks disabled
+    allocator = new IDAllocator(this.fDb, 1);
+    for (int i = 0; i < 15; ++i) {
+      Assert.assertTrue(unique.add(allocator.genID(IDAllocatorTest.TYPE)));
+    }
+
+    // blocks enabled again
+    allocator = new IDAllocator(this.fDb, 10);
+    for (int i = 0; i < 15; ++i) {
+      Assert.assertTrue(unique.add(allocator.genID(IDAllocatorTest.TYPE)));
+    }
+  }
+
+  /**
+   * Tests that IDs of a reserved block are still handed out after closing the allocator, while no
+   * further blocks are reserved.
+   */
+  @Test
+  public void closeTest() {
+    final IDAllocator allocator = new IDAllocator(this.fDb, 2);
+    final long first = Long.parseLong(allocator.genID(IDAllocatorTest.TYPE));
+    allocator.close();
+
+    Assert.assertEquals(String.valueOf(first + 1), allocator.genID(IDAllocatorTest.TYPE));
+    try {
+      allocator.genID(IDAllocatorTest.TYPE);
+      Assert.fail("block reserved after closing");
+    } catch (final RuntimeException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Tests that concurrently generated IDs are unique.
+   */
+  @Test
+  public void concurrencyTest() throws Exception {
+    final IDAllocator allocator = new IDAllocator(this.fDb, 7);
+    final List<List<String>> results = new ArrayList<List<String>>();
+    final List<Thread> threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < 4; ++i) {
+      final List<String> ids = new ArrayList<String>();
+      results.add(ids);
+
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 500; ++j) {
+            ids.add(allocator.genID(IDAllocatorTest.TYPE));
+          }
+        }
+      });
+    }
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    final Set<String> unique = new HashSet<String>();
+    for (final List<String> ids : results) {
+      Assert.assertEquals(500, ids.size());
+      unique.addAll(ids);
+    }
+    Assert.assertEquals(2000, unique.size());
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.Neo4jRelTypes;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.service.IDManager;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityChain;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ActivityTime;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util.ShindigRelTypes;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the retention policy deleting expired activity entries.
+ */
+public class RetentionServiceTest {
+  private static final String ID_FIELD = "id";
+  private static final String TITLE_FIELD = "title";
+  private static final String TYPE_FIELD = "objectType";
+  private static final String TARGET_FIELD = "target";
+  private static final String PUBLISHED_FIELD = "published";
+
+  private static final String JOHN_ID = "john.doe";
+
+  private static final String[] OLD_DATES = { "2010-01-05T12:00:00Z", "2010-01-20T12:00:00Z",
+      "2010-02-10T12:00:00Z" };
+
+  private GraphDatabaseService fDb;
+  private GraphActivityStreamSPI fActivitySPI;
+  private Node fJohn;
+
+  /**
+   * Sets up an impermanent database with a person having three old and three recent activities
+   * for testing purposes.
+   */
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    final Map<String, String> config = new HashMap<String, String>();
+    final ImplUtil impl = new ImplUtil(BasicBSONList.class, BasicBSONObject.class);
+
+    final GraphPersonSPI personSPI = new GraphPersonSPI(this.fDb, config, impl);
+    final ActivityObjectService objectSPI = new ActivityObjectService(this.fDb, config,
+            new IDManager(this.fDb), impl);
+    this.fActivitySPI = new GraphActivityStreamSPI(this.fDb, personSPI, objectSPI,
+            new ApplicationService(this.fDb), new IDManager(this.fDb), impl);
+
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+    final Transaction trans = this.fDb.beginTx();
+    this.fJohn = this.fDb.createNode();
+    this.fJohn.setProperty(RetentionServiceTest.ID_FIELD, RetentionServiceTest.JOHN_ID);
+    personNodes.add(this.fJohn, RetentionServiceTest.ID_FIELD, RetentionServiceTest.JOHN_ID);
+    trans.success();
+    trans.finish();
+
+    final DateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    final long now = System.currentTimeMillis();
+
+    for (int i = 0; i < 3; ++i) {
+      createActivity("old " + i, RetentionServiceTest.OLD_DATES[i]);
+      createActivity("new " + i, format.format(new Date(now - i * 60000L)));
+    }
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private void createActivity(String title, String published) {
+    createActivity(RetentionServiceTest.JOHN_ID, title, published);
+  }
+
+  private void createActivity(String userId, String title, String published) {
+    final Map<String, Object> activity = new HashMap<String, Object>();
+    activity.put(RetentionServiceTest.TITLE_FIELD, title);
+    activity.put(RetentionServiceTest.PUBLISHED_FIELD, published);
+
+    final Map<String, Object> target = new HashMap<String, Object>();
+    target.put(RetentionServiceTest.ID_FIELD, title);
+    target.put(RetentionServiceTest.TYPE_FIELD, "file");
+    activity.put(RetentionServiceTest.TARGET_FIELD, target);
+
+    this.fActivitySPI.createActivityEntry(userId, null, null, activity, null);
+  }
+
+  private Node getEntry(Node person, String title) {
+    Node entry = ActivityChain.getFirst(person);
+    while (entry != null && !title.equals(entry.getProperty(RetentionServiceTest.TITLE_FIELD))) {
+      entry = ActivityChain.getNext(entry);
+    }
+    return entry;
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<String> getTitles() {
+    final List<String> userIds = new ArrayList<String>();
+    userIds.add(RetentionServiceTest.JOHN_ID);
+
+    final ListResult result = this.fActivitySPI.getActivityEntries(userIds, null, null,
+            new HashMap<String, Object>(), null);
+
+    final List<String> titles = new ArrayList<String>();
+    for (final Map<String, Object> entry : (List<Map<String, Object>>) result.getResults()) {
+      titles.add((String) entry.get(RetentionServiceTest.TITLE_FIELD));
+    }
+    return titles;
+  }
+
+  /**
+   * Tests deleting entries by age, summarizing them per month and deleting their orphaned
+   * objects.
+   */
+  @Test
+  public void ageTest() {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put(RetentionService.MAX_AGE_PROP, "365");
+    config.put(RetentionService.BATCH_SIZE_PROP, "2");
+    config.put(RetentionService.SUMMARIES_PROP, "true");
+
+    final RetentionService retention = new RetentionService(this.fDb, this.fActivitySPI, config);
+    Assert.assertEquals(3, retention.apply());
+    Assert.assertEquals(0, retention.apply());
+
+    final List<String> titles = getTitles();
+    Assert.assertEquals(3, titles.size());
+    for (final String title : titles) {
+      Assert.assertTrue(title.startsWith("new"));
+    }
+
+    // orphaned objects deleted
+    final Index<Node> files = this.fDb.index().forNodes(
+            "file" + ShindigConstants.ACT_OBJ_TYPE_SUFF);
+    Assert.assertNull(files.get(RetentionServiceTest.ID_FIELD, "old 0").getSingle());
+    Assert.assertNotNull(files.get(RetentionServiceTest.ID_FIELD, "new 0").getSingle());
+
+    // monthly summaries
+    final Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (final Relationship rel : this.fJohn.getRelationships(ShindigRelTypes.ACTIVITY_SUMMARY,
+            Direction.OUTGOING)) {
+      final Node summary = rel.getEndNode();
+      counts.put((String) summary.getProperty(RetentionService.PERIOD_FIELD),
+              (Integer) summary.getProperty(RetentionService.COUNT_FIELD));
+    }
+    Assert.assertEquals(2, counts.size());
+    Assert.assertEquals(Integer.valueOf(2), counts.get("2010-01"));
+    Assert.assertEquals(Integer.valueOf(1), counts.get("2010-02"));
+  }
+
+  /**
+   * Tests keeping only the newest entries of each person.
+   */
+  @Test
+  public void countTest() {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put(RetentionService.MAX_COUNT_PROP, "2");
+
+    final RetentionService retention = new RetentionService(this.fDb, this.fActivitySPI, config);
+    Assert.assertEquals(4, retention.apply());
+
+    final List<String> titles = getTitles();
+    Assert.assertEquals(2, titles.size());
+    Assert.assertTrue(titles.contains("new 0"));
+    Assert.assertTrue(titles.contains("new 1"));
+
+    // no summaries by default
+    Assert.assertFalse(this.fJohn.hasRelationship(ShindigRelTypes.ACTIVITY_SUMMARY));
+  }
+
+  /**
+   * Tests that a stopped background thread no longer deletes entries.
+   *
+   * @throws Exception
+   *           if an exception occurs
+   */
+  @Test
+  public void stopTest() throws Exception {
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put(RetentionService.INTERVAL_PROP, "100");
+    config.put(RetentionService.MAX_COUNT_PROP, "2");
+
+    final RetentionService retention = new RetentionService(this.fDb, this.fActivitySPI, config);
+    retention.stop();
+
+    Thread.sleep(300);
+    Assert.assertEquals(6, getTitles().size());
+  }
+
+  /**
+   * Tests that failing people and batches are skipped without aborting the run.
+   */
+  @Test
+  public void failureTest() {
+    createActivity("old 3", "2010-01-10T12:00:00Z");
+
+    // person with a broken chain
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+    Transaction trans = this.fDb.beginTx();
+    final Node jane = this.fDb.createNode();
+    jane.setProperty(RetentionServiceTest.ID_FIELD, "jane.doe");
+    personNodes.add(jane, RetentionServiceTest.ID_FIELD, "jane.doe");
+    trans.success();
+    trans.finish();
+
+    createActivity("jane.doe", "jane 0", RetentionServiceTest.OLD_DATES[0]);
+    createActivity("jane.doe", "jane 1", RetentionServiceTest.OLD_DATES[1]);
+    createActivity("jane.doe", "jane 2", RetentionServiceTest.OLD_DATES[2]);
+
+    trans = this.fDb.beginTx();
+    final Node dummy = this.fDb.createNode();
+    getEntry(jane, "jane 2").createRelationshipTo(dummy, ShindigRelTypes.OLDER_ACTIVITY);
+
+    // unreadable timestamp failing the second batch after it created a summary
+    getEntry(this.fJohn, "old 3").setProperty(ActivityTime.TIMESTAMP_FIELD, "broken");
+    trans.success();
+    trans.finish();
+
+    final Map<String, String> config = new HashMap<String, String>();
+    config.put(RetentionService.MAX_COUNT_PROP, "2");
+    config.put(RetentionService.BATCH_SIZE_PROP, "2");
+    config.put(RetentionService.SUMMARIES_PROP, "true");
+
+    // batches: "new 2" and "old 2", "old 1" and "old 3" failing, "old 0"
+    final RetentionService retention = new RetentionService(this.fDb, this.fActivitySPI, config);
+    Assert.assertEquals(3, retention.apply());
+
+    final List<String> titles = getTitles();
+    Assert.assertEquals(4, titles.size());
+    Assert.assertTrue(titles.contains("new 0"));
+    Assert.assertTrue(titles.contains("new 1"));
+    Assert.assertTrue(titles.contains("old 1"));
+    Assert.assertTrue(titles.contains("old 3"));
+
+    // rolled back summary not reused
+    final Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (final Relationship rel : this.fJohn.getRelationships(ShindigRelTypes.ACTIVITY_SUMMARY,
+            Direction.OUTGOING)) {
+      final Node summary = rel.getEndNode();
+      counts.put((String) summary.getProperty(RetentionService.PERIOD_FIELD),
+              (Integer) summary.getProperty(RetentionService.COUNT_FIELD));
+    }
+    Assert.assertEquals(3, counts.size());
+    Assert.assertEquals(Integer.valueOf(1), counts.get("2010-01"));
+    Assert.assertEquals(Integer.valueOf(1), counts.get("2010-02"));
+
+    // broken person untouched
+    Assert.assertFalse(jane.hasRelationship(ShindigRelTypes.ACTIVITY_SUMMARY));
+    int entries = 0;
+    for (final Relationship rel : jane.getRelationships(Neo4jRelTypes.ACTED,
+            Direction.OUTGOING)) {
+      ++entries;
+    }
+    Assert.assertEquals(3, entries);
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.EnvelopeProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigProcedure;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for page cursors and keyset pagination using the partial node sorter.
+ */
+public class PageCursorTest {
+  private static final String VALUE_ATT = "value";
+
+  private static final int NODES = 25;
+  private static final int PAGE_SIZE = 10;
+
+  private GraphDatabaseService fDb;
+  private final List<Node> fNodes = new ArrayList<Node>();
+
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    // some equal values, only distinguished by node ID
+    final Transaction trans = this.fDb.beginTx();
+    for (int i = 0; i < PageCursorTest.NODES; ++i) {
+      final Node node = this.fDb.createNode();
+      node.setProperty(PageCursorTest.VALUE_ATT, (long) (i / 3));
+      this.fNodes.add(node);
+    }
+    trans.success();
+    trans.finish();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  /**
+   * Tests encoding and decoding of cursors with all supported value types.
+   */
+  @Test
+  public void encodingTest() {
+    final Object[] values = { null, "some\nstring", 42L, 42, 4.2, 4.2f, true };
+
+    for (final Object value : values) {
+      final PageCursor cursor = PageCursor.decode(new PageCursor("field", true, value, 7)
+              .encode());
+      Assert.assertEquals("field", cursor.getField());
+      Assert.assertTrue(cursor.isDescending());
+      Assert.assertEquals(value, cursor.getValue());
+      Assert.assertEquals(7, cursor.getNodeId());
+    }
+
+    Assert.assertNull(new PageCursor("field", false, new Object(), 7).encode());
+
+    try {
+      PageCursor.decode("invalid");
+      Assert.fail("invalid cursor was accepted");
+    } catch (final IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private ListResult page(List<Node> nodes, String cursor) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, PageCursorTest.VALUE_ATT);
+    options.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    options.put(WebsockConstants.SUBSET_SIZE, PageCursorTest.PAGE_SIZE);
+    options.put(PageCursor.CURSOR_OPTION, cursor);
+
+    final int first = PartialNodeSorter.sortNodes(nodes, options);
+
+    // the start is returned, not written to the caller's options
+    Assert.assertNull(options.get(WebsockConstants.SUBSET_START));
+    final int last = Math.min(nodes.size(), first + PageCursorTest.PAGE_SIZE);
+
+    final ListResult result = new ListResult(new ArrayList<Node>(nodes.subList(first, last)));
+    result.setFirst(first);
+    result.setMax(PageCursorTest.PAGE_SIZE);
+    result.setTotal(nodes.size());
+    return PageCursor.attach(result, nodes, options);
+  }
+
+  /**
+   * Tests that following cursors returns all nodes in order, even if new nodes are added in front
+   * of the current page.
+   */
+  @Test
+  public void paginationTest() {
+    final List<Node> expected = new ArrayList<Node>(this.fNodes);
+    final Map<String, Object> fullOpts = new HashMap<String, Object>();
+    fullOpts.put(WebsockConstants.SORT_FIELD, PageCursorTest.VALUE_ATT);
+    fullOpts.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    PartialNodeSorter.sortNodes(expected, fullOpts);
+
+    final List<Object> actual = new ArrayList<Object>();
+    final List<Node> nodes = new ArrayList<Node>(this.fNodes);
+
+    ListResult result = page(nodes, "");
+    while (result instanceof ShindigListResult) {
+      actual.addAll(result.getResults());
+
+      // new newest node, which would shift offsets
+      final Transaction trans = this.fDb.beginTx();
+      final Node newNode = this.fDb.createNode();
+      newNode.setProperty(PageCursorTest.VALUE_ATT, 100L);
+      nodes.add(newNode);
+      trans.success();
+      trans.finish();
+
+      final String cursor = (String) ((ShindigListResult) result).getMetadata().get(
+              PageCursor.CURSOR_FIELD);
+      result = page(nodes, cursor);
+    }
+    actual.addAll(result.getResults());
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  /**
+   * Tests that cursors reach the client when requesting an envelope, by serializing each page to
+   * BSON and continuing with the deserialized token.
+   */
+  @Test
+  public void transportTest() throws Exception {
+    final List<Node> sorted = new ArrayList<Node>(this.fNodes);
+    final Map<String, Object> fullOpts = new HashMap<String, Object>();
+    fullOpts.put(WebsockConstants.SORT_FIELD, PageCursorTest.VALUE_ATT);
+    fullOpts.put(WebsockConstants.SORT_ORDER, WebsockConstants.DESCENDING);
+    PartialNodeSorter.sortNodes(sorted, fullOpts);
+
+    final List<Object> expected = new ArrayList<Object>();
+    for (final Node node : sorted) {
+      expected.add(node.getId());
+    }
+
+    // procedure returning node IDs, as the transport cannot serialize nodes
+    final EnvelopeProcedure procedure = new EnvelopeProcedure(new ShindigProcedure("page") {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        final Map<String, Object> options = getMap(parameters,
+                ShindigNativeQueries.OPTIONS_MAP);
+        final ListResult page = page(new ArrayList<Node>(PageCursorTest.this.fNodes),
+                (String) options.get(PageCursor.CURSOR_OPTION));
+
+        final List<Object> ids = new BasicBSONList();
+        for (final Object node : page.getResults()) {
+          ids.add(((Node) node).getId());
+        }
+
+        final ShindigListResult result = new ShindigListResult(ids);
+        result.setFirst(page.getFirst());
+        result.setTotal(page.getTotal());
+        if (page instanceof ShindigListResult) {
+          result.getMetadata().putAll(((ShindigListResult) page).getMetadata());
+        }
+        return result;
+      }
+    }, new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+
+    final List<Object> actual = new ArrayList<Object>();
+    Object cursor = "";
+    while (cursor != null) {
+      final Map<String, Object> options = new HashMap<String, Object>();
+      options.put(ShindigListResult.ENVELOPE_OPTION, true);
+      options.put(PageCursor.CURSOR_OPTION, cursor);
+      final Map<String, Object> parameters = new HashMap<String, Object>();
+      parameters.put(ShindigNativeQueries.OPTIONS_MAP, options);
+
+      final SingleResult result = (SingleResult) procedure.call(parameters);
+      final BSONObject received = BSON.decode(BSON.encode((BSONObject) result.getResults()));
+
+      actual.addAll((List<?>) received.get(ShindigListResult.RESULT_FIELD));
+      cursor = ((BSONObject) received.get(ShindigListResult.METADATA_FIELD))
+              .get(PageCursor.CURSOR_FIELD);
+    }
+
+    Assert.assertEquals(expected, actual);
+  }
+}
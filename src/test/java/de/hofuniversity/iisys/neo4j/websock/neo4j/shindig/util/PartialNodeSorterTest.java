@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.util.NodeSorter;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+
+/**
+ * Test for the partial node sorter, comparing requested subsets with fully sorted lists.
+ */
+public class PartialNodeSorterTest {
+  private static final String VALUE_ATT = "value";
+
+  private static final int NODES = 200;
+
+  private GraphDatabaseService fDb;
+  private final List<Node> fNodes = new ArrayList<Node>();
+
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    // values with duplicates and some nodes without a value
+    final Random random = new Random(42);
+    final Transaction trans = this.fDb.beginTx();
+    for (int i = 0; i < PartialNodeSorterTest.NODES; ++i) {
+      final Node node = this.fDb.createNode();
+      if (i % 10 != 0) {
+        node.setProperty(PartialNodeSorterTest.VALUE_ATT, random.nextInt(50));
+      }
+      this.fNodes.add(node);
+    }
+    trans.success();
+    trans.finish();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private Map<String, Object> options(String order, Integer first, Integer max) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(WebsockConstants.SORT_FIELD, PartialNodeSorterTest.VALUE_ATT);
+    options.put(WebsockConstants.SORT_ORDER, order);
+    options.put(WebsockConstants.SUBSET_START, first);
+    options.put(WebsockConstants.SUBSET_SIZE, max);
+    return options;
+  }
+
+  /**
+   * Tests that requested subsets equal the same part of a fully sorted list.
+   */
+  @Test
+  public void subsetTest() {
+    for (final String order : new String[] { WebsockConstants.ASCENDING,
+        WebsockConstants.DESCENDING }) {
+      final List<Node> full = new ArrayList<Node>(this.fNodes);
+      PartialNodeSorter.sortNodes(full, options(order, null, null));
+
+      final List<Node> partial = new ArrayList<Node>(this.fNodes);
+      PartialNodeSorter.sortNodes(partial, options(order, 20, 10));
+
+      Assert.assertEquals(PartialNodeSorterTest.NODES, partial.size());
+      Assert.assertEquals(full.subList(0, 30), partial.subList(0, 30));
+
+      // all nodes are still contained
+      Assert.assertTrue(partial.containsAll(this.fNodes));
+    }
+  }
+
+  /**
+   * Tests the order of fully sorted lists, including nodes without values and equal values.
+   */
+  @Test
+  public void orderTest() {
+    final List<Node> nodes = new ArrayList<Node>(this.fNodes);
+    PartialNodeSorter.sortNodes(nodes, options(WebsockConstants.DESCENDING, 0, 0));
+
+    Integer previous = null;
+    boolean nulls = false;
+    for (final Node node : nodes) {
+      final Integer value = (Integer) node.getProperty(PartialNodeSorterTest.VALUE_ATT, null);
+
+      if (value == null) {
+        nulls = true;
+      } else {
+        // values without nulls in between
+        Assert.assertFalse(nulls);
+        if (previous != null) {
+          Assert.assertTrue(previous >= value);
+        }
+        previous = value;
+      }
+    }
+    Assert.assertTrue(nulls);
+
+    // equal values are ordered consistently
+    final List<Node> twice = new ArrayList<Node>(this.fNodes);
+    PartialNodeSorter.sortNodes(twice, options(WebsockConstants.DESCENDING, 0, 5));
+    Assert.assertEquals(nodes.subList(0, 5), twice.subList(0, 5));
+
+    // no sort field
+    final List<Node> unsorted = new ArrayList<Node>(this.fNodes);
+    PartialNodeSorter.sortNodes(unsorted, new HashMap<String, Object>());
+    Assert.assertEquals(this.fNodes, unsorted);
+  }
+
+  private List<Node> withoutValues(List<Node> nodes, boolean keepNulls) {
+    final List<Node> result = new ArrayList<Node>();
+    for (final Node node : nodes) {
+      if (node.hasProperty(PartialNodeSorterTest.VALUE_ATT) != keepNulls) {
+        result.add(node);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Tests that integer and string values are sorted exactly like the library's node sorter sorts
+   * them, apart from nodes without a value, which are sorted last in both orders.
+   */
+  @SuppressWarnings("unchecked")
+  @Test
+  public void parityTest() {
+    // string values with duplicates and nulls in addition to the integer values
+    final Random random = new Random(7);
+    final List<Node> strings = new ArrayList<Node>();
+    final Transaction trans = this.fDb.beginTx();
+    for (int i = 0; i < PartialNodeSorterTest.NODES; ++i) {
+      final Node node = this.fDb.createNode();
+      if (i % 7 != 0) {
+        node.setProperty(PartialNodeSorterTest.VALUE_ATT, "v" + random.nextInt(40));
+      }
+      strings.add(node);
+    }
+    trans.success();
+    trans.finish();
+
+    for (final List<Node> fixture : new List[] { this.fNodes, strings }) {
+      for (final String order : new String[] { WebsockConstants.ASCENDING,
+          WebsockConstants.DESCENDING }) {
+        // node sorter sorts stably, so equal values stay in node ID order
+        final List<Node> expected = new ArrayList<Node>(fixture);
+        NodeSorter.sortNodes(expected, options(order, null, null));
+
+        final List<Node> full = new ArrayList<Node>(fixture);
+        PartialNodeSorter.sortNodes(full, options(order, null, null));
+
+        final List<Node> partial = new ArrayList<Node>(fixture);
+        PartialNodeSorter.sortNodes(partial, options(order, 10, 20));
+
+        Assert.assertEquals(withoutValues(expected, false), withoutValues(full, false));
+        Assert.assertEquals(full.subList(0, 30), partial.subList(0, 30));
+
+        // nodes without values come last
+        final List<Node> nulls = withoutValues(full, true);
+        Assert.assertEquals(nulls, full.subList(full.size() - nulls.size(), full.size()));
+        if (WebsockConstants.ASCENDING.equals(order)) {
+          Assert.assertEquals(expected, full);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that values of different and non-comparable types are sorted consistently instead of
+   * causing exceptions.
+   */
+  @Test
+  public void mixedTypeTest() {
+    final Object[] values = { "b", new int[] { 1, 3 }, 2L, new String[] { "a", "b" }, 2.5, "a",
+        new int[] { 1, 2 }, 1, new String[] { "a" }, (short) 3 };
+    // numbers numerically, then int arrays, string arrays and strings
+    final int[] expected = { 7, 2, 4, 9, 6, 1, 8, 3, 5, 0 };
+
+    final List<Node> nodes = new ArrayList<Node>();
+    final Transaction trans = this.fDb.beginTx();
+    for (final Object value : values) {
+      final Node node = this.fDb.createNode();
+      node.setProperty(PartialNodeSorterTest.VALUE_ATT, value);
+      nodes.add(node);
+    }
+    trans.success();
+    trans.finish();
+
+    final List<Node> sorted = new ArrayList<Node>(nodes);
+    PartialNodeSorter.sortNodes(sorted, options(WebsockConstants.ASCENDING, null, null));
+    for (int i = 0; i < expected.length; ++i) {
+      Assert.assertEquals(nodes.get(expected[i]), sorted.get(i));
+    }
+
+    // the same order in reverse and for partial sorts
+    final List<Node> reversed = new ArrayList<Node>(nodes);
+    PartialNodeSorter.sortNodes(reversed, options(WebsockConstants.DESCENDING, 0, 3));
+    for (int i = 0; i < 3; ++i) {
+      Assert.assertEquals(nodes.get(expected[expected.length - 1 - i]), reversed.get(i));
+    }
+  }
+}
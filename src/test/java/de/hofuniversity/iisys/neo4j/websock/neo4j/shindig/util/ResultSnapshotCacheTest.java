@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2012-2015 Institute of Information Systems, Hof University
+ *
+ * This file is part of "Apache Shindig WebSocket Server Routines".
+ *
+ * "Apache Shindig WebSocket Server Routines" is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU General Public
+ * License as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.index.Index;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.EnvelopeProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigListResult;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.ShindigProcedure;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.GraphPersonSPI;
+import de.hofuniversity.iisys.neo4j.websock.neo4j.shindig.spi.ShindigConstants;
+import de.hofuniversity.iisys.neo4j.websock.result.AResult;
+import de.hofuniversity.iisys.neo4j.websock.result.ListResult;
+import de.hofuniversity.iisys.neo4j.websock.result.SingleResult;
+import de.hofuniversity.iisys.neo4j.websock.session.WebsockConstants;
+import de.hofuniversity.iisys.neo4j.websock.shindig.ShindigNativeQueries;
+import de.hofuniversity.iisys.neo4j.websock.util.ImplUtil;
+
+/**
+ * Test for the result snapshot cache and its use for paging through all people.
+ */
+public class ResultSnapshotCacheTest {
+  private static final String ID_FIELD = "id";
+  private static final String FORMATTED_FIELD = "formatted";
+
+  private static final int PEOPLE = 12;
+
+  private GraphDatabaseService fDb;
+  private final List<Node> fNodes = new ArrayList<Node>();
+
+  @Before
+  public void setupService() {
+    final TestGraphDatabaseFactory fact = new TestGraphDatabaseFactory();
+    this.fDb = fact.newImpermanentDatabase();
+
+    final Index<Node> personNodes = this.fDb.index().forNodes(ShindigConstants.PERSON_NODES);
+
+    final Transaction trans = this.fDb.beginTx();
+    for (int i = 0; i < ResultSnapshotCacheTest.PEOPLE; ++i) {
+      final Node person = this.fDb.createNode();
+      final String id = "person" + (char) ('a' + i);
+      person.setProperty(ResultSnapshotCacheTest.ID_FIELD, id);
+      person.setProperty(ResultSnapshotCacheTest.FORMATTED_FIELD, id);
+      personNodes.add(person, ResultSnapshotCacheTest.ID_FIELD, id);
+      this.fNodes.add(person);
+    }
+    trans.success();
+    trans.finish();
+  }
+
+  @After
+  public void stopDatabase() {
+    this.fDb.shutdown();
+  }
+
+  private Map<String, Object> options(String handle) {
+    final Map<String, Object> options = new HashMap<String, Object>();
+    options.put(ResultSnapshotCache.SNAPSHOT_OPTION, handle);
+    return options;
+  }
+
+  /**
+   * Tests the storage, scoping, expiration and eviction of snapshots.
+   */
+  @Test
+  public void cacheTest() throws Exception {
+    ResultSnapshotCache cache = new ResultSnapshotCache(this.fDb, 60000, 1024 * 1024);
+
+    // only stored if requested
+    final ListResult page = new ListResult(new ArrayList<Object>());
+    Assert.assertSame(page, cache.store("scope", this.fNodes, new HashMap<String, Object>(), page));
+
+    final ListResult stored = cache.store("scope", this.fNodes, options(""), page);
+    final String handle = (String) ((ShindigListResult) stored).getMetadata().get(
+            ResultSnapshotCache.SNAPSHOT_FIELD);
+    Assert.assertNotNull(handle);
+    Assert.assertEquals(1, cache.getSize());
+
+    Assert.assertEquals(this.fNodes, cache.restore("scope", options(handle)));
+    Assert.assertNull(cache.restore("other scope", options(handle)));
+    Assert.assertNull(cache.restore("scope", options("unknown")));
+    Assert.assertEquals(1, cache.getHits());
+    Assert.assertEquals(2, cache.getMisses());
+
+    // a handle of another query gets a new snapshot
+    Assert.assertEquals(handle, ((ShindigListResult) cache.store("scope", this.fNodes,
+            options(handle), page)).getMetadata().get(ResultSnapshotCache.SNAPSHOT_FIELD));
+    final String other = (String) ((ShindigListResult) cache.store("other scope",
+            this.fNodes.subList(0, 2), options(handle), page)).getMetadata().get(
+            ResultSnapshotCache.SNAPSHOT_FIELD);
+    Assert.assertFalse(handle.equals(other));
+    Assert.assertEquals(this.fNodes.subList(0, 2), cache.restore("other scope", options(other)));
+    Assert.assertEquals(this.fNodes, cache.restore("scope", options(handle)));
+
+    // expiration
+    cache = new ResultSnapshotCache(this.fDb, 0, 1024 * 1024);
+    final String expired = (String) ((ShindigListResult) cache.store("scope", this.fNodes,
+            options(""), page)).getMetadata().get(ResultSnapshotCache.SNAPSHOT_FIELD);
+    Thread.sleep(5);
+    Assert.assertNull(cache.restore("scope", options(expired)));
+    Assert.assertEquals(0, cache.getSize());
+
+    // eviction by memory, only one snapshot fits
+    cache = new ResultSnapshotCache(this.fDb, 60000, 1024 * 1024);
+    cache.store("scope", this.fNodes, options(""), page);
+    final long limit = cache.getMemory() * 3 / 2;
+    cache = new ResultSnapshotCache(this.fDb, 60000, limit);
+    cache.store("scope", this.fNodes, options(""), page);
+    cache.store("scope", this.fNodes, options(""), page);
+    Assert.assertEquals(1, cache.getSize());
+    Assert.assertTrue(cache.getMemory() <= limit);
+  }
+
+  /**
+   * Tests that nodes whose IDs were reused for other nodes are not restored, while the total
+   * stays that of the snapshot.
+   */
+  @Test
+  public void reuseTest() {
+    final ResultSnapshotCache cache = new ResultSnapshotCache(this.fDb, 60000, 1024 * 1024);
+    final ListResult page = new ListResult(new ArrayList<Object>());
+    final String handle = (String) ((ShindigListResult) cache.store("scope", this.fNodes,
+            options(""), page)).getMetadata().get(ResultSnapshotCache.SNAPSHOT_FIELD);
+
+    // simulates deleting a person and reusing its node ID for another node
+    final Transaction trans = this.fDb.beginTx();
+    this.fNodes.get(0).setProperty(ResultSnapshotCacheTest.ID_FIELD, "someone else");
+    this.fNodes.get(1).removeProperty(ResultSnapshotCacheTest.ID_FIELD);
+    trans.success();
+    trans.finish();
+
+    final List<Node> restored = cache.restore("scope", options(handle));
+    Assert.assertEquals(ResultSnapshotCacheTest.PEOPLE, restored.size());
+    Assert.assertNull(restored.get(0));
+    Assert.assertNull(restored.get(1));
+    Assert.assertEquals(this.fNodes.subList(2, ResultSnapshotCacheTest.PEOPLE),
+            restored.subList(2, ResultSnapshotCacheTest.PEOPLE));
+  }
+
+  /**
+   * Tests paging through all people using a snapshot created by the first call.
+   */
+  @Test
+  public void pagingTest() {
+    final GraphPersonSPI personSPI = new GraphPersonSPI(this.fDb, new HashMap<String, String>(),
+            new ImplUtil(BasicBSONList.class, BasicBSONObject.class));
+    personSPI.setSnapshots(new ResultSnapshotCache(this.fDb, 60000, 1024 * 1024));
+
+    final List<String> fields = new ArrayList<String>();
+    fields.add(ResultSnapshotCacheTest.ID_FIELD);
+
+    Map<String, Object> options = options("");
+    options.put(WebsockConstants.SUBSET_SIZE, 5);
+    ListResult result = personSPI.getAllPeople(options, fields);
+    final String handle = (String) ((ShindigListResult) result).getMetadata().get(
+            ResultSnapshotCache.SNAPSHOT_FIELD);
+
+    final List<Object> ids = new ArrayList<Object>();
+    for (final Object person : result.getResults()) {
+      ids.add(((Map<?, ?>) person).get(ResultSnapshotCacheTest.ID_FIELD));
+    }
+
+    // people added later do not shift the snapshot's pages
+    final Transaction trans = this.fDb.beginTx();
+    final Node added = this.fDb.createNode();
+    added.setProperty(ResultSnapshotCacheTest.ID_FIELD, "a");
+    added.setProperty(ResultSnapshotCacheTest.FORMATTED_FIELD, "a");
+    this.fDb.index().forNodes(ShindigConstants.PERSON_NODES)
+            .add(added, ResultSnapshotCacheTest.ID_FIELD, "a");
+    trans.success();
+    trans.finish();
+
+    for (int first = 5; first < ResultSnapshotCacheTest.PEOPLE; first += 5) {
+      options = options(handle);
+      options.put(WebsockConstants.SUBSET_START, first);
+      options.put(WebsockConstants.SUBSET_SIZE, 5);
+      result = personSPI.getAllPeople(options, fields);
+
+      Assert.assertEquals(ResultSnapshotCacheTest.PEOPLE, result.getTotal());
+      Assert.assertEquals(handle, ((ShindigListResult) result).getMetadata().get(
+              ResultSnapshotCache.SNAPSHOT_FIELD));
+      for (final Object person : result.getResults()) {
+        ids.add(((Map<?, ?>) person).get(ResultSnapshotCacheTest.ID_FIELD));
+      }
+    }
+
+    Assert.assertEquals(ResultSnapshotCacheTest.PEOPLE, ids.size());
+    for (int i = 0; i < ResultSnapshotCacheTest.PEOPLE; ++i) {
+      Assert.assertEquals("person" + (char) ('a' + i), ids.get(i));
+    }
+  }
+
+  /**
+   * Tests that snapshot handles reach the client when requesting an envelope, by serializing each
+   * page to BSON and continuing with the deserialized handle.
+   */
+  @Test
+  public void transportTest() throws Exception {
+    final ImplUtil impl = new ImplUtil(BasicBSONList.class, BasicBSONObject.class);
+    final GraphPersonSPI personSPI = new GraphPersonSPI(this.fDb, new HashMap<String, String>(),
+            impl);
+    personSPI.setSnapshots(new ResultSnapshotCache(this.fDb, 60000, 1024 * 1024));
+
+    final List<String> fields = new ArrayList<String>();
+    fields.add(ResultSnapshotCacheTest.ID_FIELD);
+
+    final EnvelopeProcedure procedure = new EnvelopeProcedure(new ShindigProcedure("all") {
+      @Override
+      protected AResult invoke(Map<String, Object> parameters) {
+        return personSPI.getAllPeople(getMap(parameters, ShindigNativeQueries.OPTIONS_MAP),
+                fields);
+      }
+    }, impl);
+
+    final List<Object> ids = new ArrayList<Object>();
+    String handle = "";
+    for (int first = 0; first < ResultSnapshotCacheTest.PEOPLE; first += 5) {
+      final Map<String, Object> options = options(handle);
+      options.put(ShindigListResult.ENVELOPE_OPTION, true);
+      options.put(WebsockConstants.SUBSET_START, first);
+      options.put(WebsockConstants.SUBSET_SIZE, 5);
+      final Map<String, Object> parameters = new HashMap<String, Object>();
+      parameters.put(ShindigNativeQueries.OPTIONS_MAP, options);
+
+      final SingleResult result = (SingleResult) procedure.call(parameters);
+      final BSONObject received = BSON.decode(BSON.encode((BSONObject) result.getResults()));
+      for (final Object person : (List<?>) received.get(ShindigListResult.RESULT_FIELD)) {
+        ids.add(((BSONObject) person).get(ResultSnapshotCacheTest.ID_FIELD));
+      }
+
+      final String next = (String) ((BSONObject) received
+              .get(ShindigListResult.METADATA_FIELD)).get(ResultSnapshotCache.SNAPSHOT_FIELD);
+      Assert.assertNotNull(next);
+      if (first > 0) {
+        Assert.assertEquals(handle, next);
+      }
+      handle = next;
+    }
+
+    Assert.assertEquals(ResultSnapshotCacheTest.PEOPLE, ids.size());
+    for (int i = 0; i < ResultSnapshotCacheTest.PEOPLE; ++i) {
+      Assert.assertEquals("person" + (char) ('a' + i), ids.get(i));
+    }
+  }
+}